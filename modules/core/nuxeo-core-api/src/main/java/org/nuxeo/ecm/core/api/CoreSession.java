@@ -28,6 +28,7 @@ import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 import org.nuxeo.ecm.core.api.DocumentModel.DocumentModelRefresh;
 import org.nuxeo.ecm.core.api.event.DocumentEventTypes;
@@ -1138,6 +1139,23 @@ public interface CoreSession {
     PartialList<Map<String, Serializable>> queryProjection(String query, String queryType, boolean distinctDocuments,
             long limit, long offset, long countUpTo, Object... params);
 
+    /**
+     * Executes the given query and returns a stream of maps containing the requested properties.
+     * <p>
+     * The results are read from the backend cursor as the stream is consumed, instead of being first collected in
+     * memory, so this is suited to queries returning a very large number of rows. The stream <b>must</b> be closed
+     * after use, typically with a try-with-resources.
+     *
+     * @param query the query to execute
+     * @param queryType the query type, usually "NXQL"
+     * @param distinctDocuments if {@code true} then a maximum of one row per document will be returned
+     * @param params optional query-type-dependent parameters
+     * @return a stream of the query results, which <b>must</b> be closed after use
+     * @since 11.4
+     */
+    Stream<Map<String, Serializable>> queryProjectionStream(String query, String queryType, boolean distinctDocuments,
+            Object... params);
+
     /**
      * Executes the given query and returns the first batch of results containing id of documents, next batch must be
      * requested within the {@code keepAliveSeconds} delay.
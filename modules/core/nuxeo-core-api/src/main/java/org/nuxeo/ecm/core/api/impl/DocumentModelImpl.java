@@ -36,6 +36,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -188,6 +189,14 @@ public class DocumentModelImpl implements DocumentModel, Cloneable {
 
     protected String sourceId;
 
+    /**
+     * Reads a data model directly from the underlying document, or returns {@code null} if it cannot be used anymore.
+     * Set when the document model is created in lazy mode, to avoid going through the session for each schema.
+     *
+     * @since 11.4
+     */
+    protected transient Function<Schema, DataModel> dataModelReader;
+
     protected Map<String, Serializable> contextData = new HashMap<>();
 
     private String detachedVersionLabel;
@@ -417,6 +426,7 @@ public class DocumentModelImpl implements DocumentModel, Cloneable {
         } finally {
             principal = null;
             coreSession = null;
+            dataModelReader = null;
         }
     }
 
@@ -427,6 +437,7 @@ public class DocumentModelImpl implements DocumentModel, Cloneable {
         }
         principal = coreSession.getPrincipal();
         this.coreSession = coreSession;
+        dataModelReader = null;
     }
 
     @Override
@@ -461,14 +472,35 @@ public class DocumentModelImpl implements DocumentModel, Cloneable {
         if (ref == null) {
             return null;
         }
-        // load from session
         TypeProvider typeProvider = getSchemaManager();
         final Schema schemaType = typeProvider.getSchema(schema);
-        DataModel dataModel = getSession().getDataModel(ref, schemaType);
+        DataModel dataModel = null;
+        if (dataModelReader != null) {
+            // lazy mode, read from the underlying document
+            dataModel = dataModelReader.apply(schemaType);
+            if (dataModel == null) {
+                dataModelReader = null;
+            }
+        }
+        if (dataModel == null) {
+            // load from session
+            dataModel = getSession().getDataModel(ref, schemaType);
+        }
         dataModels.put(schema, dataModel);
         return dataModel;
     }
 
+    /**
+     * Sets the function used to read data models directly from the underlying document, instead of through the
+     * session. The function returns {@code null} when it cannot be used anymore, for instance after the transaction in
+     * which the document model was created.
+     *
+     * @since 11.4
+     */
+    public void setDataModelReader(Function<Schema, DataModel> dataModelReader) {
+        this.dataModelReader = dataModelReader;
+    }
+
     @Override
     @Deprecated
     public DataModel getDataModel(String schema) {
@@ -46,6 +46,14 @@ public abstract class AbstractBlobStore implements BlobStore {
      */
     public static final char BYTE_RANGE_SEP = ';';
 
+    /**
+     * Size of the buffer used to transfer a blob stream, larger than the default one to reduce the number of system
+     * calls for big blobs.
+     *
+     * @since 11.4
+     */
+    public static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
     private static final Logger log = LogManager.getLogger(AbstractBlobStore.class);
 
     protected final String name;
@@ -210,7 +218,7 @@ public abstract class AbstractBlobStore implements BlobStore {
         if (writeObserver != null) {
             out = writeObserver.wrap(out);
         }
-        IOUtils.copy(in, out);
+        IOUtils.copyLarge(in, out, new byte[TRANSFER_BUFFER_SIZE]);
         if (writeObserver != null) {
             writeObserver.done();
         }
@@ -27,6 +27,7 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -35,6 +36,13 @@ import org.nuxeo.ecm.core.blob.BlobStore.OptionalOrUnknown;
 import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
 import org.nuxeo.ecm.core.blob.binary.BinaryManager;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+import io.dropwizard.metrics5.Timer;
 
 /**
  * A {@link BlobProvider} implemented on top of an underlying {@link BlobStore}.
@@ -54,10 +62,21 @@ public abstract class BlobStoreBlobProvider extends AbstractBlobProvider {
 
     public BlobStore store;
 
+    /** @since 11.4 */
+    protected Timer writeTimer;
+
+    /** @since 11.4 */
+    protected Counter writeBytesCounter;
+
     @Override
     public void initialize(String blobProviderId, Map<String, String> properties) throws IOException {
         super.initialize(blobProviderId, properties);
         store = getBlobStore(blobProviderId, properties);
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        MetricName writeName = MetricName.build("nuxeo", "blobproviders", "blobprovider", "write")
+                                         .tagged("blobprovider", blobProviderId);
+        writeTimer = registry.timer(writeName);
+        writeBytesCounter = registry.counter(writeName.resolve("bytes"));
     }
 
     protected abstract BlobStore getBlobStore(String blobProviderId, Map<String, String> properties) throws IOException;
@@ -106,7 +125,14 @@ public abstract class BlobStoreBlobProvider extends AbstractBlobProvider {
 
     @Override
     public String writeBlob(BlobContext blobContext) throws IOException {
+        long t0 = System.nanoTime();
         String key = store.writeBlob(blobContext);
+        writeTimer.update(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+        long length = blobContext.blob.getLength();
+        if (length > 0) {
+            // throughput of the provider, when the length is known
+            writeBytesCounter.inc(length);
+        }
         fixupDigest(blobContext.blob, key);
         return key;
     }
@@ -19,6 +19,7 @@
 package org.nuxeo.ecm.core.blob;
 
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -27,12 +28,20 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
+import org.apache.commons.lang3.mutable.MutableObject;
 import org.nuxeo.common.file.FileCache;
 import org.nuxeo.common.file.LRUFileCache;
+import org.nuxeo.common.file.TinyLFUFileCache;
 import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
 import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.trackers.files.FileEventTracker;
 
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+
 /**
  * Blob store wrapper that caches blobs locally because fetching them may be expensive.
  *
@@ -53,16 +62,52 @@ public class CachingBlobStore extends AbstractBlobStore {
 
     protected final BinaryGarbageCollector gc;
 
+    /** @since 11.4 */
+    protected final boolean allowByteRange;
+
+    /** @since 11.4 */
+    protected final long segmentSize;
+
+    /** @since 11.4 */
+    protected final Counter hitsCounter;
+
+    /** @since 11.4 */
+    protected final Counter missesCounter;
+
+    /** @since 11.4 */
+    protected final Counter hitBytesCounter;
+
     public CachingBlobStore(String name, BlobStore store, CachingConfiguration config) {
+        this(name, store, config, name);
+    }
+
+    /**
+     * Creates a caching blob store whose metrics are tagged with the given blob provider id.
+     *
+     * @since 11.4
+     */
+    public CachingBlobStore(String name, BlobStore store, CachingConfiguration config, String blobProviderId) {
         super(name, store.getKeyStrategy());
         this.store = store;
         cacheDir = config.dir;
-        fileCache = new LRUFileCache(cacheDir.toFile(), config.maxSize, config.maxCount, config.minAge);
+        if (CachingConfiguration.CACHE_POLICY_TINYLFU.equals(config.policy)) {
+            fileCache = new TinyLFUFileCache(cacheDir.toFile(), config.maxSize, config.maxCount, config.minAge);
+        } else {
+            fileCache = new LRUFileCache(cacheDir.toFile(), config.maxSize, config.maxCount, config.minAge);
+        }
         // be sure FileTracker won't steal our files
         FileEventTracker.registerProtectedPath(cacheDir.toAbsolutePath().toString());
         tmpPathStrategy = new PathStrategyFlat(cacheDir);
         tmpStore = new LocalBlobStore(name, store.getKeyStrategy(), tmpPathStrategy); // view of the LRUFileCache tmp dir
         gc = new CachingBinaryGarbageCollector(store.getBinaryGarbageCollector());
+        allowByteRange = config.allowByteRange;
+        segmentSize = config.segmentSize;
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        MetricName cacheName = MetricName.build("nuxeo", "blobproviders", "blobprovider", "cache")
+                                         .tagged("blobprovider", blobProviderId, "cache", name);
+        hitsCounter = registry.counter(cacheName.resolve("hits"));
+        missesCounter = registry.counter(cacheName.resolve("misses"));
+        hitBytesCounter = registry.counter(cacheName.resolve("hits.bytes"));
     }
 
     @Override
@@ -103,9 +148,14 @@ public class CachingBlobStore extends AbstractBlobStore {
         // send the file to storage
         String returnedKey = store.writeBlob(blobWriteContext.copyWithNoWriteObserverAndKey(key));
         // register the file in the file cache using its actual key
-        logTrace(name, "-->", name, "rename");
-        logTrace("hnote right of " + name + ": " + returnedKey);
-        fileCache.putFile(returnedKey, tmp.toFile());
+        if (fileCache.admit(returnedKey, Files.size(tmp))) {
+            logTrace(name, "-->", name, "rename");
+            logTrace("hnote right of " + name + ": " + returnedKey);
+            fileCache.putFile(returnedKey, tmp.toFile());
+        } else {
+            // not worth caching
+            tmpStore.deleteBlob(tmpKey);
+        }
         return returnedKey;
     }
 
@@ -129,24 +179,39 @@ public class CachingBlobStore extends AbstractBlobStore {
 
     @Override
     public OptionalOrUnknown<Path> getFile(String key) {
+        if (allowByteRange && isByteRangeKey(key)) {
+            // byte ranges are cached by segments, use a stream
+            return OptionalOrUnknown.unknown();
+        }
         File cachedFile = fileCache.getFile(key);
         if (cachedFile == null) {
             logTrace("<--", "missing");
             logTrace("hnote right: " + key);
+            missesCounter.inc();
             return OptionalOrUnknown.missing();
         } else {
-            logTrace("<-", "read " + cachedFile.length() + " bytes");
+            long length = cachedFile.length();
+            logTrace("<-", "read " + length + " bytes");
             logTrace("hnote right: " + key);
+            recordHit(length);
             return OptionalOrUnknown.of(cachedFile.toPath());
         }
     }
 
     @Override
     public OptionalOrUnknown<InputStream> getStream(String key) throws IOException {
+        if (allowByteRange) {
+            MutableObject<String> keyHolder = new MutableObject<>(key);
+            ByteRange byteRange = getByteRangeFromKey(keyHolder);
+            if (byteRange != null) {
+                return getStream(keyHolder.getValue(), byteRange);
+            }
+        }
         File cachedFile = fileCache.getFile(key);
         if (cachedFile == null) {
             logTrace("<--", "missing");
             logTrace("hnote right: " + key);
+            missesCounter.inc();
             // fetch file from storage into the cache
             // go through a tmp file for atomicity
             String tmpKey = randomString();
@@ -155,16 +220,175 @@ public class CachingBlobStore extends AbstractBlobStore {
                 return OptionalOrUnknown.missing();
             }
             File tmp = tmpPathStrategy.getPathForKey(tmpKey).toFile();
+            if (!fileCache.admit(key, tmp.length())) {
+                // not worth caching, read the fetched file directly
+                logTrace("<-", "read " + tmp.length() + " bytes");
+                logTrace("hnote right: " + key);
+                return OptionalOrUnknown.of(Files.newInputStream(tmp.toPath(), DELETE_ON_CLOSE));
+            }
             logTrace("->", "write " + tmp.length() + " bytes");
             logTrace("hnote right: " + key);
             cachedFile = fileCache.putFile(key, tmp);
         } else {
-            logTrace("<-", "read " + cachedFile.length() + " bytes");
+            long length = cachedFile.length();
+            logTrace("<-", "read " + length + " bytes");
             logTrace("hnote right: " + key);
+            recordHit(length);
         }
         return OptionalOrUnknown.of(new FileInputStream(cachedFile));
     }
 
+    protected static boolean isByteRangeKey(String key) {
+        return getByteRangeFromKey(new MutableObject<>(key)) != null;
+    }
+
+    /**
+     * Gets a stream for a byte range of a blob.
+     * <p>
+     * If the whole blob is cached, the range is read from it. Otherwise only the fixed-size segments of the blob
+     * covering the range are fetched from the underlying store, as the stream is read, and cached separately.
+     *
+     * @since 11.4
+     */
+    protected OptionalOrUnknown<InputStream> getStream(String key, ByteRange byteRange) throws IOException {
+        File cachedFile = fileCache.getFile(key);
+        if (cachedFile != null) {
+            logTrace("<-", "read " + byteRange.getLength() + " bytes");
+            logTrace("hnote right: " + key);
+            recordHit(byteRange.getLength());
+            return OptionalOrUnknown.of(byteRange.forStream(new FileInputStream(cachedFile)));
+        }
+        // fetch the first segment now to know if the blob exists
+        long segment = byteRange.getStart() / segmentSize;
+        InputStream stream = getSegmentStream(key, segment);
+        if (stream == null) {
+            return OptionalOrUnknown.missing();
+        }
+        return OptionalOrUnknown.of(new SegmentedInputStream(key, byteRange, stream));
+    }
+
+    /**
+     * Gets a stream for a segment of a blob, or {@code null} if the blob is missing. The last segment of a blob may be
+     * shorter than the segment size.
+     *
+     * @since 11.4
+     */
+    protected InputStream getSegmentStream(String key, long segment) throws IOException {
+        long start = segment * segmentSize;
+        String segmentKey = setByteRangeInKey(key, ByteRange.inclusive(start, start + segmentSize - 1));
+        // a segment cannot be invalidated when a non-deduplicated blob is overwritten, don't cache it
+        boolean cacheable = keyStrategy.useDeDuplication();
+        if (cacheable) {
+            File cachedFile = fileCache.getFile(segmentKey);
+            if (cachedFile != null) {
+                logTrace("<-", "read " + cachedFile.length() + " bytes");
+                logTrace("hnote right: " + segmentKey);
+                recordHit(cachedFile.length());
+                return new FileInputStream(cachedFile);
+            }
+        }
+        logTrace("<--", "missing");
+        logTrace("hnote right: " + segmentKey);
+        missesCounter.inc();
+        String tmpKey = randomString();
+        boolean found = tmpStore.copyBlob(tmpKey, store, segmentKey, false);
+        if (!found) {
+            return null;
+        }
+        File tmp = tmpPathStrategy.getPathForKey(tmpKey).toFile();
+        if (!cacheable || !fileCache.admit(segmentKey, tmp.length())) {
+            return Files.newInputStream(tmp.toPath(), DELETE_ON_CLOSE);
+        }
+        logTrace("->", "write " + tmp.length() + " bytes");
+        logTrace("hnote right: " + segmentKey);
+        return new FileInputStream(fileCache.putFile(segmentKey, tmp));
+    }
+
+    /**
+     * Stream over a byte range of a blob, that reads the successive segments of the blob covering the range.
+     *
+     * @since 11.4
+     */
+    protected class SegmentedInputStream extends InputStream {
+
+        protected final String key;
+
+        protected long segment;
+
+        protected InputStream current;
+
+        // position in the blob of the next byte of the current segment
+        protected long position;
+
+        // bytes left to read in the range
+        protected long remaining;
+
+        public SegmentedInputStream(String key, ByteRange byteRange, InputStream first) throws IOException {
+            this.key = key;
+            segment = byteRange.getStart() / segmentSize;
+            current = first;
+            position = segment * segmentSize;
+            remaining = byteRange.getLength();
+            long skip = byteRange.getStart() - position;
+            while (skip > 0) {
+                long n = current.skip(skip);
+                if (n <= 0) {
+                    // range starts after the end of the blob
+                    remaining = 0;
+                    break;
+                }
+                skip -= n;
+                position += n;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (remaining > 0) {
+                int n = current.read(b, off, (int) Math.min(len, remaining));
+                if (n > 0) {
+                    position += n;
+                    remaining -= n;
+                    return n;
+                }
+                // end of the current segment
+                long next = segment + 1;
+                if (position < next * segmentSize) {
+                    // short segment, end of the blob
+                    break;
+                }
+                current.close();
+                current = getSegmentStream(key, next);
+                if (current == null) {
+                    throw new IOException("Missing blob: " + key);
+                }
+                segment = next;
+            }
+            remaining = 0;
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            current.close();
+        }
+    }
+
+    protected void recordHit(long length) {
+        hitsCounter.inc();
+        hitBytesCounter.inc(length);
+    }
+
     @Override
     public boolean readBlob(String key, Path dest) throws IOException {
         OptionalOrUnknown<InputStream> streamOpt = getStream(key);
@@ -18,8 +18,13 @@
  */
 package org.nuxeo.ecm.core.blob;
 
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.nuxeo.ecm.core.blob.BlobProviderDescriptor.ALLOW_BYTE_RANGE;
+
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Map;
 
 import org.nuxeo.common.utils.SizeUtils;
@@ -38,6 +43,38 @@ public class CachingConfiguration extends PropertyBasedConfiguration {
 
     public static final String CACHE_MIN_AGE_PROPERTY = "cacheminage";
 
+    /**
+     * A stable directory for the cache, so that the cache survives restarts. A new temporary directory is used if
+     * missing.
+     *
+     * @since 11.4
+     */
+    public static final String CACHE_DIR_PROPERTY = "cachedir";
+
+    /**
+     * The eviction policy of the cache, {@value #CACHE_POLICY_LRU} (the default) or {@value #CACHE_POLICY_TINYLFU}.
+     *
+     * @since 11.4
+     */
+    public static final String CACHE_POLICY_PROPERTY = "cachepolicy";
+
+    /** @since 11.4 */
+    public static final String CACHE_POLICY_LRU = "lru";
+
+    /** @since 11.4 */
+    public static final String CACHE_POLICY_TINYLFU = "tinylfu";
+
+    /**
+     * The size of the segments of a blob that are fetched and cached separately to serve byte ranges, when byte ranges
+     * are allowed.
+     *
+     * @since 11.4
+     */
+    public static final String CACHE_SEGMENT_SIZE_PROPERTY = "cachesegmentsize";
+
+    /** @since 11.4 */
+    public static final String DEFAULT_CACHE_SEGMENT_SIZE = "1 mb";
+
     public static final String DEFAULT_CACHE_SIZE = "100 mb";
 
     public static final String DEFAULT_CACHE_COUNT = "10000";
@@ -52,15 +89,38 @@ public class CachingConfiguration extends PropertyBasedConfiguration {
 
     public final long minAge;
 
+    /** @since 11.4 */
+    public final String policy;
+
+    /** @since 11.4 */
+    public final boolean allowByteRange;
+
+    /** @since 11.4 */
+    public final long segmentSize;
+
     public CachingConfiguration(String systemPropertyPrefix, Map<String, String> properties) throws IOException {
         super(systemPropertyPrefix, properties);
-        dir = Framework.createTempDirectory("nxbincache.");
+        String dirProp = getProperty(CACHE_DIR_PROPERTY);
+        if (isBlank(dirProp)) {
+            dir = Framework.createTempDirectory("nxbincache.");
+        } else {
+            dir = Files.createDirectories(Paths.get(dirProp));
+        }
         String maxSizeProp = getProperty(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE);
         String maxCountProp = getProperty(CACHE_COUNT_PROPERTY, DEFAULT_CACHE_COUNT);
         String minAgeProp = getProperty(CACHE_MIN_AGE_PROPERTY, DEFAULT_CACHE_MIN_AGE);
         maxSize = SizeUtils.parseSizeInBytes(maxSizeProp);
         maxCount = Long.parseLong(maxCountProp);
         minAge = Long.parseLong(minAgeProp);
+        policy = getProperty(CACHE_POLICY_PROPERTY, CACHE_POLICY_LRU);
+        if (!CACHE_POLICY_LRU.equals(policy) && !CACHE_POLICY_TINYLFU.equals(policy)) {
+            throw new IllegalArgumentException("Invalid " + CACHE_POLICY_PROPERTY + ": " + policy);
+        }
+        allowByteRange = getBooleanProperty(ALLOW_BYTE_RANGE);
+        segmentSize = SizeUtils.parseSizeInBytes(getProperty(CACHE_SEGMENT_SIZE_PROPERTY, DEFAULT_CACHE_SEGMENT_SIZE));
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Invalid " + CACHE_SEGMENT_SIZE_PROPERTY + ": " + segmentSize);
+        }
     }
 
     public CachingConfiguration(Path dir, long maxSize, long maxCount, long minAge) {
@@ -69,6 +129,9 @@ public class CachingConfiguration extends PropertyBasedConfiguration {
         this.maxSize = maxSize;
         this.maxCount = maxCount;
         this.minAge = minAge;
+        this.policy = CACHE_POLICY_LRU;
+        this.allowByteRange = false;
+        this.segmentSize = SizeUtils.parseSizeInBytes(DEFAULT_CACHE_SEGMENT_SIZE);
     }
 
 }
@@ -0,0 +1,534 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.blob;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.apache.commons.io.output.NullOutputStream.NULL_OUTPUT_STREAM;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.mutable.MutableObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.blob.KeyStrategy.WriteObserver;
+import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
+import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus;
+
+/**
+ * Blob store wrapper that splits blobs into content-defined chunks stored by digest, so that blobs sharing most of
+ * their content (for instance successive versions of a large file) share most of their storage.
+ * <p>
+ * The underlying store receives, under the blob key, a manifest listing the chunks of the blob. The chunks are stored
+ * in a separate chunk store using a digest key strategy, and a chunk already present there is not written again.
+ * <p>
+ * Deleting a blob only deletes its manifest, as its chunks may be shared: unused chunks are removed by the garbage
+ * collector, which marks the chunks of the manifests it marks.
+ *
+ * @since 11.4
+ */
+public class ChunkedBlobStore extends AbstractBlobStore {
+
+    private static final Logger log = LogManager.getLogger(ChunkedBlobStore.class);
+
+    protected final BlobStore store;
+
+    protected final BlobStore chunkStore;
+
+    protected final String chunkDigestAlgorithm;
+
+    protected final ChunkingConfiguration config;
+
+    protected final ChunkedBinaryGarbageCollector gc;
+
+    /**
+     * Creates a chunked blob store.
+     *
+     * @param name the name of this store
+     * @param store the store for the manifests, using the key strategy of the blobs
+     * @param chunkStore the store for the chunks, using a digest key strategy
+     * @param chunkDigestAlgorithm the digest algorithm used for the chunk keys
+     * @param config the chunking configuration
+     */
+    public ChunkedBlobStore(String name, BlobStore store, BlobStore chunkStore, String chunkDigestAlgorithm,
+            ChunkingConfiguration config) {
+        super(name, store.getKeyStrategy());
+        if (!chunkStore.getKeyStrategy().useDeDuplication()) {
+            throw new NuxeoException("Chunk store must use a digest key strategy: " + chunkStore.getName());
+        }
+        this.store = store;
+        this.chunkStore = chunkStore;
+        this.chunkDigestAlgorithm = chunkDigestAlgorithm;
+        this.config = config;
+        gc = new ChunkedBinaryGarbageCollector(store.getBinaryGarbageCollector(),
+                chunkStore.getBinaryGarbageCollector());
+    }
+
+    @Override
+    public boolean hasVersioning() {
+        return store.hasVersioning();
+    }
+
+    @Override
+    public BlobStore unwrap() {
+        // the underlying store contains manifests, not blobs
+        return this;
+    }
+
+    @Override
+    public String writeBlob(BlobWriteContext blobWriteContext) throws IOException {
+        ChunkManifest manifest;
+        try (InputStream in = blobWriteContext.getStream()) {
+            manifest = writeChunks(in, blobWriteContext.writeObserver);
+        }
+        String key = blobWriteContext.getKey(); // may depend on write observer, for example for digests
+        return writeManifest(key, manifest, blobWriteContext.blobContext);
+    }
+
+    /**
+     * Splits the stream into chunks, writes the chunks missing from the chunk store and returns the manifest.
+     */
+    @SuppressWarnings("resource")
+    protected ChunkManifest writeChunks(InputStream in, WriteObserver writeObserver) throws IOException {
+        OutputStream out = writeObserver == null ? NULL_OUTPUT_STREAM : writeObserver.wrap(NULL_OUTPUT_STREAM);
+        MessageDigest messageDigest = getChunkMessageDigest();
+        ContentDefinedChunker chunker = new ContentDefinedChunker(in, config.minSize, config.avgSize, config.maxSize);
+        ChunkManifest manifest = new ChunkManifest();
+        byte[] chunk;
+        while ((chunk = chunker.next()) != null) {
+            out.write(chunk);
+            String chunkKey = Hex.encodeHexString(messageDigest.digest(chunk));
+            writeChunk(chunkKey, chunk);
+            manifest.add(chunkKey, chunk.length);
+        }
+        if (writeObserver != null) {
+            writeObserver.done();
+        }
+        return manifest;
+    }
+
+    protected MessageDigest getChunkMessageDigest() {
+        try {
+            return MessageDigest.getInstance(chunkDigestAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new NuxeoException(e);
+        }
+    }
+
+    protected void writeChunk(String chunkKey, byte[] chunk) throws IOException {
+        boolean reused = chunkStore.getFile(chunkKey).isPresent();
+        if (reused) {
+            logTrace("<--", "exists");
+            logTrace("hnote right: " + chunkKey);
+        } else {
+            BlobContext chunkContext = new BlobContext(Blobs.createBlob(chunk));
+            chunkStore.writeBlob(
+                    new BlobWriteContext(chunkContext, null, () -> chunkKey, chunkStore.getKeyStrategy()));
+        }
+        // a GC running or starting before the manifest referencing this chunk is committed may not see it
+        gc.markChunk(chunkKey, reused);
+    }
+
+    protected String writeManifest(String key, ChunkManifest manifest, BlobContext blobContext) throws IOException {
+        Blob manifestBlob = Blobs.createBlob(manifest.toBytes());
+        BlobContext manifestContext = blobContext == null ? new BlobContext(manifestBlob)
+                : new BlobContext(manifestBlob, blobContext.docId, blobContext.xpath);
+        return store.writeBlob(new BlobWriteContext(manifestContext, null, () -> key, keyStrategy));
+    }
+
+    /**
+     * Reads the manifest of a blob.
+     *
+     * @return the manifest, or {@code null} if the blob is missing
+     */
+    protected ChunkManifest readManifest(String key) throws IOException {
+        byte[] bytes = readBytes(store, key);
+        return bytes == null ? null : ChunkManifest.parse(key, bytes);
+    }
+
+    protected byte[] readChunk(String chunkKey) throws IOException {
+        byte[] chunk = readBytes(chunkStore, chunkKey);
+        if (chunk == null) {
+            throw new IOException("Missing chunk: " + chunkKey);
+        }
+        return chunk;
+    }
+
+    /** Reads a small blob from a store, returns {@code null} if missing. */
+    protected static byte[] readBytes(BlobStore blobStore, String key) throws IOException {
+        OptionalOrUnknown<InputStream> streamOpt = blobStore.getStream(key);
+        if (streamOpt.isKnown()) {
+            if (!streamOpt.isPresent()) {
+                return null;
+            }
+            try (InputStream stream = streamOpt.get()) {
+                return IOUtils.toByteArray(stream);
+            }
+        }
+        Path tmp = Files.createTempFile("bin_", ".tmp");
+        try {
+            if (!blobStore.readBlob(key, tmp)) {
+                return null;
+            }
+            return Files.readAllBytes(tmp);
+        } finally {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                log.warn(e, e);
+            }
+        }
+    }
+
+    @Override
+    public boolean copyBlobIsOptimized(BlobStore sourceStore) {
+        return sourceStore instanceof ChunkedBlobStore;
+    }
+
+    @Override
+    public boolean copyBlob(String key, BlobStore sourceStore, String sourceKey, boolean atomicMove)
+            throws IOException {
+        if (sourceStore instanceof ChunkedBlobStore) {
+            return copyBlob(key, (ChunkedBlobStore) sourceStore, sourceKey, atomicMove);
+        }
+        // generic copy, the blob has to be chunked
+        Path tmp = Files.createTempFile("bin_", ".tmp");
+        try {
+            if (!sourceStore.readBlob(sourceKey, tmp)) {
+                return false;
+            }
+            ChunkManifest manifest;
+            try (InputStream in = Files.newInputStream(tmp)) {
+                manifest = writeChunks(in, null);
+            }
+            writeManifest(key, manifest, null);
+        } finally {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                log.warn(e, e);
+            }
+        }
+        if (atomicMove) {
+            sourceStore.deleteBlob(sourceKey);
+        }
+        return true;
+    }
+
+    /**
+     * Copy from another chunked store: only the manifest and the missing chunks are copied. Chunks are never moved as
+     * they may be shared with other blobs.
+     */
+    protected boolean copyBlob(String key, ChunkedBlobStore sourceStore, String sourceKey, boolean atomicMove)
+            throws IOException {
+        ChunkManifest manifest = sourceStore.readManifest(sourceKey);
+        if (manifest == null) {
+            return false;
+        }
+        for (String chunkKey : manifest.keys) {
+            boolean reused = sourceStore.chunkStore == chunkStore || chunkStore.getFile(chunkKey).isPresent();
+            if (!reused && !chunkStore.copyBlob(chunkKey, sourceStore.chunkStore, chunkKey, false)) {
+                throw new IOException("Missing chunk: " + chunkKey);
+            }
+            gc.markChunk(chunkKey, reused);
+        }
+        return store.copyBlob(key, sourceStore.store, sourceKey, atomicMove);
+    }
+
+    @Override
+    public OptionalOrUnknown<Path> getFile(String key) {
+        return OptionalOrUnknown.unknown();
+    }
+
+    @Override
+    public OptionalOrUnknown<InputStream> getStream(String key) throws IOException {
+        ByteRange byteRange;
+        if (config.allowByteRange) {
+            MutableObject<String> keyHolder = new MutableObject<>(key);
+            byteRange = getByteRangeFromKey(keyHolder);
+            key = keyHolder.getValue();
+        } else {
+            byteRange = null;
+        }
+        ChunkManifest manifest = readManifest(key);
+        if (manifest == null) {
+            return OptionalOrUnknown.missing();
+        }
+        long start = byteRange == null ? 0 : byteRange.getStart();
+        long end = byteRange == null ? manifest.length : Math.min(byteRange.getEnd() + 1, manifest.length);
+        return OptionalOrUnknown.of(new ChunkedInputStream(manifest, start, end));
+    }
+
+    @Override
+    public boolean readBlob(String key, Path dest) throws IOException {
+        OptionalOrUnknown<InputStream> streamOpt = getStream(key);
+        if (!streamOpt.isPresent()) {
+            return false;
+        }
+        try (InputStream stream = streamOpt.get()) {
+            Files.copy(stream, dest, REPLACE_EXISTING);
+            return true;
+        }
+    }
+
+    @Override
+    public void writeBlobProperties(BlobUpdateContext blobUpdateContext) throws IOException {
+        store.writeBlobProperties(blobUpdateContext);
+    }
+
+    @Override
+    public void deleteBlob(String key) {
+        // chunks may be shared with other blobs, they are removed by the GC
+        store.deleteBlob(key);
+    }
+
+    @Override
+    public BinaryGarbageCollector getBinaryGarbageCollector() {
+        return gc;
+    }
+
+    /**
+     * The list of the chunks of a blob.
+     * <p>
+     * Serialized as text: a header line, then one line per chunk with its key and length.
+     */
+    public static class ChunkManifest {
+
+        public static final String HEADER = "nxchunks 1";
+
+        public final List<String> keys = new ArrayList<>();
+
+        public final List<Long> lengths = new ArrayList<>();
+
+        public long length;
+
+        public void add(String key, long chunkLength) {
+            keys.add(key);
+            lengths.add(Long.valueOf(chunkLength));
+            length += chunkLength;
+        }
+
+        public byte[] toBytes() {
+            StringBuilder sb = new StringBuilder(HEADER).append('\n');
+            for (int i = 0; i < keys.size(); i++) {
+                sb.append(keys.get(i)).append(' ').append(lengths.get(i)).append('\n');
+            }
+            return sb.toString().getBytes(UTF_8);
+        }
+
+        public static ChunkManifest parse(String key, byte[] bytes) throws IOException {
+            String[] lines = new String(bytes, UTF_8).split("\n");
+            if (!HEADER.equals(lines[0])) {
+                throw new IOException("Invalid chunk manifest for blob: " + key);
+            }
+            ChunkManifest manifest = new ChunkManifest();
+            for (int i = 1; i < lines.length; i++) {
+                int sep = lines[i].indexOf(' ');
+                if (sep < 0) {
+                    throw new IOException("Invalid chunk manifest for blob: " + key);
+                }
+                manifest.add(lines[i].substring(0, sep), Long.parseLong(lines[i].substring(sep + 1)));
+            }
+            return manifest;
+        }
+    }
+
+    /**
+     * Stream over a range of the chunks of a manifest, reading a chunk only when needed.
+     */
+    protected class ChunkedInputStream extends InputStream {
+
+        protected final ChunkManifest manifest;
+
+        protected int index;
+
+        protected long remaining;
+
+        protected ByteArrayInputStream current;
+
+        protected ChunkedInputStream(ChunkManifest manifest, long start, long end) throws IOException {
+            this.manifest = manifest;
+            remaining = Math.max(0, end - start);
+            // skip the chunks before the start of the range
+            long offset = 0;
+            while (index < manifest.keys.size() && offset + manifest.lengths.get(index) <= start) {
+                offset += manifest.lengths.get(index);
+                index++;
+            }
+            if (remaining > 0) {
+                nextChunk();
+                current.skip(start - offset);
+            }
+        }
+
+        protected void nextChunk() throws IOException {
+            current = new ByteArrayInputStream(readChunk(manifest.keys.get(index++)));
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining <= 0) {
+                return -1;
+            }
+            if (current.available() == 0) {
+                nextChunk();
+            }
+            int n = current.read(b, off, (int) Math.min(len, remaining));
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return current == null ? 0 : (int) Math.min(current.available(), remaining);
+        }
+    }
+
+    /**
+     * Garbage collector that delegates the manifests to the GC of the underlying store, and marks the chunks of each
+     * marked manifest in the GC of the chunk store.
+     * <p>
+     * The status counts the blobs from the manifests and their sizes from the chunks actually stored.
+     * <p>
+     * A chunk reused by a write is not written again, so unlike a new chunk its modification time in the chunk store
+     * doesn't protect it from a GC starting before the manifest referencing it is committed. The reused chunks are
+     * therefore remembered for a grace period, whether or not a GC is in progress, and are marked when a GC stops.
+     */
+    public class ChunkedBinaryGarbageCollector implements BinaryGarbageCollector {
+
+        /** The time before a GC start during which reused chunks are kept. */
+        public static final long REUSED_CHUNKS_GRACE_PERIOD = 60_000;
+
+        protected final BinaryGarbageCollector delegate;
+
+        protected final BinaryGarbageCollector chunkDelegate;
+
+        /** The chunks reused recently, with the time of their last reuse. */
+        protected final Map<String, Long> reusedChunks = new HashMap<>();
+
+        protected long startTime;
+
+        protected long lastPrune;
+
+        public ChunkedBinaryGarbageCollector(BinaryGarbageCollector delegate, BinaryGarbageCollector chunkDelegate) {
+            this.delegate = delegate;
+            this.chunkDelegate = chunkDelegate;
+        }
+
+        @Override
+        public String getId() {
+            return delegate.getId();
+        }
+
+        @Override
+        public synchronized void start() {
+            delegate.start();
+            chunkDelegate.start();
+            startTime = System.currentTimeMillis();
+        }
+
+        @Override
+        public synchronized void mark(String key) {
+            delegate.mark(key);
+            ChunkManifest manifest;
+            try {
+                manifest = readManifest(key);
+            } catch (IOException e) {
+                throw new NuxeoException("Cannot read chunk manifest for blob: " + key, e);
+            }
+            if (manifest == null) {
+                log.debug("Unknown blob for key: {}", key);
+                return;
+            }
+            manifest.keys.forEach(chunkDelegate::mark);
+        }
+
+        /** Marks a chunk written or reused if a GC is in progress, and records it if reused. */
+        protected synchronized void markChunk(String chunkKey, boolean reused) {
+            long now = System.currentTimeMillis();
+            if (reused) {
+                reusedChunks.put(chunkKey, Long.valueOf(now));
+            }
+            if (chunkDelegate.isInProgress()) {
+                chunkDelegate.mark(chunkKey);
+            } else if (now - lastPrune > REUSED_CHUNKS_GRACE_PERIOD) {
+                pruneReusedChunks(now - REUSED_CHUNKS_GRACE_PERIOD);
+                lastPrune = now;
+            }
+        }
+
+        protected void pruneReusedChunks(long minTime) {
+            reusedChunks.values().removeIf(time -> time.longValue() < minTime);
+        }
+
+        @Override
+        public synchronized void stop(boolean delete) {
+            delegate.stop(delete);
+            // chunks reused shortly before the start may belong to manifests committed after they were scanned
+            pruneReusedChunks(startTime - REUSED_CHUNKS_GRACE_PERIOD);
+            reusedChunks.keySet().forEach(chunkDelegate::mark);
+            chunkDelegate.stop(delete);
+        }
+
+        @Override
+        public BinaryManagerStatus getStatus() {
+            BinaryManagerStatus manifestStatus = delegate.getStatus();
+            BinaryManagerStatus chunkStatus = chunkDelegate.getStatus();
+            if (manifestStatus == null || chunkStatus == null) {
+                return manifestStatus;
+            }
+            BinaryManagerStatus status = new BinaryManagerStatus();
+            status.gcDuration = manifestStatus.gcDuration + chunkStatus.gcDuration;
+            status.numBinaries = manifestStatus.numBinaries;
+            status.numBinariesGC = manifestStatus.numBinariesGC;
+            status.sizeBinaries = chunkStatus.sizeBinaries;
+            status.sizeBinariesGC = chunkStatus.sizeBinariesGC;
+            return status;
+        }
+
+        @Override
+        public boolean isInProgress() {
+            return delegate.isInProgress();
+        }
+    }
+
+}
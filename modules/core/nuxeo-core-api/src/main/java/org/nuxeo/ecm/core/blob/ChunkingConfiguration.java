@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.blob;
+
+import static org.nuxeo.ecm.core.blob.BlobProviderDescriptor.ALLOW_BYTE_RANGE;
+
+import java.util.Map;
+
+import org.nuxeo.common.utils.SizeUtils;
+
+/**
+ * Configuration for the content-defined chunking of blobs.
+ *
+ * @since 11.4
+ */
+public class ChunkingConfiguration extends PropertyBasedConfiguration {
+
+    /** Enables the chunking of blobs. */
+    public static final String CHUNKING_PROPERTY = "chunking";
+
+    public static final String CHUNKING_MIN_SIZE_PROPERTY = "chunking.minsize";
+
+    public static final String CHUNKING_AVG_SIZE_PROPERTY = "chunking.avgsize";
+
+    public static final String CHUNKING_MAX_SIZE_PROPERTY = "chunking.maxsize";
+
+    public static final String DEFAULT_MIN_SIZE = "256 kb";
+
+    public static final String DEFAULT_AVG_SIZE = "1 mb";
+
+    public static final String DEFAULT_MAX_SIZE = "4 mb";
+
+    public final int minSize;
+
+    public final int avgSize;
+
+    public final int maxSize;
+
+    public final boolean allowByteRange;
+
+    public ChunkingConfiguration(String systemPropertyPrefix, Map<String, String> properties) {
+        super(systemPropertyPrefix, properties);
+        minSize = getSizeProperty(CHUNKING_MIN_SIZE_PROPERTY, DEFAULT_MIN_SIZE);
+        avgSize = getSizeProperty(CHUNKING_AVG_SIZE_PROPERTY, DEFAULT_AVG_SIZE);
+        maxSize = getSizeProperty(CHUNKING_MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE);
+        if (minSize <= 0 || minSize >= avgSize || avgSize >= maxSize) {
+            throw new IllegalArgumentException(
+                    "Invalid chunk sizes, expected 0 < min < avg < max: " + minSize + ", " + avgSize + ", " + maxSize);
+        }
+        allowByteRange = getBooleanProperty(ALLOW_BYTE_RANGE);
+    }
+
+    protected int getSizeProperty(String key, String defaultValue) {
+        return Math.toIntExact(SizeUtils.parseSizeInBytes(getProperty(key, defaultValue)));
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.blob;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Splits a stream into chunks whose boundaries depend on the content, so that an insertion or a deletion in a stream
+ * only changes the chunks around it and the other chunks can be deduplicated.
+ * <p>
+ * The boundaries are found with a Gear rolling hash: a boundary is declared after a byte where the top bits of the hash
+ * are all zero, which gives chunks of {@code avgSize} bytes on average, never smaller than {@code minSize} (except the
+ * last one) nor larger than {@code maxSize}.
+ *
+ * @since 11.4
+ */
+public class ContentDefinedChunker {
+
+    /** The Gear hash only depends on the last 64 bytes, as each byte shifts the hash by one bit. */
+    protected static final int WINDOW = 64;
+
+    protected static final long[] GEAR = new long[256];
+
+    static {
+        // fixed seed, the boundaries must be the same across JVMs and restarts
+        Random random = new Random(0x4e7843686b4cL); // NOSONAR (doesn't need cryptographic strength)
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    protected final InputStream in;
+
+    protected final int minSize;
+
+    protected final long mask;
+
+    protected final byte[] buffer;
+
+    protected int length;
+
+    protected boolean eof;
+
+    public ContentDefinedChunker(InputStream in, int minSize, int avgSize, int maxSize) {
+        if (minSize <= 0 || minSize >= avgSize || avgSize >= maxSize) {
+            throw new IllegalArgumentException(
+                    "Invalid chunk sizes, expected 0 < min < avg < max: " + minSize + ", " + avgSize + ", " + maxSize);
+        }
+        this.in = in;
+        this.minSize = minSize;
+        // boundaries are searched after minSize, with a probability of 1 / 2^bits for each byte
+        int bits = Math.max(1, 31 - Integer.numberOfLeadingZeros(avgSize - minSize));
+        mask = -1L << (Long.SIZE - bits);
+        buffer = new byte[maxSize];
+    }
+
+    /**
+     * Reads the next chunk.
+     *
+     * @return the next chunk, or {@code null} at the end of the stream
+     */
+    public byte[] next() throws IOException {
+        fill();
+        if (length == 0) {
+            return null;
+        }
+        int boundary = findBoundary();
+        byte[] chunk = Arrays.copyOf(buffer, boundary);
+        length -= boundary;
+        System.arraycopy(buffer, boundary, buffer, 0, length);
+        return chunk;
+    }
+
+    protected void fill() throws IOException {
+        while (!eof && length < buffer.length) {
+            int n = in.read(buffer, length, buffer.length - length);
+            if (n < 0) {
+                eof = true;
+            } else {
+                length += n;
+            }
+        }
+    }
+
+    protected int findBoundary() {
+        if (length <= minSize) {
+            return length;
+        }
+        long hash = 0;
+        for (int i = Math.max(0, minSize - WINDOW); i < length; i++) {
+            hash = (hash << 1) + GEAR[buffer[i] & 0xff];
+            if (i >= minSize && (hash & mask) == 0) {
+                return i + 1;
+            }
+        }
+        // end of stream or max size
+        return length;
+    }
+
+}
@@ -36,6 +36,12 @@ public class InMemoryBlobProvider extends BlobStoreBlobProvider {
         PropertyBasedConfiguration config = new PropertyBasedConfiguration(null, properties);
         KeyStrategy keyStrategy = getKeyStrategy();
         BlobStore store = new InMemoryBlobStore("mem", config, keyStrategy);
+        if (config.getBooleanProperty(ChunkingConfiguration.CHUNKING_PROPERTY)) {
+            String digestAlgorithm = getDigestAlgorithm();
+            BlobStore chunkStore = new InMemoryBlobStore("mem_chunks", new KeyStrategyDigest(digestAlgorithm));
+            store = new ChunkedBlobStore("mem_chunked", store, chunkStore, digestAlgorithm,
+                    new ChunkingConfiguration(null, properties));
+        }
         if (isTransactional()) {
             BlobStore transientStore;
             if (store.hasVersioning()) {
@@ -48,7 +54,7 @@ public class InMemoryBlobProvider extends BlobStoreBlobProvider {
         }
         if (config.getBooleanProperty("test-caching")) { // for tests
             CachingConfiguration cachingConfiguration = new CachingConfiguration(null, properties);
-            store = new CachingBlobStore("Cache", store, cachingConfiguration);
+            store = new CachingBlobStore("Cache", store, cachingConfiguration, blobProviderId);
         }
         return store;
     }
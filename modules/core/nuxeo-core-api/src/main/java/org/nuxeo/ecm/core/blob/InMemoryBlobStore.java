@@ -31,6 +31,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.io.FileUtils;
@@ -39,6 +40,7 @@ import org.apache.commons.lang3.mutable.MutableObject;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
+import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus;
 import org.nuxeo.runtime.api.Framework;
 
 /**
@@ -248,7 +250,8 @@ public class InMemoryBlobStore extends AbstractBlobStore {
         return gc;
     }
 
-    public class InMemoryBlobGarbageCollector extends AbstractBlobGarbageCollector {
+    public class InMemoryBlobGarbageCollector extends AbstractBlobGarbageCollector
+            implements ShardedBinaryGarbageCollector {
 
         @Override
         public String getId() {
@@ -257,9 +260,23 @@ public class InMemoryBlobStore extends AbstractBlobStore {
 
         @Override
         public void removeUnmarkedBlobsAndUpdateStatus(boolean delete) {
+            sweep("", marked, 0, delete, status);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * The write time of the blobs is not known, so the start time is ignored.
+         */
+        @Override
+        public void sweep(String prefix, Set<String> marked, long startTime, boolean delete,
+                BinaryManagerStatus status) {
             for (Iterator<Entry<String, byte[]>> it = map.entrySet().iterator(); it.hasNext();) {
                 Entry<String, byte[]> es = it.next();
                 String key = es.getKey();
+                if (!key.startsWith(prefix)) {
+                    continue;
+                }
                 byte[] bytes = es.getValue();
                 if (marked.contains(key)) {
                     status.sizeBinaries += bytes.length;
@@ -19,6 +19,7 @@
 package org.nuxeo.ecm.core.blob;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
 
@@ -48,6 +49,16 @@ public class LocalBlobProvider extends BlobStoreBlobProvider {
             pathStrategy = new PathStrategyFlat(config.storageDir);
         }
         BlobStore store = newBlobStore("File", keyStrategy, pathStrategy);
+        if (config.getBooleanProperty(ChunkingConfiguration.CHUNKING_PROPERTY)) {
+            ChunkingConfiguration chunkingConfiguration = new ChunkingConfiguration(null, properties);
+            String digestAlgorithm = getDigestAlgorithm();
+            Path chunksDir = config.storageDir.resolveSibling(LocalBlobStoreConfiguration.CHUNKS);
+            Files.createDirectories(chunksDir);
+            PathStrategy chunkPathStrategy = new PathStrategySubDirs(chunksDir, config.descriptor.depth);
+            BlobStore chunkStore = new LocalBlobStore("File_chunks", new KeyStrategyDigest(digestAlgorithm),
+                    chunkPathStrategy);
+            store = new ChunkedBlobStore("File_chunked", store, chunkStore, digestAlgorithm, chunkingConfiguration);
+        }
         if (isTransactional()) {
             PathStrategy transientPathStrategy = new PathStrategyFlat(config.tmpDir);
             BlobStore transientStore = new LocalBlobStore("File_tmp", keyStrategy, transientPathStrategy);
@@ -49,6 +49,13 @@ public class LocalBlobStoreConfiguration extends PropertyBasedConfiguration {
 
     public static final String TMP = "tmp";
 
+    /**
+     * Directory of the chunks, when chunking is enabled.
+     *
+     * @since 11.4
+     */
+    public static final String CHUNKS = "chunks";
+
     public static final String CONFIG_FILE = "config.xml";
 
     public final Path storageDir;
@@ -0,0 +1,50 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.blob;
+
+import java.util.Set;
+
+import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
+import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus;
+
+/**
+ * A garbage collector whose sweep can be done independently for each shard of the keys, a shard being the set of keys
+ * starting with a given prefix.
+ * <p>
+ * This allows the sweep of a large store to be split and distributed: the caller computes the marked keys of a shard
+ * by itself instead of feeding them to {@link #mark}, then sweeps the shard. The {@link #start} / {@link #stop}
+ * lifecycle is not used.
+ *
+ * @since 11.4
+ */
+public interface ShardedBinaryGarbageCollector extends BinaryGarbageCollector {
+
+    /**
+     * Deletes the blobs of a shard that have not been marked.
+     * <p>
+     * Blobs written at or after the given time are always kept, as they may be referenced by documents created after
+     * the marking started.
+     *
+     * @param prefix the key prefix of the shard
+     * @param marked the marked keys of the shard
+     * @param startTime the time at which the marking started, in milliseconds since the epoch
+     * @param delete {@code true} if actual deletion must be performed, {@code false} if the blobs to delete should
+     *            simply be counted in the status
+     * @param status the status to update with the kept and deleted blobs
+     */
+    void sweep(String prefix, Set<String> marked, long startTime, boolean delete, BinaryManagerStatus status);
+
+}
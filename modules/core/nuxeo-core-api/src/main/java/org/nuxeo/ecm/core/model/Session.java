@@ -23,6 +23,8 @@ import java.io.Serializable;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentNotFoundException;
@@ -70,6 +72,20 @@ public interface Session<T extends QueryFilter> {
     PartialList<Map<String, Serializable>> queryProjection(String query, String queryType, T queryFilter,
             boolean distinctDocuments, long countUpTo, Object[] params);
 
+    /**
+     * Does a query and streams the individual results as maps.
+     * <p>
+     * The default implementation streams the result of {@link #queryAndFetch}, backends not holding a cursor there
+     * should override it. The stream must be closed after use.
+     *
+     * @since 11.4
+     */
+    default Stream<Map<String, Serializable>> queryProjectionStream(String query, String queryType, T queryFilter,
+            boolean distinctDocuments, Object[] params) {
+        IterableQueryResult result = queryAndFetch(query, queryType, queryFilter, distinctDocuments, params);
+        return StreamSupport.stream(result.spliterator(), false).onClose(result::close);
+    }
+
     /**
      * Executes the given query and returns the first batch of results containing id of documents, next batch must be
      * requested within the keepAliveSeconds delay.
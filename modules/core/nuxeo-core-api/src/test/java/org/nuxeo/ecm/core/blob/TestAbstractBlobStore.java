@@ -98,6 +98,8 @@ public abstract class TestAbstractBlobStore {
             clearBlobStore((TransactionalBlobStore) blobStore);
         } else if (blobStore instanceof CachingBlobStore) {
             clearBlobStore((CachingBlobStore) blobStore);
+        } else if (blobStore instanceof ChunkedBlobStore) {
+            clearBlobStore((ChunkedBlobStore) blobStore);
         } else if (blobStore instanceof LocalBlobStore) {
             clearBlobStore((LocalBlobStore) blobStore);
         } else if (blobStore instanceof InMemoryBlobStore) {
@@ -116,6 +118,11 @@ public abstract class TestAbstractBlobStore {
         FileUtils.cleanDirectory(dir.toFile());
     }
 
+    protected void clearBlobStore(ChunkedBlobStore blobStore) throws IOException {
+        clearBlobStore(blobStore.store);
+        clearBlobStore(blobStore.chunkStore);
+    }
+
     protected void clearBlobStore(LocalBlobStore blobStore) throws IOException {
         Path dir = blobStore.pathStrategy.dir;
         FileUtils.cleanDirectory(dir.toFile());
@@ -0,0 +1,68 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.blob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+import org.nuxeo.runtime.test.runner.Deploy;
+
+/**
+ * @since 11.4
+ */
+@Deploy("org.nuxeo.ecm.core.api.tests:OSGI-INF/test-blob-provider-inmemory-caching-byterange.xml")
+public class TestCachingBlobStoreByteRange extends TestAbstractBlobStore {
+
+    protected static final String DIGITS = "0123456789".repeat(10);
+
+    @Test
+    public void testSegments() throws IOException {
+        CachingBlobStore cbs = (CachingBlobStore) bs;
+        assertEquals(8, cbs.segmentSize);
+        String key = bs.writeBlob(blobContext(ID1, DIGITS));
+        // empty the cache
+        clearBlobStore(cbs.tmpStore);
+
+        // only the segments covering the range are fetched and cached
+        long misses = cbs.missesCounter.getCount();
+        assertBlob(key + ";10;25", DIGITS.substring(10, 26));
+        assertEquals(misses + 3, cbs.missesCounter.getCount());
+        assertTrue(Files.exists(cbs.cacheDir.resolve(key + ";8;15")));
+        assertTrue(Files.exists(cbs.cacheDir.resolve(key + ";16;23")));
+        assertTrue(Files.exists(cbs.cacheDir.resolve(key + ";24;31")));
+        assertFalse(Files.exists(cbs.cacheDir.resolve(key)));
+
+        // a range inside these segments is served from the cache
+        assertBlob(key + ";12;20", DIGITS.substring(12, 21));
+        assertEquals(misses + 3, cbs.missesCounter.getCount());
+
+        // last segment is short
+        assertBlob(key + ";90;99", DIGITS.substring(90));
+        assertTrue(Files.exists(cbs.cacheDir.resolve(key + ";96;103")));
+
+        // once the whole blob is cached, ranges are read from it
+        assertBlob(key, DIGITS);
+        misses = cbs.missesCounter.getCount();
+        assertBlob(key + ";40;59", DIGITS.substring(40, 60));
+        assertEquals(misses, cbs.missesCounter.getCount());
+    }
+
+}
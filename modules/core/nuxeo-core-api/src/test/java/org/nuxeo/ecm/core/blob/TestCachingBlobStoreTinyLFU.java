@@ -0,0 +1,65 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.blob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+import org.nuxeo.common.file.TinyLFUFileCache;
+import org.nuxeo.runtime.test.runner.Deploy;
+
+/**
+ * @since 11.4
+ */
+@Deploy("org.nuxeo.ecm.core.api.tests:OSGI-INF/test-blob-provider-inmemory-caching-tinylfu.xml")
+public class TestCachingBlobStoreTinyLFU extends TestAbstractBlobStore {
+
+    @Test
+    public void testFlags() {
+        assertTrue(bs instanceof CachingBlobStore);
+        assertTrue(((CachingBlobStore) bs).fileCache instanceof TinyLFUFileCache);
+    }
+
+    @Test
+    public void testMetrics() throws IOException {
+        CachingBlobStore cbs = (CachingBlobStore) bs;
+        long hits = cbs.hitsCounter.getCount();
+        long hitBytes = cbs.hitBytesCounter.getCount();
+        long misses = cbs.missesCounter.getCount();
+
+        String key = bs.writeBlob(blobContext(ID1, FOO));
+        for (int i = 0; i < 2; i++) {
+            try (InputStream stream = bs.getStream(key).get()) {
+                stream.readAllBytes();
+            }
+        }
+        assertEquals(hits + 2, cbs.hitsCounter.getCount());
+        assertEquals(hitBytes + 2 * FOO.length(), cbs.hitBytesCounter.getCount());
+
+        // not in the cache anymore, fetched from the underlying store
+        clearBlobStore(cbs.tmpStore);
+        assertTrue(bs.readBlob(key, tmpFile));
+        assertEquals(misses + 1, cbs.missesCounter.getCount());
+        // and cached again
+        assertBlob(key, FOO);
+        assertEquals(misses + 1, cbs.missesCounter.getCount());
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.blob;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @since 11.4
+ */
+public class TestContentDefinedChunker {
+
+    protected static List<byte[]> chunk(byte[] bytes) throws IOException {
+        ContentDefinedChunker chunker = new ContentDefinedChunker(new ByteArrayInputStream(bytes), 1024, 4096, 16384);
+        List<byte[]> chunks = new ArrayList<>();
+        byte[] chunk;
+        while ((chunk = chunker.next()) != null) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    @Test
+    public void testChunkSizes() throws IOException {
+        byte[] bytes = new byte[1_000_000];
+        new Random(1234).nextBytes(bytes);
+        List<byte[]> chunks = chunk(bytes);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < chunks.size(); i++) {
+            byte[] chunk = chunks.get(i);
+            assertTrue(chunk.length <= 16384);
+            if (i < chunks.size() - 1) {
+                assertTrue(chunk.length > 1024);
+            }
+            out.write(chunk);
+        }
+        assertArrayEquals(bytes, out.toByteArray());
+        // about 1024 + 4096 bytes on average
+        assertTrue(String.valueOf(chunks.size()), chunks.size() > 100 && chunks.size() < 500);
+    }
+
+    @Test
+    public void testBoundariesFollowContent() throws IOException {
+        byte[] bytes = new byte[100_000];
+        new Random(1234).nextBytes(bytes);
+        byte[] shifted = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, shifted, 1, bytes.length);
+        List<byte[]> chunks = chunk(bytes);
+        List<byte[]> shiftedChunks = chunk(shifted);
+        // only the first chunk differs
+        assertEquals(chunks.size(), shiftedChunks.size());
+        for (int i = 1; i < chunks.size(); i++) {
+            assertArrayEquals(chunks.get(i), shiftedChunks.get(i));
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        ContentDefinedChunker chunker = new ContentDefinedChunker(new ByteArrayInputStream(new byte[0]), 1, 2, 3);
+        assertNull(chunker.next());
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.blob;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
+import org.nuxeo.runtime.test.runner.Deploy;
+
+/**
+ * @since 11.4
+ */
+@Deploy("org.nuxeo.ecm.core.api.tests:OSGI-INF/test-blob-provider-local-chunked.xml")
+public class TestLocalBlobStoreChunked extends TestLocalBlobStoreAbstract {
+
+    @Test
+    public void testFlags() {
+        assertFalse(bp.isTransactional());
+        assertFalse(bp.isRecordMode());
+        assertTrue(bs.getKeyStrategy().useDeDuplication());
+        assertTrue(bs instanceof ChunkedBlobStore);
+    }
+
+    protected long countChunks() throws IOException {
+        Path dir = ((LocalBlobStore) ((ChunkedBlobStore) bs).chunkStore).pathStrategy.dir;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            return paths.filter(Files::isRegularFile).count();
+        }
+    }
+
+    @Test
+    public void testChunkDeduplication() throws IOException {
+        byte[] bytes1 = new byte[200_000];
+        new Random(1234).nextBytes(bytes1);
+        // same content with a few bytes inserted in the middle
+        byte[] bytes2 = new byte[bytes1.length + 10];
+        System.arraycopy(bytes1, 0, bytes2, 0, 100_000);
+        System.arraycopy(bytes1, 100_000, bytes2, 100_010, 100_000);
+
+        String key1 = bs.writeBlob(new BlobContext(Blobs.createBlob(bytes1), ID1, XPATH));
+        long chunks1 = countChunks();
+        assertTrue(String.valueOf(chunks1), chunks1 > 10);
+        String key2 = bs.writeBlob(new BlobContext(Blobs.createBlob(bytes2), ID2, XPATH));
+        long chunks2 = countChunks();
+        // only the chunks around the insertion are new
+        assertTrue(chunks1 + " -> " + chunks2, chunks2 - chunks1 <= 3);
+
+        assertTrue(bs.readBlob(key1, tmpFile));
+        assertArrayEquals(bytes1, Files.readAllBytes(tmpFile));
+        assertTrue(bs.readBlob(key2, tmpFile));
+        assertArrayEquals(bytes2, Files.readAllBytes(tmpFile));
+
+        // byte range spanning several chunks
+        try (InputStream stream = bs.getStream(key2 + ";50000;149999").get()) {
+            assertArrayEquals(Arrays.copyOfRange(bytes2, 50_000, 150_000), IOUtils.toByteArray(stream));
+        }
+
+        // GC keeps the chunks of the marked blob only
+        waitForGCTimeThreshold();
+        BinaryGarbageCollector gc = bs.getBinaryGarbageCollector();
+        gc.start();
+        gc.mark(key1);
+        gc.stop(true);
+        assertEquals(1, gc.getStatus().numBinaries);
+        assertEquals(1, gc.getStatus().numBinariesGC);
+        assertEquals(chunks1, countChunks());
+        assertTrue(bs.readBlob(key1, tmpFile));
+        assertArrayEquals(bytes1, Files.readAllBytes(tmpFile));
+        assertNoBlob(key2);
+    }
+
+    @Test
+    public void testChunkReusedBeforeGC() throws IOException {
+        byte[] bytes1 = new byte[200_000];
+        new Random(1234).nextBytes(bytes1);
+        byte[] bytes2 = new byte[bytes1.length + 10];
+        System.arraycopy(bytes1, 0, bytes2, 0, 100_000);
+        System.arraycopy(bytes1, 100_000, bytes2, 100_010, 100_000);
+
+        String key1 = bs.writeBlob(new BlobContext(Blobs.createBlob(bytes1), ID1, XPATH));
+        // the chunks of the first blob are now too old to be kept by their modification time
+        waitForGCTimeThreshold();
+        // the second blob reuses most of them while no GC is in progress
+        String key2 = bs.writeBlob(new BlobContext(Blobs.createBlob(bytes2), ID2, XPATH));
+
+        // a GC starts before the document referencing the second blob is committed, so doesn't mark it
+        BinaryGarbageCollector gc = bs.getBinaryGarbageCollector();
+        gc.start();
+        gc.stop(true);
+        assertNoBlob(key1);
+        // the recent manifest and the chunks it reuses are kept
+        assertTrue(bs.readBlob(key2, tmpFile));
+        assertArrayEquals(bytes2, Files.readAllBytes(tmpFile));
+    }
+
+}
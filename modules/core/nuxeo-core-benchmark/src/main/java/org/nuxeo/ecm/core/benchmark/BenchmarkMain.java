@@ -0,0 +1,58 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point running the core benchmarks.
+ * <p>
+ * The first argument is the path of the JSON result file, which has a stable format that can be compared between
+ * releases, the remaining arguments are regular JMH command line options (benchmark include patterns, forks, etc.).
+ *
+ * @since 11.4
+ */
+public class BenchmarkMain {
+
+    private BenchmarkMain() {
+        // utility class
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("Usage: BenchmarkMain <result.json> [JMH options]");
+        }
+        String resultFile = args[0];
+        String[] jmhArgs = new String[args.length - 1];
+        System.arraycopy(args, 1, jmhArgs, 0, jmhArgs.length);
+        CommandLineOptions cmdOptions = new CommandLineOptions(jmhArgs);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmdOptions)
+                                                            .resultFormat(ResultFormatType.JSON)
+                                                            .result(resultFile)
+                                                            .jvmArgsAppend("-Dnuxeo.test.core=mem");
+        if (cmdOptions.getIncludes().isEmpty()) {
+            options.include(BenchmarkMain.class.getPackageName() + ".*Benchmark");
+        }
+        new Runner(options.build()).run();
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.benchmark;
+
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.RunnerFeature;
+
+/**
+ * Runtime configuration shared by the core benchmarks: an in-memory repository with the default content and the
+ * marshalling registry.
+ * <p>
+ * The storage is forced to {@code mem} by {@link NuxeoBenchmarkRuntime}, blobs and key/value stores use the in-memory
+ * providers deployed by {@link CoreFeature}.
+ *
+ * @since 11.4
+ */
+@Features(CoreFeature.class)
+@RepositoryConfig(cleanup = Granularity.CLASS)
+@Deploy("org.nuxeo.ecm.core.io")
+public class CoreBenchmarkFeature implements RunnerFeature {
+
+}
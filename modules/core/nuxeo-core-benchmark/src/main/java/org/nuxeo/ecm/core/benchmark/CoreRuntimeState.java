@@ -0,0 +1,54 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.benchmark;
+
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * JMH state holding a Nuxeo runtime started from {@link CoreBenchmarkFeature} for the whole trial.
+ *
+ * @since 11.4
+ */
+@State(Scope.Benchmark)
+public class CoreRuntimeState {
+
+    protected NuxeoBenchmarkRuntime runtime;
+
+    protected CoreSession session;
+
+    @Setup(Level.Trial)
+    public void startRuntime() throws Exception {
+        runtime = new NuxeoBenchmarkRuntime(CoreBenchmarkFeature.class);
+        runtime.startup();
+        session = runtime.getCoreSession();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopRuntime() {
+        session = null;
+        runtime.shutdown();
+    }
+
+    public CoreSession getSession() {
+        return session;
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the {@link CoreSession} document operations on the in-memory repository.
+ *
+ * @since 11.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DocumentBenchmark {
+
+    protected static final String WORKSPACE_PATH = "/default-domain/workspaces/test";
+
+    @State(Scope.Benchmark)
+    public static class Fixture {
+
+        @Param({ "10", "200" })
+        public int children;
+
+        protected DocumentRef folderRef;
+
+        protected String folderId;
+
+        protected String query;
+
+        protected final AtomicLong counter = new AtomicLong();
+
+        /** The parent of the documents created by the current iteration. */
+        protected DocumentRef createdParentRef;
+
+        protected String createdParentPath;
+
+        @Setup(Level.Trial)
+        public void createContent(CoreRuntimeState state) {
+            CoreSession session = state.getSession();
+            TransactionHelper.runInTransaction(() -> {
+                DocumentModel folder = session.createDocumentModel(WORKSPACE_PATH, "folder-" + children, "Folder");
+                folder = session.createDocument(folder);
+                for (int i = 0; i < children; i++) {
+                    DocumentModel doc = session.createDocumentModel(folder.getPathAsString(), "file-" + i, "File");
+                    doc.setPropertyValue("dc:title", "File " + i);
+                    doc.setPropertyValue("dc:description", "Benchmark document " + i);
+                    session.createDocument(doc);
+                }
+                session.save();
+                folderRef = folder.getRef();
+                folderId = folder.getId();
+            });
+            query = "SELECT * FROM File WHERE ecm:parentId = '" + folderId + "' AND ecm:isTrashed = 0";
+        }
+
+        /**
+         * Creates a new parent for each iteration, so that creations don't slow down as the same folder grows.
+         */
+        @Setup(Level.Iteration)
+        public void createParent(CoreRuntimeState state) {
+            CoreSession session = state.getSession();
+            TransactionHelper.runInTransaction(() -> {
+                String name = "created-" + children + "-" + counter.incrementAndGet();
+                DocumentModel parent = session.createDocumentModel(WORKSPACE_PATH, name, "Folder");
+                parent = session.createDocument(parent);
+                session.save();
+                createdParentRef = parent.getRef();
+                createdParentPath = parent.getPathAsString();
+            });
+        }
+
+        @TearDown(Level.Iteration)
+        public void removeParent(CoreRuntimeState state) {
+            CoreSession session = state.getSession();
+            TransactionHelper.runInTransaction(() -> {
+                session.removeDocument(createdParentRef);
+                session.save();
+            });
+        }
+    }
+
+    @Benchmark
+    public DocumentModel createAndSaveDocument(CoreRuntimeState state, Fixture fixture) {
+        CoreSession session = state.getSession();
+        return TransactionHelper.runInTransaction(() -> {
+            DocumentModel doc = session.createDocumentModel(fixture.createdParentPath,
+                    "file-" + fixture.counter.incrementAndGet(), "File");
+            doc.setPropertyValue("dc:title", "Created");
+            doc = session.createDocument(doc);
+            session.save();
+            return doc;
+        });
+    }
+
+    @Benchmark
+    public DocumentModelList getChildren(CoreRuntimeState state, Fixture fixture, TransactionState tx) {
+        return state.getSession().getChildren(fixture.folderRef);
+    }
+
+    @Benchmark
+    public DocumentModelList query(CoreRuntimeState state, Fixture fixture, TransactionState tx) {
+        return state.getSession().query(fixture.query);
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.io.marshallers.json.document.DocumentModelJsonWriter;
+import org.nuxeo.ecm.core.io.registry.MarshallerHelper;
+import org.nuxeo.ecm.core.io.registry.context.RenderingContext;
+import org.nuxeo.ecm.core.io.registry.context.RenderingContext.CtxBuilder;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the {@link DocumentModelJsonWriter} output, with the default and all the schemas.
+ *
+ * @since 11.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DocumentJsonWriterBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Fixture {
+
+        protected DocumentModel doc;
+
+        protected RenderingContext defaultCtx;
+
+        protected RenderingContext allPropertiesCtx;
+
+        @Setup(Level.Trial)
+        public void createDocument(CoreRuntimeState state) {
+            CoreSession session = state.getSession();
+            doc = TransactionHelper.runInTransaction(() -> {
+                DocumentModel model = session.createDocumentModel("/default-domain/workspaces/test", "json", "File");
+                model.setPropertyValue("dc:title", "Json benchmark");
+                model.setPropertyValue("dc:description", "A document to marshall");
+                model.setPropertyValue("dc:subjects", new String[] { "art", "sciences" });
+                model = session.createDocument(model);
+                session.save();
+                return model;
+            });
+            defaultCtx = CtxBuilder.get();
+            allPropertiesCtx = CtxBuilder.properties("*").get();
+        }
+    }
+
+    @Benchmark
+    public String writeDefault(Fixture fixture, TransactionState tx) throws IOException {
+        return MarshallerHelper.objectToJson(fixture.doc, fixture.defaultCtx);
+    }
+
+    @Benchmark
+    public String writeAllProperties(Fixture fixture, TransactionState tx) throws IOException {
+        return MarshallerHelper.objectToJson(fixture.doc, fixture.allPropertiesCtx);
+    }
+
+}
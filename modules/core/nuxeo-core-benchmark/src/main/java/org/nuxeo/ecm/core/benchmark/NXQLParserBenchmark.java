@@ -0,0 +1,60 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the NXQL parser, no runtime is needed.
+ *
+ * @since 11.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NXQLParserBenchmark {
+
+    @Param({ //
+            "SELECT * FROM Document WHERE ecm:parentId = '0123' AND ecm:isTrashed = 0", //
+            "SELECT * FROM Document WHERE ecm:mixinType != 'HiddenInNavigation' AND ecm:isVersion = 0"
+                    + " AND ecm:isTrashed = 0 AND ecm:path STARTSWITH '/default-domain/workspaces'"
+                    + " AND (dc:title ILIKE 'foo%' OR dc:description ILIKE '%bar%') ORDER BY dc:modified DESC", //
+            "SELECT ecm:uuid, dc:title, COUNT(ecm:uuid) FROM File WHERE dc:subjects/* IN ('art', 'sciences')"
+                    + " AND ecm:fulltext = 'nuxeo' GROUP BY dc:title" })
+    public String query;
+
+    @Benchmark
+    public SQLQuery parse() {
+        return SQLQueryParser.parse(query);
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.benchmark;
+
+import java.util.List;
+
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.model.InitializationError;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.ecm.core.test.StorageConfiguration;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+/**
+ * Drives the features of a test runner outside of JUnit so that a JMH benchmark can boot a Nuxeo runtime in its
+ * {@code @Setup} and shut it down in its {@code @TearDown}.
+ * <p>
+ * Only the class level lifecycle is applied (initialize, start, beforeRun / afterRun, stop), method level callbacks
+ * are left to the benchmarks which manage their own transactions.
+ *
+ * @since 11.4
+ */
+public class NuxeoBenchmarkRuntime extends FeaturesRunner {
+
+    public NuxeoBenchmarkRuntime(Class<?> config) throws InitializationError {
+        super(forceMemStorage(config));
+    }
+
+    protected static Class<?> forceMemStorage(Class<?> config) {
+        StorageConfiguration.defaultSystemProperty(StorageConfiguration.CORE_PROPERTY, StorageConfiguration.CORE_MEM);
+        return config;
+    }
+
+    @Override
+    protected void collectInitializationErrors(List<Throwable> errors) {
+        // the configuration class is not a test, it doesn't have any test method
+    }
+
+    /**
+     * Starts the runtime and the features, the repository is initialized when this method returns.
+     */
+    public void startup() {
+        injector = onInjector(new RunNotifier());
+        try {
+            initialize();
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot initialize benchmark runtime", e);
+        }
+        start();
+        beforeRun();
+    }
+
+    /**
+     * Stops the features and the runtime.
+     */
+    public void shutdown() {
+        try {
+            evaluateRunnable(this::afterRun, this::stop);
+        } catch (Throwable t) { // NOSONAR
+            throw new IllegalStateException("Cannot stop benchmark runtime", t);
+        }
+    }
+
+    public CoreSession getCoreSession() {
+        return getFeature(CoreFeature.class).getCoreSession();
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.benchmark;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.model.Property;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the {@link Property} accessors of a detached {@link DocumentModel}.
+ *
+ * @since 11.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PropertyBenchmark {
+
+    @State(Scope.Thread)
+    public static class Fixture {
+
+        protected DocumentModel doc;
+
+        protected int counter;
+
+        @Setup(Level.Trial)
+        public void createDocument(CoreRuntimeState state) {
+            CoreSession session = state.getSession();
+            doc = session.createDocumentModel("/", "property", "File");
+            doc.setPropertyValue("dc:title", "Property benchmark");
+            doc.setPropertyValue("dc:subjects", new String[] { "art", "sciences" });
+            doc.setPropertyValue("files:files", (Serializable) List.of(Map.of("file", Blobs.createBlob("dummy"))));
+        }
+    }
+
+    @Benchmark
+    public Serializable getSimpleProperty(Fixture fixture) {
+        return fixture.doc.getPropertyValue("dc:title");
+    }
+
+    @Benchmark
+    public Serializable getListProperty(Fixture fixture) {
+        return fixture.doc.getPropertyValue("dc:subjects");
+    }
+
+    @Benchmark
+    public Serializable getComplexListItemProperty(Fixture fixture) {
+        return fixture.doc.getPropertyValue("files:files/0/file");
+    }
+
+    @Benchmark
+    public DocumentModel setSimpleProperty(Fixture fixture) {
+        fixture.doc.setPropertyValue("dc:title", "Title " + (fixture.counter++ & 0xff));
+        return fixture.doc;
+    }
+
+    @Benchmark
+    public Property getPropertyObject(Fixture fixture) {
+        return fixture.doc.getProperty("dc:description");
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.benchmark;
+
+import org.nuxeo.runtime.transaction.TransactionHelper;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * JMH state opening a transaction on the benchmark thread for each iteration, used by read-only benchmarks so that the
+ * transaction demarcation is not part of the measurement.
+ *
+ * @since 11.4
+ */
+@State(Scope.Thread)
+public class TransactionState {
+
+    @Setup(Level.Iteration)
+    public void begin() {
+        TransactionHelper.startTransaction();
+    }
+
+    @TearDown(Level.Iteration)
+    public void end() {
+        TransactionHelper.commitOrRollbackTransaction();
+    }
+
+}
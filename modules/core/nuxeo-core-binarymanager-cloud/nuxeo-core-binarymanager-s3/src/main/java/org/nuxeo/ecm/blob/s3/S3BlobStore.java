@@ -19,24 +19,34 @@
 package org.nuxeo.ecm.blob.s3;
 
 import static org.apache.commons.io.output.NullOutputStream.NULL_OUTPUT_STREAM;
+import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.nuxeo.ecm.core.blob.BlobProviderDescriptor.ALLOW_BYTE_RANGE;
 import static org.nuxeo.ecm.core.blob.KeyStrategy.VER_SEP;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.mutable.MutableObject;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -55,18 +65,24 @@ import org.nuxeo.ecm.core.blob.BlobUpdateContext;
 import org.nuxeo.ecm.core.blob.BlobWriteContext;
 import org.nuxeo.ecm.core.blob.ByteRange;
 import org.nuxeo.ecm.core.blob.KeyStrategy;
+import org.nuxeo.ecm.core.blob.KeyStrategy.WriteObserver;
 import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.ecm.core.blob.ShardedBinaryGarbageCollector;
 import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
+import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus;
 import org.nuxeo.ecm.core.io.download.DownloadHelper;
 import org.nuxeo.runtime.api.Framework;
 
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.SdkBaseException;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
 import com.amazonaws.services.s3.model.BucketVersioningConfiguration;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
 import com.amazonaws.services.s3.model.CopyObjectRequest;
 import com.amazonaws.services.s3.model.EncryptedPutObjectRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.ListObjectsRequest;
 import com.amazonaws.services.s3.model.ListVersionsRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
@@ -74,6 +90,7 @@ import com.amazonaws.services.s3.model.ObjectLockLegalHold;
 import com.amazonaws.services.s3.model.ObjectLockLegalHoldStatus;
 import com.amazonaws.services.s3.model.ObjectLockRetention;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.RestoreObjectRequest;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
@@ -81,6 +98,7 @@ import com.amazonaws.services.s3.model.S3VersionSummary;
 import com.amazonaws.services.s3.model.SSEAwsKeyManagementParams;
 import com.amazonaws.services.s3.model.SetObjectLegalHoldRequest;
 import com.amazonaws.services.s3.model.SetObjectRetentionRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.amazonaws.services.s3.model.VersionListing;
 import com.amazonaws.services.s3.transfer.Copy;
 import com.amazonaws.services.s3.transfer.Download;
@@ -99,6 +117,14 @@ public class S3BlobStore extends AbstractBlobStore {
     // x-amz-meta-username header
     protected static final String USER_METADATA_USERNAME = "username";
 
+    /**
+     * Prefix, relative to the bucket prefix, of the temporary objects of the streaming uploads whose key is only known
+     * at the end of the upload. As it contains the delimiter, these objects are not seen by the garbage collector.
+     *
+     * @since 11.4
+     */
+    protected static final String STREAMING_UPLOAD_TMP_PREFIX = "streaming-upload-tmp/";
+
     protected final S3BlobStoreConfiguration config;
 
     protected final AmazonS3 amazonS3;
@@ -178,6 +204,9 @@ public class S3BlobStore extends AbstractBlobStore {
                     }
                     file = blobFile.toPath();
                     fileTraceSource = "Nuxeo";
+                } else if (config.useStreamingUpload) {
+                    // upload the blob stream by parts while reading it
+                    return writeStream(blobWriteContext);
                 } else {
                     // we must transfer the blob stream to a tmp file
                     tmp = Files.createTempFile("bin_", ".tmp");
@@ -188,15 +217,7 @@ public class S3BlobStore extends AbstractBlobStore {
                     fileTraceSource = "tmp";
                 }
             }
-            String key = blobWriteContext.getKey(); // may depend on write observer, for example for digests
-            if (key == null) {
-                // should never happen unless an invalid WriteObserver is used in new code
-                throw new NuxeoException("Missing key");
-            } else if (key.indexOf(VER_SEP) >= 0) {
-                // should never happen unless AWS S3 changes their key format
-                throw new NuxeoException(
-                        "Invalid key '" + key + "', it contains the version separator '" + VER_SEP + "'");
-            }
+            String key = getKey(blobWriteContext);
             String versionId = writeFile(key, file, blobContext, fileTraceSource);
             return versionId == null ? key : key + VER_SEP + versionId;
         } finally {
@@ -212,6 +233,238 @@ public class S3BlobStore extends AbstractBlobStore {
         }
     }
 
+    protected String getKey(BlobWriteContext blobWriteContext) {
+        String key = blobWriteContext.getKey(); // may depend on write observer, for example for digests
+        if (key == null) {
+            // should never happen unless an invalid WriteObserver is used in new code
+            throw new NuxeoException("Missing key");
+        } else if (key.indexOf(VER_SEP) >= 0) {
+            // should never happen unless AWS S3 changes their key format
+            throw new NuxeoException("Invalid key '" + key + "', it contains the version separator '" + VER_SEP + "'");
+        }
+        return key;
+    }
+
+    /**
+     * Uploads the blob stream by parts while reading it, without temporary file.
+     * <p>
+     * Each part read is passed to the write observer, then uploaded in the background with at most
+     * {@link S3BlobStoreConfiguration#streamingUploadConcurrency} parts in flight. A blob smaller than a part is
+     * uploaded with a single request once its key is known. Otherwise, when the key depends on the write observer (for
+     * example for digests), the parts are uploaded to a temporary object which is then copied to its key in S3.
+     *
+     * @return the key, with its version if any
+     * @since 11.4
+     */
+    protected String writeStream(BlobWriteContext blobWriteContext) throws IOException {
+        BlobContext blobContext = blobWriteContext.blobContext;
+        WriteObserver writeObserver = blobWriteContext.writeObserver;
+        boolean useDeDuplication = getKeyStrategy().useDeDuplication();
+        // without write observer the key is known before reading the stream
+        String key = writeObserver == null ? getKey(blobWriteContext) : null;
+        if (key != null && useDeDuplication && exists(bucketPrefix + key)) {
+            return key;
+        }
+        int partSize = config.streamingUploadPartSize;
+        String versionId;
+        try (InputStream in = blobWriteContext.getStream()) {
+            @SuppressWarnings("resource")
+            OutputStream out = writeObserver == null ? NULL_OUTPUT_STREAM : writeObserver.wrap(NULL_OUTPUT_STREAM);
+            byte[] part = new byte[partSize];
+            int n = IOUtils.read(in, part);
+            out.write(part, 0, n);
+            if (n < partSize) {
+                // the whole blob fits in one part
+                if (writeObserver != null) {
+                    writeObserver.done();
+                    key = getKey(blobWriteContext);
+                    if (useDeDuplication && exists(bucketPrefix + key)) {
+                        return key;
+                    }
+                }
+                versionId = putObject(bucketPrefix + key, part, n, blobContext);
+            } else {
+                String bucketKey = key == null ? bucketPrefix + STREAMING_UPLOAD_TMP_PREFIX + randomString()
+                        : bucketPrefix + key;
+                StreamingUpload upload = new StreamingUpload(bucketKey, blobContext);
+                try {
+                    while (n > 0) {
+                        upload.uploadPart(part, n);
+                        if (n < partSize) {
+                            break;
+                        }
+                        part = new byte[partSize];
+                        n = IOUtils.read(in, part);
+                        out.write(part, 0, n);
+                    }
+                    versionId = upload.complete();
+                } catch (IOException | RuntimeException e) {
+                    upload.abort();
+                    throw e;
+                }
+                if (key == null) {
+                    boolean moved = false;
+                    try {
+                        writeObserver.done();
+                        key = getKey(blobWriteContext);
+                        moveStreamingUpload(bucketKey, key, useDeDuplication);
+                        moved = true;
+                    } finally {
+                        if (!moved) {
+                            deleteStreamingUpload(bucketKey);
+                        }
+                    }
+                    versionId = null; // the key depends on the content, no version
+                }
+            }
+        } catch (SdkBaseException e) {
+            // catch SdkBaseException and not just AmazonServiceException
+            throw new NuxeoException("Failed to write blob: " + key, e);
+        }
+        // if we don't want to use versions, ignore them even though the bucket may be versioned
+        versionId = useVersion ? versionId : null;
+        return versionId == null ? key : key + VER_SEP + versionId;
+    }
+
+    /** Uploads an object from memory with a single request and returns its version id. */
+    protected String putObject(String bucketKey, byte[] data, int length, BlobContext blobContext) {
+        ObjectMetadata objectMetadata = newObjectMetadata(blobContext);
+        objectMetadata.setContentLength(length);
+        PutObjectRequest putObjectRequest = new PutObjectRequest(bucketName, bucketKey,
+                new ByteArrayInputStream(data, 0, length), objectMetadata);
+        putObjectRequest.setSSEAwsKeyManagementParams(getSSEAwsKeyManagementParams());
+        logTrace("->", "write " + length + " bytes");
+        logTrace("hnote right: " + bucketKey);
+        return amazonS3.putObject(putObjectRequest).getVersionId();
+    }
+
+    /** Moves the temporary object of a streaming upload to its key, unless it already exists with deduplication. */
+    protected void moveStreamingUpload(String tmpBucketKey, String key, boolean useDeDuplication) {
+        String bucketKey = bucketPrefix + key;
+        if (useDeDuplication && exists(bucketKey)) {
+            logTrace("->", "deleteObject");
+            logTrace("hnote right: " + tmpBucketKey);
+            amazonS3.deleteObject(bucketName, tmpBucketKey);
+        } else {
+            copyBlob(config, tmpBucketKey, config, bucketKey, true);
+        }
+    }
+
+    /**
+     * Deletes the temporary object of a streaming upload that could not be moved to its key.
+     * <p>
+     * An object left behind if this fails too, or if the server stops during the upload, can be expired by a bucket
+     * lifecycle rule on the {@value #STREAMING_UPLOAD_TMP_PREFIX} prefix.
+     */
+    protected void deleteStreamingUpload(String tmpBucketKey) {
+        try {
+            logTrace("->", "deleteObject");
+            logTrace("hnote right: " + tmpBucketKey);
+            amazonS3.deleteObject(bucketName, tmpBucketKey);
+        } catch (SdkBaseException e) {
+            log.warn("Failed to delete temporary object s3://" + bucketName + "/" + tmpBucketKey, e);
+        }
+    }
+
+    /** Creates the metadata of a new object, including the server-side encryption algorithm for SSE-S3. */
+    protected ObjectMetadata newObjectMetadata(BlobContext blobContext) {
+        ObjectMetadata objectMetadata = new ObjectMetadata();
+        if (config.useServerSideEncryption && isBlank(config.serverSideKMSKeyID)) {
+            // SSE-S3
+            objectMetadata.setSSEAlgorithm(ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
+        }
+        setMetadata(objectMetadata, blobContext);
+        return objectMetadata;
+    }
+
+    /** Gets the parameters for SSE-KMS, or {@code null} if not used. */
+    protected SSEAwsKeyManagementParams getSSEAwsKeyManagementParams() {
+        if (config.useServerSideEncryption && isNotBlank(config.serverSideKMSKeyID)) {
+            return new SSEAwsKeyManagementParams(config.serverSideKMSKeyID);
+        }
+        return null;
+    }
+
+    /**
+     * A multipart upload whose parts are uploaded in the background as soon as they are available.
+     *
+     * @since 11.4
+     */
+    protected class StreamingUpload {
+
+        protected final String bucketKey;
+
+        protected final String uploadId;
+
+        protected final Deque<Future<PartETag>> inFlight = new ArrayDeque<>();
+
+        protected final List<PartETag> partETags = new ArrayList<>();
+
+        protected int partNumber;
+
+        protected StreamingUpload(String bucketKey, BlobContext blobContext) {
+            this.bucketKey = bucketKey;
+            InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(bucketName, bucketKey,
+                    newObjectMetadata(blobContext));
+            request.setSSEAwsKeyManagementParams(getSSEAwsKeyManagementParams());
+            logTrace("->", "initiateMultipartUpload");
+            logTrace("hnote right: " + bucketKey);
+            uploadId = amazonS3.initiateMultipartUpload(request).getUploadId();
+        }
+
+        /** Uploads a part in the background, waiting first if too many parts are in flight. */
+        protected void uploadPart(byte[] data, int length) {
+            if (inFlight.size() >= config.streamingUploadConcurrency) {
+                partETags.add(await(inFlight.poll()));
+            }
+            InputStream in = new ByteArrayInputStream(data, 0, length);
+            UploadPartRequest request = new UploadPartRequest().withBucketName(bucketName)
+                                                               .withKey(bucketKey)
+                                                               .withUploadId(uploadId)
+                                                               .withPartNumber(++partNumber)
+                                                               .withInputStream(in)
+                                                               .withPartSize(length);
+            logTrace("->", "uploadPart " + partNumber + ": " + length + " bytes");
+            inFlight.add(config.streamingUploadExecutor.submit(() -> amazonS3.uploadPart(request).getPartETag()));
+        }
+
+        /** Waits for the parts in flight and completes the upload, returning the version id. */
+        protected String complete() {
+            while (!inFlight.isEmpty()) {
+                partETags.add(await(inFlight.poll()));
+            }
+            logTrace("->", "completeMultipartUpload");
+            return amazonS3.completeMultipartUpload(
+                    new CompleteMultipartUploadRequest(bucketName, bucketKey, uploadId, partETags)).getVersionId();
+        }
+
+        protected PartETag await(Future<PartETag> future) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NuxeoException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new NuxeoException(cause);
+            }
+        }
+
+        protected void abort() {
+            inFlight.forEach(future -> future.cancel(true));
+            try {
+                logTrace("->", "abortMultipartUpload");
+                amazonS3.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, bucketKey, uploadId));
+            } catch (SdkBaseException e) {
+                // old uploads are also aborted at startup
+                log.warn("Failed to abort multipart upload of s3://" + bucketName + "/" + bucketKey, e);
+            }
+        }
+    }
+
     /** Writes a file with the given key and returns its version id. */
     protected String writeFile(String key, Path file, BlobContext blobContext, String fileTraceSource)
             throws IOException {
@@ -759,7 +1012,8 @@ public class S3BlobStore extends AbstractBlobStore {
     /**
      * Garbage collector for S3 binaries that stores the marked (in use) binaries in memory.
      */
-    public class S3BlobGarbageCollector extends AbstractBlobGarbageCollector {
+    public class S3BlobGarbageCollector extends AbstractBlobGarbageCollector
+            implements ShardedBinaryGarbageCollector {
 
         @Override
         public String getId() {
@@ -812,6 +1066,48 @@ public class S3BlobStore extends AbstractBlobStore {
         public void removeBlobs(Set<String> keys) {
             keys.forEach(S3BlobStore.this::deleteBlob);
         }
+
+        @Override
+        public void sweep(String prefix, Set<String> marked, long startTime, boolean delete,
+                BinaryManagerStatus status) {
+            boolean useDeDuplication = keyStrategy.useDeDuplication();
+            ObjectListing list = null;
+            int prefixLength = bucketPrefix.length();
+            logTrace("->", "listObjects " + prefix);
+            long count = 0;
+            do {
+                if (list == null) {
+                    ListObjectsRequest listObjectsRequest = new ListObjectsRequest(bucketName, bucketPrefix + prefix,
+                            null, S3BlobStoreConfiguration.DELIMITER, null);
+                    list = amazonS3.listObjects(listObjectsRequest);
+                } else {
+                    list = amazonS3.listNextBatchOfObjects(list);
+                }
+                for (S3ObjectSummary summary : list.getObjectSummaries()) {
+                    String key = summary.getKey().substring(prefixLength);
+                    if (useDeDuplication) {
+                        if (!config.digestConfiguration.isValidDigest(key)) {
+                            // ignore files that cannot be digests, for safety
+                            continue;
+                        }
+                    }
+                    count++;
+                    long length = summary.getSize();
+                    // objects written since the start of the marking may not have been seen by it
+                    if (marked.contains(key) || summary.getLastModified().getTime() >= startTime) {
+                        status.numBinaries++;
+                        status.sizeBinaries += length;
+                    } else {
+                        status.numBinariesGC++;
+                        status.sizeBinariesGC += length;
+                        if (delete) {
+                            deleteBlob(key);
+                        }
+                    }
+                }
+            } while (list.isTruncated());
+            logTrace("<--", count + " objects");
+        }
     }
 
 }
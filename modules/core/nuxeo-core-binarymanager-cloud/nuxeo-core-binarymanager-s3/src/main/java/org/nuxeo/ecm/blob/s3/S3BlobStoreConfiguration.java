@@ -35,6 +35,9 @@ import java.time.Duration;
 import java.util.Date;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -132,6 +135,39 @@ public class S3BlobStoreConfiguration extends CloudBlobStoreConfiguration {
      */
     public static final String MULTIPART_CLEANUP_DISABLED_PROPERTY = "multipart.cleanup.disabled";
 
+    /**
+     * Enables the streaming upload of blobs that are not already available as a file: the blob stream is uploaded by
+     * parts, in parallel, while it is read, instead of being written to a temporary file first.
+     * <p>
+     * Not used with client-side encryption or when the bucket has Object Lock active.
+     *
+     * @since 11.4
+     */
+    public static final String STREAMING_UPLOAD_PROPERTY = "streaming.upload";
+
+    /**
+     * The size of the parts of a streaming upload, in bytes, at least 5 MB.
+     *
+     * @since 11.4
+     */
+    public static final String STREAMING_UPLOAD_PART_SIZE_PROPERTY = "streaming.upload.partsize";
+
+    /**
+     * The maximum number of parts of a streaming upload being uploaded at the same time.
+     *
+     * @since 11.4
+     */
+    public static final String STREAMING_UPLOAD_CONCURRENCY_PROPERTY = "streaming.upload.concurrency";
+
+    /** @since 11.4 */
+    public static final int MIN_STREAMING_UPLOAD_PART_SIZE = 5 * 1024 * 1024; // AWS minimum part size
+
+    /** @since 11.4 */
+    public static final int DEFAULT_STREAMING_UPLOAD_PART_SIZE = 8 * 1024 * 1024;
+
+    /** @since 11.4 */
+    public static final int DEFAULT_STREAMING_UPLOAD_CONCURRENCY = 4;
+
     public static final String DELIMITER = "/";
 
     /**
@@ -179,6 +215,22 @@ public class S3BlobStoreConfiguration extends CloudBlobStoreConfiguration {
      */
     public final ObjectLockRetentionMode retentionMode;
 
+    /** @since 11.4 */
+    public final boolean useStreamingUpload;
+
+    /** @since 11.4 */
+    public final int streamingUploadPartSize;
+
+    /** @since 11.4 */
+    public final int streamingUploadConcurrency;
+
+    /**
+     * The executor uploading the parts of the streaming uploads, or {@code null} if streaming upload is not used.
+     *
+     * @since 11.4
+     */
+    public final ExecutorService streamingUploadExecutor;
+
     public S3BlobStoreConfiguration(Map<String, String> properties) throws IOException {
         super(SYSTEM_PROPERTY_PREFIX, properties);
         cloudFront = new CloudFrontConfiguration(SYSTEM_PROPERTY_PREFIX, properties);
@@ -227,9 +279,43 @@ public class S3BlobStoreConfiguration extends CloudBlobStoreConfiguration {
 
         transferManager = createTransferManager();
 
+        int partSize = getIntProperty(STREAMING_UPLOAD_PART_SIZE_PROPERTY);
+        streamingUploadPartSize = partSize < 0 ? DEFAULT_STREAMING_UPLOAD_PART_SIZE
+                : Math.max(partSize, MIN_STREAMING_UPLOAD_PART_SIZE);
+        int concurrency = getIntProperty(STREAMING_UPLOAD_CONCURRENCY_PROPERTY);
+        streamingUploadConcurrency = concurrency <= 0 ? DEFAULT_STREAMING_UPLOAD_CONCURRENCY : concurrency;
+        useStreamingUpload = computeUseStreamingUpload();
+        streamingUploadExecutor = useStreamingUpload ? createStreamingUploadExecutor() : null;
+
         abortOldUploads();
     }
 
+    protected boolean computeUseStreamingUpload() {
+        if (!getBooleanProperty(STREAMING_UPLOAD_PROPERTY)) {
+            return false;
+        }
+        if (useClientSideEncryption) {
+            log.warn("Streaming upload is not available with client-side encryption for bucket: {}", bucketName);
+            return false;
+        }
+        if (bucketRetentionMode != null) {
+            log.warn("Streaming upload is not available with Object Lock for bucket: {}", bucketName);
+            return false;
+        }
+        return true;
+    }
+
+    protected ExecutorService createStreamingUploadExecutor() {
+        // the number of parts in flight is bounded by each upload, so the pool doesn't need to be
+        String threadPrefix = "Nuxeo-S3-streamingUpload-" + bucketName + "-";
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, threadPrefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     /**
      * Returns a copy of the S3BlobStoreConfiguration with a different namespace.
      */
@@ -239,6 +325,9 @@ public class S3BlobStoreConfiguration extends CloudBlobStoreConfiguration {
 
     public void close() {
         transferManager.shutdownNow();
+        if (streamingUploadExecutor != null) {
+            streamingUploadExecutor.shutdownNow();
+        }
     }
 
     @Override
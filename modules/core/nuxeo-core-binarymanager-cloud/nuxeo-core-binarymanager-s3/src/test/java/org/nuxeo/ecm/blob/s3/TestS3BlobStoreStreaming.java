@@ -0,0 +1,62 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.blob.s3;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.blob.BlobContext;
+import org.nuxeo.runtime.test.runner.Deploy;
+
+/**
+ * @since 11.4
+ */
+@Deploy("org.nuxeo.ecm.core.storage.binarymanager.s3.tests:OSGI-INF/test-blob-provider-s3-streaming.xml")
+public class TestS3BlobStoreStreaming extends TestS3BlobStoreAbstract {
+
+    @Test
+    public void testFlags() {
+        S3BlobStore s3BlobStore = (S3BlobStore) bs.unwrap();
+        assertTrue(s3BlobStore.config.useStreamingUpload);
+        assertTrue(bs.getKeyStrategy().useDeDuplication());
+    }
+
+    @Test
+    public void testMultipartStreamingUpload() throws IOException {
+        S3BlobStore s3BlobStore = (S3BlobStore) bs.unwrap();
+        // several parts, the last one being incomplete
+        byte[] bytes = new byte[s3BlobStore.config.streamingUploadPartSize * 5 / 2];
+        new Random(1234).nextBytes(bytes);
+        Blob blob = Blobs.createBlob(bytes); // no underlying file
+        String key = bs.writeBlob(new BlobContext(blob, ID1, XPATH));
+        assertEquals(DigestUtils.md5Hex(bytes), key);
+        assertTrue(bs.readBlob(key, tmpFile));
+        assertArrayEquals(bytes, Files.readAllBytes(tmpFile));
+
+        // write again, deduplicated
+        assertEquals(key, bs.writeBlob(new BlobContext(Blobs.createBlob(bytes), ID2, XPATH)));
+    }
+
+}
@@ -0,0 +1,503 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.bulk.action;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.nuxeo.ecm.core.blob.KeyStrategy.VER_SEP;
+import static org.nuxeo.ecm.core.bulk.BulkServiceImpl.STATUS_STREAM;
+import static org.nuxeo.ecm.core.bulk.message.BulkStatus.State.ABORTED;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.INPUT_1;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.OUTPUT_1;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobProvider;
+import org.nuxeo.ecm.core.blob.BlobStoreBlobProvider;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.ecm.core.blob.ShardedBinaryGarbageCollector;
+import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
+import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus;
+import org.nuxeo.ecm.core.bulk.BulkCodecs;
+import org.nuxeo.ecm.core.bulk.BulkService;
+import org.nuxeo.ecm.core.bulk.BulkServiceImpl;
+import org.nuxeo.ecm.core.bulk.action.computation.AbstractBulkComputation;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
+import org.nuxeo.ecm.core.bulk.message.BulkStatus;
+import org.nuxeo.ecm.core.bulk.message.DataBucket;
+import org.nuxeo.ecm.core.utils.BlobsExtractor;
+import org.nuxeo.lib.stream.computation.AbstractComputation;
+import org.nuxeo.lib.stream.computation.ComputationContext;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.lib.stream.computation.Topology;
+import org.nuxeo.lib.stream.computation.internals.ComputationContextImpl;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.stream.StreamProcessorTopology;
+
+/**
+ * Distributed garbage collection of the blobs that are no longer referenced by the documents of a repository.
+ * <p>
+ * The command query must be {@value #QUERY_ALL}, submitted by an administrator, as the blobs not referenced by the
+ * selected documents are deleted. This is checked by
+ * {@link org.nuxeo.ecm.core.bulk.validation.GarbageCollectBlobsValidation GarbageCollectBlobsValidation}. The blob keys
+ * are split into {@value #NB_SHARDS} shards on their first two hexadecimal characters, the shards being distributed
+ * into groups. The mark computation sends the referenced keys of each bucket of documents to the group of
+ * their shard, the sweep computation waits for all the documents to be marked for a group, then sweeps each of its
+ * shards using the {@link ShardedBinaryGarbageCollector} of the blob providers. Progress is reported as shards are
+ * swept.
+ * <p>
+ * Only the providers referenced by at least one marked blob are swept, and only if their underlying store supports a
+ * sharded garbage collection. Blobs written after the command submission are never deleted. The swept shards and their
+ * results are recorded once in the bulk key/value store, so that a record processed again after a failure doesn't
+ * count them twice. A provider shared by several repositories must not be collected by this action, as the blobs
+ * referenced by the other repositories would not be marked.
+ *
+ * @since 11.4
+ */
+public class GarbageCollectBlobsAction implements StreamProcessorTopology {
+
+    public static final String ACTION_NAME = "garbageCollectBlobs";
+
+    public static final String ACTION_FULL_NAME = "bulk/" + ACTION_NAME;
+
+    /** The only query accepted by the action, selecting all the documents of the repository. */
+    public static final String QUERY_ALL = "SELECT * FROM Document";
+
+    public static final String SWEEP_STREAM = ACTION_FULL_NAME + "Sweep";
+
+    /** When {@code true}, unreferenced blobs are only counted, not deleted. */
+    public static final String PARAM_DRY_RUN = "dryRun";
+
+    /** Number of groups into which the shards are distributed, the maximum concurrency of the sweep. */
+    public static final String GROUPS_OPTION = "groups";
+
+    public static final int DEFAULT_GROUPS = 16;
+
+    public static final int NB_SHARDS = 256;
+
+    public static final String RESULT_NUM_BINARIES = "numBinaries";
+
+    public static final String RESULT_SIZE_BINARIES = "sizeBinaries";
+
+    public static final String RESULT_NUM_BINARIES_GC = "numBinariesGC";
+
+    public static final String RESULT_SIZE_BINARIES_GC = "sizeBinariesGC";
+
+    protected static final List<String> RESULT_KEYS = Arrays.asList(RESULT_NUM_BINARIES, RESULT_SIZE_BINARIES,
+            RESULT_NUM_BINARIES_GC, RESULT_SIZE_BINARIES_GC);
+
+    @Override
+    public Topology getTopology(Map<String, String> options) {
+        int groups = getOptionAsInteger(options, GROUPS_OPTION, DEFAULT_GROUPS);
+        if (groups < 1 || groups > NB_SHARDS) {
+            throw new IllegalArgumentException("Invalid number of groups: " + groups);
+        }
+        return Topology.builder()
+                       .addComputation(() -> new MarkComputation(groups),
+                               Arrays.asList(INPUT_1 + ":" + ACTION_FULL_NAME, //
+                                       OUTPUT_1 + ":" + SWEEP_STREAM))
+                       .addComputation(() -> new SweepComputation(groups),
+                               Arrays.asList(INPUT_1 + ":" + SWEEP_STREAM, //
+                                       OUTPUT_1 + ":" + STATUS_STREAM))
+                       .build();
+    }
+
+    public static int getOptionAsInteger(Map<String, String> options, String option, int defaultValue) {
+        String value = options.get(option);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Returns the shard of a blob key, or {@code -1} if the key does not start with two hexadecimal characters.
+     */
+    public static int getShard(String key) {
+        if (key.length() < 2) {
+            return -1;
+        }
+        int high = Character.digit(key.charAt(0), 16);
+        int low = Character.digit(key.charAt(1), 16);
+        if (high < 0 || low < 0) {
+            return -1;
+        }
+        return (high << 4) | low;
+    }
+
+    /**
+     * Collects the keys of the blobs referenced by the documents and sends them, for each bucket, to every group.
+     * <p>
+     * Each record sent to a group holds the number of documents of the bucket, the providers seen, as lines
+     * {@code providerId:}, and the marked keys of the group, as lines {@code providerId:key}.
+     */
+    public static class MarkComputation extends AbstractBulkComputation {
+
+        protected final int groups;
+
+        protected final BlobsExtractor blobsExtractor = new BlobsExtractor();
+
+        protected final Set<String> providers = new HashSet<>();
+
+        protected final Map<Integer, StringBuilder> marks = new HashMap<>();
+
+        public MarkComputation(int groups) {
+            super(ACTION_FULL_NAME);
+            this.groups = groups;
+        }
+
+        @Override
+        public void startBucket(String bucketKey) {
+            providers.clear();
+            marks.clear();
+        }
+
+        @Override
+        protected void compute(CoreSession session, List<String> ids, Map<String, Serializable> properties) {
+            for (DocumentModel doc : loadDocuments(session, ids)) {
+                for (Blob blob : blobsExtractor.getBlobs(doc)) {
+                    if (blob instanceof ManagedBlob) {
+                        mark((ManagedBlob) blob);
+                    }
+                }
+            }
+        }
+
+        protected void mark(ManagedBlob blob) {
+            String providerId = blob.getProviderId();
+            String key = blob.getKey();
+            int colon = key.indexOf(':');
+            if (colon >= 0) {
+                key = key.substring(colon + 1);
+            }
+            int ver = key.indexOf(VER_SEP);
+            if (ver >= 0) {
+                // the stored object is the one of the key, whatever its version
+                key = key.substring(0, ver);
+            }
+            int shard = getShard(key);
+            if (shard < 0) {
+                // never swept
+                return;
+            }
+            providers.add(providerId);
+            marks.computeIfAbsent(shard % groups, k -> new StringBuilder())
+                 .append(providerId)
+                 .append(':')
+                 .append(key)
+                 .append('\n');
+        }
+
+        @Override
+        public void endBucket(ComputationContext context, BulkStatus delta) {
+            // every group must receive every bucket to know when all the documents have been marked
+            String commandId = delta.getId();
+            String header = providers.stream().map(p -> p + ":\n").collect(Collectors.joining());
+            for (int group = 0; group < groups; group++) {
+                StringBuilder groupMarks = marks.get(group);
+                String data = groupMarks == null ? header : header + groupMarks;
+                DataBucket bucket = new DataBucket(commandId, delta.getProcessed(), data);
+                context.produceRecord(OUTPUT_1, commandId + ":" + group,
+                        BulkCodecs.getDataBucketCodec().encode(bucket));
+            }
+        }
+    }
+
+    /**
+     * Accumulates the marked keys of a group into one file per shard, then sweeps the shards of the group once all the
+     * documents have been marked.
+     */
+    public static class SweepComputation extends AbstractComputation {
+
+        private static final Logger log = LogManager.getLogger(SweepComputation.class);
+
+        public static final String NAME = SWEEP_STREAM;
+
+        protected static final long CHECK_DELAY_MS = 1000;
+
+        protected static final String KV_PREFIX = "gc:";
+
+        protected static final long KV_TTL_SECONDS = 86_400;
+
+        protected final int groups;
+
+        // the following maps are keyed by commandId:group
+
+        protected final Map<String, Long> counters = new HashMap<>();
+
+        protected final Map<String, Path> dirs = new HashMap<>();
+
+        protected final Map<String, Set<String>> providers = new HashMap<>();
+
+        protected final Map<String, Long> totals = new HashMap<>();
+
+        public SweepComputation(int groups) {
+            super(NAME, 1, 1);
+            this.groups = groups;
+        }
+
+        @Override
+        public void init(ComputationContext context) {
+            context.setTimer("check", System.currentTimeMillis() + CHECK_DELAY_MS);
+        }
+
+        @Override
+        public void processTimer(ComputationContext context, String key, long timestamp) {
+            // the total may only be known after all the records of a group have been received
+            List<String> groupKeys = counters.keySet()
+                                             .stream()
+                                             .filter(groupKey -> !totals.containsKey(groupKey)
+                                                     && counters.get(groupKey) >= getTotal(groupKey))
+                                             .collect(Collectors.toList());
+            groupKeys.forEach(groupKey -> sweepGroup(context, groupKey));
+            context.setTimer("check", System.currentTimeMillis() + CHECK_DELAY_MS);
+        }
+
+        @Override
+        public void processRecord(ComputationContext context, String inputStreamName, Record record) {
+            DataBucket in = BulkCodecs.getDataBucketCodec().decode(record.getData());
+            String groupKey = record.getKey();
+            Set<String> groupProviders = providers.computeIfAbsent(groupKey, k -> new HashSet<>());
+            Map<String, StringBuilder> shardMarks = new HashMap<>();
+            for (String line : in.getDataAsString().split("\n")) {
+                int colon = line.lastIndexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                if (colon == line.length() - 1) {
+                    groupProviders.add(line.substring(0, colon));
+                } else {
+                    String shard = line.substring(colon + 1, colon + 3).toLowerCase();
+                    shardMarks.computeIfAbsent(shard, k -> new StringBuilder()).append(line).append('\n');
+                }
+            }
+            Path dir = getDir(groupKey);
+            shardMarks.forEach((shard, lines) -> append(dir.resolve(shard), lines));
+            counters.merge(groupKey, in.getCount(), Long::sum);
+            if (counters.get(groupKey) >= getTotal(groupKey)) {
+                sweepGroup(context, groupKey);
+            }
+        }
+
+        protected Long getTotal(String groupKey) {
+            if (!totals.containsKey(groupKey)) {
+                long total = getStatus(getCommandId(groupKey)).getTotal();
+                if (total == 0) {
+                    return Long.MAX_VALUE;
+                }
+                totals.put(groupKey, total);
+            }
+            return totals.get(groupKey);
+        }
+
+        protected Path getDir(String groupKey) {
+            return dirs.computeIfAbsent(groupKey, k -> {
+                try {
+                    return Files.createTempDirectory("nxgc");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        protected void append(Path file, CharSequence lines) {
+            try {
+                Files.write(file, lines.toString().getBytes(UTF_8), StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        protected void sweepGroup(ComputationContext context, String groupKey) {
+            String commandId = getCommandId(groupKey);
+            int group = Integer.parseInt(groupKey.substring(groupKey.lastIndexOf(':') + 1));
+            long total = totals.get(groupKey);
+            Path dir = dirs.get(groupKey);
+            BulkStatus status = getStatus(commandId);
+            if (ABORTED.equals(status.getState())) {
+                log.debug("Skipping sweep of aborted command: {}", commandId);
+            } else {
+                BulkCommand command = Framework.getService(BulkService.class).getCommand(commandId);
+                Boolean dryRun = command == null ? null : command.getParam(PARAM_DRY_RUN);
+                boolean delete = !Boolean.TRUE.equals(dryRun);
+                long startTime = status.getSubmitTime().toEpochMilli();
+                Map<String, ShardedBinaryGarbageCollector> gcs = new HashMap<>();
+                for (String providerId : providers.get(groupKey)) {
+                    ShardedBinaryGarbageCollector gc = getGarbageCollector(providerId);
+                    if (gc != null) {
+                        gcs.put(providerId, gc);
+                    }
+                }
+                for (int shard = group; shard < NB_SHARDS; shard += groups) {
+                    String prefix = String.format("%02x", shard);
+                    if (isSwept(commandId, prefix)) {
+                        // processed again after a failure
+                        continue;
+                    }
+                    Map<String, Set<String>> marked = readMarks(dir == null ? null : dir.resolve(prefix));
+                    BinaryManagerStatus shardStatus = new BinaryManagerStatus();
+                    gcs.forEach((providerId, gc) -> gc.sweep(prefix,
+                            marked.getOrDefault(providerId, Collections.emptySet()), startTime, delete,
+                            shardStatus));
+                    if (!setSwept(commandId, prefix, shardStatus)) {
+                        continue;
+                    }
+                    // the shares of the shards sum up to total - 1, the last one being sent with the result
+                    BulkStatus delta = BulkStatus.deltaOf(commandId);
+                    delta.setProcessed((total - 1) * (shard + 1) / NB_SHARDS - (total - 1) * shard / NB_SHARDS);
+                    updateStatusImmediate(context, delta);
+                }
+                Map<String, Serializable> result = getResult(commandId);
+                if (result != null && getKvStore().compareAndSet(getKvKey(commandId, "done"), null, "true",
+                        KV_TTL_SECONDS)) {
+                    // all the shards have been swept and their deltas sent, whichever group finished last
+                    BulkStatus delta = BulkStatus.deltaOf(commandId);
+                    delta.setProcessed(1);
+                    delta.setResult(result);
+                    updateStatusImmediate(context, delta);
+                }
+            }
+            if (dir != null) {
+                FileUtils.deleteQuietly(dir.toFile());
+            }
+            counters.remove(groupKey);
+            dirs.remove(groupKey);
+            providers.remove(groupKey);
+            totals.remove(groupKey);
+            // we checkpoint only if there is not another group in progress
+            if (counters.isEmpty()) {
+                context.askForCheckpoint();
+            }
+        }
+
+        protected Map<String, Set<String>> readMarks(Path file) {
+            Map<String, Set<String>> marked = new HashMap<>();
+            if (file == null || !Files.exists(file)) {
+                return marked;
+            }
+            try {
+                for (String line : Files.readAllLines(file, UTF_8)) {
+                    int colon = line.lastIndexOf(':');
+                    marked.computeIfAbsent(line.substring(0, colon), k -> new HashSet<>())
+                          .add(line.substring(colon + 1));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return marked;
+        }
+
+        protected ShardedBinaryGarbageCollector getGarbageCollector(String providerId) {
+            BlobProvider blobProvider = Framework.getService(BlobManager.class).getBlobProvider(providerId);
+            if (blobProvider instanceof BlobStoreBlobProvider) {
+                // bypass the caching layers, the sweep is done on the underlying storage
+                BinaryGarbageCollector gc = ((BlobStoreBlobProvider) blobProvider).store.unwrap()
+                                                                                        .getBinaryGarbageCollector();
+                if (gc instanceof ShardedBinaryGarbageCollector) {
+                    return (ShardedBinaryGarbageCollector) gc;
+                }
+            }
+            log.warn("Blob provider: {} does not support sharded garbage collection, skipping", providerId);
+            return null;
+        }
+
+        protected void updateStatusImmediate(ComputationContext context, BulkStatus delta) {
+            // sent before counting the shard as swept, to be ordered before the last delta in the status stream
+            ((ComputationContextImpl) context).produceRecordImmediate(OUTPUT_1, delta.getId(),
+                    BulkCodecs.getStatusCodec().encode(delta));
+        }
+
+        protected boolean isSwept(String commandId, String prefix) {
+            return getKvStore().getString(getShardKvKey(commandId, prefix)) != null;
+        }
+
+        /**
+         * Records the results of a swept shard, returns {@code false} if they were already recorded.
+         */
+        protected boolean setSwept(String commandId, String prefix, BinaryManagerStatus shardStatus) {
+            String value = shardStatus.numBinaries + " " + shardStatus.sizeBinaries + " " + shardStatus.numBinariesGC
+                    + " " + shardStatus.sizeBinariesGC;
+            return getKvStore().compareAndSet(getShardKvKey(commandId, prefix), null, value, KV_TTL_SECONDS);
+        }
+
+        /**
+         * Sums up the results of the shards, returns {@code null} if some shards have not been swept yet.
+         */
+        protected Map<String, Serializable> getResult(String commandId) {
+            List<String> keys = new ArrayList<>(NB_SHARDS);
+            for (int shard = 0; shard < NB_SHARDS; shard++) {
+                keys.add(getShardKvKey(commandId, String.format("%02x", shard)));
+            }
+            Collection<String> values = getKvStore().getStrings(keys).values();
+            if (values.size() < NB_SHARDS) {
+                return null;
+            }
+            long[] sums = new long[RESULT_KEYS.size()];
+            for (String value : values) {
+                String[] parts = value.split(" ");
+                for (int i = 0; i < sums.length; i++) {
+                    sums[i] += Long.parseLong(parts[i]);
+                }
+            }
+            Map<String, Serializable> result = new HashMap<>();
+            for (int i = 0; i < sums.length; i++) {
+                result.put(RESULT_KEYS.get(i), sums[i]);
+            }
+            return result;
+        }
+
+        protected KeyValueStore getKvStore() {
+            return ((BulkServiceImpl) Framework.getService(BulkService.class)).getKvStore();
+        }
+
+        protected String getShardKvKey(String commandId, String prefix) {
+            return getKvKey(commandId, "shard:" + prefix);
+        }
+
+        protected String getKvKey(String commandId, String name) {
+            return KV_PREFIX + commandId + ":" + name;
+        }
+
+        protected BulkStatus getStatus(String commandId) {
+            return Framework.getService(BulkService.class).getStatus(commandId);
+        }
+
+        protected String getCommandId(String groupKey) {
+            return groupKey.substring(0, groupKey.lastIndexOf(':'));
+        }
+    }
+
+}
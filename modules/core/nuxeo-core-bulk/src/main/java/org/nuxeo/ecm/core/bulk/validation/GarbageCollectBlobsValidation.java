@@ -0,0 +1,73 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.bulk.validation;
+
+import static org.nuxeo.ecm.core.api.security.SecurityConstants.SYSTEM_USERNAME;
+import static org.nuxeo.ecm.core.bulk.action.GarbageCollectBlobsAction.PARAM_DRY_RUN;
+import static org.nuxeo.ecm.core.bulk.action.GarbageCollectBlobsAction.QUERY_ALL;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.security.auth.login.LoginException;
+
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.bulk.AbstractBulkActionValidation;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.api.login.NuxeoLoginContext;
+
+/**
+ * Checks that a blob garbage collection marks the blobs of all the documents of the repository, otherwise the blobs of
+ * the documents not selected would be deleted.
+ *
+ * @since 11.4
+ */
+public class GarbageCollectBlobsValidation extends AbstractBulkActionValidation {
+
+    @Override
+    protected List<String> getParametersToValidate() {
+        return Collections.singletonList(PARAM_DRY_RUN);
+    }
+
+    @Override
+    protected void validateCommand(BulkCommand command) throws IllegalArgumentException {
+        validateBoolean(PARAM_DRY_RUN, command);
+        String query = command.getQuery();
+        if (query == null || !QUERY_ALL.equalsIgnoreCase(query.trim().replaceAll("\\s+", " "))) {
+            throw new IllegalArgumentException("The query must be: " + QUERY_ALL + " in command: " + command);
+        }
+        if (command.getScroller() != null || command.useExternalScroller()) {
+            throw new IllegalArgumentException("The default scroller must be used in command: " + command);
+        }
+        Long queryLimit = command.getQueryLimit();
+        if (queryLimit != null && queryLimit != 0) {
+            throw new IllegalArgumentException("The query must not be limited in command: " + command);
+        }
+        // the documents that the user cannot read would not be marked
+        String username = command.getUsername();
+        if (!SYSTEM_USERNAME.equals(username)) {
+            try (NuxeoLoginContext ignored = Framework.loginUser(username)) {
+                NuxeoPrincipal principal = NuxeoPrincipal.getCurrent();
+                if (principal == null || !principal.isAdministrator()) {
+                    throw new IllegalArgumentException("The user must be an administrator in command: " + command);
+                }
+            } catch (LoginException e) {
+                throw new IllegalArgumentException("Cannot login user in command: " + command, e);
+            }
+        }
+    }
+}
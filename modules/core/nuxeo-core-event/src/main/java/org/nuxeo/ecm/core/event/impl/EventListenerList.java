@@ -24,8 +24,11 @@ package org.nuxeo.ecm.core.event.impl;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.nuxeo.ecm.core.event.EventListener;
 import org.nuxeo.ecm.core.event.PostCommitEventListener;
@@ -49,12 +52,16 @@ public class EventListenerList {
 
     protected volatile List<EventListenerDescriptor> enabledAsyncPostCommitListenersDescriptors = null;
 
+    /** @since 11.4 */
+    protected volatile DispatchIndex enabledInlineListenersIndex = null;
+
     protected final Map<String, EventListenerDescriptor> descriptors = new HashMap<>();
 
     protected synchronized void flushCache() {
         enabledAsyncPostCommitListenersDescriptors = null;
         enabledInlineListenersDescriptors = null;
         enabledSyncPostCommitListenersDescriptors = null;
+        enabledInlineListenersIndex = null;
     }
 
     public void add(EventListenerDescriptor descriptor) {
@@ -167,6 +174,27 @@ public class EventListenerList {
                 enabledInlineListenersDescriptors.add(desc);
             }
         }
+        enabledInlineListenersIndex = new DispatchIndex(enabledInlineListenersDescriptors);
+    }
+
+    /**
+     * Gets the enabled inline listeners accepting the given event, in execution order.
+     * <p>
+     * The returned list is immutable and shared, it is not recomputed for each call.
+     *
+     * @since 11.4
+     */
+    public List<EventListenerDescriptor> getEnabledInlineListenersDescriptors(String eventName) {
+        DispatchIndex index = enabledInlineListenersIndex;
+        if (index == null) {
+            synchronized (this) {
+                if (enabledInlineListenersIndex == null) {
+                    recomputeEnabledListeners();
+                }
+                index = enabledInlineListenersIndex;
+            }
+        }
+        return index.get(eventName);
     }
 
     public List<EventListenerDescriptor> getEnabledInlineListenersDescriptors() {
@@ -198,4 +226,43 @@ public class EventListenerList {
         return descriptors.containsKey(name);
     }
 
+    /**
+     * Immutable index of the listeners accepting each event name, listeners without events being present in every
+     * entry and used for the events that no listener names explicitly.
+     *
+     * @since 11.4
+     */
+    protected static class DispatchIndex {
+
+        protected final Map<String, List<EventListenerDescriptor>> byEvent = new HashMap<>();
+
+        protected final List<EventListenerDescriptor> anyEvent;
+
+        protected DispatchIndex(List<EventListenerDescriptor> descriptors) {
+            Set<String> eventNames = new HashSet<>();
+            for (EventListenerDescriptor desc : descriptors) {
+                if (desc.getEvents() != null) {
+                    eventNames.addAll(desc.getEvents());
+                }
+            }
+            for (String eventName : eventNames) {
+                byEvent.put(eventName, filter(descriptors, eventName));
+            }
+            anyEvent = filter(descriptors, null);
+        }
+
+        protected static List<EventListenerDescriptor> filter(List<EventListenerDescriptor> descriptors,
+                String eventName) {
+            // keep the descriptors order, which is the execution order
+            return descriptors.stream()
+                              .filter(desc -> eventName == null ? desc.getEvents() == null
+                                      : desc.acceptEvent(eventName))
+                              .collect(Collectors.toUnmodifiableList());
+        }
+
+        protected List<EventListenerDescriptor> get(String eventName) {
+            return byEvent.getOrDefault(eventName, anyEvent);
+        }
+    }
+
 }
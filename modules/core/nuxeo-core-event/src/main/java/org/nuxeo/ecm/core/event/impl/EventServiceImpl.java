@@ -27,7 +27,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.naming.NamingException;
@@ -62,10 +64,15 @@ import org.nuxeo.lib.stream.computation.Record;
 import org.nuxeo.lib.stream.computation.Settings;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.codec.CodecService;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.model.DescriptorRegistry;
 import org.nuxeo.runtime.stream.StreamService;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+import io.dropwizard.metrics5.Timer;
 import io.opencensus.trace.AttributeValue;
 import io.opencensus.trace.Span;
 import io.opencensus.trace.Tracer;
@@ -78,6 +85,9 @@ public class EventServiceImpl implements EventService, EventServiceAdmin, Synchr
 
     public static final VMID VMID = new VMID();
 
+    /** @since 11.4 */
+    public static final String LISTENER_TIMER_METRIC = "nuxeo.events.listener.timer";
+
     private static final Log log = LogFactory.getLog(EventServiceImpl.class);
 
     protected static final ThreadLocal<CompositeEventBundle> threadBundles = new ThreadLocal<CompositeEventBundle>() {
@@ -105,6 +115,11 @@ public class EventServiceImpl implements EventService, EventServiceAdmin, Synchr
 
     protected final EventListenerList listenerDescriptors;
 
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    /** @since 11.4 */
+    protected final Map<String, Timer> listenerTimers = new ConcurrentHashMap<>();
+
     protected PostCommitEventExecutor postCommitExec;
 
     protected volatile AsyncEventExecutor asyncExec;
@@ -270,14 +285,13 @@ public class EventServiceImpl implements EventService, EventServiceAdmin, Synchr
         String ename = event.getName();
         EventStats stats = Framework.getService(EventStats.class);
         Tracer tracer = Tracing.getTracer();
-        for (EventListenerDescriptor desc : listenerDescriptors.getEnabledInlineListenersDescriptors()) {
-            if (!desc.acceptEvent(ename)) {
-                continue;
-            }
+        for (EventListenerDescriptor desc : listenerDescriptors.getEnabledInlineListenersDescriptors(ename)) {
             try {
-                long t0 = System.currentTimeMillis();
+                long t0 = System.nanoTime();
                 desc.asEventListener().handleEvent(event);
-                long elapsed = System.currentTimeMillis() - t0;
+                long elapsedNanos = System.nanoTime() - t0;
+                getListenerTimer(desc).update(elapsedNanos, TimeUnit.NANOSECONDS);
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
                 traceAddAnnotation(event, tracer, elapsed, desc.getName());
                 if (stats != null) {
                     stats.logSyncExec(desc, elapsed);
@@ -345,6 +359,16 @@ public class EventServiceImpl implements EventService, EventServiceAdmin, Synchr
         }
     }
 
+    /**
+     * Gets the timer of the executions of an inline listener.
+     *
+     * @since 11.4
+     */
+    protected Timer getListenerTimer(EventListenerDescriptor desc) {
+        return listenerTimers.computeIfAbsent(desc.getName(),
+                name -> registry.timer(MetricName.build(LISTENER_TIMER_METRIC).tagged("listener", name)));
+    }
+
     protected void traceAddAnnotation(Event event, Tracer tracer, long elapsed, String listener) {
         Map<String, AttributeValue> attributes = new HashMap<>();
         attributes.put("event", AttributeValue.stringAttributeValue(event.getName()));
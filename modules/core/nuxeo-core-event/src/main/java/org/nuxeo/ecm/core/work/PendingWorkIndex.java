@@ -0,0 +1,132 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.work;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * Cluster-wide index of the works scheduled with {@code IF_NOT_SCHEDULED} or {@code IF_NOT_RUNNING_OR_SCHEDULED}
+ * that are still pending.
+ * <p>
+ * A pending marker is claimed atomically in the work manager key/value store before the work is appended, so that a
+ * duplicate scheduled on any node is dropped. A local bloom filter remembers the ids recently claimed by this node:
+ * a duplicate hitting it is confirmed with a plain read of the marker instead of a failing conditional write, ids that
+ * are not in the filter go straight to the claim. The filter is only a hint, it is cleared once its capacity is
+ * reached.
+ *
+ * @since 11.4
+ */
+public class PendingWorkIndex {
+
+    protected static final int BITS_PER_ENTRY = 10;
+
+    protected static final int NUM_HASHES = 7;
+
+    protected final int capacity;
+
+    protected final int numBits;
+
+    protected final long ttl;
+
+    protected final BitSet bits;
+
+    protected int count;
+
+    /**
+     * @param capacity the number of ids remembered by the local bloom filter before it is cleared
+     * @param ttl the TTL of the pending markers, in seconds
+     */
+    public PendingWorkIndex(int capacity, long ttl) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid pending work index capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        this.numBits = capacity * BITS_PER_ENTRY;
+        this.ttl = ttl;
+        this.bits = new BitSet(numBits);
+    }
+
+    /**
+     * Claims the pending marker of a work.
+     *
+     * @return {@code true} if the work was not pending and must be appended, {@code false} if it is a duplicate
+     */
+    public boolean claim(String workId) {
+        if (mightContain(workId) && WorkStateHelper.isPending(workId)) {
+            return false;
+        }
+        if (!WorkStateHelper.setPending(workId, ttl)) {
+            return false;
+        }
+        add(workId);
+        return true;
+    }
+
+    /**
+     * Releases the pending marker of a work, after it started or completed.
+     */
+    public void release(String workId) {
+        WorkStateHelper.removePending(workId);
+    }
+
+    protected synchronized boolean mightContain(String workId) {
+        long hash = hash(workId);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= NUM_HASHES; i++) {
+            if (!bits.get(index(h1 + i * h2))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected synchronized void add(String workId) {
+        if (count >= capacity) {
+            bits.clear();
+            count = 0;
+        }
+        long hash = hash(workId);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= NUM_HASHES; i++) {
+            bits.set(index(h1 + i * h2));
+        }
+        count++;
+    }
+
+    protected int index(int combined) {
+        return (combined & Integer.MAX_VALUE) % numBits;
+    }
+
+    /**
+     * 64-bit FNV-1a hash with a final mix, the two halves are combined to derive the bloom filter indexes.
+     */
+    protected static long hash(String workId) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : workId.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        // final mix so that both halves are well distributed
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
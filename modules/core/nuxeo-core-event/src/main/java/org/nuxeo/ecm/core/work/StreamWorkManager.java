@@ -24,10 +24,13 @@ import static org.nuxeo.ecm.core.work.BaseOverflowRecordFilter.STORE_NAME_OPTION
 import static org.nuxeo.ecm.core.work.BaseOverflowRecordFilter.STORE_TTL_OPTION;
 import static org.nuxeo.ecm.core.work.BaseOverflowRecordFilter.THRESHOLD_SIZE_OPTION;
 import static org.nuxeo.ecm.core.work.api.WorkManager.Scheduling.CANCEL_SCHEDULED;
+import static org.nuxeo.ecm.core.work.api.WorkManager.Scheduling.IF_NOT_RUNNING_OR_SCHEDULED;
+import static org.nuxeo.ecm.core.work.api.WorkManager.Scheduling.IF_NOT_SCHEDULED;
 import static org.nuxeo.lib.stream.computation.AbstractComputation.INPUT_1;
 
 import java.time.Duration;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -59,6 +62,7 @@ import org.nuxeo.lib.stream.computation.Settings;
 import org.nuxeo.lib.stream.computation.StreamManager;
 import org.nuxeo.lib.stream.computation.StreamProcessor;
 import org.nuxeo.lib.stream.computation.Topology;
+import org.nuxeo.lib.stream.computation.Watermark;
 import org.nuxeo.lib.stream.computation.internals.RecordFilterChainImpl;
 import org.nuxeo.lib.stream.log.LogLag;
 import org.nuxeo.lib.stream.log.LogManager;
@@ -150,6 +154,31 @@ public class StreamWorkManager extends WorkManagerImpl {
      */
     public static final String COMPUTATION_FILTER_PREFIX_KEY = "nuxeo.stream.work.computation.filter.storeKeyPrefix";
 
+    /**
+     * @since 11.4
+     */
+    public static final String PENDING_INDEX_CAPACITY_KEY = "nuxeo.stream.work.pending.index.capacity";
+
+    /**
+     * @since 11.4
+     */
+    public static final int PENDING_INDEX_CAPACITY_DEFAULT_VALUE = 100_000;
+
+    /**
+     * Record flag of a work scheduled with {@code IF_NOT_SCHEDULED}, its pending marker is released when it starts.
+     *
+     * @since 11.4
+     */
+    public static final Record.Flag PENDING_UNTIL_RUNNING_FLAG = Record.Flag.USER1;
+
+    /**
+     * Record flag of a work scheduled with {@code IF_NOT_RUNNING_OR_SCHEDULED}, its pending marker is released when it
+     * is done.
+     *
+     * @since 11.4
+     */
+    public static final Record.Flag PENDING_UNTIL_COMPLETED_FLAG = Record.Flag.USER2;
+
     protected Topology topology;
 
     protected Topology topologyDisabled;
@@ -166,6 +195,9 @@ public class StreamWorkManager extends WorkManagerImpl {
 
     protected long stateTTL;
 
+    // @since 11.4
+    protected PendingWorkIndex pendingIndex;
+
     protected int getOverProvisioningFactor() {
         // Enable over provisioning only if the log can be distributed
         if (getLogManager().supportSubscribe()) {
@@ -208,15 +240,30 @@ public class StreamWorkManager extends WorkManagerImpl {
         if (afterCommit && scheduleAfterCommit(work, scheduling)) {
             return;
         }
-        WorkSchedulePath.newInstance(work);
-        String key = work.getPartitionKey();
-        LogOffset offset;
+        Record.Flag pendingFlag = getPendingFlag(scheduling);
+        if (pendingFlag != null && !pendingIndex.claim(work.getId())) {
+            log.debug("Skipping duplicate of pending work id: " + work.getId());
+            registry.counter(MetricName.build("nuxeo.works.queue.duplicates").tagged("queue", queueId)).inc();
+            return;
+        }
+        LogOffset offset = null;
         try {
-            offset = streamManager.append(NAMESPACE_PREFIX + queueId, Record.of(key, WorkComputation.serialize(work)));
+            WorkSchedulePath.newInstance(work);
+            String key = work.getPartitionKey();
+            byte[] data = WorkComputation.serialize(work);
+            Record record = pendingFlag == null ? Record.of(key, data)
+                    : new Record(key, data, Watermark.ofNow().getValue(),
+                            EnumSet.of(Record.Flag.DEFAULT, pendingFlag));
+            offset = streamManager.append(NAMESPACE_PREFIX + queueId, record);
         } catch (IllegalArgumentException e) {
             log.error(String.format("Not scheduled work, unknown category: %s, mapped to %s", work.getCategory(),
                     NAMESPACE_PREFIX + queueId));
             return;
+        } finally {
+            // the work is not in the stream, a duplicate must not be dropped because of its marker
+            if (offset == null && pendingFlag != null) {
+                pendingIndex.release(work.getId());
+            }
         }
         if (work.isCoalescing()) {
             WorkStateHelper.setLastOffset(work.getId(), offset.offset(), stateTTL);
@@ -233,6 +280,21 @@ public class StreamWorkManager extends WorkManagerImpl {
         }
     }
 
+    /**
+     * Returns the record flag tracking the pending marker of a work, or {@code null} if the scheduling does not need
+     * one.
+     *
+     * @since 11.4
+     */
+    protected Record.Flag getPendingFlag(Scheduling scheduling) {
+        if (IF_NOT_SCHEDULED.equals(scheduling)) {
+            return PENDING_UNTIL_RUNNING_FLAG;
+        } else if (IF_NOT_RUNNING_OR_SCHEDULED.equals(scheduling)) {
+            return PENDING_UNTIL_COMPLETED_FLAG;
+        }
+        return null;
+    }
+
     @Override
     public int getApplicationStartedOrder() {
         // start before the WorkManagerImpl
@@ -245,6 +307,8 @@ public class StreamWorkManager extends WorkManagerImpl {
         ConfigurationService configuration = Framework.getService(ConfigurationService.class);
         storeState = configuration.isBooleanTrue(STORESTATE_KEY);
         stateTTL = configuration.getLong(STATETTL_KEY, STATETTL_DEFAULT_VALUE);
+        pendingIndex = new PendingWorkIndex(
+                configuration.getInteger(PENDING_INDEX_CAPACITY_KEY, PENDING_INDEX_CAPACITY_DEFAULT_VALUE), stateTTL);
     }
 
     protected RecordFilterChain getRecordFilter() {
@@ -380,6 +444,9 @@ public class StreamWorkManager extends WorkManagerImpl {
         RecordFilterChain filter = getRecordFilter();
         settings = new Settings(DEFAULT_CONCURRENCY, getPartitions(DEFAULT_CONCURRENCY), getCodec(), policy, filter);
         descriptors.forEach(item -> settings.setConcurrency(item.getId(), item.getMaxThreads()));
+        descriptors.forEach(item -> settings.setThreadFactory(item.getId(),
+                getVirtualThreadFactory(item, NAMESPACE_PREFIX + item.getId() + "Pool-",
+                        (t, e) -> log.error("Uncaught exception on thread: " + t.getName(), e))));
         descriptors.forEach(item -> settings.setPartitions(item.getId(), getPartitions(item.getMaxThreads())));
     }
 
@@ -449,6 +516,7 @@ public class StreamWorkManager extends WorkManagerImpl {
         queueMetrics.putGauge(() -> getMetricsWithNuxeoClassLoader(queueId).running, "running");
         queueMetrics.putGauge(() -> getMetricsWithNuxeoClassLoader(queueId).completed, "completed");
         queueMetrics.putGauge(() -> getMetricsWithNuxeoClassLoader(queueId).canceled, "canceled");
+        putVirtualThreadGauges(queueMetrics, queueId);
         registry.registerAll(queueMetrics);
     }
 
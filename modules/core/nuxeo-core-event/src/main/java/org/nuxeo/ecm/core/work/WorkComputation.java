@@ -18,6 +18,8 @@
  */
 package org.nuxeo.ecm.core.work;
 
+import static org.nuxeo.ecm.core.work.StreamWorkManager.PENDING_UNTIL_COMPLETED_FLAG;
+import static org.nuxeo.ecm.core.work.StreamWorkManager.PENDING_UNTIL_RUNNING_FLAG;
 import static org.nuxeo.ecm.core.work.StreamWorkManager.STATETTL_DEFAULT_VALUE;
 import static org.nuxeo.ecm.core.work.StreamWorkManager.STATETTL_KEY;
 import static org.nuxeo.ecm.core.work.StreamWorkManager.STORESTATE_KEY;
@@ -85,6 +87,10 @@ public class WorkComputation extends AbstractComputation {
     @Override
     public void processRecord(ComputationContext context, String inputStreamName, Record record) {
         work = deserialize(record.getData());
+        if (record.getFlags().contains(PENDING_UNTIL_RUNNING_FLAG)) {
+            // from now on a new IF_NOT_SCHEDULED scheduling of this work id must be accepted
+            WorkStateHelper.removePending(work.getId());
+        }
         try {
             if (work.isCoalescing() && WorkStateHelper.getLastOffset(work.getId()) > context.getLastOffset().offset()) {
                 log.debug("Skipping duplicate of coalescing work id: " + work.getId() + " " + work);
@@ -139,6 +145,9 @@ public class WorkComputation extends AbstractComputation {
             // Try to cleanup after an exception, if exception comes from the previous cleanup it is a duplicate cleanup
             cleanupWorkInFailure(work, e);
         } finally {
+            if (record.getFlags().contains(PENDING_UNTIL_COMPLETED_FLAG)) {
+                WorkStateHelper.removePending(work.getId());
+            }
             workTimer.update(work.getCompletionTime() - work.getStartTime(), TimeUnit.MILLISECONDS);
             work = null;
         }
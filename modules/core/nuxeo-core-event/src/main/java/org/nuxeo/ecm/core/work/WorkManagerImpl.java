@@ -21,12 +21,14 @@ package org.nuxeo.ecm.core.work;
 
 import static org.nuxeo.ecm.core.work.api.WorkQueueDescriptor.ALL_QUEUES;
 
+import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
@@ -50,6 +52,8 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.nuxeo.common.utils.ExceptionUtils;
+import org.nuxeo.common.utils.VirtualThreads;
+import org.nuxeo.common.utils.VirtualThreads.TrackingThreadFactory;
 import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.event.EventServiceComponent;
 import org.nuxeo.ecm.core.work.WorkQueuing.Listener;
@@ -145,6 +149,9 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
     protected final Map<String, String> categoryToQueueId = new HashMap<>();
 
+    // @since 11.4
+    protected final Map<String, TrackingThreadFactory> virtualThreadFactories = new ConcurrentHashMap<>();
+
     protected WorkQueuing queuing;
 
     protected boolean active = true;
@@ -228,7 +235,7 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             throw new IllegalStateException("work queue " + config.id + " already have an executor");
         }
         NuxeoBlockingQueue queue = queuing.init(config);
-        ThreadFactory threadFactory = new NamedThreadFactory(THREAD_PREFIX + config.id + "-");
+        ThreadFactory threadFactory = getThreadFactory(config);
         int maxPoolSize = config.getMaxThreads();
         WorkThreadPoolExecutor executor = new WorkThreadPoolExecutor(maxPoolSize, maxPoolSize, 0, TimeUnit.SECONDS,
                 queue, threadFactory);
@@ -239,6 +246,53 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         log.info("Initialized work queue {}, {}", config.id, config);
     }
 
+    /**
+     * @since 11.4
+     */
+    protected ThreadFactory getThreadFactory(WorkQueueDescriptor config) {
+        NamedThreadFactory threadFactory = new NamedThreadFactory(THREAD_PREFIX + config.id + "-");
+        ThreadFactory virtualThreadFactory = getVirtualThreadFactory(config, THREAD_PREFIX + config.id + "-",
+                threadFactory::handleUncaughtException);
+        return virtualThreadFactory == null ? threadFactory : virtualThreadFactory;
+    }
+
+    /**
+     * Returns a factory of virtual threads for a queue using the virtual execution mode, or {@code null} if the queue
+     * uses platform threads or the JVM does not support virtual threads.
+     * <p>
+     * The factory is kept to report the in-flight, parked and completed virtual threads of the queue in its metrics.
+     *
+     * @since 11.4
+     */
+    protected ThreadFactory getVirtualThreadFactory(WorkQueueDescriptor config, String prefix,
+            UncaughtExceptionHandler handler) {
+        if (!config.isVirtualThreads()) {
+            return null;
+        }
+        TrackingThreadFactory threadFactory = VirtualThreads.newTrackingFactory(prefix, handler);
+        if (threadFactory == null) {
+            log.warn("Virtual threads are not supported by this JVM, using platform threads for work queue {}",
+                    config.id);
+            return null;
+        }
+        virtualThreadFactories.put(config.id, threadFactory);
+        return threadFactory;
+    }
+
+    /**
+     * Adds the gauges of the virtual threads of a queue, if it runs on virtual threads.
+     *
+     * @since 11.4
+     */
+    protected void putVirtualThreadGauges(NuxeoMetricSet queueMetrics, String queueId) {
+        TrackingThreadFactory threadFactory = virtualThreadFactories.get(queueId);
+        if (threadFactory != null) {
+            queueMetrics.putGauge(threadFactory::getInFlight, "virtual", "inflight");
+            queueMetrics.putGauge(threadFactory::getParked, "virtual", "parked");
+            queueMetrics.putGauge(threadFactory::getCompleted, "virtual", "completed");
+        }
+    }
+
     void activateQueue(WorkQueueDescriptor config) {
         if (ALL_QUEUES.equals(config.id)) {
             throw new IllegalArgumentException("cannot activate all queues");
@@ -270,6 +324,7 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         queueMetrics.putGauge(() -> getMetrics(queueId).running, "running");
         queueMetrics.putGauge(() -> getMetrics(queueId).completed, "completed");
         queueMetrics.putGauge(() -> getMetrics(queueId).canceled, "canceled");
+        putVirtualThreadGauges(queueMetrics, queueId);
         registry.registerAll(queueMetrics);
     }
 
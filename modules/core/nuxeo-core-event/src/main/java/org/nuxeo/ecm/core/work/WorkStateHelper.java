@@ -41,6 +41,12 @@ public class WorkStateHelper {
 
     protected static final String GROUP_JOIN_COUNT_SUFFIX = ":group";
 
+    // @since 11.4
+    protected static final String PENDING_SUFFIX = ":pending";
+
+    // @since 11.4
+    protected static final String PENDING = "pending";
+
     protected static final long GROUP_JOIN_COUNT_TTL_SECONDS = 600;
 
     protected static final String CANCELED = "canceled";
@@ -115,6 +121,32 @@ public class WorkStateHelper {
         return false;
     }
 
+    // @since 11.4
+    protected static String getPendingKey(String workId) {
+        return workId + PENDING_SUFFIX;
+    }
+
+    // @since 11.4
+    protected static boolean isPending(String workId) {
+        return getKeyValueStore().getString(getPendingKey(workId)) != null;
+    }
+
+    /**
+     * Atomically marks a work as pending.
+     *
+     * @return {@code true} if the marker was set, {@code false} if the work was already pending
+     * @since 11.4
+     */
+    protected static boolean setPending(String workId, long ttl) {
+        return getKeyValueStore().compareAndSet(getPendingKey(workId), null, PENDING, ttl);
+    }
+
+    // @since 11.4
+    protected static void removePending(String workId) {
+        log.debug("removePending work: {}", workId);
+        getKeyValueStore().put(getPendingKey(workId), (String) null);
+    }
+
     private WorkStateHelper() {
         // hide constructor
     }
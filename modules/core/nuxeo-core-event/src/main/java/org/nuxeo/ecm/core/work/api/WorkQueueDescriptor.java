@@ -43,6 +43,12 @@ public class WorkQueueDescriptor implements Descriptor {
 
     public static final int DEFAULT_CAPACITY = -1;
 
+    /** @since 11.4 */
+    public static final String EXECUTION_MODE_PLATFORM = "platform";
+
+    /** @since 11.4 */
+    public static final String EXECUTION_MODE_VIRTUAL = "virtual";
+
     @XNode("@id")
     public String id;
 
@@ -81,6 +87,43 @@ public class WorkQueueDescriptor implements Descriptor {
         return maxThreads == null ? DEFAULT_MAX_THREADS : maxThreads.intValue();
     }
 
+    /**
+     * The execution mode of the works of this queue, {@value #EXECUTION_MODE_PLATFORM} (the default) or
+     * {@value #EXECUTION_MODE_VIRTUAL}.
+     * <p>
+     * In virtual mode the works run on virtual threads, {@link #getMaxThreads} being the concurrency limit, which can
+     * then be much higher for queues whose works mostly wait for I/O. Platform threads are used when the JVM does not
+     * support virtual threads.
+     * <p>
+     * With the stream work manager the works of a queue are still run by one thread per assigned partition of its
+     * stream, whose partition count is fixed when the stream is created: there the virtual mode only changes the kind
+     * of threads and doesn't raise the concurrency of an existing queue.
+     *
+     * @since 11.4
+     */
+    @XNode("executionMode")
+    public String executionMode;
+
+    /**
+     * @since 11.4
+     */
+    public String getExecutionMode() {
+        if (executionMode == null) {
+            return EXECUTION_MODE_PLATFORM;
+        }
+        if (!EXECUTION_MODE_PLATFORM.equals(executionMode) && !EXECUTION_MODE_VIRTUAL.equals(executionMode)) {
+            throw new IllegalArgumentException("Invalid execution mode: " + executionMode + " for queue: " + id);
+        }
+        return executionMode;
+    }
+
+    /**
+     * @since 11.4
+     */
+    public boolean isVirtualThreads() {
+        return EXECUTION_MODE_VIRTUAL.equals(getExecutionMode());
+    }
+
     @XNodeList(value = "category", type = HashSet.class, componentType = String.class)
     public Set<String> categories = Collections.emptySet();
 
@@ -107,6 +150,7 @@ public class WorkQueueDescriptor implements Descriptor {
         merged.capacity = other.capacity != null ? other.capacity : capacity;
         merged.processing = other.processing != null ? other.processing : processing;
         merged.maxThreads = other.maxThreads != null ? other.maxThreads : maxThreads;
+        merged.executionMode = other.executionMode != null ? other.executionMode : executionMode;
         merged.categories = new HashSet<>(categories);
         merged.categories.addAll(other.categories);
         return merged;
@@ -125,6 +169,8 @@ public class WorkQueueDescriptor implements Descriptor {
         sb.append(isProcessingEnabled());
         sb.append(" maxThreads=");
         sb.append(getMaxThreads());
+        sb.append(" executionMode=");
+        sb.append(getExecutionMode());
         sb.append(" capacity=");
         sb.append(getCapacity());
         sb.append(")");
@@ -23,25 +23,38 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.event.Event;
 import org.nuxeo.ecm.core.event.EventService;
 import org.nuxeo.ecm.core.event.PostCommitEventListener;
+import org.nuxeo.ecm.core.event.impl.EventContextImpl;
+import org.nuxeo.ecm.core.event.impl.EventImpl;
 import org.nuxeo.ecm.core.event.impl.EventListenerDescriptor;
+import org.nuxeo.ecm.core.event.impl.EventListenerList;
 import org.nuxeo.ecm.core.event.impl.EventServiceImpl;
 import org.nuxeo.ecm.core.event.script.ScriptingPostCommitEventListener;
 import org.nuxeo.runtime.RuntimeMessage.Level;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.stream.RuntimeStreamFeature;
 import org.nuxeo.runtime.test.runner.Deploy;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
 import org.nuxeo.runtime.test.runner.HotDeployer;
 
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+import io.dropwizard.metrics5.Timer;
+
 @RunWith(FeaturesRunner.class)
 @Features(RuntimeStreamFeature.class)
 @Deploy("org.nuxeo.ecm.core.event")
@@ -129,6 +142,39 @@ public class TestEventListenerContrib {
                 + "Listener extension must define either a class or a script)", errors.get(2));
     }
 
+    @Test
+    public void testDispatchIndex() throws Exception {
+        hotDeployer.deploy("org.nuxeo.ecm.core.event.test:test-dispatch-listeners.xml");
+        EventListenerList list = getService().getEventListenerList();
+
+        assertEquals(Arrays.asList("dispatchFoo", "dispatchFooBar", "dispatchAll"), getNames(list, "foo"));
+        assertEquals(Arrays.asList("dispatchFooBar", "dispatchAll"), getNames(list, "bar"));
+        assertEquals(Collections.singletonList("dispatchAll"), getNames(list, "unknown"));
+
+        // the index follows the enabled flag
+        EventListenerDescriptor desc = getService().getEventListener("dispatchFoo");
+        desc.setEnabled(false);
+        getService().addEventListener(desc);
+        assertEquals(Arrays.asList("dispatchFooBar", "dispatchAll"), getNames(list, "foo"));
+
+        // the listeners are timed
+        Event event = new EventImpl("foo", new EventContextImpl());
+        event.setInline(true);
+        getService().fireEvent(event);
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        Timer timer = registry.timer(
+                MetricName.build(EventServiceImpl.LISTENER_TIMER_METRIC).tagged("listener", "dispatchFooBar"));
+        assertEquals(1, timer.getCount());
+    }
+
+    protected List<String> getNames(EventListenerList list, String eventName) {
+        return list.getEnabledInlineListenersDescriptors(eventName)
+                   .stream()
+                   .map(EventListenerDescriptor::getName)
+                   .filter(name -> name.startsWith("dispatch"))
+                   .collect(Collectors.toList());
+    }
+
     protected EventServiceImpl getService() {
         return (EventServiceImpl) Framework.getService(EventService.class);
     }
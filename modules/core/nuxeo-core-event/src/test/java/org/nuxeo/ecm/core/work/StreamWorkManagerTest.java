@@ -21,6 +21,7 @@ package org.nuxeo.ecm.core.work;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.concurrent.TimeUnit;
 
@@ -29,6 +30,7 @@ import org.apache.logging.log4j.Logger;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.nuxeo.ecm.core.work.api.Work;
+import org.nuxeo.ecm.core.work.api.WorkManager;
 import org.nuxeo.ecm.core.work.api.WorkQueueMetrics;
 import org.nuxeo.runtime.test.runner.Deploy;
 
@@ -207,6 +209,70 @@ public class StreamWorkManagerTest extends AbstractWorkManagerTest {
         log.debug("StreamWorkManagerTest.onlyFirstAndLastCoalescingWorksShouldBeExecuted() ending");
     }
 
+    @Test
+    public void testScheduleIfNotRunningOrScheduledDropsDuplicates() throws InterruptedException {
+        SleepWork work = new SleepWork(getDurationMillis(), "pending-completed");
+        work.setIdempotent(false);
+        // duplicates are dropped before being appended, whatever the state of the first one
+        for (int i = 0; i < 10; i++) {
+            service.schedule(work, WorkManager.Scheduling.IF_NOT_RUNNING_OR_SCHEDULED);
+        }
+        assertTrue(service.awaitCompletion(getDurationMillis() * 10L, TimeUnit.MILLISECONDS));
+        tracker.assertDiff(0, 0, 1, 0);
+        assertFalse(WorkStateHelper.isPending(work.getId()));
+
+        // once completed the work can be scheduled again
+        service.schedule(work, WorkManager.Scheduling.IF_NOT_RUNNING_OR_SCHEDULED);
+        assertTrue(service.awaitCompletion(getDurationMillis() * 10L, TimeUnit.MILLISECONDS));
+        tracker.assertDiff(0, 0, 1, 0);
+    }
+
+    @Test
+    public void testScheduleIfNotScheduledAcceptsRunningWork() throws InterruptedException {
+        SleepWork work = new SleepWork(getDurationMillis(), "pending-running");
+        work.setIdempotent(false);
+        service.schedule(work, WorkManager.Scheduling.IF_NOT_SCHEDULED);
+        assertTrue(WorkStateHelper.isPending(work.getId()));
+        // wait for the work to be running, its pending marker is released
+        Thread.sleep(getDurationMillis() / 2);
+        assertFalse(WorkStateHelper.isPending(work.getId()));
+        service.schedule(work, WorkManager.Scheduling.IF_NOT_SCHEDULED);
+        service.schedule(work, WorkManager.Scheduling.IF_NOT_SCHEDULED);
+        assertTrue(service.awaitCompletion(getDurationMillis() * 10L, TimeUnit.MILLISECONDS));
+        tracker.assertDiff(0, 0, 2, 0);
+    }
+
+    @Test
+    public void testPendingMarkerReleasedWhenScheduleFails() throws InterruptedException {
+        SleepWork work = new UnserializableWork(getDurationMillis(), "pending-failed");
+        try {
+            service.schedule(work, WorkManager.Scheduling.IF_NOT_RUNNING_OR_SCHEDULED);
+            fail("should not be able to serialize the work");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        assertFalse(WorkStateHelper.isPending(work.getId()));
+
+        // the same work id is not considered as a duplicate
+        SleepWork retry = new SleepWork(getDurationMillis(), "pending-failed");
+        retry.setIdempotent(false);
+        service.schedule(retry, WorkManager.Scheduling.IF_NOT_RUNNING_OR_SCHEDULED);
+        assertTrue(service.awaitCompletion(getDurationMillis() * 10L, TimeUnit.MILLISECONDS));
+        tracker.assertDiff(0, 0, 1, 0);
+    }
+
+    protected static class UnserializableWork extends SleepWork {
+
+        private static final long serialVersionUID = 1L;
+
+        @SuppressWarnings("unused")
+        protected final Object state = new Object(); // NOSONAR (not serializable on purpose)
+
+        public UnserializableWork(long durationMillis, String id) {
+            super(durationMillis, id);
+        }
+    }
+
     private SleepWork createCoalescing(long duration) {
         SleepWork work = new SleepWork(duration, "coalescing");
         work.setIdempotent(false);
@@ -799,6 +799,13 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
 
     @Override
     public void transferBlobWithByteRange(Blob blob, ByteRange byteRange, Supplier<OutputStream> outputStreamSupplier) {
+        BlobProvider blobProvider = byteRange == null || !(blob instanceof ManagedBlob) ? null
+                : Framework.getService(BlobManager.class).getBlobProvider(blob);
+        if (blobProvider != null && blobProvider.allowByteRange()) {
+            // let the blob provider fetch only the needed bytes
+            transferBlobWithByteRange(blobProvider, (ManagedBlob) blob, byteRange, outputStreamSupplier);
+            return;
+        }
         try (InputStream in = blob.getStream()) {
             @SuppressWarnings("resource")
             OutputStream out = outputStreamSupplier.get(); // not ours to close
@@ -818,6 +825,24 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
         }
     }
 
+    /**
+     * Transfers a byte range of a blob from a blob provider allowing byte ranges.
+     *
+     * @since 11.4
+     */
+    protected void transferBlobWithByteRange(BlobProvider blobProvider, ManagedBlob blob, ByteRange byteRange,
+            Supplier<OutputStream> outputStreamSupplier) {
+        try (InputStream in = blobProvider.getStream(blob.getKey(), byteRange)) {
+            @SuppressWarnings("resource")
+            OutputStream out = outputStreamSupplier.get(); // not ours to close
+            BufferingServletOutputStream.stopBuffering(out);
+            IOUtils.copy(in, out);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     protected String fixXPath(String xpath) {
         // Hack for Flash Url wich doesn't support ':' char
         return xpath == null ? null : xpath.replace(';', ':');
@@ -0,0 +1,172 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.query.sql;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.nuxeo.ecm.core.query.sql.model.FromClause;
+import org.nuxeo.ecm.core.query.sql.model.IdentityQueryTransformer;
+import org.nuxeo.ecm.core.query.sql.model.Operand;
+import org.nuxeo.ecm.core.query.sql.model.Reference;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.query.sql.model.WhereClause;
+
+/**
+ * Bounded cache of parsed NXQL queries, keyed by query string.
+ * <p>
+ * Parsed queries are mutated by the code executing them (security transformers, optimizers, backends adding
+ * projections), so the cache keeps a pristine copy of each parsed query and returns a deep copy of it to each caller.
+ * Copying the syntax tree is much cheaper than running the parser again.
+ * <p>
+ * Only the parsing is cached: the translation to a backend query depends on the principals and on the paths resolved
+ * at execution time, and is done again for each query.
+ * <p>
+ * No cache is used until one is {@link #install installed}, which is done by the core service from its configuration.
+ *
+ * @since 11.4
+ */
+public final class SQLQueryCache {
+
+    private static final Copier COPIER = new Copier();
+
+    private static volatile SQLQueryCache instance;
+
+    private final Map<String, SQLQuery> cache;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a cache keeping at most the given number of parsed queries, evicting the least recently used ones.
+     */
+    public SQLQueryCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxSize);
+        }
+        cache = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SQLQuery> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Installs the cache used by {@link SQLQueryParser}, or disables caching if {@code null}.
+     */
+    public static void install(SQLQueryCache cache) {
+        instance = cache;
+    }
+
+    /**
+     * Gets the parsed query for the given string, parsing it if it's not in the installed cache.
+     *
+     * @return a copy of the parsed query that the caller is free to modify
+     */
+    public static SQLQuery get(String string, Function<String, SQLQuery> parser) {
+        SQLQueryCache sqlQueryCache = instance;
+        if (sqlQueryCache == null) {
+            return parser.apply(string);
+        }
+        return sqlQueryCache.getOrParse(string, parser);
+    }
+
+    private SQLQuery getOrParse(String string, Function<String, SQLQuery> parser) {
+        SQLQuery query;
+        synchronized (cache) {
+            query = cache.get(string);
+        }
+        if (query == null) {
+            misses.increment();
+            query = parser.apply(string);
+            SQLQuery copy = copy(query);
+            synchronized (cache) {
+                cache.put(string, copy);
+            }
+            return query;
+        }
+        hits.increment();
+        return copy(query);
+    }
+
+    /** Gets the number of queries found in the cache. */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** Gets the number of queries not found in the cache, and parsed. */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** Gets the number of cached queries. */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Forgets all the cached queries.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private static SQLQuery copy(SQLQuery query) {
+        SQLQuery copy = COPIER.transform(query);
+        copy.setQueryString(query.getQueryString());
+        return copy;
+    }
+
+    /**
+     * Deep copy of a query, also accepting the optional clauses and operands that the parser leaves {@code null}.
+     */
+    private static class Copier extends IdentityQueryTransformer {
+
+        @Override
+        public FromClause transform(FromClause node) {
+            return new FromClause(node.type, transform(node.elements));
+        }
+
+        @Override
+        public WhereClause transform(WhereClause node) {
+            // a clause without predicate is immutable
+            return node == null || node.predicate == null ? node : super.transform(node);
+        }
+
+        @Override
+        public Reference transform(Reference node) {
+            Reference ref = super.transform(node);
+            ref.originalName = node.originalName;
+            return ref;
+        }
+
+        @Override
+        public Operand transform(Operand node) {
+            return node == null ? null : super.transform(node);
+        }
+    }
+
+}
@@ -49,6 +49,10 @@ public final class SQLQueryParser {
     }
 
     public static SQLQuery parse(String string) throws QueryParseException {
+        return SQLQueryCache.get(string, SQLQueryParser::doParse);
+    }
+
+    private static SQLQuery doParse(String string) throws QueryParseException {
         SQLQuery query = parse(new StringReader(string));
         query.setQueryString(string);
         return query;
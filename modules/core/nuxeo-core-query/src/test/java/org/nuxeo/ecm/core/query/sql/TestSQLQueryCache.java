@@ -0,0 +1,99 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.query.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.query.sql.model.Reference;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+
+/**
+ * @since 11.4
+ */
+public class TestSQLQueryCache {
+
+    protected SQLQueryCache cache;
+
+    @Before
+    public void installCache() {
+        cache = new SQLQueryCache(100);
+        SQLQueryCache.install(cache);
+    }
+
+    @After
+    public void uninstallCache() {
+        SQLQueryCache.install(null);
+    }
+
+    @Test
+    public void testCachedQueriesAreCopies() {
+        for (String string : TestQueryParser2.CANONICAL_QUERIES) {
+            SQLQuery query1 = SQLQueryParser.parse(string);
+            SQLQuery query2 = SQLQueryParser.parse(string);
+            assertNotSame(query1, query2);
+            assertEquals(string, query2.toString());
+            assertEquals(query1, query2);
+            assertEquals(string, query2.getQueryString());
+        }
+    }
+
+    @Test
+    public void testCachedQueryNotAffectedByCaller() {
+        String string = "SELECT dc:title FROM Document WHERE dc:title = 'foo' ORDER BY dc:title";
+        SQLQuery query = SQLQueryParser.parse(string);
+        query.select.add(new Reference("ecm:uuid"));
+        query.orderBy.elements.clear();
+        query.limit = 10;
+
+        SQLQuery again = SQLQueryParser.parse(string);
+        assertEquals(0, again.limit);
+        assertEquals(1, again.select.count());
+        assertEquals(1, again.orderBy.elements.size());
+    }
+
+    @Test
+    public void testHitsAndEviction() {
+        SQLQueryCache small = new SQLQueryCache(2);
+        SQLQueryCache.install(small);
+        SQLQueryParser.parse("SELECT * FROM Document");
+        SQLQueryParser.parse("SELECT * FROM Document");
+        assertEquals(1, small.getHits());
+        assertEquals(1, small.getMisses());
+
+        SQLQueryParser.parse("SELECT * FROM File");
+        SQLQueryParser.parse("SELECT * FROM Note");
+        // least recently used query evicted
+        assertEquals(2, small.size());
+        SQLQueryParser.parse("SELECT * FROM Document");
+        assertEquals(1, small.getHits());
+        assertEquals(4, small.getMisses());
+    }
+
+    @Test
+    public void testNoCacheInstalled() {
+        SQLQueryCache.install(null);
+        SQLQuery query = new SQLQuery();
+        assertSame(query, SQLQueryCache.get("SELECT * FROM Document", string -> query));
+        assertSame(query, SQLQueryCache.get("SELECT * FROM Document", string -> query));
+        assertEquals(0, cache.getMisses());
+    }
+
+}
@@ -54,6 +54,13 @@ public class DBSCachingConnection implements DBSConnection {
 
     private final Cache<String, String> childCache;
 
+    /**
+     * The repository-wide second-level cache, or {@code null} if not enabled.
+     *
+     * @since 11.4
+     */
+    private final DBSOffHeapStateCache offHeapCache;
+
     /**
      * The local invalidations, due to writes to this connection, that should be propagated to other connections (and
      * other cluster nodes) at post-commit time.
@@ -95,6 +102,7 @@ public class DBSCachingConnection implements DBSConnection {
             cache = repository.getCache();
             childCache = repository.getChildCache();
         }
+        offHeapCache = repository.getOffHeapCache();
         // local invalidations
         invalidationsPropagator = repository.getInvalidationsPropagator();
         if (invalidationsPropagator == null) {
@@ -152,10 +160,18 @@ public class DBSCachingConnection implements DBSConnection {
     @Override
     public State readState(String id) {
         State state = cache.getIfPresent(id);
+        if (state == null && offHeapCache != null) {
+            state = offHeapCache.get(id);
+            if (state != null) {
+                putInLocalCache(state);
+                return state;
+            }
+        }
         if (state == null) {
+            long[] stamp = offHeapStamp();
             state = connection.readState(id);
             if (state != null) {
-                putInCache(state);
+                putInCache(state, stamp);
             }
         }
         return state;
@@ -172,12 +188,22 @@ public class DBSCachingConnection implements DBSConnection {
         ImmutableMap<String, State> statesMap = cache.getAllPresent(ids);
         List<String> idsToRetrieve = new ArrayList<>(ids);
         idsToRetrieve.removeAll(statesMap.keySet());
+        Map<String, State> offHeapStatesMap;
+        if (offHeapCache != null && !idsToRetrieve.isEmpty()) {
+            offHeapStatesMap = offHeapCache.getAllPresent(idsToRetrieve);
+            idsToRetrieve.removeAll(offHeapStatesMap.keySet());
+            offHeapStatesMap.values().forEach(this::putInLocalCache);
+        } else {
+            offHeapStatesMap = Map.of();
+        }
         // Read missing states from repository
-        List<State> states = connection.readStates(idsToRetrieve);
+        long[] stamp = offHeapStamp();
+        List<State> states = idsToRetrieve.isEmpty() ? new ArrayList<>() : connection.readStates(idsToRetrieve);
         // Cache them
-        states.forEach(this::putInCache);
+        states.forEach(state -> putInCache(state, stamp));
         // Add previous cached one
         states.addAll(statesMap.values());
+        states.addAll(offHeapStatesMap.values());
         return states;
     }
 
@@ -195,14 +221,30 @@ public class DBSCachingConnection implements DBSConnection {
 
     @Override
     public void updateState(String id, StateDiff diff, ChangeTokenUpdater changeTokenUpdater) {
-        connection.updateState(id, diff, changeTokenUpdater);
-        invalidate(id);
+        try {
+            connection.updateState(id, diff, changeTokenUpdater);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public void updateStates(List<StateUpdate> updates) {
+        try {
+            connection.updateStates(updates);
+        } finally {
+            // some updates may have been applied even if others failed
+            updates.forEach(update -> invalidate(update.id));
+        }
     }
 
     @Override
     public void deleteStates(Set<String> ids) {
-        connection.deleteStates(ids);
-        invalidate(ids);
+        try {
+            connection.deleteStates(ids);
+        } finally {
+            invalidate(ids);
+        }
     }
 
     @Override
@@ -224,12 +266,37 @@ public class DBSCachingConnection implements DBSConnection {
                 }
             }
         }
+        long[] stamp = offHeapStamp();
         State state = connection.readChildState(parentId, name, ignored);
-        putInCache(state);
+        putInCache(state, stamp);
         return state;
     }
 
-    private void putInCache(State state) {
+    /**
+     * Gets the invalidation stamp of the off-heap cache, to be taken before reading from the database.
+     */
+    private long[] offHeapStamp() {
+        return offHeapCache == null ? null : offHeapCache.stamp();
+    }
+
+    private void putInCache(State state, long[] stamp) {
+        putInLocalCache(state);
+        if (offHeapCache != null && state != null) {
+            String stateId = state.get(KEY_ID).toString();
+            // don't share a state that may contain uncommitted writes from this connection
+            if (!isLocallyModified(stateId)) {
+                // rejected if invalidated since the read, it may be older than a concurrent commit
+                offHeapCache.put(stateId, state, stamp);
+            }
+        }
+    }
+
+    private boolean isLocallyModified(String id) {
+        return invalidations != null
+                && (invalidations.all || invalidations.ids != null && invalidations.ids.contains(id));
+    }
+
+    private void putInLocalCache(State state) {
         if (state != null) {
             String stateId = state.get(KEY_ID).toString();
             cache.put(stateId, state);
@@ -250,6 +317,9 @@ public class DBSCachingConnection implements DBSConnection {
 
     private void invalidate(Collection<String> ids) {
         cache.invalidateAll(ids);
+        if (offHeapCache != null) {
+            offHeapCache.invalidateAll(ids);
+        }
         if (invalidations != null) {
             invalidations.addAll(ids);
         }
@@ -257,6 +327,10 @@ public class DBSCachingConnection implements DBSConnection {
 
     protected void sendInvalidationsToOthers() {
         if (invalidations != null && !invalidations.isEmpty()) {
+            if (offHeapCache != null) {
+                // other connections may have cached the previously committed states since our writes
+                invalidateOffHeapCache(invalidations);
+            }
             if (clusterInvalidator != null) {
                 // send to other cluster nodes
                 clusterInvalidator.sendInvalidations(invalidations);
@@ -298,6 +372,17 @@ public class DBSCachingConnection implements DBSConnection {
             } else if (invals.ids != null) {
                 cache.invalidateAll(invals.ids);
             }
+            if (offHeapCache != null) {
+                invalidateOffHeapCache(invals);
+            }
+        }
+    }
+
+    protected void invalidateOffHeapCache(DBSInvalidations invals) {
+        if (invals.all) {
+            offHeapCache.invalidateAll();
+        } else if (invals.ids != null) {
+            offHeapCache.invalidateAll(invals.ids);
         }
     }
 
@@ -347,6 +432,12 @@ public class DBSCachingConnection implements DBSConnection {
         return connection.queryAndFetch(evaluator, orderByClause, distinctDocuments, limit, offset, countUpTo);
     }
 
+    @Override
+    public Stream<Map<String, Serializable>> queryAndFetchStream(DBSExpressionEvaluator evaluator,
+            OrderByClause orderByClause, boolean distinctDocuments) {
+        return connection.queryAndFetchStream(evaluator, orderByClause, distinctDocuments);
+    }
+
     @Override
     public ScrollResult<String> scroll(DBSExpressionEvaluator evaluator, int batchSize, int keepAliveSeconds) {
         return connection.scroll(evaluator, batchSize, keepAliveSeconds);
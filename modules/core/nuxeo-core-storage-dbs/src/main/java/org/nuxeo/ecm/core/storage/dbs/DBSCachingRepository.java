@@ -19,10 +19,13 @@
  */
 package org.nuxeo.ecm.core.storage.dbs;
 
+import java.nio.file.Path;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.nuxeo.common.Environment;
+import org.nuxeo.common.utils.SizeUtils;
 import org.nuxeo.ecm.core.api.Lock;
 import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.api.lock.LockManager;
@@ -54,12 +57,31 @@ public class DBSCachingRepository implements DBSRepository {
 
     protected static final String METRIC_CHILD_CACHE_NAME = "nuxeo.repositories.repository.childCache";
 
+    /** @since 11.4 */
+    protected static final String METRIC_OFF_HEAP_CACHE_NAME = "nuxeo.repositories.repository.offHeapCache";
+
+    /** @since 11.4 */
+    public static final String DEFAULT_OFF_HEAP_CACHE_MAX_SIZE = "256MB";
+
+    /** @since 11.4 */
+    public static final int DEFAULT_OFF_HEAP_CACHE_BLOCK_SIZE = 512;
+
+    /** @since 11.4 */
+    public static final int DEFAULT_OFF_HEAP_CACHE_CONCURRENCY_LEVEL = 16;
+
     private final DBSRepository repository;
 
     protected final Cache<String, State> cache;
 
     protected final Cache<String, String> childCache;
 
+    /**
+     * The repository-wide second-level cache shared by all connections, or {@code null} if not enabled.
+     *
+     * @since 11.4
+     */
+    protected final DBSOffHeapStateCache offHeapCache;
+
     protected final DBSRepositoryDescriptor descriptor;
 
     protected final DBSInvalidationsPropagator invalidationsPropagator;
@@ -81,6 +103,7 @@ public class DBSCachingRepository implements DBSRepository {
             cache = newCache(true);
             childCache = newChildCache(true);
         }
+        offHeapCache = descriptor.isOffHeapCacheEnabled() ? newOffHeapCache() : null;
         if (log.isInfoEnabled()) {
             log.info(String.format("DBS cache activated on '%s' repository", getName()));
         }
@@ -96,6 +119,11 @@ public class DBSCachingRepository implements DBSRepository {
         return childCache;
     }
 
+    /** @since 11.4 */
+    protected DBSOffHeapStateCache getOffHeapCache() {
+        return offHeapCache;
+    }
+
     protected DBSInvalidationsPropagator getInvalidationsPropagator() {
         return invalidationsPropagator;
     }
@@ -122,9 +150,30 @@ public class DBSCachingRepository implements DBSRepository {
         return c;
     }
 
+    /** @since 11.4 */
+    protected DBSOffHeapStateCache newOffHeapCache() {
+        long maxSize = SizeUtils.parseSizeInBytes(
+                descriptor.offHeapCacheMaxSize == null ? DEFAULT_OFF_HEAP_CACHE_MAX_SIZE
+                        : descriptor.offHeapCacheMaxSize);
+        int blockSize = descriptor.offHeapCacheBlockSize == null ? DEFAULT_OFF_HEAP_CACHE_BLOCK_SIZE
+                : descriptor.offHeapCacheBlockSize.intValue();
+        int concurrencyLevel = descriptor.cacheConcurrencyLevel == null ? DEFAULT_OFF_HEAP_CACHE_CONCURRENCY_LEVEL
+                : descriptor.cacheConcurrencyLevel.intValue();
+        Path file = null;
+        if (descriptor.isOffHeapCacheMapped()) {
+            file = Environment.getDefault().getData().toPath().resolve("dbs").resolve(getName() + "-cache.bin");
+        }
+        DBSOffHeapStateCache c = new DBSOffHeapStateCache(maxSize, blockSize, concurrencyLevel,
+                descriptor.cacheTTL.longValue(), file);
+        registry.registerAll(
+                c.getMetrics(MetricName.build(METRIC_OFF_HEAP_CACHE_NAME).tagged("repository", repository.getName())));
+        return c;
+    }
+
     protected void removeCacheMetrics() {
         registry.removeMatching((name, metric) -> name.getKey().startsWith(METRIC_CACHE_NAME)
-                || name.getKey().startsWith(METRIC_CHILD_CACHE_NAME));
+                || name.getKey().startsWith(METRIC_CHILD_CACHE_NAME)
+                || name.getKey().startsWith(METRIC_OFF_HEAP_CACHE_NAME));
     }
 
     protected <T> Cache<String, T> newCache(DBSRepositoryDescriptor descriptor) {
@@ -184,6 +233,9 @@ public class DBSCachingRepository implements DBSRepository {
             cache.invalidateAll();
             childCache.invalidateAll();
         }
+        if (offHeapCache != null) {
+            offHeapCache.close();
+        }
         removeCacheMetrics();
         if (log.isInfoEnabled()) {
             log.info(String.format("DBS cache deactivated on '%s' repository", getName()));
@@ -116,6 +116,20 @@ public interface DBSConnection extends AutoCloseable, LockManager {
      */
     void updateState(String id, StateDiff diff, ChangeTokenUpdater changeTokenUpdater);
 
+    /**
+     * Updates several documents.
+     * <p>
+     * The updates are independent from each other and may be applied in any order. If a change token condition fails
+     * for one of them, a {@link org.nuxeo.ecm.core.api.ConcurrentUpdateException ConcurrentUpdateException} is thrown,
+     * but the other updates may still have been applied.
+     *
+     * @param updates the updates, with at most one update per document
+     * @since 11.4
+     */
+    default void updateStates(List<StateUpdate> updates) {
+        updates.forEach(update -> updateState(update.id, update.diff, update.changeTokenUpdater));
+    }
+
     /**
      * Deletes a set of document.
      *
@@ -238,6 +252,23 @@ public interface DBSConnection extends AutoCloseable, LockManager {
     PartialList<Map<String, Serializable>> queryAndFetch(DBSExpressionEvaluator evaluator, OrderByClause orderByClause,
             boolean distinctDocuments, int limit, int offset, int countUpTo);
 
+    /**
+     * Queries the repository for documents matching the NXQL query, and returns a stream of the projected results.
+     * <p>
+     * The results are read from the backend as the stream is consumed when possible, the stream must be closed to
+     * release the underlying cursor.
+     *
+     * @param evaluator the map-based evaluator for the query
+     * @param orderByClause an ORDER BY clause
+     * @param distinctDocuments {@code true} if the projection should return a maximum of one row per document
+     * @return a stream of maps containing the NXQL projections requested
+     * @since 11.4
+     */
+    default Stream<Map<String, Serializable>> queryAndFetchStream(DBSExpressionEvaluator evaluator,
+            OrderByClause orderByClause, boolean distinctDocuments) {
+        return queryAndFetch(evaluator, orderByClause, distinctDocuments, 0, 0, 0).stream();
+    }
+
     /**
      * Executes the given query and returns the first batch of results containing id of documents, next batch must be
      * requested within the {@code keepAliveSeconds} delay.
@@ -287,4 +318,25 @@ public interface DBSConnection extends AutoCloseable, LockManager {
         NOT_IN, IN;
     }
 
+    /**
+     * An update to a document, for {@link #updateStates}.
+     *
+     * @since 11.4
+     */
+    class StateUpdate {
+
+        public final String id;
+
+        public final StateDiff diff;
+
+        /** How to get and update the change token (may be {@code null}). */
+        public final ChangeTokenUpdater changeTokenUpdater;
+
+        public StateUpdate(String id, StateDiff diff, ChangeTokenUpdater changeTokenUpdater) {
+            this.id = id;
+            this.diff = diff;
+            this.changeTokenUpdater = changeTokenUpdater;
+        }
+    }
+
 }
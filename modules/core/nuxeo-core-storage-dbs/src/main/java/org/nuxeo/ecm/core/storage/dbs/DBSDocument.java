@@ -131,6 +131,14 @@ public class DBSDocument extends BaseDocument<State> {
 
     public static final String KEY_READ_ACL = "ecm:racl";
 
+    /**
+     * Id of the Read ACL in the {@link DBSReadAclDictionary}, used instead of {@link #KEY_READ_ACL} when the dictionary
+     * is enabled.
+     *
+     * @since 11.4
+     */
+    public static final String KEY_READ_ACL_ID = "ecm:raclId";
+
     /** @since 11.1 */
     public static final String KEY_IS_RECORD = "ecm:isRecord";
 
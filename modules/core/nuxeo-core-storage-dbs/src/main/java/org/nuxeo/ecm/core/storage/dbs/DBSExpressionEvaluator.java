@@ -31,6 +31,7 @@ import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PRIMARY_TYPE;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_READ_ACL;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_READ_ACL_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.PROP_MAJOR_VERSION;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.PROP_MINOR_VERSION;
 
@@ -282,9 +283,37 @@ public class DBSExpressionEvaluator extends ExpressionEvaluator {
     // which reference index is being visited, reset / updated during each pass
     protected int refCount;
 
+    /**
+     * The Read ACL dictionary, or {@code null} if documents store their Read ACL directly.
+     *
+     * @since 11.4
+     */
+    protected final DBSReadAclDictionary readAclDictionary;
+
+    /**
+     * The Read ACL ids readable by the principals, resolved once per evaluator.
+     *
+     * @since 11.4
+     */
+    protected Set<Long> readableIds;
+
     public DBSExpressionEvaluator(DBSSession session, SQLQuery query, String[] principals,
             boolean fulltextSearchDisabled) {
+        this(session, query, principals, fulltextSearchDisabled,
+                DBSReadAclDictionary.isEnabled() ? DBSReadAclDictionary.getInstance(session.getRepositoryName())
+                        : null);
+    }
+
+    /**
+     * Constructs an evaluator checking security with the given Read ACL dictionary.
+     *
+     * @param readAclDictionary the Read ACL dictionary, or {@code null} if documents store their Read ACL directly
+     * @since 11.4
+     */
+    protected DBSExpressionEvaluator(DBSSession session, SQLQuery query, String[] principals,
+            boolean fulltextSearchDisabled, DBSReadAclDictionary readAclDictionary) {
         super(new DBSPathResolver(session), principals, fulltextSearchDisabled);
+        this.readAclDictionary = readAclDictionary;
         this.selectClause = query.select;
         this.expression = query.where.predicate;
         this.orderByClause = query.orderBy;
@@ -382,6 +411,14 @@ public class DBSExpressionEvaluator extends ExpressionEvaluator {
         if (principals == null) {
             return true;
         }
+        Long raclId = (Long) state.get(KEY_READ_ACL_ID);
+        if (raclId != null && readAclDictionary != null) {
+            if (readableIds == null) {
+                readableIds = readAclDictionary.getReadableIds(principals);
+            }
+            // an id created by another node since the dictionary was refreshed is checked individually
+            return readableIds.contains(raclId) || readAclDictionary.isReadable(raclId.longValue(), principals);
+        }
         String[] racl = (String[]) state.get(KEY_READ_ACL);
         if (racl == null) {
             log.error("NULL racl for " + state.get(KEY_ID));
@@ -0,0 +1,452 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.runtime.metrics.NuxeoMetricSet;
+
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricSet;
+
+/**
+ * A repository-wide second-level {@link State} cache storing serialized states outside of the Java heap, either in
+ * direct memory or in a memory-mapped file.
+ * <p>
+ * The storage is split into segments, each one with its own lock, its own LRU index and its own fixed-size blocks. A
+ * state is serialized with {@link DBSStateSerializer} into one or more blocks of its segment, the least recently used
+ * entries are evicted when there are not enough free blocks. The mapped file, if any, is recreated at startup as the
+ * cache content cannot be trusted after a restart (invalidations may have been missed).
+ * <p>
+ * Each segment counts its invalidations. A state read from the database must be put with the {@link #stamp()} taken
+ * before the read, so that it is rejected if an invalidation of its segment happened meanwhile: otherwise a state read
+ * before a concurrent commit could be cached after the invalidation of that commit and stay stale.
+ *
+ * @since 11.4
+ */
+public class DBSOffHeapStateCache implements Closeable {
+
+    private static final Log log = LogFactory.getLog(DBSOffHeapStateCache.class);
+
+    protected static final int MAX_SEGMENT_SIZE = 1 << 30;
+
+    protected final Segment[] segments;
+
+    protected final int blockSize;
+
+    protected final long ttlMillis;
+
+    protected final Path file;
+
+    protected final FileChannel channel;
+
+    protected final LongAdder hitCount = new LongAdder();
+
+    protected final LongAdder missCount = new LongAdder();
+
+    protected final LongAdder evictionCount = new LongAdder();
+
+    protected final LongAdder putCount = new LongAdder();
+
+    protected final LongAdder rejectCount = new LongAdder();
+
+    protected final LongAdder staleCount = new LongAdder();
+
+    /**
+     * Creates the cache.
+     *
+     * @param maxSize the total size in bytes of the storage
+     * @param blockSize the size in bytes of a storage block
+     * @param concurrencyLevel the minimum number of segments
+     * @param ttl the time to live of the entries, in minutes
+     * @param file the file to map, or {@code null} to use direct memory
+     */
+    public DBSOffHeapStateCache(long maxSize, int blockSize, int concurrencyLevel, long ttl, Path file) {
+        if (blockSize <= 0 || maxSize < blockSize) {
+            throw new IllegalArgumentException("Invalid off-heap cache size: " + maxSize + "/" + blockSize);
+        }
+        int nbSegments = Math.max(1, concurrencyLevel);
+        while (maxSize / nbSegments > MAX_SEGMENT_SIZE) {
+            nbSegments *= 2;
+        }
+        int blocksPerSegment = (int) Math.max(1, maxSize / nbSegments / blockSize);
+        int segmentSize = blocksPerSegment * blockSize;
+        this.blockSize = blockSize;
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(ttl);
+        this.file = file;
+        segments = new Segment[nbSegments];
+        try {
+            if (file == null) {
+                channel = null;
+                for (int i = 0; i < nbSegments; i++) {
+                    segments[i] = new Segment(ByteBuffer.allocateDirect(segmentSize), blocksPerSegment);
+                }
+            } else {
+                Files.createDirectories(file.getParent());
+                Files.deleteIfExists(file);
+                channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.SPARSE);
+                for (int i = 0; i < nbSegments; i++) {
+                    ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * segmentSize,
+                            segmentSize);
+                    segments[i] = new Segment(buffer, blocksPerSegment);
+                }
+            }
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot initialize off-heap state cache: " + file, e);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(String.format(
+                    "Off-heap state cache initialized with %d segments of %d blocks of %d bytes, file: %s", nbSegments,
+                    blocksPerSegment, blockSize, file));
+        }
+    }
+
+    protected int segmentIndex(String id) {
+        int h = id.hashCode();
+        h ^= h >>> 16;
+        return Math.floorMod(h, segments.length);
+    }
+
+    protected Segment segment(String id) {
+        return segments[segmentIndex(id)];
+    }
+
+    /**
+     * Gets a state from the cache.
+     *
+     * @return the state, or {@code null} if not present
+     */
+    public State get(String id) {
+        byte[] bytes = segment(id).get(id);
+        if (bytes == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return DBSStateSerializer.deserialize(bytes);
+    }
+
+    /**
+     * Gets the states present in the cache.
+     */
+    public Map<String, State> getAllPresent(Collection<String> ids) {
+        Map<String, State> states = new HashMap<>();
+        for (String id : ids) {
+            State state = get(id);
+            if (state != null) {
+                states.put(id, state);
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Gets the current invalidation generations, to be taken before reading states to put in the cache.
+     */
+    public long[] stamp() {
+        long[] stamp = new long[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            stamp[i] = segments[i].generation;
+        }
+        return stamp;
+    }
+
+    /**
+     * Puts a state in the cache, unconditionally.
+     */
+    public void put(String id, State state) {
+        put(id, state, null);
+    }
+
+    /**
+     * Puts a state in the cache, unless its segment has been invalidated since the given stamp.
+     *
+     * @param stamp the result of {@link #stamp()} taken before reading the state, or {@code null}
+     */
+    public void put(String id, State state, long[] stamp) {
+        int index = segmentIndex(id);
+        long generation = stamp == null ? -1 : stamp[index];
+        if (generation != -1 && segments[index].generation != generation) {
+            // fast path, don't serialize
+            staleCount.increment();
+            return;
+        }
+        byte[] bytes = DBSStateSerializer.serialize(state);
+        switch (segments[index].put(id, bytes, generation)) {
+        case PUT:
+            putCount.increment();
+            break;
+        case STALE:
+            staleCount.increment();
+            break;
+        default:
+            rejectCount.increment();
+        }
+    }
+
+    public void invalidate(String id) {
+        segment(id).remove(id);
+    }
+
+    public void invalidateAll(Collection<String> ids) {
+        ids.forEach(this::invalidate);
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /** Gets the number of entries. */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /** Gets the number of bytes used by the entries, including the unused part of their last block. */
+    public long usedBytes() {
+        long used = 0;
+        for (Segment segment : segments) {
+            used += segment.usedBlocks();
+        }
+        return used * blockSize;
+    }
+
+    /** Gets the total number of bytes available for the entries. */
+    public long capacity() {
+        long capacity = 0;
+        for (Segment segment : segments) {
+            capacity += segment.nbBlocks;
+        }
+        return capacity * blockSize;
+    }
+
+    /** Gets the ratio of reads that were hits, or {@link Double#NaN} if there was no read. */
+    public double hitRatio() {
+        long hits = hitCount.sum();
+        long requests = hits + missCount.sum();
+        return requests == 0 ? Double.NaN : (double) hits / requests;
+    }
+
+    public MetricSet getMetrics(MetricName name) {
+        NuxeoMetricSet metrics = new NuxeoMetricSet(name);
+        metrics.putGauge(this::size, "size");
+        metrics.putGauge(this::usedBytes, "bytes");
+        metrics.putGauge(this::capacity, "capacity");
+        metrics.putGauge(evictionCount::sum, "eviction", "count");
+        metrics.putGauge(hitCount::sum, "hit", "count");
+        metrics.putGauge(this::hitRatio, "hit", "ratio");
+        metrics.putGauge(missCount::sum, "miss", "count");
+        metrics.putGauge(() -> hitCount.sum() + missCount.sum(), "read", "count");
+        metrics.putGauge(putCount::sum, "put", "count");
+        metrics.putGauge(rejectCount::sum, "reject", "count");
+        metrics.putGauge(staleCount::sum, "stale", "count");
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Cannot delete off-heap state cache file: " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Releases the memory of a direct or mapped buffer without waiting for its garbage collection.
+     */
+    protected static void unmap(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(field.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // the buffer will be released by the garbage collector
+            log.debug("Cannot unmap off-heap state cache buffer", e);
+        }
+    }
+
+    protected enum PutResult {
+        PUT, STALE, TOO_BIG
+    }
+
+    protected static class Entry {
+
+        protected final int[] blocks;
+
+        protected final int length;
+
+        protected final long writeTime;
+
+        protected Entry(int[] blocks, int length, long writeTime) {
+            this.blocks = blocks;
+            this.length = length;
+            this.writeTime = writeTime;
+        }
+    }
+
+    protected class Segment {
+
+        // null once closed
+        protected ByteBuffer buffer;
+
+        /** Incremented on each invalidation, written under the segment lock. */
+        protected volatile long generation;
+
+        protected final int nbBlocks;
+
+        /** Stack of free block indexes. */
+        protected final int[] freeBlocks;
+
+        protected int freeCount;
+
+        /** Entries in access order, the eldest is the least recently used. */
+        protected final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        protected Segment(ByteBuffer buffer, int nbBlocks) {
+            this.buffer = buffer;
+            this.nbBlocks = nbBlocks;
+            freeBlocks = new int[nbBlocks];
+            for (int i = 0; i < nbBlocks; i++) {
+                freeBlocks[i] = nbBlocks - 1 - i;
+            }
+            freeCount = nbBlocks;
+        }
+
+        protected synchronized byte[] get(String id) {
+            Entry entry = entries.get(id);
+            if (entry == null || buffer == null) {
+                return null;
+            }
+            if (ttlMillis > 0 && System.currentTimeMillis() - entry.writeTime > ttlMillis) {
+                free(entries.remove(id));
+                return null;
+            }
+            byte[] bytes = new byte[entry.length];
+            ByteBuffer buf = buffer.duplicate();
+            int offset = 0;
+            for (int block : entry.blocks) {
+                int len = Math.min(blockSize, entry.length - offset);
+                buf.position(block * blockSize);
+                buf.get(bytes, offset, len);
+                offset += len;
+            }
+            return bytes;
+        }
+
+        protected synchronized PutResult put(String id, byte[] bytes, long expectedGeneration) {
+            if (buffer == null || expectedGeneration != -1 && generation != expectedGeneration) {
+                return PutResult.STALE;
+            }
+            free(entries.remove(id));
+            int needed = (bytes.length + blockSize - 1) / blockSize;
+            if (needed > nbBlocks) {
+                return PutResult.TOO_BIG;
+            }
+            Iterator<Entry> it = entries.values().iterator();
+            while (freeCount < needed) {
+                free(it.next());
+                it.remove();
+                evictionCount.increment();
+            }
+            int[] blocks = new int[needed];
+            ByteBuffer buf = buffer.duplicate();
+            int offset = 0;
+            for (int i = 0; i < needed; i++) {
+                int block = freeBlocks[--freeCount];
+                blocks[i] = block;
+                int len = Math.min(blockSize, bytes.length - offset);
+                buf.position(block * blockSize);
+                buf.put(bytes, offset, len);
+                offset += len;
+            }
+            entries.put(id, new Entry(blocks, bytes.length, System.currentTimeMillis()));
+            return PutResult.PUT;
+        }
+
+        protected synchronized void remove(String id) {
+            generation++;
+            free(entries.remove(id));
+        }
+
+        protected synchronized void clear() {
+            generation++;
+            entries.values().forEach(this::free);
+            entries.clear();
+        }
+
+        protected synchronized void close() {
+            clear();
+            if (buffer != null) {
+                unmap(buffer);
+                buffer = null;
+            }
+        }
+
+        protected synchronized int size() {
+            return entries.size();
+        }
+
+        protected synchronized int usedBlocks() {
+            return nbBlocks - freeCount;
+        }
+
+        protected void free(Entry entry) {
+            if (entry != null) {
+                for (int block : entry.blocks) {
+                    freeBlocks[freeCount++] = block;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,342 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.cluster.ClusterService;
+import org.nuxeo.runtime.kv.FileKeyValueStore;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.kv.MemKeyValueStore;
+
+/**
+ * Dictionary of the distinct Read ACLs of a repository.
+ * <p>
+ * Each distinct Read ACL (sorted set of principals having browse permission) is interned once and identified by a
+ * small integer, so that documents only store this id in {@link DBSDocument#KEY_READ_ACL_ID} and security filtering
+ * compares ids instead of principal arrays.
+ * <p>
+ * The dictionary is append-only and stored in a cluster-wide {@link KeyValueStore}: a sequence allocates ids, the
+ * principals of an id are stored under {@code id:<id>}, and the id of a set of principals under {@code set:<hash>}.
+ * Entries are immutable once written, so they're cached locally without invalidation, and indexed by principal. The ids
+ * created by other nodes are discovered by comparing the local high-water mark with the sequence. This is done in the
+ * background at most once per {@link #READ_ACL_DICTIONARY_REFRESH_INTERVAL_PROPERTY}, so that lookups never wait for
+ * the key/value store. Until then, an id unknown locally is loaded individually by {@link #isReadable}.
+ * <p>
+ * As documents reference the ids, the key/value store must be persistent, and shared by all nodes when clustering is
+ * enabled. This is checked when the repository starts.
+ *
+ * @since 11.4
+ */
+public class DBSReadAclDictionary {
+
+    private static final Log log = LogFactory.getLog(DBSReadAclDictionary.class);
+
+    public static final String READ_ACL_DICTIONARY_ENABLED_PROPERTY = "nuxeo.core.readacl.dictionary.enabled";
+
+    public static final String READ_ACL_DICTIONARY_ENABLED_DEFAULT = "false";
+
+    /**
+     * Delay after which an id allocated in the sequence but whose principals were never written is considered
+     * abandoned (its allocating node failed before writing it).
+     */
+    public static final String READ_ACL_DICTIONARY_MISSING_TIMEOUT_PROPERTY = //
+            "nuxeo.core.readacl.dictionary.missing.timeout";
+
+    public static final String READ_ACL_DICTIONARY_MISSING_TIMEOUT_DEFAULT = "60000"; // 1 min
+
+    /** Minimum delay between two refreshes of the ids created by other nodes. */
+    public static final String READ_ACL_DICTIONARY_REFRESH_INTERVAL_PROPERTY = //
+            "nuxeo.core.readacl.dictionary.refresh.interval";
+
+    public static final String READ_ACL_DICTIONARY_REFRESH_INTERVAL_DEFAULT = "1000"; // 1 s
+
+    protected static final String KV_STORE_PREFIX = "dbs-racl-";
+
+    protected static final String KEY_SEQUENCE = "seq";
+
+    protected static final String KEY_ID_PREFIX = "id:";
+
+    protected static final String KEY_SET_PREFIX = "set:";
+
+    /** Separator between principals in the stored value, principal names can't contain it. */
+    protected static final String SEPARATOR = "\n";
+
+    protected static final Map<String, DBSReadAclDictionary> DICTIONARIES = new ConcurrentHashMap<>();
+
+    protected final String repositoryName;
+
+    /** Local copy of the dictionary. */
+    protected final Map<Long, String[]> principalsById = new ConcurrentHashMap<>();
+
+    protected final Map<String, Long> idsByPrincipals = new ConcurrentHashMap<>();
+
+    /** Index of the ids whose Read ACL contains a principal. */
+    protected final Map<String, Set<Long>> idsByPrincipal = new ConcurrentHashMap<>();
+
+    /** Highest id checked in the local copy. */
+    protected long highWaterMark;
+
+    /** Ids below the high-water mark allocated but not written yet, with the time they were first found missing. */
+    protected final Map<Long, Long> missingIds = new HashMap<>();
+
+    protected final long missingTimeout;
+
+    protected final long refreshInterval;
+
+    /** Time of the last refresh, 0 if never refreshed. */
+    protected volatile long lastRefresh;
+
+    protected final AtomicBoolean refreshing = new AtomicBoolean();
+
+    protected DBSReadAclDictionary(String repositoryName) {
+        this.repositoryName = repositoryName;
+        missingTimeout = Long.parseLong(Framework.getProperty(READ_ACL_DICTIONARY_MISSING_TIMEOUT_PROPERTY,
+                READ_ACL_DICTIONARY_MISSING_TIMEOUT_DEFAULT));
+        refreshInterval = Long.parseLong(Framework.getProperty(READ_ACL_DICTIONARY_REFRESH_INTERVAL_PROPERTY,
+                READ_ACL_DICTIONARY_REFRESH_INTERVAL_DEFAULT));
+    }
+
+    /**
+     * Checks if documents store a Read ACL id instead of the Read ACL itself.
+     */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(
+                Framework.getProperty(READ_ACL_DICTIONARY_ENABLED_PROPERTY, READ_ACL_DICTIONARY_ENABLED_DEFAULT));
+    }
+
+    /**
+     * Gets the dictionary of a repository.
+     */
+    public static DBSReadAclDictionary getInstance(String repositoryName) {
+        return DICTIONARIES.computeIfAbsent(repositoryName, DBSReadAclDictionary::new);
+    }
+
+    /**
+     * Forgets the local copy of the dictionary of a repository, used when the repository is shut down.
+     */
+    public static void removeInstance(String repositoryName) {
+        DICTIONARIES.remove(repositoryName);
+    }
+
+    protected KeyValueStore getKeyValueStore() {
+        return Framework.getService(KeyValueService.class).getKeyValueStore(getKeyValueStoreName());
+    }
+
+    protected String getKeyValueStoreName() {
+        return KV_STORE_PREFIX + repositoryName;
+    }
+
+    /**
+     * Checks that the key/value store keeps the dictionary for as long as the documents referencing its ids.
+     * <p>
+     * A memory store loses the ids on restart, and a file store isn't visible from other cluster nodes, which would
+     * then allocate conflicting ids.
+     *
+     * @param inMemoryRepository whether the repository itself is in memory, in which case a memory store is enough
+     * @throws NuxeoException if the key/value store is not suitable
+     */
+    public void checkKeyValueStore(boolean inMemoryRepository) {
+        KeyValueStore kv = getKeyValueStore();
+        boolean clustered = Framework.getService(ClusterService.class).isEnabled();
+        String problem;
+        if (kv instanceof FileKeyValueStore) {
+            problem = clustered ? "is not shared by the cluster nodes" : null;
+        } else if (kv instanceof MemKeyValueStore) {
+            if (!inMemoryRepository) {
+                problem = "is not persistent";
+            } else {
+                problem = clustered ? "is not shared by the cluster nodes" : null;
+            }
+        } else {
+            problem = null;
+        }
+        if (problem != null) {
+            throw new NuxeoException("Read ACL dictionary is enabled for repository: " + repositoryName
+                    + " but its key/value store: " + getKeyValueStoreName() + " " + problem
+                    + ", configure a persistent shared store or disable " + READ_ACL_DICTIONARY_ENABLED_PROPERTY);
+        }
+    }
+
+    /**
+     * Gets the id of a Read ACL, creating it if needed.
+     *
+     * @param racl the sorted principals of the Read ACL
+     */
+    public long getId(String[] racl) {
+        String value = String.join(SEPARATOR, racl);
+        Long id = idsByPrincipals.get(value);
+        if (id != null) {
+            return id.longValue();
+        }
+        KeyValueStore kv = getKeyValueStore();
+        String setKey = KEY_SET_PREFIX + UUID.nameUUIDFromBytes(value.getBytes(UTF_8));
+        Long existing = kv.getLong(setKey);
+        if (existing == null) {
+            long newId = kv.addAndGet(KEY_SEQUENCE, 1);
+            // write the principals first so that an id is always resolvable once referenced
+            kv.put(KEY_ID_PREFIX + newId, value);
+            if (kv.compareAndSet(setKey, null, String.valueOf(newId))) {
+                existing = Long.valueOf(newId);
+            } else {
+                // concurrent creation, the id we allocated stays unused
+                existing = kv.getLong(setKey);
+            }
+        }
+        addLocal(existing, value);
+        return existing.longValue();
+    }
+
+    /**
+     * Gets the principals of a Read ACL id, or {@code null} if unknown.
+     */
+    public String[] getPrincipals(long id) {
+        Long key = Long.valueOf(id);
+        String[] principals = principalsById.get(key);
+        if (principals == null) {
+            String value = getKeyValueStore().getString(KEY_ID_PREFIX + id);
+            if (value == null) {
+                return null;
+            }
+            principals = addLocal(key, value);
+        }
+        return principals;
+    }
+
+    /**
+     * Gets the ids known locally of the Read ACLs granting browse to at least one of the given principals.
+     * <p>
+     * This is meant to be called once per query. The ids created by other nodes since the last refresh are missing, use
+     * {@link #isReadable} to check an id not in the result.
+     */
+    public Set<Long> getReadableIds(Set<String> principals) {
+        refreshIfStale();
+        Set<Long> ids = new HashSet<>();
+        for (String principal : principals) {
+            ids.addAll(idsByPrincipal.getOrDefault(principal, Collections.emptySet()));
+        }
+        return ids;
+    }
+
+    /**
+     * Checks if a Read ACL id grants browse to at least one of the given principals, loading it if unknown locally.
+     */
+    public boolean isReadable(long id, Set<String> principals) {
+        String[] racl = getPrincipals(id);
+        if (racl == null) {
+            return false;
+        }
+        for (String principal : racl) {
+            if (principals.contains(principal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Refreshes the dictionary if the refresh interval elapsed. The first refresh is synchronous, the next ones are
+     * done in the background.
+     */
+    protected void refreshIfStale() {
+        if (lastRefresh == 0) {
+            refresh();
+            return;
+        }
+        if (System.currentTimeMillis() - lastRefresh < refreshInterval || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        CompletableFuture.runAsync(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                log.error("Cannot refresh Read ACL dictionary of repository: " + repositoryName, e);
+            } finally {
+                refreshing.set(false);
+            }
+        });
+    }
+
+    /**
+     * Loads the ids allocated since the last refresh, possibly by other cluster nodes.
+     * <p>
+     * An id is allocated before its principals are written, so a refresh may find ids not written yet. They're checked
+     * again on the next refreshes, until found or until {@link #READ_ACL_DICTIONARY_MISSING_TIMEOUT_PROPERTY} elapses,
+     * after which the allocating node is assumed to have failed. As the principals are written before the id is
+     * published, an id that's never written is never referenced by documents.
+     */
+    protected synchronized void refresh() {
+        KeyValueStore kv = getKeyValueStore();
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<Long, Long>> it = missingIds.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Long, Long> es = it.next();
+            Long id = es.getKey();
+            String value = kv.getString(KEY_ID_PREFIX + id);
+            if (value != null) {
+                addLocal(id, value);
+                it.remove();
+            } else if (now - es.getValue().longValue() > missingTimeout) {
+                log.warn("Skipping Read ACL id: " + id + " of repository: " + repositoryName
+                        + ", allocated but never written");
+                it.remove();
+            }
+        }
+        Long seq = kv.getLong(KEY_SEQUENCE);
+        lastRefresh = now;
+        if (seq == null) {
+            return;
+        }
+        for (long id = highWaterMark + 1; id <= seq.longValue(); id++) {
+            Long key = Long.valueOf(id);
+            String value = kv.getString(KEY_ID_PREFIX + id);
+            if (value == null) {
+                // allocated but not written yet
+                missingIds.put(key, Long.valueOf(now));
+            } else {
+                addLocal(key, value);
+            }
+            highWaterMark = id;
+        }
+    }
+
+    protected String[] addLocal(Long id, String value) {
+        String[] principals = value.isEmpty() ? new String[0] : value.split(SEPARATOR);
+        if (principalsById.putIfAbsent(id, principals) == null) {
+            idsByPrincipals.putIfAbsent(value, id);
+            for (String principal : principals) {
+                idsByPrincipal.computeIfAbsent(principal, k -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+        }
+        return principals;
+    }
+
+}
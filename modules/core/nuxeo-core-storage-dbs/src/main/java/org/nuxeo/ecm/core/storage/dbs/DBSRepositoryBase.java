@@ -129,11 +129,23 @@ public abstract class DBSRepositoryBase implements DBSRepository {
         blobManager = Framework.getService(BlobManager.class);
         initBlobsPaths();
         initLockManager();
+        if (DBSReadAclDictionary.isEnabled()) {
+            DBSReadAclDictionary.getInstance(repositoryName).checkKeyValueStore(isInMemory());
+        }
     }
 
     /** Gets the allowed id types for this DBS repository. The first one is the default. */
     public abstract List<IdType> getAllowedIdTypes();
 
+    /**
+     * Checks if this repository only keeps its documents in memory.
+     *
+     * @since 11.4
+     */
+    protected boolean isInMemory() {
+        return false;
+    }
+
     /** @since 11.1 */
     public IdType getIdType() {
         return idType;
@@ -147,6 +159,7 @@ public abstract class DBSRepositoryBase implements DBSRepository {
                 lms.unregisterLockManager(getLockManagerName());
             }
         }
+        DBSReadAclDictionary.removeInstance(repositoryName);
     }
 
     @Override
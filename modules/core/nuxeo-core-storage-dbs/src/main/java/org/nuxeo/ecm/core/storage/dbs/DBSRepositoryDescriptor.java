@@ -131,6 +131,45 @@ public class DBSRepositoryDescriptor implements Cloneable {
     @XNode("cache@concurrencyLevel")
     public Integer cacheConcurrencyLevel;
 
+    /** @since 11.4 */
+    @XNode("cache/offHeap@enabled")
+    private Boolean offHeapCacheEnabled;
+
+    /** @since 11.4 */
+    public boolean isOffHeapCacheEnabled() {
+        return isCacheEnabled() && defaultFalse(offHeapCacheEnabled);
+    }
+
+    /** @since 11.4 */
+    protected void setOffHeapCacheEnabled(boolean enabled) {
+        offHeapCacheEnabled = Boolean.valueOf(enabled);
+    }
+
+    /**
+     * The total size of the off-heap cache, for instance {@code 512MB}.
+     *
+     * @since 11.4
+     */
+    @XNode("cache/offHeap@maxSize")
+    public String offHeapCacheMaxSize;
+
+    /** @since 11.4 */
+    @XNode("cache/offHeap@blockSize")
+    public Integer offHeapCacheBlockSize;
+
+    /**
+     * Whether the off-heap cache is backed by a memory-mapped file in the data directory instead of direct memory.
+     *
+     * @since 11.4
+     */
+    @XNode("cache/offHeap@mapped")
+    private Boolean offHeapCacheMapped;
+
+    /** @since 11.4 */
+    public boolean isOffHeapCacheMapped() {
+        return defaultFalse(offHeapCacheMapped);
+    }
+
     /** @since 8.10 */
     @XNode("clustering/invalidatorClass")
     public Class<? extends DBSClusterInvalidator> clusterInvalidatorClass;
@@ -197,6 +236,18 @@ public class DBSRepositoryDescriptor implements Cloneable {
         if (other.cacheConcurrencyLevel != null) {
             cacheConcurrencyLevel = other.cacheConcurrencyLevel;
         }
+        if (other.offHeapCacheEnabled != null) {
+            offHeapCacheEnabled = other.offHeapCacheEnabled;
+        }
+        if (other.offHeapCacheMaxSize != null) {
+            offHeapCacheMaxSize = other.offHeapCacheMaxSize;
+        }
+        if (other.offHeapCacheBlockSize != null) {
+            offHeapCacheBlockSize = other.offHeapCacheBlockSize;
+        }
+        if (other.offHeapCacheMapped != null) {
+            offHeapCacheMapped = other.offHeapCacheMapped;
+        }
         if (other.clusterInvalidatorClass != null) {
             clusterInvalidatorClass = other.clusterInvalidatorClass;
         }
@@ -66,6 +66,7 @@ import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_IDS;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_TARGET_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_VERSION_SERIES_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_READ_ACL;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_READ_ACL_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_RETAIN_UNTIL;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_VERSION_CREATED;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_VERSION_DESCRIPTION;
@@ -193,8 +194,17 @@ public class DBSSession extends BaseSession {
     protected boolean isLatestVersionDisabled = false;
 
     public DBSSession(DBSRepository repository) {
+        this(repository, repository.getConnection());
+    }
+
+    /**
+     * Creates a session using the given connection to the repository.
+     *
+     * @since 11.4
+     */
+    protected DBSSession(DBSRepository repository, DBSConnection connection) {
         super(repository);
-        transaction = new DBSTransactionState(repository, this);
+        transaction = new DBSTransactionState(repository, this, connection);
         FulltextConfiguration fulltextConfiguration = repository.getFulltextConfiguration();
         fulltextStoredInBlob = fulltextConfiguration != null && fulltextConfiguration.fulltextStoredInBlob;
         fulltextSearchDisabled = fulltextConfiguration == null || fulltextConfiguration.fulltextSearchDisabled;
@@ -343,6 +353,7 @@ public class DBSSession extends BaseSession {
             // sort children in order
             docStates.sort(POS_COMPARATOR);
         }
+        transaction.prefetchRelatedStates(docStates);
         List<Document> children = new ArrayList<>(docStates.size());
         for (DBSDocumentState docState : docStates) {
             try {
@@ -413,6 +424,7 @@ public class DBSSession extends BaseSession {
 
     protected List<Document> getDocuments(List<String> ids) {
         List<DBSDocumentState> docStates = transaction.getStatesForUpdate(ids);
+        transaction.prefetchRelatedStates(docStates);
         List<Document> docs = new ArrayList<>(ids.size());
         for (DBSDocumentState docState : docStates) {
             try {
@@ -683,6 +695,7 @@ public class DBSSession extends BaseSession {
         case KEY_PRIMARY_TYPE:
         case KEY_ACP:
         case KEY_READ_ACL:
+        case KEY_READ_ACL_ID:
             // these are version-specific
         case KEY_VERSION_CREATED:
         case KEY_VERSION_DESCRIPTION:
@@ -1531,7 +1544,119 @@ public class DBSSession extends BaseSession {
         if (!NXQL.NXQL.equals(queryType)) {
             throw new NuxeoException("No QueryMaker accepts query type: " + queryType);
         }
+        PreparedQuery prepared = prepareQuery(query, queryFilter, distinctDocuments, idKeyHolder);
+        int limit = prepared.limit;
+        int offset = prepared.offset;
+
+        int repoLimit;
+        int repoOffset;
+        OrderByClause repoOrderByClause;
+        OrderByClause orderByClause = prepared.orderByClause;
+        boolean postFilter = isOrderByPath(orderByClause);
+        if (postFilter) {
+            // we have to merge ordering and batching between memory and
+            // repository
+            repoLimit = 0;
+            repoOffset = 0;
+            repoOrderByClause = null;
+        } else {
+            // fast case, we can use the repository query directly
+            repoLimit = limit;
+            repoOffset = offset;
+            repoOrderByClause = orderByClause;
+        }
+
+        // query the repository
+        PartialList<Map<String, Serializable>> projections = transaction.queryAndFetch(prepared.evaluator,
+                repoOrderByClause, prepared.distinctDocuments, repoLimit, repoOffset, countUpTo);
+
+        projections.forEach(prepared::renameTag);
+
+        if (postFilter) {
+            // ORDER BY
+            if (orderByClause != null) {
+                doOrderBy(projections, orderByClause);
+            }
+            // LIMIT / OFFSET
+            if (limit != 0) {
+                int size = projections.size();
+                int fromIndex = offset > size ? size : offset;
+                int toIndex = fromIndex + limit > size ? size : fromIndex + limit;
+                projections = projections.subList(fromIndex, toIndex);
+            }
+        }
+
+        return projections;
+    }
+
+    /**
+     * Does a query and streams the projections from the repository cursor.
+     *
+     * @since 11.4
+     */
+    protected Stream<Map<String, Serializable>> doQueryAndFetchStream(String query, String queryType,
+            QueryFilter queryFilter, boolean distinctDocuments) {
+        if ("NXTAG".equals(queryType)) {
+            return Stream.empty();
+        }
+        if (!NXQL.NXQL.equals(queryType)) {
+            throw new NuxeoException("No QueryMaker accepts query type: " + queryType);
+        }
+        PreparedQuery prepared = prepareQuery(query, queryFilter, distinctDocuments, null);
+        if (isOrderByPath(prepared.orderByClause)) {
+            // ordering by path is done in memory, so we need all the results
+            return doQueryAndFetch(query, queryType, queryFilter, distinctDocuments, 0, null).stream();
+        }
+        Stream<Map<String, Serializable>> stream = transaction.queryAndFetchStream(prepared.evaluator,
+                prepared.orderByClause, prepared.distinctDocuments);
+        if (prepared.offset != 0) {
+            stream = stream.skip(prepared.offset);
+        }
+        if (prepared.limit != 0) {
+            stream = stream.limit(prepared.limit);
+        }
+        return stream.map(prepared::renameTag);
+    }
+
+    /**
+     * A query parsed and transformed, ready to be executed by the repository.
+     *
+     * @since 11.4
+     */
+    protected static class PreparedQuery {
+
+        protected DBSExpressionEvaluator evaluator;
+
+        protected OrderByClause orderByClause;
+
+        protected boolean distinctDocuments;
 
+        protected int limit;
+
+        protected int offset;
+
+        /** The requested tag projection, if any. */
+        protected String ecmTag;
+
+        /** The internal key under which the tag projection is returned by the repository. */
+        protected String keyTag;
+
+        /** Renames the tag projection returned by the repository to the requested one. */
+        protected Map<String, Serializable> renameTag(Map<String, Serializable> projection) {
+            if (projection.containsKey(keyTag)) {
+                projection.put(ecmTag, projection.remove(keyTag));
+            }
+            return projection;
+        }
+    }
+
+    /**
+     * Parses and transforms a NXQL query for execution by the repository.
+     *
+     * @since 11.4
+     */
+    protected PreparedQuery prepareQuery(String query, QueryFilter queryFilter, boolean distinctDocuments,
+            Mutable<String> idKeyHolder) {
         // transform the query according to the transformers defined by the
         // security policies
         SQLQuery sqlQuery = SQLQueryParser.parse(query);
@@ -1578,58 +1703,15 @@ public class DBSSession extends BaseSession {
         DBSExpressionEvaluator evaluator = new DBSExpressionEvaluator(this, sqlQuery, queryFilter.getPrincipals(),
                 fulltextSearchDisabled);
 
-        int limit = (int) queryFilter.getLimit();
-        int offset = (int) queryFilter.getOffset();
-        if (offset < 0) {
-            offset = 0;
-        }
-        if (limit < 0) {
-            limit = 0;
-        }
-
-        int repoLimit;
-        int repoOffset;
-        OrderByClause repoOrderByClause;
-        OrderByClause orderByClause = sqlQuery.orderBy;
-        boolean postFilter = isOrderByPath(orderByClause);
-        if (postFilter) {
-            // we have to merge ordering and batching between memory and
-            // repository
-            repoLimit = 0;
-            repoOffset = 0;
-            repoOrderByClause = null;
-        } else {
-            // fast case, we can use the repository query directly
-            repoLimit = limit;
-            repoOffset = offset;
-            repoOrderByClause = orderByClause;
-        }
-
-        // query the repository
-        PartialList<Map<String, Serializable>> projections = transaction.queryAndFetch(evaluator, repoOrderByClause,
-                distinctDocuments, repoLimit, repoOffset, countUpTo);
-
-        for (Map<String, Serializable> proj : projections) {
-            if (proj.containsKey(keyTag)) {
-                proj.put(ecmTag, proj.remove(keyTag));
-            }
-        }
-
-        if (postFilter) {
-            // ORDER BY
-            if (orderByClause != null) {
-                doOrderBy(projections, orderByClause);
-            }
-            // LIMIT / OFFSET
-            if (limit != 0) {
-                int size = projections.size();
-                int fromIndex = offset > size ? size : offset;
-                int toIndex = fromIndex + limit > size ? size : fromIndex + limit;
-                projections = projections.subList(fromIndex, toIndex);
-            }
-        }
-
-        return projections;
+        PreparedQuery prepared = new PreparedQuery();
+        prepared.evaluator = evaluator;
+        prepared.orderByClause = sqlQuery.orderBy;
+        prepared.distinctDocuments = distinctDocuments;
+        prepared.limit = Math.max((int) queryFilter.getLimit(), 0);
+        prepared.offset = Math.max((int) queryFilter.getOffset(), 0);
+        prepared.ecmTag = ecmTag;
+        prepared.keyTag = keyTag;
+        return prepared;
     }
 
     /** Does an ORDER BY clause include ecm:path */
@@ -1772,6 +1854,18 @@ public class DBSSession extends BaseSession {
         }
     }
 
+    @SuppressWarnings("resource") // Time.Context closed by stop()
+    @Override
+    public Stream<Map<String, Serializable>> queryProjectionStream(String query, String queryType,
+            QueryFilter queryFilter, boolean distinctDocuments, Object[] params) {
+        final Timer.Context timerContext = queryTimer.time();
+        try {
+            return doQueryAndFetchStream(query, queryType, queryFilter, distinctDocuments);
+        } finally {
+            timerContext.stop();
+        }
+    }
+
     @Override
     public ScrollResult<String> scroll(String query, int batchSize, int keepAliveSeconds) {
         SQLQuery sqlQuery = SQLQueryParser.parse(query);
@@ -1940,6 +2034,12 @@ public class DBSSession extends BaseSession {
         case ExpressionEvaluator.NXQL_ECM_PATH:
             return KEY_PATH_INTERNAL;
         case ExpressionEvaluator.NXQL_ECM_READ_ACL:
+            if (DBSReadAclDictionary.isEnabled()) {
+                // documents only store the id of their Read ACL
+                throw new QueryParseException(
+                        "Cannot query: " + name + " when the Read ACL dictionary is enabled, see: "
+                                + DBSReadAclDictionary.READ_ACL_DICTIONARY_ENABLED_PROPERTY);
+            }
             return KEY_READ_ACL;
         case NXQL.ECM_FULLTEXT_JOBID:
             return KEY_FULLTEXT_JOBID;
@@ -2048,6 +2148,7 @@ public class DBSSession extends BaseSession {
         case KEY_ANCESTOR_IDS:
         case KEY_BASE_VERSION_ID:
         case KEY_READ_ACL:
+        case KEY_READ_ACL_ID:
         case KEY_FULLTEXT_SIMPLE:
         case KEY_FULLTEXT_BINARY:
         case KEY_FULLTEXT_JOBID:
@@ -0,0 +1,348 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TimeZone;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.storage.State;
+
+/**
+ * Compact binary serialization of a {@link State}, used to store states outside of the Java heap.
+ * <p>
+ * Values are tagged with a single byte, integers and lengths are written as variable-length integers, and the keys are
+ * written only once per serialized state (subsequent occurrences, typically in lists of complex properties, are
+ * written as a reference to the first one). Values of unknown types fall back to Java serialization.
+ *
+ * @since 11.4
+ */
+public class DBSStateSerializer {
+
+    protected static final byte TAG_NULL = 0;
+
+    protected static final byte TAG_STRING = 1;
+
+    protected static final byte TAG_LONG = 2;
+
+    protected static final byte TAG_DOUBLE = 3;
+
+    protected static final byte TAG_TRUE = 4;
+
+    protected static final byte TAG_FALSE = 5;
+
+    protected static final byte TAG_CALENDAR = 6;
+
+    protected static final byte TAG_STATE = 7;
+
+    protected static final byte TAG_LIST = 8;
+
+    protected static final byte TAG_ARRAY = 9;
+
+    protected static final byte TAG_SERIALIZED = 10;
+
+    protected static final byte ARRAY_OBJECT = 0;
+
+    protected static final byte ARRAY_STRING = 1;
+
+    protected static final byte ARRAY_LONG = 2;
+
+    protected static final byte ARRAY_DOUBLE = 3;
+
+    protected static final byte ARRAY_BOOLEAN = 4;
+
+    protected static final byte ARRAY_CALENDAR = 5;
+
+    private DBSStateSerializer() {
+        // utility class
+    }
+
+    /**
+     * Serializes a state.
+     */
+    public static byte[] serialize(State state) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            new Writer(out).writeState(state);
+        } catch (IOException e) {
+            throw new NuxeoException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Deserializes a state previously serialized by {@link #serialize}.
+     */
+    public static State deserialize(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            return new Reader(in).readState();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new NuxeoException(e);
+        }
+    }
+
+    protected static class Writer {
+
+        protected final DataOutputStream out;
+
+        protected final Map<String, Integer> keys = new HashMap<>();
+
+        protected Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        protected void writeState(State state) throws IOException {
+            writeVarInt(state.size());
+            for (Entry<String, Serializable> en : state.entrySet()) {
+                writeKey(en.getKey());
+                writeValue(en.getValue());
+            }
+        }
+
+        protected void writeKey(String key) throws IOException {
+            Integer index = keys.get(key);
+            if (index == null) {
+                keys.put(key, Integer.valueOf(keys.size()));
+                writeVarInt(0);
+                writeString(key);
+            } else {
+                writeVarInt(index.intValue() + 1);
+            }
+        }
+
+        protected void writeValue(Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(TAG_NULL);
+            } else if (value instanceof String) {
+                out.writeByte(TAG_STRING);
+                writeString((String) value);
+            } else if (value instanceof Long) {
+                out.writeByte(TAG_LONG);
+                writeVarLong(((Long) value).longValue());
+            } else if (value instanceof Double) {
+                out.writeByte(TAG_DOUBLE);
+                out.writeDouble(((Double) value).doubleValue());
+            } else if (value instanceof Boolean) {
+                out.writeByte(((Boolean) value).booleanValue() ? TAG_TRUE : TAG_FALSE);
+            } else if (value.getClass() == GregorianCalendar.class) {
+                out.writeByte(TAG_CALENDAR);
+                Calendar cal = (Calendar) value;
+                writeVarLong(cal.getTimeInMillis());
+                writeString(cal.getTimeZone().getID());
+            } else if (value.getClass() == State.class) {
+                out.writeByte(TAG_STATE);
+                writeState((State) value);
+            } else if (value.getClass() == ArrayList.class) {
+                List<?> list = (List<?>) value;
+                out.writeByte(TAG_LIST);
+                writeVarInt(list.size());
+                for (Object v : list) {
+                    writeValue(v);
+                }
+            } else if (value instanceof Object[] && arrayType(value.getClass().getComponentType()) >= 0) {
+                Object[] array = (Object[]) value;
+                out.writeByte(TAG_ARRAY);
+                out.writeByte(arrayType(value.getClass().getComponentType()));
+                writeVarInt(array.length);
+                for (Object v : array) {
+                    writeValue(v);
+                }
+            } else {
+                out.writeByte(TAG_SERIALIZED);
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+                    oos.writeObject(value);
+                }
+                writeVarInt(baos.size());
+                baos.writeTo(out);
+            }
+        }
+
+        protected byte arrayType(Class<?> componentType) {
+            if (componentType == Object.class) {
+                return ARRAY_OBJECT;
+            } else if (componentType == String.class) {
+                return ARRAY_STRING;
+            } else if (componentType == Long.class) {
+                return ARRAY_LONG;
+            } else if (componentType == Double.class) {
+                return ARRAY_DOUBLE;
+            } else if (componentType == Boolean.class) {
+                return ARRAY_BOOLEAN;
+            } else if (componentType == Calendar.class) {
+                return ARRAY_CALENDAR;
+            } else {
+                return -1;
+            }
+        }
+
+        protected void writeString(String string) throws IOException {
+            byte[] bytes = string.getBytes(UTF_8);
+            writeVarInt(bytes.length);
+            out.write(bytes);
+        }
+
+        protected void writeVarInt(int value) throws IOException {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        protected void writeVarLong(long value) throws IOException {
+            // zigzag encoding so that small negative values stay small
+            long v = (value << 1) ^ (value >> 63);
+            while ((v & ~0x7FL) != 0) {
+                out.writeByte((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            out.writeByte((int) v);
+        }
+    }
+
+    protected static class Reader {
+
+        protected final DataInputStream in;
+
+        protected final List<String> keys = new ArrayList<>();
+
+        protected Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        protected State readState() throws IOException, ClassNotFoundException {
+            int size = readVarInt();
+            State state = new State(size);
+            for (int i = 0; i < size; i++) {
+                String key = readKey();
+                state.put(key, readValue());
+            }
+            return state;
+        }
+
+        protected String readKey() throws IOException {
+            int index = readVarInt();
+            if (index == 0) {
+                String key = readString();
+                keys.add(key);
+                return key;
+            }
+            return keys.get(index - 1);
+        }
+
+        protected Serializable readValue() throws IOException, ClassNotFoundException {
+            byte tag = in.readByte();
+            switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return readString();
+            case TAG_LONG:
+                return Long.valueOf(readVarLong());
+            case TAG_DOUBLE:
+                return Double.valueOf(in.readDouble());
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_CALENDAR:
+                long millis = readVarLong();
+                GregorianCalendar cal = new GregorianCalendar(TimeZone.getTimeZone(readString()));
+                cal.setTimeInMillis(millis);
+                return cal;
+            case TAG_STATE:
+                return readState();
+            case TAG_LIST:
+                int size = readVarInt();
+                ArrayList<Serializable> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue());
+                }
+                return list;
+            case TAG_ARRAY:
+                byte type = in.readByte();
+                Object[] array = newArray(type, readVarInt());
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = readValue();
+                }
+                return array;
+            case TAG_SERIALIZED:
+                byte[] bytes = new byte[readVarInt()];
+                in.readFully(bytes);
+                try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    return (Serializable) ois.readObject();
+                }
+            default:
+                throw new IOException("Unknown tag: " + tag);
+            }
+        }
+
+        protected Object[] newArray(byte type, int length) throws IOException {
+            switch (type) {
+            case ARRAY_OBJECT:
+                return new Object[length];
+            case ARRAY_STRING:
+                return new String[length];
+            case ARRAY_LONG:
+                return new Long[length];
+            case ARRAY_DOUBLE:
+                return new Double[length];
+            case ARRAY_BOOLEAN:
+                return new Boolean[length];
+            case ARRAY_CALENDAR:
+                return new Calendar[length];
+            default:
+                throw new IOException("Unknown array type: " + type);
+            }
+        }
+
+        protected String readString() throws IOException {
+            byte[] bytes = new byte[readVarInt()];
+            in.readFully(bytes);
+            return new String(bytes, UTF_8);
+        }
+
+        protected int readVarInt() throws IOException {
+            return (int) readVarLong();
+        }
+
+        protected long readVarLong() throws IOException {
+            long v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = in.readByte();
+                v |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (v >>> 1) ^ -(v & 1);
+        }
+    }
+
+}
@@ -47,6 +47,7 @@ import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_IDS;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_TARGET_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_VERSION_SERIES_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_READ_ACL;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_READ_ACL_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_SYS_CHANGE_TOKEN;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_VERSION_SERIES_ID;
 
@@ -63,6 +64,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 
 import org.apache.commons.logging.Log;
@@ -95,6 +97,7 @@ import org.nuxeo.ecm.core.storage.State.ListDiff;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
 import org.nuxeo.ecm.core.storage.StateHelper;
 import org.nuxeo.ecm.core.storage.dbs.DBSConnection.DBSQueryOperator;
+import org.nuxeo.ecm.core.storage.dbs.DBSConnection.StateUpdate;
 import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.WorkManager;
 import org.nuxeo.ecm.core.work.api.WorkManager.Scheduling;
@@ -123,7 +126,8 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
 
     /** Keys used when computing Read ACLs. */
     protected static final Set<String> READ_ACL_RECURSION_KEYS = new HashSet<>(
-            Arrays.asList(KEY_READ_ACL, KEY_ACP, KEY_IS_VERSION, KEY_VERSION_SERIES_ID, KEY_PARENT_ID));
+            Arrays.asList(KEY_READ_ACL, KEY_READ_ACL_ID, KEY_ACP, KEY_IS_VERSION, KEY_VERSION_SERIES_ID,
+                    KEY_PARENT_ID));
 
     public static final String READ_ACL_ASYNC_ENABLED_PROPERTY = "nuxeo.core.readacl.async.enabled";
 
@@ -133,6 +137,20 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
 
     public static final String READ_ACL_ASYNC_THRESHOLD_DEFAULT = "500";
 
+    /** @since 11.4 */
+    public static final String PREFETCH_RELATED_ENABLED_PROPERTY = "nuxeo.core.dbs.prefetch.related.enabled";
+
+    /** @since 11.4 */
+    public static final String PREFETCH_RELATED_ENABLED_DEFAULT = "true";
+
+    /**
+     * Maximum number of batched reads done by {@link #prefetchRelatedStates}: the related documents of the page, then
+     * the related documents of those (live documents of proxy targets and their ancestors).
+     *
+     * @since 11.4
+     */
+    protected static final int PREFETCH_RELATED_MAX_ROUNDS = 2;
+
     protected final DBSRepository repository;
 
     protected final DBSConnection connection;
@@ -142,6 +160,16 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
     /** Retrieved and created document state. */
     protected Map<String, DBSDocumentState> transientStates = new HashMap<>();
 
+    /**
+     * States read ahead by {@link #prefetchRelatedStates}, not yet transient.
+     * <p>
+     * They are only read from: a state is made transient (as a copy) when it's needed for update, and the cache is
+     * cleared when the transaction state writes to the repository.
+     *
+     * @since 11.4
+     */
+    protected final Map<String, State> prefetchedStates = new HashMap<>();
+
     /** Ids of documents created but not yet saved. */
     protected Set<String> transientCreated = new LinkedHashSet<>();
 
@@ -169,14 +197,38 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
 
     protected final boolean disableReadVersionPermission;
 
+    /** @since 11.4 */
+    protected final boolean prefetchRelated;
+
+    /**
+     * The Read ACL dictionary, or {@code null} if documents store their Read ACL directly.
+     *
+     * @since 11.4
+     */
+    protected final DBSReadAclDictionary readAclDictionary;
+
     public DBSTransactionState(DBSRepository repository, DBSSession session) {
+        this(repository, session, repository.getConnection());
+    }
+
+    /** @since 11.4 */
+    public DBSTransactionState(DBSRepository repository, DBSSession session, DBSConnection connection) {
         this.repository = repository;
-        this.connection = repository.getConnection();
+        this.connection = connection;
         this.session = session;
         SecurityService securityService = Framework.getService(SecurityService.class);
         browsePermissions = new HashSet<>(Arrays.asList(securityService.getPermissionsToCheck(BROWSE)));
         versionAclMode = VersionAclMode.getConfiguration();
         disableReadVersionPermission = BaseSession.isReadVersionPermissionDisabled();
+        prefetchRelated = Boolean.parseBoolean(
+                Framework.getProperty(PREFETCH_RELATED_ENABLED_PROPERTY, PREFETCH_RELATED_ENABLED_DEFAULT));
+        readAclDictionary = DBSReadAclDictionary.isEnabled() ? DBSReadAclDictionary.getInstance(repository.getName())
+                : null;
+    }
+
+    /** @since 11.4 */
+    public DBSReadAclDictionary getReadAclDictionary() {
+        return readAclDictionary;
     }
 
     /**
@@ -207,6 +259,7 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
         }
         DBSDocumentState docState = new DBSDocumentState(state); // copy
         transientStates.put(id, docState);
+        prefetchedStates.remove(id);
         return docState;
     }
 
@@ -220,8 +273,11 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
         if (docState != null) {
             return docState;
         }
-        // fetch from repository
-        State state = connection.readState(id);
+        // fetch from prefetched states or from repository
+        State state = prefetchedStates.remove(id);
+        if (state == null) {
+            state = connection.readState(id);
+        }
         return newTransientState(state);
     }
 
@@ -237,6 +293,10 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
         if (docState != null) {
             return docState.getState();
         }
+        State state = prefetchedStates.get(id);
+        if (state != null) {
+            return state;
+        }
         // fetch from repository
         return connection.readState(id);
     }
@@ -254,6 +314,11 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
             if (docState != null) {
                 continue;
             }
+            State state = prefetchedStates.remove(id);
+            if (state != null) {
+                newTransientState(state);
+                continue;
+            }
             // will have to fetch it
             idsToFetch.add(id);
         }
@@ -278,6 +343,71 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
         return docStates;
     }
 
+    /**
+     * Prefetches the documents needed to materialize the given documents: parents and ancestors (used to compute
+     * paths), proxy targets and live documents of versions and proxies.
+     * <p>
+     * The missing states are read with one {@link DBSConnection#readStates} call per round, so materializing a page of
+     * documents costs a constant number of backend queries instead of one per related document. They are kept in a
+     * read cache and only become transient if they are fetched for update.
+     *
+     * @since 11.4
+     */
+    public void prefetchRelatedStates(Collection<DBSDocumentState> docStates) {
+        if (!prefetchRelated) {
+            return;
+        }
+        Collection<State> current = new ArrayList<>(docStates.size());
+        for (DBSDocumentState docState : docStates) {
+            current.add(docState.getState());
+        }
+        for (int round = 0; round < PREFETCH_RELATED_MAX_ROUNDS && !current.isEmpty(); round++) {
+            Set<String> ids = new LinkedHashSet<>();
+            for (State state : current) {
+                collectRelatedIds(state, ids);
+            }
+            ids.removeAll(transientStates.keySet());
+            ids.removeAll(prefetchedStates.keySet());
+            if (ids.isEmpty()) {
+                break;
+            }
+            List<State> states = connection.readStates(new ArrayList<>(ids));
+            List<State> fetched = new ArrayList<>(states.size());
+            for (State state : states) {
+                String id = (String) state.get(KEY_ID);
+                if (!transientStates.containsKey(id)) {
+                    prefetchedStates.put(id, state);
+                    fetched.add(state);
+                }
+            }
+            current = fetched;
+        }
+    }
+
+    protected void collectRelatedIds(State docState, Set<String> ids) {
+        addId(ids, docState.get(KEY_PARENT_ID));
+        Object[] ancestorIds = (Object[]) docState.get(KEY_ANCESTOR_IDS);
+        if (ancestorIds != null) {
+            for (Object ancestorId : ancestorIds) {
+                addId(ids, ancestorId);
+            }
+        }
+        boolean isProxy = TRUE.equals(docState.get(KEY_IS_PROXY));
+        if (isProxy) {
+            addId(ids, docState.get(KEY_PROXY_TARGET_ID));
+            addId(ids, docState.get(KEY_PROXY_VERSION_SERIES_ID));
+        }
+        if (isProxy || TRUE.equals(docState.get(KEY_IS_VERSION))) {
+            addId(ids, docState.get(KEY_VERSION_SERIES_ID));
+        }
+    }
+
+    protected static void addId(Set<String> ids, Object id) {
+        if (id != null) {
+            ids.add((String) id);
+        }
+    }
+
     // XXX TODO for update or for read?
     public DBSDocumentState getChildState(String parentId, String name) {
         // check transient state
@@ -536,8 +666,11 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
 
         save(); // flush everything to the database
 
+        // parents' Read ACLs computed during this update, to avoid walking up the tree for each descendant
+        Map<String, Set<String>> inherited = new HashMap<>();
+
         // update the doc itself
-        updateDocumentReadAcls(id);
+        updateDocumentReadAcls(id, inherited);
 
         // check if we have a small enough number of descendants that we can process them synchronously
         int limit = getReadAclsAsyncThreshold();
@@ -547,7 +680,7 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
         }
         if (limit == 0 || ids.size() < limit) {
             // update all descendants synchronously
-            ids.forEach(this::updateDocumentReadAcls);
+            ids.forEach(descendantId -> updateDocumentReadAcls(descendantId, inherited));
         } else {
             // update the direct children synchronously, the rest asynchronously
 
@@ -560,7 +693,7 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
                     new Object[0]);
             for (Map<String, Serializable> map : pl) {
                 String childId = (String) map.get(NXQL.ECM_UUID);
-                updateDocumentReadAcls(childId);
+                updateDocumentReadAcls(childId, inherited);
             }
 
             // asynchronous work to do the whole tree
@@ -643,15 +776,39 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
      * itself (not the ancestors, needed for ACL inheritance and for which caching is useful).
      */
     public void updateReadACLs(Collection<String> docIds) {
-        docIds.forEach(id -> updateDocumentReadAclsNoCache(id));
+        Map<String, Set<String>> inherited = new HashMap<>();
+        docIds.forEach(id -> updateDocumentReadAclsNoCache(id, inherited));
     }
 
     /**
      * Updates the Read ACLs on a document (not recursively)
      */
     protected void updateDocumentReadAcls(String id) {
+        updateDocumentReadAcls(id, null);
+    }
+
+    /**
+     * Updates the Read ACLs on a document (not recursively), reusing the already computed Read ACLs of its parents.
+     *
+     * @since 11.4
+     */
+    protected void updateDocumentReadAcls(String id, Map<String, Set<String>> inherited) {
         DBSDocumentState docState = getStateForUpdate(id);
-        docState.put(KEY_READ_ACL, getReadACL(docState.getState()));
+        putReadACL(docState::put, getReadACL(docState.getState(), inherited));
+    }
+
+    /**
+     * Stores a Read ACL on a document, or its id in the dictionary if enabled.
+     *
+     * @since 11.4
+     */
+    protected void putReadACL(BiConsumer<String, Serializable> state, String[] racl) {
+        if (readAclDictionary == null) {
+            state.accept(KEY_READ_ACL, racl);
+        } else {
+            state.accept(KEY_READ_ACL, null);
+            state.accept(KEY_READ_ACL_ID, Long.valueOf(readAclDictionary.getId(racl)));
+        }
     }
 
     /**
@@ -661,18 +818,32 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
      * used.
      */
     protected void updateDocumentReadAclsNoCache(String id) {
+        updateDocumentReadAclsNoCache(id, null);
+    }
+
+    /**
+     * Updates the Read ACLs on a document, without polluting caches, reusing the already computed Read ACLs of its
+     * parents.
+     *
+     * @since 11.4
+     */
+    protected void updateDocumentReadAclsNoCache(String id, Map<String, Set<String>> inherited) {
         // no transient for state read, and we don't want to trash caches
         // fetch from repository only the properties needed for Read ACL computation and recursion
         State state = connection.readPartialState(id, READ_ACL_RECURSION_KEYS);
-        State oldState = new State(1);
+        State oldState = new State(2);
         oldState.put(KEY_READ_ACL, state.get(KEY_READ_ACL));
+        oldState.put(KEY_READ_ACL_ID, state.get(KEY_READ_ACL_ID));
         // compute new value
-        State newState = new State(1);
-        newState.put(KEY_READ_ACL, getReadACL(state));
+        State newState = new State(2);
+        newState.put(KEY_READ_ACL, state.get(KEY_READ_ACL));
+        newState.put(KEY_READ_ACL_ID, state.get(KEY_READ_ACL_ID));
+        putReadACL(newState::put, getReadACL(state, inherited));
         StateDiff diff = StateHelper.diff(oldState, newState);
         if (!diff.isEmpty()) {
             // no transient for state write, we write directly and just invalidate caches
             connection.updateState(id, diff, null);
+            prefetchedStates.remove(id);
         }
     }
 
@@ -680,6 +851,19 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
      * Gets the Read ACL (flat list of users having browse permission, including inheritance) on a document.
      */
     protected String[] getReadACL(State state) {
+        return getReadACL(state, null);
+    }
+
+    /**
+     * Gets the Read ACL (flat list of users having browse permission, including inheritance) on a document.
+     * <p>
+     * If a map of inherited Read ACLs is passed, the Read ACL of the parent is taken from it or computed and stored in
+     * it, so that computing the Read ACLs of many documents of the same subtree only walks up each ancestor once.
+     *
+     * @param inherited the Read ACLs of parents by id, or {@code null}
+     * @since 11.4
+     */
+    protected String[] getReadACL(State state, Map<String, Set<String>> inherited) {
         Set<String> racls = new HashSet<>();
         boolean replaceReadVersionPermission = false;
         if (TRUE.equals(state.get(KEY_IS_VERSION))) {
@@ -733,6 +917,16 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
             }
             String parentId = (String) state.get(parentKey);
             state = parentId == null ? null : getStateForRead(parentId);
+            if (state != null && inherited != null && !replaceReadVersionPermission) {
+                // the parent's Read ACL is all that remains to be inherited
+                Set<String> parentRacls = inherited.get(parentId);
+                if (parentRacls == null) {
+                    parentRacls = new HashSet<>(Arrays.asList(getReadACL(state, inherited)));
+                    inherited.put(parentId, parentRacls);
+                }
+                racls.addAll(parentRacls);
+                break;
+            }
         } while (state != null);
 
         // sort to have canonical order
@@ -789,6 +983,12 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
         return connection.queryAndFetch(evaluator, orderByClause, distinctDocuments, limit, offset, countUpTo);
     }
 
+    /** @since 11.4 */
+    public Stream<Map<String, Serializable>> queryAndFetchStream(DBSExpressionEvaluator evaluator,
+            OrderByClause orderByClause, boolean distinctDocuments) {
+        return connection.queryAndFetchStream(evaluator, orderByClause, distinctDocuments);
+    }
+
     /** @since 11.1 */
     public ScrollResult<String> scroll(DBSExpressionEvaluator evaluator, int batchSize, int keepAliveSeconds) {
         return connection.scroll(evaluator, batchSize, keepAliveSeconds);
@@ -845,6 +1045,7 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
         }
         for (String id : ids) {
             transientStates.remove(id);
+            prefetchedStates.remove(id);
         }
         connection.deleteStates(ids);
     }
@@ -859,6 +1060,8 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
      * An undo log is kept in order to rollback the transaction later if needed.
      */
     public void save() {
+        // the prefetched states may become stale once we write
+        prefetchedStates.clear();
         updateProxies();
         List<Work> works;
         if (!repository.isFulltextDisabled()) {
@@ -881,6 +1084,8 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
         if (!statesToCreate.isEmpty()) {
             connection.createStates(statesToCreate);
         }
+        List<StateUpdate> updates = new ArrayList<>();
+        List<DBSDocumentState> updatedDocStates = new ArrayList<>();
         for (DBSDocumentState docState : transientStates.values()) {
             String id = docState.getId();
             if (transientCreated.contains(id)) {
@@ -888,32 +1093,36 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
             }
             StateDiff diff = docState.getStateChange();
             if (diff != null) {
-                try {
-                    if (undoLog != null) {
-                        if (!undoLog.containsKey(id)) {
-                            undoLog.put(id, StateHelper.deepCopy(docState.getOriginalState()));
-                        }
-                        // else there's already a create or an update in the undo log so original info is enough
+                if (undoLog != null) {
+                    if (!undoLog.containsKey(id)) {
+                        undoLog.put(id, StateHelper.deepCopy(docState.getOriginalState()));
                     }
-                    ChangeTokenUpdater changeTokenUpdater;
-                    if (repository.isChangeTokenEnabled()) {
-                        // increment system change token
-                        Long base = (Long) docState.get(KEY_SYS_CHANGE_TOKEN);
-                        docState.put(KEY_SYS_CHANGE_TOKEN, DeltaLong.valueOf(base, 1));
-                        diff.put(KEY_SYS_CHANGE_TOKEN, DeltaLong.valueOf(base, 1));
-                        // update change token if applicable (user change)
-                        if (userChangeIds.contains(id)) {
-                            changeTokenUpdater = new ChangeTokenUpdater(docState);
-                        } else {
-                            changeTokenUpdater = null;
-                        }
+                    // else there's already a create or an update in the undo log so original info is enough
+                }
+                ChangeTokenUpdater changeTokenUpdater;
+                if (repository.isChangeTokenEnabled()) {
+                    // increment system change token
+                    Long base = (Long) docState.get(KEY_SYS_CHANGE_TOKEN);
+                    docState.put(KEY_SYS_CHANGE_TOKEN, DeltaLong.valueOf(base, 1));
+                    diff.put(KEY_SYS_CHANGE_TOKEN, DeltaLong.valueOf(base, 1));
+                    // update change token if applicable (user change)
+                    if (userChangeIds.contains(id)) {
+                        changeTokenUpdater = new ChangeTokenUpdater(docState);
                     } else {
                         changeTokenUpdater = null;
                     }
-                    connection.updateState(id, diff, changeTokenUpdater);
-                } finally {
-                    docState.setNotDirty();
+                } else {
+                    changeTokenUpdater = null;
                 }
+                updates.add(new StateUpdate(id, diff, changeTokenUpdater));
+                updatedDocStates.add(docState);
+            }
+        }
+        if (!updates.isEmpty()) {
+            try {
+                connection.updateStates(updates);
+            } finally {
+                updatedDocStates.forEach(DBSDocumentState::setNotDirty);
             }
         }
         transientCreated.clear();
@@ -1067,6 +1276,7 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
         case KEY_POS:
         case KEY_ACP:
         case KEY_READ_ACL:
+        case KEY_READ_ACL_ID:
             // these are proxy-specific
         case KEY_IS_PROXY:
         case KEY_PROXY_TARGET_ID:
@@ -1138,6 +1348,7 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
     protected void clearTransient() {
         transientStates.clear();
         transientCreated.clear();
+        prefetchedStates.clear();
     }
 
     /**
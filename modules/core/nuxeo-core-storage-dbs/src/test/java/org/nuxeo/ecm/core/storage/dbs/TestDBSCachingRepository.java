@@ -20,9 +20,11 @@ package org.nuxeo.ecm.core.storage.dbs;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -40,8 +42,10 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.ConcurrentUpdateException;
 import org.nuxeo.ecm.core.storage.State;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
+import org.nuxeo.ecm.core.storage.dbs.DBSConnection.StateUpdate;
 import org.nuxeo.runtime.cluster.ClusterFeature;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
@@ -138,6 +142,55 @@ public class TestDBSCachingRepository {
         verify(subConnection, times(2)).readState(eq(id));
     }
 
+    @Test
+    public void testUpdateStates() {
+        String id1 = "ID1";
+        String id2 = "ID2";
+
+        // First add the states in cache
+        connection.readState(id1);
+        connection.readState(id2);
+
+        // Second update them in one batch
+        List<StateUpdate> updates = Arrays.asList(new StateUpdate(id1, new StateDiff(), null),
+                new StateUpdate(id2, new StateDiff(), null));
+        connection.updateStates(updates);
+        verify(subConnection, times(1)).updateStates(eq(updates));
+
+        // Check states are no longer in cache
+        connection.readState(id1);
+        connection.readState(id2);
+        verify(subConnection, times(2)).readState(eq(id1));
+        verify(subConnection, times(2)).readState(eq(id2));
+    }
+
+    @Test
+    public void testUpdateStatesPartialFailure() {
+        String id1 = "ID1";
+        String id2 = "ID2";
+
+        // First add the states in cache
+        connection.readState(id1);
+        connection.readState(id2);
+
+        // Second update them in one batch, of which only some updates are applied
+        List<StateUpdate> updates = Arrays.asList(new StateUpdate(id1, new StateDiff(), null),
+                new StateUpdate(id2, new StateDiff(), null));
+        doThrow(new ConcurrentUpdateException(id2)).when(subConnection).updateStates(eq(updates));
+        try {
+            connection.updateStates(updates);
+            fail("should have failed");
+        } catch (ConcurrentUpdateException e) {
+            assertEquals(id2, e.getMessage());
+        }
+
+        // Check states are no longer in cache, the applied updates must not be hidden by stale states
+        connection.readState(id1);
+        connection.readState(id2);
+        verify(subConnection, times(2)).readState(eq(id1));
+        verify(subConnection, times(2)).readState(eq(id2));
+    }
+
     @Test
     public void testDeleteStates() {
         String id = "ID";
@@ -177,6 +230,34 @@ public class TestDBSCachingRepository {
         assertEquals(dbState, cachedState);
     }
 
+    @Test
+    public void testReadStateFromOffHeapCache() {
+        repository.shutdown();
+        DBSRepositoryDescriptor descriptor = newDBSRepositoryDescriptor();
+        descriptor.setOffHeapCacheEnabled(true);
+        descriptor.offHeapCacheMaxSize = "1MB";
+        repository = new DBSCachingRepository(mock(DBSRepository.class), descriptor);
+        connection = new DBSCachingConnection(subConnection, repository);
+        String id = "ID";
+
+        // First read - call sub repository
+        State dbState = connection.readState(id);
+        verify(subConnection, times(1)).readState(eq(id));
+        assertEquals(1, repository.getOffHeapCache().size());
+
+        // Second read after clearing the heap cache - call off-heap cache
+        repository.getCache().invalidateAll();
+        State cachedState = connection.readState(id);
+        verify(subConnection, times(1)).readState(eq(id));
+        assertEquals(dbState, cachedState);
+
+        // Update invalidates the off-heap cache too
+        connection.updateState(id, mock(StateDiff.class), null);
+        assertEquals(0, repository.getOffHeapCache().size());
+        connection.readState(id);
+        verify(subConnection, times(2)).readState(eq(id));
+    }
+
     private State newState(String id) {
         State state = new State();
         state.setSingle(KEY_ID, id);
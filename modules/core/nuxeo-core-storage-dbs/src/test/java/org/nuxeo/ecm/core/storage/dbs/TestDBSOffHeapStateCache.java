@@ -0,0 +1,179 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.State;
+
+public class TestDBSOffHeapStateCache {
+
+    protected static State newState(String id) {
+        State state = new State();
+        state.put(KEY_ID, id);
+        state.put("dc:title", "title of " + id);
+        return state;
+    }
+
+    @Test
+    public void testSerializeRoundTrip() {
+        State state = newState("id1");
+        state.put("long", Long.valueOf(-42));
+        state.put("double", Double.valueOf(1.5));
+        state.put("bool", Boolean.TRUE);
+        GregorianCalendar cal = new GregorianCalendar(TimeZone.getTimeZone("Europe/Paris"));
+        cal.setTimeInMillis(1234567890123L);
+        state.put("date", cal);
+        state.put("strings", new String[] { "a", "b" });
+        state.put("dates", new Calendar[] { cal });
+        state.put("decimal", new BigDecimal("1.25"));
+        State sub = new State();
+        sub.put("name", "foo");
+        state.put("complex", sub);
+        ArrayList<Serializable> list = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            State item = new State();
+            item.put("name", "item" + i);
+            item.put("length", Long.valueOf(i));
+            list.add(item);
+        }
+        state.put("list", list);
+
+        State copy = DBSStateSerializer.deserialize(DBSStateSerializer.serialize(state));
+        assertEquals(state.keySet(), copy.keySet());
+        assertEquals("id1", copy.get(KEY_ID));
+        assertEquals(Long.valueOf(-42), copy.get("long"));
+        assertEquals(Double.valueOf(1.5), copy.get("double"));
+        assertEquals(Boolean.TRUE, copy.get("bool"));
+        assertEquals(cal.getTimeInMillis(), ((Calendar) copy.get("date")).getTimeInMillis());
+        assertEquals(cal.getTimeZone(), ((Calendar) copy.get("date")).getTimeZone());
+        assertArrayEquals(new String[] { "a", "b" }, (String[]) copy.get("strings"));
+        assertTrue(copy.get("dates") instanceof Calendar[]);
+        assertEquals(new BigDecimal("1.25"), copy.get("decimal"));
+        assertEquals(sub, copy.get("complex"));
+        assertEquals(list, copy.get("list"));
+    }
+
+    @Test
+    public void testGetPutInvalidate() {
+        DBSOffHeapStateCache cache = new DBSOffHeapStateCache(64 * 1024, 64, 4, 10, null);
+        try {
+            assertNull(cache.get("id1"));
+            cache.put("id1", newState("id1"));
+            cache.put("id2", newState("id2"));
+            assertEquals(2, cache.size());
+            State state = cache.get("id1");
+            assertNotNull(state);
+            assertEquals("title of id1", state.get("dc:title"));
+            assertEquals(2, cache.getAllPresent(List.of("id1", "id2", "id3")).size());
+
+            cache.invalidate("id1");
+            assertNull(cache.get("id1"));
+            assertEquals(1, cache.size());
+            cache.invalidateAll();
+            assertEquals(0, cache.size());
+            assertEquals(0, cache.usedBytes());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testHitRatio() {
+        DBSOffHeapStateCache cache = new DBSOffHeapStateCache(64 * 1024, 64, 4, 10, null);
+        try {
+            // no read yet
+            assertTrue(Double.isNaN(cache.hitRatio()));
+            assertNull(cache.get("id1"));
+            assertEquals(0, cache.hitRatio(), 0);
+            cache.put("id1", newState("id1"));
+            assertNotNull(cache.get("id1"));
+            assertEquals(0.5, cache.hitRatio(), 0);
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testEviction() {
+        // a single segment of 8 blocks
+        DBSOffHeapStateCache cache = new DBSOffHeapStateCache(8 * 64, 64, 1, 10, null);
+        try {
+            for (int i = 0; i < 100; i++) {
+                cache.put("id" + i, newState("id" + i));
+            }
+            assertTrue(cache.size() > 0);
+            assertTrue(cache.usedBytes() <= cache.capacity());
+            // most recent entry is present, the oldest was evicted
+            assertNotNull(cache.get("id99"));
+            assertNull(cache.get("id0"));
+
+            // too large to fit
+            State big = newState("big");
+            big.put("data", "x".repeat(1024));
+            cache.put("big", big);
+            assertNull(cache.get("big"));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testStalePutIsRejected() {
+        DBSOffHeapStateCache cache = new DBSOffHeapStateCache(64 * 1024, 64, 4, 10, null);
+        try {
+            // a reader takes the stamp then reads the state from the database
+            long[] stamp = cache.stamp();
+            State old = newState("id1");
+            // a concurrent commit invalidates the state
+            cache.invalidate("id1");
+            // the state read before the commit must not be cached
+            cache.put("id1", old, stamp);
+            assertNull(cache.get("id1"));
+            // a state read after the invalidation is cached
+            cache.put("id1", newState("id1"), cache.stamp());
+            assertNotNull(cache.get("id1"));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testClose() {
+        DBSOffHeapStateCache cache = new DBSOffHeapStateCache(64 * 1024, 64, 4, 10, null);
+        cache.put("id1", newState("id1"));
+        cache.close();
+        // buffers are released, the cache is unusable but safe
+        assertNull(cache.get("id1"));
+        cache.put("id1", newState("id1"));
+        assertEquals(0, cache.size());
+    }
+
+}
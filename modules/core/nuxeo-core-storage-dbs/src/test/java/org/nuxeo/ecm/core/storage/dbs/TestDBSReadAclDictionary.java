@@ -0,0 +1,226 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.nuxeo.ecm.core.storage.ExpressionEvaluator.NXQL_ECM_READ_ACL;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_READ_ACL;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_READ_ACL_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSReadAclDictionary.KEY_ID_PREFIX;
+import static org.nuxeo.ecm.core.storage.dbs.DBSReadAclDictionary.KEY_SEQUENCE;
+import static org.nuxeo.ecm.core.storage.dbs.DBSReadAclDictionary.READ_ACL_DICTIONARY_ENABLED_PROPERTY;
+import static org.nuxeo.ecm.core.storage.dbs.DBSReadAclDictionary.READ_ACL_DICTIONARY_MISSING_TIMEOUT_PROPERTY;
+import static org.nuxeo.ecm.core.storage.dbs.DBSReadAclDictionary.READ_ACL_DICTIONARY_REFRESH_INTERVAL_PROPERTY;
+
+import java.util.Set;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.query.QueryParseException;
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.RuntimeFeature;
+import org.nuxeo.runtime.test.runner.WithFrameworkProperty;
+
+/**
+ * @since 11.4
+ */
+@RunWith(FeaturesRunner.class)
+@Features(RuntimeFeature.class)
+@Deploy("org.nuxeo.runtime.kv")
+@Deploy("org.nuxeo.runtime.cluster")
+@Deploy("org.nuxeo.ecm.core.schema")
+@Deploy("org.nuxeo.ecm.core.storage.dbs.tests:OSGI-INF/test-complex.xml")
+public class TestDBSReadAclDictionary {
+
+    protected static final String[] BOB = { "bob" };
+
+    protected static final String[] BOB_AND_MEMBERS = { "bob", "members" };
+
+    protected static final String[] ALICE = { "alice" };
+
+    // each test uses its own repository name, as the key/value stores outlive the test methods
+    protected static DBSReadAclDictionary newDictionary(String repositoryName) {
+        return new DBSReadAclDictionary(repositoryName);
+    }
+
+    @Test
+    public void testIdAllocation() {
+        DBSReadAclDictionary dictionary = newDictionary("allocation");
+        long bob = dictionary.getId(BOB);
+        long bobAndMembers = dictionary.getId(BOB_AND_MEMBERS);
+        assertNotEquals(bob, bobAndMembers);
+        assertEquals(bob, dictionary.getId(BOB));
+        assertArrayEquals(BOB_AND_MEMBERS, dictionary.getPrincipals(bobAndMembers));
+        assertNull(dictionary.getPrincipals(bobAndMembers + 1));
+
+        // another node shares the same ids
+        DBSReadAclDictionary other = newDictionary("allocation");
+        assertEquals(bobAndMembers, other.getId(BOB_AND_MEMBERS));
+        assertArrayEquals(BOB, other.getPrincipals(bob));
+    }
+
+    @Test
+    @WithFrameworkProperty(name = READ_ACL_DICTIONARY_REFRESH_INTERVAL_PROPERTY, value = "3600000")
+    public void testRefreshAcrossInstances() {
+        DBSReadAclDictionary dictionary = newDictionary("refresh");
+        DBSReadAclDictionary other = newDictionary("refresh");
+        assertEquals(Set.of(), other.getReadableIds(Set.of("bob")));
+
+        long bob = dictionary.getId(BOB);
+        long bobAndMembers = dictionary.getId(BOB_AND_MEMBERS);
+        long alice = dictionary.getId(ALICE);
+
+        // lookups don't wait for the key/value store until the next refresh
+        assertEquals(Set.of(), other.getReadableIds(Set.of("alice")));
+        // but unknown ids can be checked individually
+        assertTrue(other.isReadable(alice, Set.of("alice")));
+        assertFalse(other.isReadable(alice, Set.of("bob")));
+        assertEquals(Set.of(alice), other.getReadableIds(Set.of("alice")));
+
+        // the other instance discovers the new ids
+        other.refresh();
+        assertEquals(Set.of(bob, bobAndMembers), other.getReadableIds(Set.of("bob")));
+        assertEquals(Set.of(bobAndMembers), other.getReadableIds(Set.of("members")));
+        assertEquals(Set.of(bobAndMembers, alice), other.getReadableIds(Set.of("members", "alice")));
+    }
+
+    @Test
+    public void testRefreshSkipsUnwrittenIds() {
+        DBSReadAclDictionary dictionary = newDictionary("unwritten");
+        KeyValueStore kv = dictionary.getKeyValueStore();
+        // an id allocated by a node that hasn't written it yet
+        long pending = kv.addAndGet(KEY_SEQUENCE, 1);
+        long bob = dictionary.getId(BOB);
+
+        // ids allocated after the pending one are still visible
+        DBSReadAclDictionary other = newDictionary("unwritten");
+        assertEquals(Set.of(bob), other.getReadableIds(Set.of("bob")));
+        assertEquals(Set.of(pending), other.missingIds.keySet());
+
+        // once written, the pending id is loaded too
+        kv.put(KEY_ID_PREFIX + pending, "bob");
+        other.refresh();
+        assertEquals(Set.of(pending, bob), other.getReadableIds(Set.of("bob")));
+        assertTrue(other.missingIds.isEmpty());
+    }
+
+    @Test
+    @WithFrameworkProperty(name = READ_ACL_DICTIONARY_MISSING_TIMEOUT_PROPERTY, value = "0")
+    public void testRefreshAbandonsUnwrittenIds() throws InterruptedException {
+        DBSReadAclDictionary dictionary = newDictionary("abandoned");
+        dictionary.getKeyValueStore().addAndGet(KEY_SEQUENCE, 1);
+        dictionary.refresh();
+        assertEquals(1, dictionary.missingIds.size());
+        Thread.sleep(10);
+        dictionary.refresh();
+        assertTrue(dictionary.missingIds.isEmpty());
+    }
+
+    @Test
+    public void testCheckKeyValueStore() {
+        DBSReadAclDictionary dictionary = newDictionary("check");
+        // the default memory store is fine for an in-memory repository
+        dictionary.checkKeyValueStore(true);
+        try {
+            dictionary.checkKeyValueStore(false);
+            fail("memory store should be rejected for a persistent repository");
+        } catch (NuxeoException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("is not persistent"));
+        }
+    }
+
+    @Test
+    public void testQueryFiltering() {
+        DBSReadAclDictionary dictionary = newDictionary("query");
+        long bobAndMembers = dictionary.getId(BOB_AND_MEMBERS);
+        long alice = dictionary.getId(ALICE);
+        State bobDoc = new State();
+        bobDoc.put(KEY_ID, "id1");
+        bobDoc.put(KEY_NAME, "foo");
+        bobDoc.put(KEY_READ_ACL_ID, Long.valueOf(bobAndMembers));
+        State aliceDoc = new State();
+        aliceDoc.put(KEY_ID, "id2");
+        aliceDoc.put(KEY_NAME, "foo");
+        aliceDoc.put(KEY_READ_ACL_ID, Long.valueOf(alice));
+
+        SQLQuery query = SQLQueryParser.parse("SELECT ecm:uuid FROM D WHERE ecm:name = 'foo'");
+        DBSExpressionEvaluator evaluator = new DBSExpressionEvaluator(null, query, new String[] { "members" }, false,
+                dictionary);
+        evaluator.parse();
+        assertEquals(1, evaluator.matches(bobDoc).size());
+        assertEquals(0, evaluator.matches(aliceDoc).size());
+
+        evaluator = new DBSExpressionEvaluator(null, query, new String[] { "alice", "bob" }, false, dictionary);
+        evaluator.parse();
+        assertEquals(1, evaluator.matches(bobDoc).size());
+        assertEquals(1, evaluator.matches(aliceDoc).size());
+    }
+
+    @Test
+    @WithFrameworkProperty(name = READ_ACL_DICTIONARY_REFRESH_INTERVAL_PROPERTY, value = "3600000")
+    public void testQueryFilteringUnknownId() {
+        DBSReadAclDictionary dictionary = newDictionary("query-unknown");
+        dictionary.getId(BOB);
+        // created by another node after the dictionary was refreshed
+        long alice = newDictionary("query-unknown").getId(ALICE);
+        State aliceDoc = new State();
+        aliceDoc.put(KEY_ID, "id1");
+        aliceDoc.put(KEY_NAME, "foo");
+        aliceDoc.put(KEY_READ_ACL_ID, Long.valueOf(alice));
+
+        SQLQuery query = SQLQueryParser.parse("SELECT ecm:uuid FROM D WHERE ecm:name = 'foo'");
+        DBSExpressionEvaluator evaluator = new DBSExpressionEvaluator(null, query, new String[] { "alice" }, false,
+                dictionary);
+        evaluator.parse();
+        assertEquals(1, evaluator.matches(aliceDoc).size());
+        evaluator = new DBSExpressionEvaluator(null, query, new String[] { "bob" }, false, dictionary);
+        evaluator.parse();
+        assertEquals(0, evaluator.matches(aliceDoc).size());
+    }
+
+    @Test
+    public void testReadAclQueryWithoutDictionary() {
+        assertEquals(KEY_READ_ACL, DBSSession.convToInternal(NXQL_ECM_READ_ACL));
+    }
+
+    @Test
+    @WithFrameworkProperty(name = READ_ACL_DICTIONARY_ENABLED_PROPERTY, value = "true")
+    public void testReadAclQueryRejectedWithDictionary() {
+        // documents don't store their Read ACL, a query on it would silently match nothing
+        try {
+            DBSSession.convToInternal(NXQL_ECM_READ_ACL);
+            fail("query on the Read ACL should be rejected");
+        } catch (QueryParseException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(READ_ACL_DICTIONARY_ENABLED_PROPERTY));
+        }
+    }
+
+}
@@ -366,6 +366,23 @@ public class MemConnection extends DBSConnectionBase {
         return new PartialList<>(projections, totalSize);
     }
 
+    @Override
+    public Stream<Map<String, Serializable>> queryAndFetchStream(DBSExpressionEvaluator evaluator,
+            OrderByClause orderByClause, boolean distinctDocuments) {
+        if (orderByClause != null) {
+            // sorting needs all the projections
+            return queryAndFetch(evaluator, orderByClause, distinctDocuments, 0, 0, 0).stream();
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("Mem: QUERY " + evaluator);
+        }
+        evaluator.parse();
+        return states.values().stream().flatMap(state -> {
+            List<Map<String, Serializable>> matches = evaluator.matches(state);
+            return distinctDocuments ? matches.stream().limit(1) : matches.stream();
+        });
+    }
+
     @Override
     public ScrollResult<String> scroll(DBSExpressionEvaluator evaluator, int batchSize, int keepAliveSeconds) {
         if (log.isTraceEnabled()) {
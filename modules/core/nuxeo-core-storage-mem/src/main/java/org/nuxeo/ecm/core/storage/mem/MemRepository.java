@@ -74,6 +74,11 @@ public class MemRepository extends DBSRepositoryBase {
         return Collections.singletonList(IdType.varchar);
     }
 
+    @Override
+    protected boolean isInMemory() {
+        return true;
+    }
+
     @Override
     public void shutdown() {
         super.shutdown();
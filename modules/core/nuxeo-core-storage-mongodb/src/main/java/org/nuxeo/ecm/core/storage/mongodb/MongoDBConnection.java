@@ -40,6 +40,7 @@ import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PRIMARY_TYPE;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_TARGET_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_VERSION_SERIES_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_READ_ACL;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_READ_ACL_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_RETAIN_UNTIL;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_VERSION_SERIES_ID;
 import static org.nuxeo.ecm.core.storage.mongodb.MongoDBRepository.COUNTER_FIELD;
@@ -86,6 +87,7 @@ import org.nuxeo.ecm.core.storage.State.StateDiff;
 import org.nuxeo.ecm.core.storage.dbs.DBSConnection;
 import org.nuxeo.ecm.core.storage.dbs.DBSConnectionBase;
 import org.nuxeo.ecm.core.storage.dbs.DBSExpressionEvaluator;
+import org.nuxeo.ecm.core.storage.dbs.DBSReadAclDictionary;
 import org.nuxeo.ecm.core.storage.dbs.DBSRepositoryBase;
 import org.nuxeo.ecm.core.storage.dbs.DBSRepositoryBase.IdType;
 import org.nuxeo.ecm.core.storage.dbs.DBSStateFlattener;
@@ -96,11 +98,13 @@ import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoExecutionTimeoutException;
 import com.mongodb.MongoWriteException;
 import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.ClientSession;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.CountOptions;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
@@ -108,7 +112,9 @@ import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Indexes;
 import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 import org.nuxeo.runtime.mongodb.MongoDBOperators;
@@ -226,6 +232,7 @@ public class MongoDBConnection extends DBSConnectionBase {
         coll.createIndex(Indexes.ascending(KEY_PROXY_TARGET_ID));
         coll.createIndex(Indexes.ascending(KEY_PROXY_VERSION_SERIES_ID));
         coll.createIndex(Indexes.ascending(KEY_READ_ACL));
+        coll.createIndex(Indexes.ascending(KEY_READ_ACL_ID));
         IndexOptions parentNameIndexOptions = new IndexOptions();
         if (descriptor != null) {
             parentNameIndexOptions.unique(Boolean.TRUE.equals(descriptor.getChildNameUniqueConstraintEnabled()));
@@ -475,25 +482,7 @@ public class MongoDBConnection extends DBSConnectionBase {
     public void updateState(String id, StateDiff diff, ChangeTokenUpdater changeTokenUpdater) {
         List<Document> updates = converter.diffToBson(diff);
         for (Document update : updates) {
-            Document filter = new Document();
-            converter.putToBson(filter, KEY_ID, id);
-            if (changeTokenUpdater == null) {
-                log.trace("MongoDB: UPDATE {}: {}", id, update);
-            } else {
-                // assume bson is identical to dbs internals
-                // condition works even if value is null
-                Map<String, Serializable> conditions = changeTokenUpdater.getConditions();
-                Map<String, Serializable> tokenUpdates = changeTokenUpdater.getUpdates();
-                if (update.containsKey(MONGODB_SET)) {
-                    ((Document) update.get(MONGODB_SET)).putAll(tokenUpdates);
-                } else {
-                    Document set = new Document();
-                    set.putAll(tokenUpdates);
-                    update.put(MONGODB_SET, set);
-                }
-                log.trace("MongoDB: UPDATE {}: IF {} THEN {}", id, conditions, update);
-                filter.putAll(conditions);
-            }
+            Document filter = getUpdateFilter(id, update, changeTokenUpdater);
             try {
                 UpdateResult w = updateMany(filter, update);
                 if (w.getModifiedCount() != 1) {
@@ -510,6 +499,96 @@ public class MongoDBConnection extends DBSConnectionBase {
         }
     }
 
+    /**
+     * Gets the filter for an update of a document, and adds the change token update to the update if needed.
+     */
+    protected Document getUpdateFilter(String id, Document update, ChangeTokenUpdater changeTokenUpdater) {
+        Document filter = new Document();
+        converter.putToBson(filter, KEY_ID, id);
+        if (changeTokenUpdater == null) {
+            log.trace("MongoDB: UPDATE {}: {}", id, update);
+        } else {
+            // assume bson is identical to dbs internals
+            // condition works even if value is null
+            Map<String, Serializable> conditions = changeTokenUpdater.getConditions();
+            Map<String, Serializable> tokenUpdates = changeTokenUpdater.getUpdates();
+            if (update.containsKey(MONGODB_SET)) {
+                ((Document) update.get(MONGODB_SET)).putAll(tokenUpdates);
+            } else {
+                Document set = new Document();
+                set.putAll(tokenUpdates);
+                update.put(MONGODB_SET, set);
+            }
+            log.trace("MongoDB: UPDATE {}: IF {} THEN {}", id, conditions, update);
+            filter.putAll(conditions);
+        }
+        return filter;
+    }
+
+    /**
+     * Updates the documents using unordered bulk writes.
+     * <p>
+     * A diff may need several successive MongoDB updates for a single document (see
+     * {@link MongoDBConverter#diffToBson}), so the updates are sent in rounds: the first update of each document, then
+     * the second update of the documents needing one, etc. Within a round each document appears at most once, so the
+     * order of execution does not matter.
+     */
+    @Override
+    public void updateStates(List<StateUpdate> updates) {
+        if (updates.size() == 1) {
+            StateUpdate update = updates.get(0);
+            updateState(update.id, update.diff, update.changeTokenUpdater);
+            return;
+        }
+        List<List<Document>> bsonUpdates = updates.stream()
+                                                  .map(update -> converter.diffToBson(update.diff))
+                                                  .collect(Collectors.toList());
+        for (int round = 0;; round++) {
+            List<UpdateOneModel<Document>> models = new ArrayList<>();
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < updates.size(); i++) {
+                List<Document> docUpdates = bsonUpdates.get(i);
+                if (round >= docUpdates.size()) {
+                    continue;
+                }
+                StateUpdate update = updates.get(i);
+                Document bsonUpdate = docUpdates.get(round);
+                Document filter = getUpdateFilter(update.id, bsonUpdate, update.changeTokenUpdater);
+                models.add(new UpdateOneModel<>(filter, bsonUpdate));
+                ids.add(update.id);
+            }
+            if (models.isEmpty()) {
+                break;
+            }
+            bulkUpdate(models, ids);
+        }
+    }
+
+    protected void bulkUpdate(List<UpdateOneModel<Document>> models, List<String> ids) {
+        BulkWriteResult w;
+        try {
+            w = bulkWrite(models);
+        } catch (MongoBulkWriteException mbwe) {
+            List<BulkWriteError> errors = mbwe.getWriteErrors();
+            if (errors.stream().allMatch(wr -> DUPLICATE_KEY.equals(fromErrorCode(wr.getCode())))) {
+                log.trace("MongoDB:    -> DUPLICATE KEY: {}", errors);
+                var concurrentUpdateException = new ConcurrentUpdateException("Concurrent update");
+                errors.forEach(
+                        wr -> concurrentUpdateException.addInfo(ids.get(wr.getIndex()) + ": " + wr.getMessage()));
+                throw concurrentUpdateException;
+            }
+            throw mbwe;
+        }
+        if (w.getModifiedCount() != models.size()) {
+            // unordered bulk results don't tell which documents were not matched
+            log.trace("MongoDB:    -> CONCURRENT UPDATE: {} modified out of {}", w.getModifiedCount(), ids);
+            var concurrentUpdateException = new ConcurrentUpdateException("Concurrent update");
+            concurrentUpdateException.addInfo(
+                    "Modified " + w.getModifiedCount() + " documents out of " + models.size() + ": " + ids);
+            throw concurrentUpdateException;
+        }
+    }
+
     @Override
     public void deleteStates(Set<String> ids) {
         Bson filter = converter.filterIn(KEY_ID, ids);
@@ -807,6 +886,53 @@ public class MongoDBConnection extends DBSConnectionBase {
         return new PartialList<>(projections, totalSize);
     }
 
+    @Override
+    public Stream<Map<String, Serializable>> queryAndFetchStream(DBSExpressionEvaluator evaluator,
+            OrderByClause orderByClause, boolean distinctDocuments) {
+        MongoDBRepositoryQueryBuilder builder = new MongoDBRepositoryQueryBuilder((MongoDBRepository) repository,
+                evaluator.getExpression(), evaluator.getSelectClause(), orderByClause, evaluator.pathResolver,
+                evaluator.fulltextSearchDisabled);
+        builder.walk();
+        if (builder.hasFulltext && repository.isFulltextSearchDisabled()) {
+            throw new QueryParseException("Fulltext search disabled by configuration");
+        }
+        Document filter = builder.getQuery();
+        addPrincipals(filter, evaluator.principals);
+        Bson orderBy = builder.getOrderBy();
+        Bson keys = builder.getProjection();
+        boolean manualProjection = !distinctDocuments && builder.hasProjectionWildcard();
+        if (manualProjection) {
+            keys = null;
+            evaluator.parse();
+        }
+
+        logQuery(filter, keys, orderBy, 0, 0);
+
+        boolean completedAbruptly = true;
+        MongoCursor<Document> cursor = find(filter).projection(keys).sort(orderBy).iterator();
+        try {
+            DBSStateFlattener flattener = new DBSStateFlattener(builder.propertyKeys);
+            Stream<State> states = StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, 0), false)
+                                                .onClose(cursor::close)
+                                                .map(converter::bsonToState);
+            Stream<Map<String, Serializable>> stream;
+            if (manualProjection) {
+                stream = states.flatMap(state -> evaluator.matches(state).stream());
+            } else {
+                stream = states.map(flattener::flatten);
+            }
+            // the stream takes responsibility for closing the cursor
+            completedAbruptly = false;
+            return stream;
+        } catch (MongoExecutionTimeoutException e) {
+            throw newQueryTimeout(e, filter); // NOSONAR (cursor is not leaked)
+        } finally {
+            if (completedAbruptly) {
+                cursor.close();
+            }
+        }
+    }
+
     @SuppressWarnings("resource") // cursor is being registered, must not be closed
     @Override
     public ScrollResult<String> scroll(DBSExpressionEvaluator evaluator, int batchSize, int keepAliveSeconds) {
@@ -846,7 +972,11 @@ public class MongoDBConnection extends DBSConnectionBase {
     }
 
     protected void addPrincipals(Document query, Set<String> principals) {
-        if (principals != null) {
+        if (principals != null && DBSReadAclDictionary.isEnabled()) {
+            // resolved in memory, the ids created by other nodes are seen once the dictionary is refreshed
+            Set<Long> readableIds = DBSReadAclDictionary.getInstance(repository.getName()).getReadableIds(principals);
+            query.put(KEY_READ_ACL_ID, new Document(MongoDBOperators.IN, new ArrayList<>(readableIds)));
+        } else if (principals != null) {
             Document inPrincipals = new Document(MongoDBOperators.IN, new ArrayList<>(principals));
             query.put(KEY_READ_ACL, inPrincipals);
         }
@@ -989,6 +1119,15 @@ public class MongoDBConnection extends DBSConnectionBase {
         }
     }
 
+    protected BulkWriteResult bulkWrite(List<? extends WriteModel<Document>> requests) {
+        BulkWriteOptions options = new BulkWriteOptions().ordered(false);
+        if (transactionStarted) {
+            return coll.bulkWrite(clientSession, requests, options);
+        } else {
+            return coll.bulkWrite(requests, options);
+        }
+    }
+
     protected DeleteResult deleteMany(Bson filter) {
         if (transactionStarted) {
             return coll.deleteMany(clientSession, filter);
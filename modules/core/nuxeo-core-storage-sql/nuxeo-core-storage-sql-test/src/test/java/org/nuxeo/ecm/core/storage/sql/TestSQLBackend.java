@@ -78,10 +78,16 @@ import org.nuxeo.ecm.core.storage.sql.coremodel.SQLRepositoryService;
 import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCConnection;
 import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.Dialect;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.test.runner.ConditionalIgnoreRule;
 import org.nuxeo.runtime.test.runner.Deploy;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+
 @Deploy("org.nuxeo.ecm.core.storage.sql.test.tests:OSGI-INF/test-backend-core-types-contrib.xml")
 public class TestSQLBackend extends SQLBackendTestCase {
 
@@ -3872,6 +3878,31 @@ public class TestSQLBackend extends SQLBackendTestCase {
         assertEquals(0, jdbc.executeCount);
     }
 
+    @Test
+    public void testStatementCache() throws Exception {
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        Counter hits = registry.counter(
+                MetricName.build("nuxeo", "repositories", "repository", "jdbc", "statement", "cache", "hit")
+                          .tagged("repository", repository.getName()));
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        Node node = session.addChildNode(root, "foo", null, "TestDoc", false);
+        session.save();
+        long before = hits.getCount();
+        for (int i = 0; i < 3; i++) {
+            node.setSimpleProperty("tst:title", "title" + i);
+            session.save();
+        }
+        // the same UPDATE statement was reused
+        assertTrue(hits.getCount() >= before + 2);
+        session.close();
+
+        session = repository.getConnection();
+        node = session.getNodeById(node.getId());
+        assertEquals("title2", node.getSimpleProperty("tst:title").getString());
+        session.close();
+    }
+
     @Test
     public void testPathDeep() throws Exception {
         Session session = repository.getConnection();
@@ -0,0 +1,120 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.sql.BoundedCachingMapper.RowCacheStats;
+
+/**
+ * All the tests of TestSQLBackend with a small bounded row cache shared between sessions, plus additional tests.
+ *
+ * @since 11.4
+ */
+public class TestSQLBackendBoundedCache extends TestSQLBackend {
+
+    protected static final int MAX_SIZE = 100;
+
+    @Override
+    protected RepositoryDescriptor newDescriptor(String name) {
+        RepositoryDescriptor descriptor = super.newDescriptor(name);
+        descriptor.cachingMapperType = RepositoryImpl.CACHING_MAPPER_TYPE_BOUNDED;
+        descriptor.cachingMapperProperties.put(BoundedCachingMapper.MAX_SIZE_PROP, String.valueOf(MAX_SIZE));
+        descriptor.cachingMapperProperties.put(BoundedCachingMapper.SHARED_PROP, "true");
+        return descriptor;
+    }
+
+    @Test
+    public void testBoundedCacheEviction() {
+        Session session = repository.getConnection();
+        BoundedCachingMapper mapper = (BoundedCachingMapper) ((SessionImpl) session).getMapper();
+        RowCacheStats stats = mapper.stats;
+        long evictions = stats.evictions.sum();
+        Node root = session.getRootNode();
+        for (int i = 0; i < MAX_SIZE * 2; i++) {
+            Node node = session.addChildNode(root, "doc" + i, null, "TestDoc", false);
+            node.setSimpleProperty("tst:title", "title" + i);
+        }
+        session.save();
+        session.close();
+
+        // read everything from a new session, through the shared cache
+        session = repository.getConnection();
+        root = session.getRootNode();
+        for (int i = 0; i < MAX_SIZE * 2; i++) {
+            Node node = session.getChildNode(root, "doc" + i, false);
+            assertEquals("title" + i, node.getSimpleProperty("tst:title").getString());
+        }
+        assertTrue(stats.getSize() <= MAX_SIZE);
+        assertTrue(stats.evictions.sum() > evictions);
+        session.close();
+    }
+
+    @Test
+    public void testBoundedCacheSharedAfterCommit() {
+        Session session1 = repository.getConnection();
+        Node root = session1.getRootNode();
+        Node node = session1.addChildNode(root, "foo", null, "TestDoc", false);
+        node.setSimpleProperty("tst:title", "before");
+        session1.save();
+        Serializable id = node.getId();
+
+        // second session caches the committed row
+        Session session2 = repository.getConnection();
+        assertEquals("before", session2.getNodeById(id).getSimpleProperty("tst:title").getString());
+
+        // update and save from the first session, the second one sees the new value
+        node.setSimpleProperty("tst:title", "after");
+        session1.save();
+        session2.save(); // process invalidations
+        assertEquals("after", session2.getNodeById(id).getSimpleProperty("tst:title").getString());
+
+        session2.close();
+        session1.close();
+    }
+
+    @Test
+    public void testBoundedCacheSharedRemoteDeletion() {
+        Session session1 = repository.getConnection();
+        Node node = session1.addChildNode(session1.getRootNode(), "foo", null, "TestDoc", false);
+        session1.save();
+        Serializable id = node.getId();
+        RowId rowId = new RowId(Model.HIER_TABLE_NAME, id);
+        BoundedCachingMapper mapper = (BoundedCachingMapper) ((SessionImpl) session1).getMapper();
+
+        // second session caches the committed row in the shared cache
+        Session session2 = repository.getConnection();
+        assertNotNull(session2.getNodeById(id));
+        assertNotNull(mapper.cacheGetRow(rowId));
+
+        // deletion committed by another cluster node
+        VCSInvalidations invalidations = new VCSInvalidations();
+        invalidations.addDeleted(rowId);
+        mapper.cacheQueue.addInvalidations(invalidations);
+        mapper.receiveInvalidations();
+        Row row = mapper.cacheGetRow(rowId);
+        assertTrue(String.valueOf(row), row == null || SoftRefCachingRowMapper.isAbsent(row));
+
+        session2.close();
+        session1.close();
+    }
+
+}
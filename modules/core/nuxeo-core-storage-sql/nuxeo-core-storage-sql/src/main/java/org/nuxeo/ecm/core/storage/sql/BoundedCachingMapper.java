@@ -0,0 +1,454 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.Serializable;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.common.utils.SizeUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+
+import io.dropwizard.metrics5.Gauge;
+import io.dropwizard.metrics5.MetricName;
+
+/**
+ * A {@link Mapper} whose row cache is bounded in number of rows or in estimated weight, instead of relying on soft
+ * references and GC pressure like {@link SoftRefCachingMapper}.
+ * <p>
+ * It is selected with {@code <cachingMapper type="bounded">} in the repository configuration, and accepts the
+ * following properties:
+ * <ul>
+ * <li>{@value #MAX_SIZE_PROP}: the maximum number of rows in a cache (default {@value #MAX_SIZE_DEFAULT}),
+ * <li>{@value #MAX_WEIGHT_PROP}: the maximum estimated weight of a cache, like {@code 64MB}, takes precedence over the
+ * maximum number of rows if defined,
+ * <li>{@value #SHARED_PROP}: whether one cache is shared by all the sessions of the repository (default
+ * {@code false}, each session has its own cache).
+ * </ul>
+ * When the cache is shared, the rows written by a transaction are kept in a session-local overlay until commit, so
+ * that other sessions never see uncommitted data. Rows read from the database are only put in the shared cache if no
+ * invalidation happened since the read started, so that a concurrent commit can't leave a stale row in it.
+ * <p>
+ * Hit ratio, evictions, size and estimated weight are aggregated per repository and exported as metrics.
+ *
+ * @since 11.4
+ */
+public class BoundedCachingMapper extends SoftRefCachingMapper {
+
+    public static final String MAX_SIZE_PROP = "maxSize";
+
+    public static final long MAX_SIZE_DEFAULT = 10_000;
+
+    public static final String MAX_WEIGHT_PROP = "maxWeight";
+
+    public static final String SHARED_PROP = "shared";
+
+    /** Marker for rows written in the current transaction that must be read from the database. */
+    protected static final Row NOT_CACHED = new Row("__NOT_CACHED__", (Serializable) null);
+
+    protected static final Map<String, RowCacheStats> STATS = new ConcurrentHashMap<>();
+
+    protected static final Map<String, SharedRowCache> SHARED_CACHES = new HashMap<>();
+
+    protected String repositoryName;
+
+    protected RowCacheStats stats;
+
+    protected boolean shared;
+
+    /** The row cache, per session or shared. */
+    protected Cache<RowId, Row> rowCache;
+
+    /** The invalidation generation, when shared. */
+    protected AtomicLong generation;
+
+    /** The invalidation generation when the current read from the database started, when shared. */
+    protected long readGeneration;
+
+    /** The rows written by the current transaction, when shared. */
+    protected final Map<RowId, Row> overlay = new HashMap<>();
+
+    /** Whether we're writing through this mapper. */
+    protected boolean writing;
+
+    /** Whether we're processing the invalidations received from other sessions or cluster nodes. */
+    protected boolean receiving;
+
+    /**
+     * Per-repository statistics, aggregated over all the caches of the repository.
+     */
+    protected static class RowCacheStats {
+
+        protected final LongAdder hits = new LongAdder();
+
+        protected final LongAdder misses = new LongAdder();
+
+        protected final LongAdder evictions = new LongAdder();
+
+        protected final Set<Cache<RowId, Row>> caches = ConcurrentHashMap.newKeySet();
+
+        protected long getSize() {
+            return caches.stream().mapToLong(Cache::size).sum();
+        }
+
+        /** Iterates over the caches, only meant to be called when reporting metrics. */
+        protected long getWeight() {
+            return caches.stream()
+                         .flatMap(cache -> cache.asMap().entrySet().stream())
+                         .mapToLong(en -> estimateWeight(en.getKey(), en.getValue()))
+                         .sum();
+        }
+
+        protected double getHitRatio() {
+            long h = hits.sum();
+            long total = h + misses.sum();
+            return total == 0 ? Double.NaN : (double) h / total;
+        }
+
+        protected void onRemoval(RemovalNotification<RowId, Row> notification) {
+            if (notification.getCause() == RemovalCause.SIZE) {
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * A cache shared by all the sessions of a repository.
+     */
+    protected static class SharedRowCache {
+
+        protected final Cache<RowId, Row> cache;
+
+        protected final AtomicLong generation = new AtomicLong();
+
+        protected int users;
+
+        protected SharedRowCache(Cache<RowId, Row> cache) {
+            this.cache = cache;
+        }
+    }
+
+    public BoundedCachingMapper() {
+        // rows are stored in the bounded cache, not in the soft-referenced one
+        super(false);
+    }
+
+    @Override
+    public void initialize(String repositoryName, Model model, Mapper mapper, VCSInvalidationsPropagator cachePropagator,
+            Map<String, String> properties) {
+        this.repositoryName = repositoryName;
+        stats = STATS.computeIfAbsent(repositoryName, k -> new RowCacheStats());
+        shared = Boolean.parseBoolean(properties.get(SHARED_PROP));
+        if (shared) {
+            SharedRowCache sharedCache;
+            synchronized (SHARED_CACHES) {
+                sharedCache = SHARED_CACHES.computeIfAbsent(repositoryName,
+                        k -> new SharedRowCache(newCache(properties)));
+                sharedCache.users++;
+            }
+            rowCache = sharedCache.cache;
+            generation = sharedCache.generation;
+        } else {
+            rowCache = newCache(properties);
+        }
+        stats.caches.add(rowCache);
+        super.initialize(repositoryName, model, mapper, cachePropagator, properties);
+    }
+
+    protected Cache<RowId, Row> newCache(Map<String, String> properties) {
+        CacheBuilder<RowId, Row> builder = CacheBuilder.newBuilder().removalListener(stats::onRemoval);
+        String maxWeight = properties.get(MAX_WEIGHT_PROP);
+        if (StringUtils.isNotBlank(maxWeight)) {
+            builder.maximumWeight(SizeUtils.parseSizeInBytes(maxWeight))
+                   .weigher((RowId rowId, Row row) -> (int) Math.min(Integer.MAX_VALUE, estimateWeight(rowId, row)));
+        } else {
+            String maxSize = properties.get(MAX_SIZE_PROP);
+            builder.maximumSize(StringUtils.isBlank(maxSize) ? MAX_SIZE_DEFAULT : Long.parseLong(maxSize.trim()));
+        }
+        return builder.build();
+    }
+
+    @Override
+    protected void setMetrics(String repositoryName) {
+        cacheHitCount = registry.counter(
+                MetricName.build("nuxeo", "repositories", "repository", "cache", "bounded", "hit")
+                          .tagged("repository", repositoryName));
+        cacheGetTimer = registry.timer(
+                MetricName.build("nuxeo", "repositories", "repository", "cache", "bounded", "timer")
+                          .tagged("repository", repositoryName));
+        sorRows = registry.counter(
+                MetricName.build("nuxeo", "repositories", "repository", "cache", "bounded", "sor", "rows")
+                          .tagged("repository", repositoryName));
+        sorGetTimer = registry.timer(
+                MetricName.build("nuxeo", "repositories", "repository", "cache", "bounded", "sor", "timer")
+                          .tagged("repository", repositoryName));
+        RowCacheStats s = stats;
+        registerGauge(repositoryName, "hit-ratio", s::getHitRatio);
+        registerGauge(repositoryName, "evictions", s.evictions::sum);
+        registerGauge(repositoryName, "size", s::getSize);
+        registerGauge(repositoryName, "weight", s::getWeight);
+    }
+
+    protected <T> void registerGauge(String repositoryName, String name, Gauge<T> gauge) {
+        MetricName gaugeName = MetricName.build("nuxeo", "repositories", "repository", "cache", "bounded", name)
+                                         .tagged("repository", repositoryName);
+        registry.remove(gaugeName);
+        registry.register(gaugeName, gauge);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (shared) {
+            synchronized (SHARED_CACHES) {
+                SharedRowCache sharedCache = SHARED_CACHES.get(repositoryName);
+                if (sharedCache != null && --sharedCache.users <= 0) {
+                    SHARED_CACHES.remove(repositoryName);
+                    stats.caches.remove(rowCache);
+                    rowCache.invalidateAll();
+                }
+            }
+        } else {
+            stats.caches.remove(rowCache);
+        }
+    }
+
+    /**
+     * Estimates the memory used by a cached row.
+     */
+    protected static long estimateWeight(RowId rowId, Row row) {
+        long weight = 64 + estimateWeight(rowId.id);
+        if (row.values != null) {
+            for (Serializable value : row.values) {
+                weight += 8 + estimateWeight(value);
+            }
+        }
+        return weight;
+    }
+
+    protected static long estimateWeight(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        } else if (value instanceof Object[]) {
+            long weight = 16;
+            for (Object v : (Object[]) value) {
+                weight += 8 + estimateWeight(v);
+            }
+            return weight;
+        } else if (value instanceof Calendar) {
+            return 400;
+        } else if (value instanceof ACLRow) {
+            ACLRow acl = (ACLRow) value;
+            return 64 + estimateWeight(acl.name) + estimateWeight(acl.permission) + estimateWeight(acl.user)
+                    + estimateWeight(acl.group) + estimateWeight(acl.creator) + estimateWeight(acl.begin)
+                    + estimateWeight(acl.end) + estimateWeight(acl.status);
+        } else {
+            return 24;
+        }
+    }
+
+    /*
+     * ----- Cache storage -----
+     */
+
+    @Override
+    protected Row cacheGetRow(RowId rowId) {
+        Row row;
+        if (shared && overlay.containsKey(rowId)) {
+            row = overlay.get(rowId);
+            if (row == NOT_CACHED) {
+                row = null;
+            }
+        } else {
+            row = rowCache.getIfPresent(rowId);
+        }
+        if (row == null) {
+            stats.misses.increment();
+        } else {
+            stats.hits.increment();
+        }
+        return row;
+    }
+
+    @Override
+    protected void cachePutRow(RowId rowId, Row row) {
+        if (shared) {
+            if (writing || overlay.containsKey(rowId)) {
+                overlay.put(rowId, row);
+                return;
+            }
+            long readGen = readGeneration;
+            // atomic with the removal done by invalidations, which increment the generation first
+            rowCache.asMap().compute(rowId, (k, v) -> generation.get() == readGen ? row : v);
+        } else {
+            rowCache.put(rowId, row);
+        }
+    }
+
+    @Override
+    protected void cachePutAbsent(RowId rowId) {
+        if (shared && receiving) {
+            // deleted by another transaction: as the generation has moved on since our last read, a conditional put
+            // would be dropped and leave the deleted row in the shared cache, so remove it instead
+            cacheRemove(rowId);
+        } else {
+            super.cachePutAbsent(rowId);
+        }
+    }
+
+    @Override
+    protected void cacheRemove(RowId rowId) {
+        if (shared) {
+            if (writing) {
+                overlay.put(new RowId(rowId), NOT_CACHED);
+                return;
+            }
+            generation.incrementAndGet();
+        }
+        rowCache.invalidate(rowId);
+    }
+
+    @Override
+    protected void cacheClear() {
+        if (shared) {
+            // the shared cache only holds committed data, it's cleared on global invalidations
+            overlay.clear();
+        } else {
+            rowCache.invalidateAll();
+        }
+    }
+
+    @Override
+    public long getCacheSize() {
+        return rowCache.size() + overlay.size();
+    }
+
+    /*
+     * ----- Invalidations -----
+     */
+
+    @Override
+    public VCSInvalidations receiveInvalidations() {
+        VCSInvalidations invalidations;
+        receiving = true;
+        try {
+            invalidations = super.receiveInvalidations();
+        } finally {
+            receiving = false;
+        }
+        if (shared && invalidations != null && invalidations.all) {
+            generation.incrementAndGet();
+            rowCache.invalidateAll();
+        }
+        return invalidations;
+    }
+
+    @Override
+    public void sendInvalidations(VCSInvalidations invalidations) {
+        if (shared && !overlay.isEmpty()) {
+            // post-commit: the rows written by the transaction are now visible to others
+            generation.incrementAndGet();
+            rowCache.invalidateAll(overlay.keySet());
+            overlay.clear();
+        }
+        super.sendInvalidations(invalidations);
+    }
+
+    /*
+     * ----- Writes go to the overlay when shared -----
+     */
+
+    @Override
+    public void write(RowBatch batch) {
+        writing = true;
+        try {
+            super.write(batch);
+        } finally {
+            writing = false;
+        }
+    }
+
+    @Override
+    public CopyResult copy(IdWithTypes source, Serializable destParentId, String destName, Row overwriteRow,
+            boolean excludeSpecialChildren, boolean excludeACL) {
+        writing = true;
+        try {
+            return super.copy(source, destParentId, destName, overwriteRow, excludeSpecialChildren, excludeACL);
+        } finally {
+            writing = false;
+        }
+    }
+
+    @Override
+    public void remove(Serializable rootId, List<NodeInfo> nodeInfos) {
+        writing = true;
+        try {
+            super.remove(rootId, nodeInfos);
+        } finally {
+            writing = false;
+        }
+    }
+
+    /*
+     * ----- Reads remember the generation at which they started -----
+     */
+
+    protected void startRead() {
+        if (shared) {
+            readGeneration = generation.get();
+        }
+    }
+
+    @Override
+    public List<? extends RowId> read(Collection<RowId> rowIds, boolean cacheOnly) {
+        startRead();
+        return super.read(rowIds, cacheOnly);
+    }
+
+    @Override
+    public Row readSimpleRow(RowId rowId) {
+        startRead();
+        return super.readSimpleRow(rowId);
+    }
+
+    @Override
+    public Serializable[] readCollectionRowArray(RowId rowId) {
+        startRead();
+        return super.readCollectionRowArray(rowId);
+    }
+
+    @Override
+    public List<Row> readSelectionRows(SelectionType selType, Serializable selId, Serializable filter,
+            Serializable criterion, boolean limitToOne) {
+        startRead();
+        return super.readSelectionRows(selType, selId, filter, criterion, limitToOne);
+    }
+
+}
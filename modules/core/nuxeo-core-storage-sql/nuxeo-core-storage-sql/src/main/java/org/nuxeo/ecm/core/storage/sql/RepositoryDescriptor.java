@@ -186,6 +186,14 @@ public class RepositoryDescriptor {
     @XNode("cachingMapper@enabled")
     private Boolean cachingMapperEnabled;
 
+    /**
+     * The type of caching mapper to use when no class is specified, {@code softref} (default) or {@code bounded}.
+     *
+     * @since 11.4
+     */
+    @XNode("cachingMapper@type")
+    public String cachingMapperType;
+
     public boolean getCachingMapperEnabled() {
         return defaultTrue(cachingMapperEnabled);
     }
@@ -405,6 +413,7 @@ public class RepositoryDescriptor {
         clusterInvalidatorClass = other.clusterInvalidatorClass;
         cachingMapperClass = other.cachingMapperClass;
         cachingMapperEnabled = other.cachingMapperEnabled;
+        cachingMapperType = other.cachingMapperType;
         cachingMapperProperties = new HashMap<>(other.cachingMapperProperties);
         noDDL = other.noDDL;
         ddlMode = other.ddlMode;
@@ -457,6 +466,9 @@ public class RepositoryDescriptor {
         if (other.cachingMapperEnabled != null) {
             cachingMapperEnabled = other.cachingMapperEnabled;
         }
+        if (other.cachingMapperType != null) {
+            cachingMapperType = other.cachingMapperType;
+        }
         cachingMapperProperties.putAll(other.cachingMapperProperties);
         if (other.noDDL != null) {
             noDDL = other.noDDL;
@@ -90,6 +90,9 @@ public class RepositoryImpl implements Repository, org.nuxeo.ecm.core.model.Repo
 
     private static final Log log = LogFactory.getLog(RepositoryImpl.class);
 
+    /** @since 11.4 */
+    public static final String CACHING_MAPPER_TYPE_BOUNDED = "bounded";
+
     public static final String TEST_UPGRADE = "testUpgrade";
 
     // property in sql.txt file
@@ -202,8 +205,12 @@ public class RepositoryImpl implements Repository, org.nuxeo.ecm.core.model.Repo
         }
         Class<? extends CachingMapper> cachingMapperClass = repositoryDescriptor.cachingMapperClass;
         if (cachingMapperClass == null) {
-            // default cache
-            cachingMapperClass = SoftRefCachingMapper.class;
+            if (CACHING_MAPPER_TYPE_BOUNDED.equals(repositoryDescriptor.cachingMapperType)) {
+                cachingMapperClass = BoundedCachingMapper.class;
+            } else {
+                // default cache
+                cachingMapperClass = SoftRefCachingMapper.class;
+            }
         }
         return cachingMapperClass;
     }
@@ -40,6 +40,18 @@ public class SoftRefCachingMapper extends SoftRefCachingRowMapper implements Cac
      */
     public Mapper mapper;
 
+    public SoftRefCachingMapper() {
+        super();
+    }
+
+    /**
+     * @see SoftRefCachingRowMapper#SoftRefCachingRowMapper(boolean)
+     * @since 11.4
+     */
+    protected SoftRefCachingMapper(boolean softRefCache) {
+        super(softRefCache);
+    }
+
     @Override
     public void initialize(String repositoryName, Model model, Mapper mapper, VCSInvalidationsPropagator cachePropagator,
             Map<String, String> properties) {
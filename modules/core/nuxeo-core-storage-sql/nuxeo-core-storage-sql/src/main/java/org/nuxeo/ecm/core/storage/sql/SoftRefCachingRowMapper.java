@@ -102,9 +102,20 @@ public class SoftRefCachingRowMapper implements RowMapper {
 
     protected Timer sorGetTimer;
 
-    @SuppressWarnings("unchecked")
     public SoftRefCachingRowMapper() {
-        cache = new ReferenceMap(AbstractReferenceMap.HARD, AbstractReferenceMap.SOFT);
+        this(true);
+    }
+
+    /**
+     * Constructor for subclasses that may store the rows themselves.
+     *
+     * @param softRefCache {@code false} if the subclass overrides all the cache storage methods, in which case the
+     *            soft-referenced cache is not allocated
+     * @since 11.4
+     */
+    @SuppressWarnings("unchecked")
+    protected SoftRefCachingRowMapper(boolean softRefCache) {
+        cache = softRefCache ? new ReferenceMap(AbstractReferenceMap.HARD, AbstractReferenceMap.SOFT) : null;
         localInvalidations = new VCSInvalidations();
         cacheQueue = new VCSInvalidationsQueue("mapper-" + this);
     }
@@ -159,7 +170,7 @@ public class SoftRefCachingRowMapper implements RowMapper {
         if (row.isCollection() && row.values.length > 0 && row.values[0] instanceof ACLRow) {
             row.values = sortACLRows((ACLRow[]) row.values);
         }
-        cache.put(new RowId(row), row);
+        cachePutRow(new RowId(row), row);
     }
 
     protected ACLRow[] sortACLRows(ACLRow[] acls) {
@@ -170,7 +181,7 @@ public class SoftRefCachingRowMapper implements RowMapper {
     }
 
     protected void cachePutAbsent(RowId rowId) {
-        cache.put(new RowId(rowId), new Row(ABSENT, (Serializable) null));
+        cachePutRow(new RowId(rowId), new Row(ABSENT, (Serializable) null));
     }
 
     protected void cachePutAbsentIfNull(RowId rowId, Row row) {
@@ -193,7 +204,7 @@ public class SoftRefCachingRowMapper implements RowMapper {
     protected Row cacheGet(RowId rowId) {
         final Timer.Context context = cacheGetTimer.time();
         try {
-            Row row = cache.get(rowId);
+            Row row = cacheGetRow(rowId);
             if (row != null && !isAbsent(row)) {
                 row = row.clone();
             }
@@ -210,6 +221,33 @@ public class SoftRefCachingRowMapper implements RowMapper {
         cache.remove(rowId);
     }
 
+    /**
+     * Gets a row from the underlying cache storage, without cloning it.
+     *
+     * @since 11.4
+     */
+    protected Row cacheGetRow(RowId rowId) {
+        return cache.get(rowId);
+    }
+
+    /**
+     * Puts a row (already cloned) in the underlying cache storage.
+     *
+     * @since 11.4
+     */
+    protected void cachePutRow(RowId rowId, Row row) {
+        cache.put(rowId, row);
+    }
+
+    /**
+     * Clears the underlying cache storage.
+     *
+     * @since 11.4
+     */
+    protected void cacheClear() {
+        cache.clear();
+    }
+
     /*
      * ----- Invalidations / Cache Management -----
      */
@@ -263,7 +301,7 @@ public class SoftRefCachingRowMapper implements RowMapper {
 
     @Override
     public void clearCache() {
-        cache.clear();
+        cacheClear();
         sorRows.dec(sorRows.getCount());
         localInvalidations.clear();
         rowMapper.clearCache();
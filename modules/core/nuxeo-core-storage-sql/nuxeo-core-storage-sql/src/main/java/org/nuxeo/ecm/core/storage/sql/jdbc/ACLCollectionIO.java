@@ -181,8 +181,9 @@ public class ACLCollectionIO implements CollectionIO {
                     ps.addBatch();
                     batch++;
                     if (batch % JDBCRowMapper.UPDATE_BATCH_SIZE == 0 || !rowIt.hasNext()) {
-                        ps.executeBatch();
+                        int[] counts = ps.executeBatch();
                         connection.countExecute();
+                        connection.countBatch(counts.length);
                     }
                 } else {
                     ps.execute();
@@ -19,7 +19,13 @@
 package org.nuxeo.ecm.core.storage.sql.jdbc;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
@@ -31,6 +37,13 @@ import org.nuxeo.ecm.core.storage.sql.Model;
 import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.Dialect;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.datasource.ConnectionHelper;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.Histogram;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
 
 /**
  * Holds a connection to a JDBC database.
@@ -46,6 +59,16 @@ public class JDBCConnection {
 
     private static final String SET_CLIENT_INFO_DEFAULT = "false";
 
+    /**
+     * Maximum number of prepared statements kept open per connection for reuse, {@code 0} to disable.
+     *
+     * @since 11.4
+     */
+    public static final String STATEMENT_CACHE_SIZE_PROP = "org.nuxeo.vcs.statementCacheSize";
+
+    /** @since 11.4 */
+    public static final String STATEMENT_CACHE_SIZE_DEFAULT = "100";
+
     /** The model used to do the mapping. */
     protected final Model model;
 
@@ -77,6 +100,25 @@ public class JDBCConnection {
 
     protected boolean setClientInfo;
 
+    /**
+     * Prepared statements kept open for reuse, keyed by SQL, in LRU order.
+     *
+     * @since 11.4
+     */
+    protected Map<String, PreparedStatement> statementCache;
+
+    /** @since 11.4 */
+    protected int statementCacheSize;
+
+    /** @since 11.4 */
+    protected Counter statementCacheHits;
+
+    /** @since 11.4 */
+    protected Counter statementCacheMisses;
+
+    /** @since 11.4 */
+    protected Histogram batchSizes;
+
     /**
      * Creates a new Mapper.
      *
@@ -88,6 +130,9 @@ public class JDBCConnection {
         this.sqlInfo = sqlInfo;
         dialect = sqlInfo.dialect;
         setClientInfo = Boolean.parseBoolean(Framework.getProperty(SET_CLIENT_INFO_PROP, SET_CLIENT_INFO_DEFAULT));
+        statementCacheSize = Integer.parseInt(
+                Framework.getProperty(STATEMENT_CACHE_SIZE_PROP, STATEMENT_CACHE_SIZE_DEFAULT).trim());
+        setMetrics();
         connect();
     }
 
@@ -116,6 +161,120 @@ public class JDBCConnection {
         }
     }
 
+    /** @since 11.4 */
+    protected void setMetrics() {
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        String repositoryName = getRepositoryName();
+        statementCacheHits = registry.counter(
+                MetricName.build("nuxeo", "repositories", "repository", "jdbc", "statement", "cache", "hit")
+                          .tagged("repository", repositoryName));
+        statementCacheMisses = registry.counter(
+                MetricName.build("nuxeo", "repositories", "repository", "jdbc", "statement", "cache", "miss")
+                          .tagged("repository", repositoryName));
+        batchSizes = registry.histogram(
+                MetricName.build("nuxeo", "repositories", "repository", "jdbc", "batch", "size")
+                          .tagged("repository", repositoryName));
+    }
+
+    /**
+     * Records the number of statements sent to the database in a single JDBC batch.
+     *
+     * @since 11.4
+     */
+    protected void countBatch(int size) {
+        if (batchSizes != null) {
+            batchSizes.update(size);
+        }
+    }
+
+    /**
+     * Gets a prepared statement for the given SQL, reusing a previously prepared one if possible.
+     * <p>
+     * The statement must be given back using {@link #releaseStatement} instead of being closed, so that it can be kept
+     * open for reuse by the next call with the same SQL. A cached statement is handed out to only one caller at a time,
+     * a nested call for the same SQL gets a new statement.
+     *
+     * @since 11.4
+     */
+    protected PreparedStatement prepareCachedStatement(String sql) throws SQLException {
+        if (statementCacheSize <= 0) {
+            return connection.prepareStatement(sql);
+        }
+        if (statementCache == null) {
+            statementCache = new LinkedHashMap<>(16, 0.75f, true);
+        }
+        PreparedStatement ps = statementCache.remove(sql);
+        if (ps != null && !ps.isClosed()) {
+            statementCacheHits.inc();
+            return ps;
+        }
+        statementCacheMisses.inc();
+        return connection.prepareStatement(sql);
+    }
+
+    /**
+     * Gives back a statement obtained from {@link #prepareCachedStatement}, keeping it open for reuse if possible.
+     *
+     * @since 11.4
+     */
+    protected void releaseStatement(String sql, PreparedStatement ps) throws SQLException {
+        if (statementCacheSize <= 0) {
+            ps.close();
+            return;
+        }
+        try {
+            ps.clearBatch();
+            ps.clearParameters();
+        } catch (SQLException e) {
+            ps.close();
+            throw e;
+        }
+        PreparedStatement old = statementCache.put(sql, ps);
+        if (old != null) {
+            old.close();
+        }
+        if (statementCache.size() > statementCacheSize) {
+            Iterator<PreparedStatement> it = statementCache.values().iterator();
+            PreparedStatement eldest = it.next();
+            it.remove();
+            eldest.close();
+        }
+    }
+
+    /**
+     * Closes a statement obtained from {@link #prepareCachedStatement} after a failure, instead of giving it back for
+     * reuse as its state is unknown.
+     *
+     * @since 11.4
+     */
+    protected void closeStatement(PreparedStatement ps, Exception e) {
+        try {
+            ps.close();
+        } catch (SQLException ee) {
+            e.addSuppressed(ee);
+        }
+    }
+
+    /**
+     * Closes all the statements kept open for reuse.
+     *
+     * @since 11.4
+     */
+    protected void closeCachedStatements() {
+        if (statementCache == null || statementCache.isEmpty()) {
+            return;
+        }
+        List<PreparedStatement> statements = new ArrayList<>(statementCache.values());
+        statementCache.clear();
+        for (PreparedStatement ps : statements) {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+                log.debug(e, e);
+            }
+        }
+    }
+
     /**
      * Gets the datasource to use for the given repository.
      *
@@ -126,6 +285,7 @@ public class JDBCConnection {
     }
 
     public void connect() {
+        closeCachedStatements();
         try {
             String dataSourceName = getDataSourceName(getRepositoryName());
             connection = ConnectionHelper.getConnection(dataSourceName);
@@ -141,6 +301,7 @@ public class JDBCConnection {
     }
 
     public void closeConnection() {
+        closeCachedStatements();
         if (connection != null) {
             try {
                 try {
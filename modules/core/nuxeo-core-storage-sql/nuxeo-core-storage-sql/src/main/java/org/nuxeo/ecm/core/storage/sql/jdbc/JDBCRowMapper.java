@@ -509,29 +509,37 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         boolean batched = supportsBatchUpdates && rows.size() > 1;
         String loggedSql = batched ? sql + " -- BATCHED" : sql;
         List<Column> columns = sqlInfo.getInsertColumns(tableName);
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            int batch = 0;
-            for (Iterator<Row> rowIt = rows.iterator(); rowIt.hasNext();) {
-                Row row = rowIt.next();
-                if (logger.isLogEnabled()) {
-                    logger.logSQL(loggedSql, columns, row);
-                }
-                int i = 1;
-                for (Column column : columns) {
-                    column.setToPreparedStatement(ps, i++, row.get(column.getKey()));
-                }
-                if (batched) {
-                    ps.addBatch();
-                    batch++;
-                    if (batch % UPDATE_BATCH_SIZE == 0 || !rowIt.hasNext()) {
-                        ps.executeBatch();
+        try {
+            PreparedStatement ps = prepareCachedStatement(sql);
+            try {
+                int batch = 0;
+                for (Iterator<Row> rowIt = rows.iterator(); rowIt.hasNext();) {
+                    Row row = rowIt.next();
+                    if (logger.isLogEnabled()) {
+                        logger.logSQL(loggedSql, columns, row);
+                    }
+                    int i = 1;
+                    for (Column column : columns) {
+                        column.setToPreparedStatement(ps, i++, row.get(column.getKey()));
+                    }
+                    if (batched) {
+                        ps.addBatch();
+                        batch++;
+                        if (batch % UPDATE_BATCH_SIZE == 0 || !rowIt.hasNext()) {
+                            int[] counts = ps.executeBatch();
+                            countExecute();
+                            countBatch(counts.length);
+                        }
+                    } else {
+                        ps.execute();
                         countExecute();
                     }
-                } else {
-                    ps.execute();
-                    countExecute();
                 }
+            } catch (SQLException | RuntimeException e) {
+                closeStatement(ps, e);
+                throw e;
             }
+            releaseStatement(sql, ps);
         } catch (SQLException e) {
             if (e instanceof BatchUpdateException) {
                 BatchUpdateException bue = (BatchUpdateException) e;
@@ -555,8 +563,15 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         String sql = sqlInfo.getInsertSql(tableName);
         List<Column> columns = sqlInfo.getInsertColumns(tableName);
         CollectionIO io = getCollectionIO(tableName);
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            io.executeInserts(ps, rowus, columns, supportsBatchUpdates, sql, this);
+        try {
+            PreparedStatement ps = prepareCachedStatement(sql);
+            try {
+                io.executeInserts(ps, rowus, columns, supportsBatchUpdates, sql, this);
+            } catch (SQLException | RuntimeException e) {
+                closeStatement(ps, e);
+                throw e;
+            }
+            releaseStatement(sql, ps);
         } catch (SQLException e) {
             checkConcurrentUpdate(e);
             throw new NuxeoException("Could not insert: " + sql, e);
@@ -584,63 +599,74 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
             boolean batched = supportsBatchUpdates && rowUpdates.size() > 1
                     && (dialect.supportsBatchUpdateCount() || !changeTokenEnabled);
             String loggedSql = batched ? update.sql + " -- BATCHED" : update.sql;
-            try (PreparedStatement ps = connection.prepareStatement(update.sql)) {
-                int batch = 0;
-                for (Iterator<RowUpdate> rowIt = rowUpdates.iterator(); rowIt.hasNext();) {
-                    RowUpdate rowu = rowIt.next();
-                    if (logger.isLogEnabled()) {
-                        logger.logSQL(loggedSql, update.whatColumns, rowu.row, update.whereColumns, rowu.conditions);
-                    }
-                    int i = 1;
-                    for (Column column : update.whatColumns) {
-                        Serializable value = rowu.row.get(column.getKey());
-                        if (value instanceof Delta) {
-                            value = ((Delta) value).getDeltaValue();
+            try {
+                PreparedStatement ps = prepareCachedStatement(update.sql);
+                try {
+                    int batch = 0;
+                    for (Iterator<RowUpdate> rowIt = rowUpdates.iterator(); rowIt.hasNext();) {
+                        RowUpdate rowu = rowIt.next();
+                        if (logger.isLogEnabled()) {
+                            logger.logSQL(loggedSql, update.whatColumns, rowu.row, update.whereColumns,
+                                    rowu.conditions);
                         }
-                        column.setToPreparedStatement(ps, i++, value);
-                    }
-                    boolean hasConditions = false;
-                    for (Column column : update.whereColumns) {
-                        // id or condition
-                        String key = column.getKey();
-                        Serializable value;
-                        if (key.equals(Model.MAIN_KEY)) {
-                            value = rowu.row.get(key);
-                        } else {
-                            hasConditions = true;
-                            value = rowu.conditions.get(key);
+                        int i = 1;
+                        for (Column column : update.whatColumns) {
+                            Serializable value = rowu.row.get(column.getKey());
+                            if (value instanceof Delta) {
+                                value = ((Delta) value).getDeltaValue();
+                            }
+                            column.setToPreparedStatement(ps, i++, value);
                         }
-                        column.setToPreparedStatement(ps, i++, value);
-                    }
-                    if (batched) {
-                        ps.addBatch();
-                        batch++;
-                        if (batch % UPDATE_BATCH_SIZE == 0 || !rowIt.hasNext()) {
-                            int[] counts = ps.executeBatch();
-                            countExecute();
-                            if (changeTokenEnabled && hasConditions) {
-                                for (int j = 0; j < counts.length; j++) {
-                                    int count = counts[j];
-                                    if (count != Statement.SUCCESS_NO_INFO && count != 1) {
-                                        Serializable id = rowUpdates.get(j).row.id;
-                                        logger.log("  -> CONCURRENT UPDATE: " + id);
-                                        throw new ConcurrentUpdateException(id.toString());
+                        boolean hasConditions = false;
+                        for (Column column : update.whereColumns) {
+                            // id or condition
+                            String key = column.getKey();
+                            Serializable value;
+                            if (key.equals(Model.MAIN_KEY)) {
+                                value = rowu.row.get(key);
+                            } else {
+                                hasConditions = true;
+                                value = rowu.conditions.get(key);
+                            }
+                            column.setToPreparedStatement(ps, i++, value);
+                        }
+                        if (batched) {
+                            ps.addBatch();
+                            batch++;
+                            if (batch % UPDATE_BATCH_SIZE == 0 || !rowIt.hasNext()) {
+                                int[] counts = ps.executeBatch();
+                                countExecute();
+                                countBatch(counts.length);
+                                if (changeTokenEnabled && hasConditions) {
+                                    // index of the first row of this batch
+                                    int first = batch - counts.length;
+                                    for (int j = 0; j < counts.length; j++) {
+                                        int count = counts[j];
+                                        if (count != Statement.SUCCESS_NO_INFO && count != 1) {
+                                            Serializable id = rowUpdates.get(first + j).row.id;
+                                            logger.log("  -> CONCURRENT UPDATE: " + id);
+                                            throw new ConcurrentUpdateException(id.toString());
+                                        }
                                     }
                                 }
                             }
-                        }
-                    } else {
-                        int count = ps.executeUpdate();
-                        countExecute();
-                        if (changeTokenEnabled && hasConditions) {
-                            if (count != Statement.SUCCESS_NO_INFO && count != 1) {
-                                Serializable id = rowu.row.id;
-                                logger.log("  -> CONCURRENT UPDATE: " + id);
-                                throw new ConcurrentUpdateException(id.toString());
+                        } else {
+                            int count = ps.executeUpdate();
+                            countExecute();
+                            if (changeTokenEnabled && hasConditions) {
+                                if (count != Statement.SUCCESS_NO_INFO && count != 1) {
+                                    Serializable id = rowu.row.id;
+                                    logger.log("  -> CONCURRENT UPDATE: " + id);
+                                    throw new ConcurrentUpdateException(id.toString());
+                                }
                             }
                         }
                     }
+                } catch (SQLException | RuntimeException e) {
+                    closeStatement(ps, e);
+                    throw e;
                 }
+                releaseStatement(update.sql, ps);
             } catch (SQLException e) {
                 checkConcurrentUpdate(e);
                 throw new NuxeoException("Could not update: " + update.sql, e);
@@ -809,14 +835,21 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         if (logger.isLogEnabled()) {
             logger.logSQL(sql, ids);
         }
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            int i = 1;
-            for (Serializable id : ids) {
-                dialect.setId(ps, i++, id);
+        try {
+            PreparedStatement ps = prepareCachedStatement(sql);
+            try {
+                int i = 1;
+                for (Serializable id : ids) {
+                    dialect.setId(ps, i++, id);
+                }
+                int count = ps.executeUpdate();
+                countExecute();
+                logger.logCount(count);
+            } catch (SQLException | RuntimeException e) {
+                closeStatement(ps, e);
+                throw e;
             }
-            int count = ps.executeUpdate();
-            countExecute();
-            logger.logCount(count);
+            releaseStatement(sql, ps);
         } catch (SQLException e) {
             checkConcurrentUpdate(e);
             throw new NuxeoException("Could not delete: " + tableName, e);
@@ -20,7 +20,9 @@
 package org.nuxeo.ecm.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Set;
 
@@ -30,11 +32,14 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelFactory;
+import org.nuxeo.ecm.core.api.impl.DocumentModelImpl;
 import org.nuxeo.ecm.core.schema.PrefetchInfo;
 import org.nuxeo.ecm.core.test.CoreFeature;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
 import org.nuxeo.runtime.test.runner.TransactionalFeature;
+import org.nuxeo.runtime.test.runner.WithFrameworkProperty;
 
 /**
  * @since 11.1
@@ -81,4 +86,44 @@ public class TestPrefetch {
         assertEquals("foo/icon", doc.getPropertyValue("common:icon"));
         assertNull(doc.getPropertyValue("uid:uid"));
     }
+
+    @Test
+    @WithFrameworkProperty(name = DocumentModelFactory.LAZY_PROPERTY, value = "true")
+    public void testDocumentModelLazy() {
+        DocumentModel doc = session.createDocumentModel("/", "foo", "File");
+        doc.setPropertyValue("dc:title", "foo/title");
+        doc.setPropertyValue("uid:uid", "foo/uid");
+        doc = session.createDocument(doc);
+        txFeature.nextTransaction();
+
+        // nothing is loaded upfront
+        doc = session.getDocument(doc.getRef());
+        assertFalse(((DocumentModelImpl) doc).isSchemaLoaded("dublincore"));
+
+        // schemas are read on first access, prefetched or not
+        assertEquals("foo/title", doc.getPropertyValue("dc:title"));
+        assertEquals("foo/uid", doc.getPropertyValue("uid:uid"));
+        assertTrue(((DocumentModelImpl) doc).isSchemaLoaded("dublincore"));
+        assertFalse(((DocumentModelImpl) doc).isSchemaLoaded("file"));
+    }
+
+    @Test
+    @WithFrameworkProperty(name = DocumentModelFactory.LAZY_PROPERTY, value = "true")
+    public void testDocumentModelLazyNextTransaction() {
+        DocumentModel doc = session.createDocumentModel("/", "foo", "File");
+        doc.setPropertyValue("dc:title", "foo/title");
+        doc = session.createDocument(doc);
+        txFeature.nextTransaction();
+        doc = session.getDocument(doc.getRef());
+
+        // updated in another document model
+        DocumentModel other = session.getDocument(doc.getRef());
+        other.setPropertyValue("dc:title", "foo/newtitle");
+        session.saveDocument(other);
+        txFeature.nextTransaction();
+
+        // first access in a new transaction goes through the session
+        assertEquals("foo/newtitle", doc.getPropertyValue("dc:title"));
+    }
+
 }
@@ -55,6 +55,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.inject.Inject;
 
@@ -1801,6 +1802,28 @@ public class TestSQLRepositoryQuery {
         assertEquals(whole.get(1).get(NXQL.ECM_UUID), secondPage.get(0).get(NXQL.ECM_UUID));
     }
 
+    @Test
+    public void testQueryProjectionStream() {
+        createDocs();
+        String query = "SELECT ecm:uuid, dc:title FROM Document ORDER BY dc:modified, ecm:uuid";
+        PartialList<Map<String, Serializable>> whole = session.queryProjection(query, 0, 0);
+        List<Map<String, Serializable>> streamed;
+        try (Stream<Map<String, Serializable>> stream = session.queryProjectionStream(query, NXQL.NXQL, false)) {
+            streamed = stream.collect(Collectors.toList());
+        }
+        assertEquals(whole.size(), streamed.size());
+        for (int i = 0; i < whole.size(); i++) {
+            assertEquals(whole.get(i).get(NXQL.ECM_UUID), streamed.get(i).get(NXQL.ECM_UUID));
+            assertEquals(whole.get(i).get("dc:title"), streamed.get(i).get("dc:title"));
+        }
+
+        // partial consumption
+        try (Stream<Map<String, Serializable>> stream = session.queryProjectionStream(
+                "SELECT * FROM File ORDER BY ecm:path", NXQL.NXQL, true)) {
+            assertTrue(stream.findFirst().isPresent());
+        }
+    }
+
     @Test
     public void testQueryPrimaryTypeOptimization() {
         // check these queries in the logs
@@ -25,6 +25,10 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
 import javax.inject.Inject;
 
 import org.apache.commons.lang3.SerializationUtils;
@@ -33,12 +37,15 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.nuxeo.ecm.core.api.trash.TrashService;
 import org.nuxeo.ecm.core.api.versioning.VersioningService;
+import org.nuxeo.ecm.core.model.Document;
 import org.nuxeo.ecm.core.test.CoreFeature;
 import org.nuxeo.ecm.core.test.annotations.Granularity;
 import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.TransactionalFeature;
+import org.nuxeo.runtime.test.runner.WithFrameworkProperty;
 
 @RunWith(FeaturesRunner.class)
 @Features(CoreFeature.class)
@@ -48,6 +55,9 @@ public class TestDocumentModel {
     @Inject
     protected CoreSession session;
 
+    @Inject
+    protected TransactionalFeature txFeature;
+
     /**
      * Tests on a DocumentModel that hasn't been created in the session yet.
      */
@@ -241,4 +251,28 @@ public class TestDocumentModel {
         session.copy(doc.getRef(), new PathRef("/"), "toto/tata");
     }
 
+    @Test
+    @WithFrameworkProperty(name = DocumentModelFactory.LAZY_PROPERTY, value = "true")
+    public void testLazyDocumentModelReleasesDocumentAfterTransaction() {
+        DocumentModel doc = session.createDocumentModel("/", "doc", "File");
+        doc.setPropertyValue("dc:title", "foo");
+        doc = session.createDocument(doc);
+        txFeature.nextTransaction();
+
+        doc = session.getDocument(doc.getRef());
+        DocumentModelFactory.LazyDocuments lazyDocuments = DocumentModelFactory.LAZY_DOCUMENTS.get();
+        assertNotNull(lazyDocuments);
+        List<AtomicReference<Document>> holders = new ArrayList<>(lazyDocuments.holders);
+        assertFalse(holders.isEmpty());
+        assertTrue(holders.stream().allMatch(holder -> holder.get() != null));
+
+        txFeature.nextTransaction();
+
+        // the document model doesn't keep the document of the previous transaction
+        assertTrue(holders.stream().allMatch(holder -> holder.get() == null));
+        assertNull(DocumentModelFactory.LAZY_DOCUMENTS.get());
+        // and reads through the session
+        assertEquals("foo", doc.getPropertyValue("dc:title"));
+    }
+
 }
@@ -0,0 +1,154 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.bulk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.nuxeo.ecm.core.bulk.action.GarbageCollectBlobsAction.ACTION_NAME;
+import static org.nuxeo.ecm.core.bulk.action.GarbageCollectBlobsAction.PARAM_DRY_RUN;
+import static org.nuxeo.ecm.core.bulk.action.GarbageCollectBlobsAction.QUERY_ALL;
+import static org.nuxeo.ecm.core.bulk.action.GarbageCollectBlobsAction.RESULT_NUM_BINARIES;
+import static org.nuxeo.ecm.core.bulk.action.GarbageCollectBlobsAction.RESULT_NUM_BINARIES_GC;
+import static org.nuxeo.ecm.core.bulk.action.GarbageCollectBlobsAction.RESULT_SIZE_BINARIES_GC;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobStore;
+import org.nuxeo.ecm.core.blob.BlobStoreBlobProvider;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
+import org.nuxeo.ecm.core.bulk.message.BulkStatus;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.TransactionalFeature;
+
+/**
+ * @since 11.4
+ */
+@RunWith(FeaturesRunner.class)
+@Features(CoreFeature.class)
+@Deploy("org.nuxeo.ecm.core.test.tests:OSGI-INF/test-blob-provider-inmemory-gc.xml")
+public class TestGarbageCollectBlobsAction {
+
+    @Inject
+    public BulkService service;
+
+    @Inject
+    public BlobManager blobManager;
+
+    @Inject
+    public CoreSession session;
+
+    @Inject
+    public TransactionalFeature txFeature;
+
+    @Test
+    public void testGarbageCollect() throws Exception {
+        createFile("doc1", "foo");
+        createFile("doc2", "barbaz");
+        DocumentModel orphan = createFile("doc3", "orphan");
+        String orphanKey = getKey(orphan);
+        session.removeDocument(orphan.getRef());
+        txFeature.nextTransaction();
+
+        // dry run
+        BulkStatus status = garbageCollect(true);
+        assertEquals(2, getResult(status, RESULT_NUM_BINARIES));
+        assertEquals(1, getResult(status, RESULT_NUM_BINARIES_GC));
+        assertEquals(6, getResult(status, RESULT_SIZE_BINARIES_GC));
+        assertTrue(exists(orphanKey));
+
+        status = garbageCollect(false);
+        assertEquals(2, getResult(status, RESULT_NUM_BINARIES));
+        assertEquals(1, getResult(status, RESULT_NUM_BINARIES_GC));
+        assertFalse(exists(orphanKey));
+
+        // nothing left to collect
+        status = garbageCollect(false);
+        assertEquals(2, getResult(status, RESULT_NUM_BINARIES));
+        assertEquals(0, getResult(status, RESULT_NUM_BINARIES_GC));
+    }
+
+    @Test
+    public void testGarbageCollectRequiresAllDocuments() {
+        createFile("doc1", "foo");
+        txFeature.nextTransaction();
+        BulkCommand command = new BulkCommand.Builder(ACTION_NAME, "SELECT * FROM Document WHERE ecm:name = 'doc1'",
+                session.getPrincipal().getName()).repository(session.getRepositoryName()).build();
+        try {
+            service.submit(command);
+            fail("garbage collection of some of the documents should fail");
+        } catch (IllegalArgumentException e) {
+            assertEquals("The query must be: " + QUERY_ALL + " in command: " + command, e.getMessage());
+        }
+    }
+
+    protected long getResult(BulkStatus status, String key) {
+        return ((Number) status.getResult().get(key)).longValue();
+    }
+
+    protected DocumentModel createFile(String name, String content) {
+        DocumentModel doc = session.createDocumentModel("/", name, "File");
+        doc.setPropertyValue("file:content", (Serializable) Blobs.createBlob(content));
+        return session.createDocument(doc);
+    }
+
+    protected String getKey(DocumentModel doc) {
+        Blob blob = (Blob) doc.getPropertyValue("file:content");
+        String key = ((ManagedBlob) blob).getKey();
+        return key.substring(key.indexOf(':') + 1);
+    }
+
+    protected boolean exists(String key) throws IOException {
+        BlobStore store = ((BlobStoreBlobProvider) blobManager.getBlobProvider("test")).store;
+        Path tmp = Files.createTempFile("gc", null);
+        try {
+            return store.readBlob(key, tmp);
+        } finally {
+            Files.delete(tmp);
+        }
+    }
+
+    protected BulkStatus garbageCollect(boolean dryRun) throws InterruptedException {
+        String commandId = service.submit(new BulkCommand.Builder(ACTION_NAME, QUERY_ALL,
+                session.getPrincipal().getName()).repository(session.getRepositoryName())
+                                                 .param(PARAM_DRY_RUN, dryRun)
+                                                 .build());
+        assertTrue("Bulk action didn't finish", service.await(Duration.ofSeconds(60)));
+        BulkStatus status = service.getStatus(commandId);
+        assertEquals(BulkStatus.State.COMPLETED, status.getState());
+        assertEquals(status.getTotal(), status.getProcessed());
+        return status;
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.api.VersioningOption;
+import org.nuxeo.ecm.core.model.Document;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.repository.RepositoryService;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.TransactionalFeature;
+
+/**
+ * Checks that the related documents of a page of results are read in a bounded number of batches.
+ *
+ * @since 11.4
+ */
+@RunWith(FeaturesRunner.class)
+@Features(CoreFeature.class)
+public class TestDBSPrefetchRelated {
+
+    protected static final Set<String> READ_METHODS = Set.of("readState", "readStates");
+
+    @Inject
+    protected CoreFeature coreFeature;
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected TransactionalFeature txFeature;
+
+    @Before
+    public void setUp() {
+        assumeTrue("DBS only", coreFeature.getStorageConfiguration().isDBS());
+    }
+
+    /**
+     * Creates a folder holding {@code count} proxies, each one targeting a version of a distinct live document.
+     */
+    protected DocumentModel createProxies(String name, int count) {
+        DocumentModel folder = session.createDocument(session.createDocumentModel("/", name, "Folder"));
+        DocumentModel sources = session.createDocument(session.createDocumentModel("/", name + "-src", "Folder"));
+        for (int i = 0; i < count; i++) {
+            DocumentModel doc = session.createDocumentModel(sources.getPathAsString(), "doc" + i, "File");
+            doc = session.createDocument(doc);
+            DocumentRef verRef = session.checkIn(doc.getRef(), VersioningOption.MINOR, null);
+            session.createProxy(verRef, folder.getRef());
+        }
+        session.save();
+        txFeature.nextTransaction();
+        return folder;
+    }
+
+    /**
+     * Opens a session whose connection counts the reads made through it.
+     */
+    protected DBSSession openCountingSession(AtomicLong reads) {
+        RepositoryService repositoryService = Framework.getService(RepositoryService.class);
+        DBSRepository repository = (DBSRepository) repositoryService.getRepository(session.getRepositoryName());
+        DBSConnection connection = repository.getConnection();
+        DBSConnection counting = (DBSConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { DBSConnection.class }, (proxy, method, args) -> {
+                    if (READ_METHODS.contains(method.getName())) {
+                        reads.incrementAndGet();
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        return new DBSSession(repository, counting);
+    }
+
+    protected long countGetChildrenReads(DocumentModel folder, int expectedSize) {
+        AtomicLong reads = new AtomicLong();
+        DBSSession dbsSession = openCountingSession(reads);
+        try {
+            List<Document> children = dbsSession.getChildren(folder.getId());
+            assertEquals(expectedSize, children.size());
+        } finally {
+            dbsSession.destroy();
+        }
+        return reads.get();
+    }
+
+    protected long countGetDocumentsReads(DocumentModel folder, int expectedSize) {
+        String query = "SELECT ecm:uuid FROM Document WHERE ecm:parentId = '" + folder.getId() + "'";
+        List<String> ids = session.queryProjection(query, 0, 0)
+                                  .stream()
+                                  .map(map -> (String) map.get(NXQL.ECM_UUID))
+                                  .collect(Collectors.toList());
+        assertEquals(expectedSize, ids.size());
+        AtomicLong reads = new AtomicLong();
+        DBSSession dbsSession = openCountingSession(reads);
+        try {
+            List<Document> docs = dbsSession.getDocuments(ids);
+            assertEquals(expectedSize, docs.size());
+        } finally {
+            dbsSession.destroy();
+        }
+        return reads.get();
+    }
+
+    @Test
+    public void testGetChildrenReadsDoNotGrowWithResultSize() {
+        DocumentModel small = createProxies("small", 2);
+        DocumentModel large = createProxies("large", 20);
+        long smallReads = countGetChildrenReads(small, 2);
+        long largeReads = countGetChildrenReads(large, 20);
+        assertEquals(smallReads, largeReads);
+    }
+
+    @Test
+    public void testGetDocumentsReadsDoNotGrowWithResultSize() {
+        DocumentModel small = createProxies("small", 2);
+        DocumentModel large = createProxies("large", 20);
+        long smallReads = countGetDocumentsReads(small, 2);
+        long largeReads = countGetDocumentsReads(large, 20);
+        assertEquals(smallReads, largeReads);
+    }
+
+}
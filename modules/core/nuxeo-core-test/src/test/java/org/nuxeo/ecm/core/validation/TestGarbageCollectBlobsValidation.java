@@ -0,0 +1,64 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.ecm.core.validation;
+
+import static org.nuxeo.ecm.core.bulk.action.GarbageCollectBlobsAction.ACTION_NAME;
+import static org.nuxeo.ecm.core.bulk.action.GarbageCollectBlobsAction.PARAM_DRY_RUN;
+import static org.nuxeo.ecm.core.bulk.action.GarbageCollectBlobsAction.QUERY_ALL;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.bulk.AbstractTestBulkActionValidation;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
+import org.nuxeo.ecm.core.bulk.validation.GarbageCollectBlobsValidation;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+/**
+ * @since 11.4
+ */
+@RunWith(FeaturesRunner.class)
+@Features(CoreFeature.class)
+public class TestGarbageCollectBlobsValidation extends AbstractTestBulkActionValidation<GarbageCollectBlobsValidation> {
+
+    public TestGarbageCollectBlobsValidation() {
+        super(GarbageCollectBlobsValidation.class);
+    }
+
+    @Test
+    public void testGarbageCollectBlobsInvalidCommands() {
+        String repository = "test";
+        String user = "Administrator";
+        BulkCommand command = createBuilder(ACTION_NAME, QUERY_ALL, repository, user).param(PARAM_DRY_RUN, "fake")
+                                                                                     .build();
+        assertInvalidCommand(command, "Invalid " + PARAM_DRY_RUN + " in command: " + command);
+
+        // the blobs of the documents not selected would be deleted
+        command = createBuilder(ACTION_NAME, "SELECT * FROM File", repository, user).build();
+        assertInvalidCommand(command, "The query must be: " + QUERY_ALL + " in command: " + command);
+
+        command = createBuilder(ACTION_NAME, QUERY_ALL, repository, user).queryLimit(10).build();
+        assertInvalidCommand(command, "The query must not be limited in command: " + command);
+
+        command = createBuilder(ACTION_NAME, QUERY_ALL, repository, user).scroller("custom").build();
+        assertInvalidCommand(command, "The default scroller must be used in command: " + command);
+
+        // the documents that the user cannot read would not be marked
+        command = createBuilder(ACTION_NAME, QUERY_ALL, repository, "bob").build();
+        assertInvalidCommand(command, "The user must be an administrator in command: " + command);
+    }
+}
@@ -37,16 +37,23 @@ import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.IdRef;
 import org.nuxeo.ecm.core.api.IterableQueryResult;
 import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.query.sql.SQLQueryCache;
 import org.nuxeo.ecm.core.repository.RepositoryService;
 import org.nuxeo.ecm.core.versioning.DefaultVersionRemovalPolicy;
 import org.nuxeo.ecm.core.versioning.OrphanVersionRemovalFilter;
 import org.nuxeo.ecm.core.versioning.VersionRemovalPolicy;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.ComponentInstance;
 import org.nuxeo.runtime.model.DefaultComponent;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 
+import io.dropwizard.metrics5.Gauge;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+
 /**
  * Service used to register version removal policies.
  */
@@ -58,6 +65,21 @@ public class CoreService extends DefaultComponent {
 
     protected static final DefaultVersionRemovalPolicy DEFAULT_VERSION_REMOVAL_POLICY = new DefaultVersionRemovalPolicy();
 
+    /**
+     * Maximum number of parsed NXQL queries to cache, {@code 0} to disable the cache.
+     *
+     * @since 11.4
+     */
+    public static final String QUERY_PARSE_CACHE_SIZE_PROPERTY = "nuxeo.core.query.parse.cache.size";
+
+    /** @since 11.4 */
+    public static final String QUERY_PARSE_CACHE_SIZE_DEFAULT = "1000";
+
+    // @since 11.4
+    protected static final MetricName QUERY_PARSE_CACHE_METRIC = MetricName.build("nuxeo", "query", "parse", "cache");
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
     protected Map<CoreServicePolicyDescriptor, VersionRemovalPolicy> versionRemovalPolicies = new LinkedHashMap<>();
 
     protected Map<CoreServiceOrphanVersionRemovalFilterDescriptor, OrphanVersionRemovalFilter> orphanVersionRemovalFilters = new LinkedHashMap<>();
@@ -74,6 +96,25 @@ public class CoreService extends DefaultComponent {
         this.context = null;
     }
 
+    @Override
+    public void start(ComponentContext context) {
+        int size = Integer.parseInt(
+                Framework.getProperty(QUERY_PARSE_CACHE_SIZE_PROPERTY, QUERY_PARSE_CACHE_SIZE_DEFAULT).trim());
+        if (size > 0) {
+            SQLQueryCache cache = new SQLQueryCache(size);
+            registry.register(QUERY_PARSE_CACHE_METRIC.resolve("hit"), (Gauge<Long>) cache::getHits);
+            registry.register(QUERY_PARSE_CACHE_METRIC.resolve("miss"), (Gauge<Long>) cache::getMisses);
+            registry.register(QUERY_PARSE_CACHE_METRIC.resolve("size"), (Gauge<Integer>) cache::size);
+            SQLQueryCache.install(cache);
+        }
+    }
+
+    @Override
+    public void stop(ComponentContext context) {
+        SQLQueryCache.install(null);
+        registry.removeMatching((name, metric) -> name.getKey().startsWith(QUERY_PARSE_CACHE_METRIC.getKey()));
+    }
+
     @Override
     public void registerContribution(Object contrib, String point, ComponentInstance contributor) {
         if (VERSION_REMOVAL_POLICY_XP.equals(point)) {
@@ -61,6 +61,7 @@ import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
@@ -1349,6 +1350,23 @@ public abstract class AbstractSession implements CoreSession, Serializable {
         return getSession().queryProjection(query, queryType, queryFilter, distinctDocuments, countUpTo, params);
     }
 
+    @Override
+    public Stream<Map<String, Serializable>> queryProjectionStream(String query, String queryType,
+            boolean distinctDocuments, Object... params) {
+        NuxeoPrincipal principal = getPrincipal();
+        String[] principals = getPrincipalsToCheck();
+        String[] permissions = getPermissionsToCheck(BROWSE);
+        Collection<Transformer> transformers = getPoliciesQueryTransformers(queryType);
+
+        QueryFilter queryFilter = new QueryFilter(principal, principals, permissions, null, transformers, 0, 0);
+        try {
+            return getSession().queryProjectionStream(query, queryType, queryFilter, distinctDocuments, params);
+        } catch (QueryParseException e) {
+            e.addInfo("Failed to execute query: " + queryType + ": " + query);
+            throw e;
+        }
+    }
+
     protected String[] getPrincipalsToCheck() {
         NuxeoPrincipal principal = getPrincipal();
         String[] principals;
@@ -19,11 +19,20 @@
  */
 package org.nuxeo.ecm.core.api;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import javax.transaction.RollbackException;
+import javax.transaction.Synchronization;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
@@ -43,6 +52,7 @@ import org.nuxeo.ecm.core.schema.SchemaManager;
 import org.nuxeo.ecm.core.schema.TypeProvider;
 import org.nuxeo.ecm.core.schema.types.Schema;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.jtajca.NuxeoContainer;
 
 /**
  * Bridge between a {@link DocumentModel} and a {@link Document} for creation / update.
@@ -51,10 +61,61 @@ public class DocumentModelFactory {
 
     private static final Log log = LogFactory.getLog(DocumentModelFactory.class);
 
+    /**
+     * Framework property enabling the lazy mode, where the data models of a document model are only built on first
+     * access, directly from the underlying {@link Document} as long as the transaction is the same.
+     *
+     * @since 11.4
+     */
+    public static final String LAZY_PROPERTY = "nuxeo.core.documentmodel.lazy";
+
+    /** The documents referenced by lazy document models in the current transaction of this thread. */
+    protected static final ThreadLocal<LazyDocuments> LAZY_DOCUMENTS = new ThreadLocal<>();
+
     // Utility class.
     private DocumentModelFactory() {
     }
 
+    /**
+     * Holds the documents read by the lazy document models of a transaction, and releases them when it completes, so
+     * that document models kept longer don't keep the documents, their session and its state alive.
+     *
+     * @since 11.4
+     */
+    protected static class LazyDocuments implements Synchronization {
+
+        protected final Transaction transaction;
+
+        protected final Thread thread = Thread.currentThread();
+
+        /** Holders of documents, emptied when the transaction completes. */
+        protected final List<AtomicReference<Document>> holders = new ArrayList<>();
+
+        protected LazyDocuments(Transaction transaction) {
+            this.transaction = transaction;
+        }
+
+        protected synchronized AtomicReference<Document> hold(Document doc) {
+            AtomicReference<Document> holder = new AtomicReference<>(doc);
+            holders.add(holder);
+            return holder;
+        }
+
+        @Override
+        public void beforeCompletion() {
+            // nothing
+        }
+
+        @Override
+        public synchronized void afterCompletion(int status) {
+            holders.forEach(holder -> holder.set(null));
+            holders.clear();
+            if (LAZY_DOCUMENTS.get() == this) {
+                LAZY_DOCUMENTS.remove();
+            }
+        }
+    }
+
     /**
      * Creates a document model for an existing document.
      *
@@ -106,7 +167,30 @@ public class DocumentModelFactory {
             docModel.setIsImmutable(true);
         }
 
-        // populate datamodels
+        Function<Schema, DataModel> dataModelReader = Framework.isBooleanPropertyTrue(LAZY_PROPERTY)
+                ? newDataModelReader(doc)
+                : null;
+        if (dataModelReader != null) {
+            // data models will be read on first access
+            docModel.setDataModelReader(dataModelReader);
+        } else {
+            populateDataModels(doc, type, docModel);
+        }
+
+        // prefetch lifecycle state
+        try {
+            String lifeCycleState = doc.getLifeCycleState();
+            docModel.prefetchCurrentLifecycleState(lifeCycleState);
+            String lifeCyclePolicy = doc.getLifeCyclePolicy();
+            docModel.prefetchLifeCyclePolicy(lifeCyclePolicy);
+        } catch (LifeCycleException e) {
+            log.debug("Cannot prefetch lifecycle for doc: " + doc.getName() + ". Error: " + e.getMessage());
+        }
+
+        return docModel;
+    }
+
+    protected static void populateDataModels(Document doc, DocumentType type, DocumentModelImpl docModel) {
         List<String> loadSchemas = new LinkedList<>();
         PrefetchInfo prefetchInfo = type.getPrefetchInfo();
         if (prefetchInfo != null) {
@@ -125,18 +209,60 @@ public class DocumentModelFactory {
             Schema schema = schemaManager.getSchema(schemaName);
             docModel.addDataModel(createDataModel(doc, schema));
         }
+    }
 
-        // prefetch lifecycle state
-        try {
-            String lifeCycleState = doc.getLifeCycleState();
-            docModel.prefetchCurrentLifecycleState(lifeCycleState);
-            String lifeCyclePolicy = doc.getLifeCyclePolicy();
-            docModel.prefetchLifeCyclePolicy(lifeCyclePolicy);
-        } catch (LifeCycleException e) {
-            log.debug("Cannot prefetch lifecycle for doc: " + doc.getName() + ". Error: " + e.getMessage());
+    /**
+     * Returns a function reading data models from the document, usable only in the current thread and transaction.
+     * After that the document may be stale or its session closed, so the function doesn't reference it anymore and
+     * returns {@code null}, and the document model must go through a session.
+     * <p>
+     * Returns {@code null} if there is no active transaction.
+     */
+    protected static Function<Schema, DataModel> newDataModelReader(Document doc) {
+        LazyDocuments lazyDocuments = getLazyDocuments();
+        if (lazyDocuments == null) {
+            return null;
         }
+        Thread thread = lazyDocuments.thread;
+        AtomicReference<Document> holder = lazyDocuments.hold(doc);
+        return schema -> {
+            if (Thread.currentThread() != thread) {
+                return null;
+            }
+            Document document = holder.get();
+            return document == null ? null : createDataModel(document, schema);
+        };
+    }
 
-        return docModel;
+    protected static LazyDocuments getLazyDocuments() {
+        Transaction transaction = getTransaction();
+        if (transaction == null) {
+            return null;
+        }
+        LazyDocuments lazyDocuments = LAZY_DOCUMENTS.get();
+        if (lazyDocuments == null || lazyDocuments.transaction != transaction) {
+            lazyDocuments = new LazyDocuments(transaction);
+            try {
+                transaction.registerSynchronization(lazyDocuments);
+            } catch (IllegalStateException | RollbackException | SystemException e) {
+                // transaction not active anymore
+                return null;
+            }
+            LAZY_DOCUMENTS.set(lazyDocuments);
+        }
+        return lazyDocuments;
+    }
+
+    protected static Transaction getTransaction() {
+        TransactionManager transactionManager = NuxeoContainer.getTransactionManager();
+        if (transactionManager == null) {
+            return null;
+        }
+        try {
+            return transactionManager.getTransaction();
+        } catch (SystemException e) {
+            return null;
+        }
     }
 
     /**
@@ -75,6 +75,19 @@ public interface FileCache {
      */
     File putFile(String key, File file) throws IOException;
 
+    /**
+     * Checks whether a file that is not cached yet is worth putting in the cache, according to the admission policy of
+     * the cache. A file that is not admitted should be used directly by the caller instead of being put in the cache.
+     *
+     * @param key the cache key
+     * @param length the length of the file
+     * @return {@code true} if the file should be put in the cache
+     * @since 11.4
+     */
+    default boolean admit(String key, long length) {
+        return true;
+    }
+
     /**
      * Gets a file from the cache.
      * <p>
@@ -55,9 +55,9 @@ public class LRUFileCache implements FileCache {
     /** Allowed key pattern, used as file path. */
     public static final Pattern SIMPLE_ASCII = Pattern.compile("[-_.@;a-zA-Z0-9]+");
 
-    private static final String TMP_PREFIX = "nxbin_";
+    protected static final String TMP_PREFIX = "nxbin_";
 
-    private static final String TMP_SUFFIX = ".tmp";
+    protected static final String TMP_SUFFIX = ".tmp";
 
     public static final long CLEAR_OLD_ENTRIES_INTERVAL_MILLIS_DEFAULT = 5000; // 5 s
 
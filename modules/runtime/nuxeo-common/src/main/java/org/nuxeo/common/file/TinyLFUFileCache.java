@@ -0,0 +1,437 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.common.file;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A cache of {@link File}s with maximum filesystem size whose admission and eviction take into account how frequently
+ * the keys are accessed, in the spirit of TinyLFU.
+ * <p>
+ * Each access to a key through {@link #getFile}, whether it's cached or not, is recorded in a compact
+ * {@link FrequencySketch} whose counters are periodically halved so that old popularity fades out. When the cache is
+ * full, a new file is {@linkplain #admit admitted} only if its key is at least as frequently accessed as the entries
+ * that would have to be evicted to make room for it, so that a scan of large files read once doesn't flush the hot
+ * entries. To keep cache misses cheap, these victims are chosen among a small sample of the entries, taken in turn
+ * from all of them. Eviction removes the least frequently used entries first, and the least recently used ones among
+ * entries of equal frequency. As with {@link LRUFileCache}, entries younger than the minimum age are never evicted.
+ * <p>
+ * The frequencies of the cached keys are persisted in an index file of the cache directory, so that a cache using a
+ * stable directory is warm after a restart.
+ *
+ * @since 11.4
+ */
+public class TinyLFUFileCache extends LRUFileCache {
+
+    private static final Log log = LogFactory.getLog(TinyLFUFileCache.class);
+
+    /** The index file name, ignored as a cache entry because it looks like a temporary file. */
+    public static final String INDEX_FILENAME = TMP_PREFIX + "index" + TMP_SUFFIX;
+
+    protected static final String INDEX_HEADER = "nxfilecache 1";
+
+    public static final long SAVE_INDEX_INTERVAL_MILLIS = 60_000; // 1 min
+
+    /** The number of entries among which the victims of an admission are chosen. */
+    public static final int ADMISSION_SAMPLE_SIZE = 16;
+
+    protected static class Entry {
+
+        protected final String key;
+
+        protected final long size;
+
+        protected final long time;
+
+        protected int frequency;
+
+        public Entry(String key, long size, long time) {
+            this.key = key;
+            this.size = size;
+            this.time = time;
+        }
+    }
+
+    /** Eviction order: least frequently used first, then least recently used. */
+    protected static final Comparator<Entry> EVICTION_ORDER = Comparator.<Entry> comparingInt(e -> e.frequency)
+                                                                        .thenComparingLong(e -> e.time);
+
+    protected final FrequencySketch sketch;
+
+    protected final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /** The total size of the entries, maintained with them and recomputed on each scan. */
+    protected final AtomicLong entriesSize = new AtomicLong();
+
+    /** Iterates over the entries to sample admission victims, restarted when exhausted. */
+    protected Iterator<Entry> sampleIterator;
+
+    protected volatile boolean indexDirty;
+
+    protected long saveIndexLast;
+
+    /**
+     * Constructs a cache in the given directory with the given maximum size (in bytes).
+     * <p>
+     * The index of a previous cache using the same directory is reloaded.
+     *
+     * @param dir the directory to use to store cached files
+     * @param maxSize the maximum size of the cache (in bytes)
+     * @param maxCount the maximum number of files in the cache
+     * @param minAge the minimum age of a file in the cache to be eligible for removal (in seconds)
+     */
+    public TinyLFUFileCache(File dir, long maxSize, long maxCount, long minAge) {
+        super(dir, maxSize, maxCount, minAge);
+        sketch = new FrequencySketch(maxCount);
+        scanEntries();
+        loadIndex();
+        saveIndexLast = System.currentTimeMillis();
+    }
+
+    /**
+     * Rebuilds the entries from the files actually present in the cache directory, which may have been changed
+     * externally.
+     */
+    protected List<Entry> scanEntries() {
+        List<Entry> list = new ArrayList<>();
+        Set<String> keys = new HashSet<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, RegularFileFilter.INSTANCE)) {
+            for (Path path : ds) {
+                String key = path.getFileName().toString();
+                Entry entry;
+                try {
+                    entry = new Entry(key, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+                } catch (NoSuchFileException e) {
+                    continue; // deleted concurrently
+                } catch (IOException e) {
+                    log.error(e, e);
+                    continue;
+                }
+                putEntry(entry);
+                keys.add(key);
+                list.add(entry);
+            }
+        } catch (NoSuchFileException e) {
+            // no directory yet
+        } catch (IOException e) {
+            log.error(e, e);
+        }
+        entries.keySet().retainAll(keys);
+        entriesSize.set(entries.values().stream().mapToLong(e -> e.size).sum());
+        return list;
+    }
+
+    /**
+     * Loads the frequencies saved by a previous cache using the same directory.
+     */
+    protected void loadIndex() {
+        Path path = dir.resolve(INDEX_FILENAME);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, UTF_8)) {
+            if (!INDEX_HEADER.equals(reader.readLine())) {
+                log.warn("Ignoring invalid cache index: " + path);
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int i = line.indexOf(' ');
+                if (i <= 0) {
+                    continue;
+                }
+                String key = line.substring(0, i);
+                int frequency = Integer.parseInt(line.substring(i + 1));
+                if (entries.containsKey(key)) {
+                    for (int n = 0; n < frequency; n++) {
+                        sketch.increment(key);
+                    }
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.error("Cannot load cache index: " + path, e);
+        }
+    }
+
+    /**
+     * Saves the frequencies of the cached keys in the index file of the cache directory.
+     */
+    public void saveIndex() {
+        try {
+            File tmp = getTempFile();
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), UTF_8)) {
+                writer.write(INDEX_HEADER);
+                writer.newLine();
+                for (String key : entries.keySet()) {
+                    int frequency = sketch.frequency(key);
+                    if (frequency > 0) {
+                        writer.write(key + ' ' + frequency);
+                        writer.newLine();
+                    }
+                }
+            }
+            Files.move(tmp.toPath(), dir.resolve(INDEX_FILENAME), ATOMIC_MOVE, REPLACE_EXISTING);
+            indexDirty = false;
+        } catch (IOException e) {
+            log.error("Cannot save cache index in: " + dir, e);
+        }
+    }
+
+    protected void putEntry(Entry entry) {
+        Entry old = entries.put(entry.key, entry);
+        entriesSize.addAndGet(old == null ? entry.size : entry.size - old.size);
+    }
+
+    protected void removeEntry(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            entriesSize.addAndGet(-old.size);
+        }
+    }
+
+    @Override
+    public boolean admit(String key, long length) {
+        checkKey(key);
+        if (length > maxSize) {
+            return false;
+        }
+        long size = entriesSize.get();
+        long count = entries.size();
+        if (size + length <= maxSize && count < maxCount) {
+            return true;
+        }
+        // the candidate must be at least as popular as the entries it would evict
+        int frequency = sketch.frequency(key);
+        List<Entry> sample = sampleEntries();
+        sample.forEach(e -> e.frequency = sketch.frequency(e.key));
+        sample.sort(EVICTION_ORDER);
+        for (Entry victim : sample) {
+            if (victim.frequency > frequency) {
+                return false;
+            }
+            size -= victim.size;
+            count--;
+            if (size + length <= maxSize && count < maxCount) {
+                break;
+            }
+        }
+        // if the sample is too small to make room, eviction will find the remaining victims
+        return true;
+    }
+
+    /**
+     * Gets the next {@link #ADMISSION_SAMPLE_SIZE} entries, so that successive samples go over all the entries.
+     */
+    protected synchronized List<Entry> sampleEntries() {
+        List<Entry> sample = new ArrayList<>(ADMISSION_SAMPLE_SIZE);
+        boolean restarted = false;
+        while (sample.size() < ADMISSION_SAMPLE_SIZE) {
+            if (sampleIterator == null || !sampleIterator.hasNext()) {
+                if (restarted) {
+                    break; // fewer entries than the sample size
+                }
+                sampleIterator = entries.values().iterator();
+                restarted = true;
+                continue;
+            }
+            Entry entry = sampleIterator.next();
+            if (!sample.contains(entry)) {
+                sample.add(entry);
+            }
+        }
+        return sample;
+    }
+
+    @Override
+    protected void doClearOldEntries() {
+        List<Entry> list = scanEntries();
+        long size = list.stream().mapToLong(e -> e.size).sum();
+        long count = list.size();
+        if (size > maxSize || count > maxCount) {
+            list.forEach(e -> e.frequency = sketch.frequency(e.key));
+            list.sort(EVICTION_ORDER);
+            long threshold = System.currentTimeMillis() - minAgeMillis;
+            for (Entry entry : list) {
+                if (size <= maxSize && count <= maxCount) {
+                    break;
+                }
+                if (entry.time >= threshold) {
+                    // not old enough to be candidate
+                    continue;
+                }
+                try {
+                    Files.deleteIfExists(dir.resolve(entry.key));
+                    removeEntry(entry.key);
+                    size -= entry.size;
+                    count--;
+                } catch (IOException e) {
+                    log.error(e, e);
+                }
+            }
+        }
+        if (indexDirty && System.currentTimeMillis() > saveIndexLast + SAVE_INDEX_INTERVAL_MILLIS) {
+            saveIndex();
+            saveIndexLast = System.currentTimeMillis();
+        }
+    }
+
+    @Override
+    public File putFile(String key, File file) throws IOException {
+        long length = file.length();
+        File cached = super.putFile(key, file);
+        if (!entries.containsKey(key)) {
+            putEntry(new Entry(key, length, System.currentTimeMillis()));
+        }
+        return cached;
+    }
+
+    @Override
+    public File getFile(String key) {
+        checkKey(key);
+        sketch.increment(key);
+        indexDirty = true;
+        File file = super.getFile(key);
+        if (file == null) {
+            removeEntry(key);
+        } else {
+            putEntry(new Entry(key, file.length(), System.currentTimeMillis()));
+        }
+        return file;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        entries.clear();
+        entriesSize.set(0);
+    }
+
+    /**
+     * A count-min sketch of the access frequencies of keys, with 4-bit saturating counters that are all halved after a
+     * number of increments proportional to the sketch width. The counters are packed two per byte.
+     */
+    public static class FrequencySketch {
+
+        protected static final int DEPTH = 4;
+
+        public static final int MAX_FREQUENCY = 15;
+
+        protected static final int MAX_WIDTH = 1 << 24;
+
+        /** The counters, the one with an even index in the low nibble of each byte. */
+        protected final byte[] table;
+
+        protected final int mask;
+
+        protected final int sampleSize;
+
+        protected int additions;
+
+        /**
+         * Creates a sketch for the given expected number of distinct keys.
+         */
+        public FrequencySketch(long expectedKeys) {
+            int width = (int) Math.min(Long.highestOneBit(Math.max(16, expectedKeys * DEPTH - 1)) << 1, MAX_WIDTH);
+            table = new byte[width / 2];
+            mask = width - 1;
+            sampleSize = 10 * width;
+        }
+
+        /**
+         * Records an access to the key.
+         */
+        public synchronized void increment(String key) {
+            int frequency = frequency(key);
+            if (frequency < MAX_FREQUENCY) {
+                // conservative update: only the smallest counters are incremented
+                for (int i = 0; i < DEPTH; i++) {
+                    int index = index(key, i);
+                    if (counter(index) == frequency) {
+                        table[index >>> 1] += 1 << shift(index);
+                    }
+                }
+            }
+            if (++additions >= sampleSize) {
+                age();
+            }
+        }
+
+        /**
+         * Gets the estimated access frequency of the key.
+         */
+        public synchronized int frequency(String key) {
+            int frequency = MAX_FREQUENCY;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, counter(index(key, i)));
+            }
+            return frequency;
+        }
+
+        /**
+         * Halves all the counters, so that recent accesses weigh more than old ones.
+         */
+        protected void age() {
+            for (int i = 0; i < table.length; i++) {
+                // halve both nibbles, dropping the bit shifted from the high one into the low one
+                table[i] = (byte) ((table[i] >> 1) & 0x77);
+            }
+            additions /= 2;
+        }
+
+        protected int counter(int index) {
+            return (table[index >>> 1] >> shift(index)) & MAX_FREQUENCY;
+        }
+
+        protected static int shift(int index) {
+            return (index & 1) << 2;
+        }
+
+        protected int index(String key, int i) {
+            // murmur3 finalizer of the key hash seeded by the row
+            int h = key.hashCode() + i * 0x9E3779B9;
+            h ^= h >>> 16;
+            h *= 0x85EBCA6B;
+            h ^= h >>> 13;
+            h *= 0xC2B2AE35;
+            h ^= h >>> 16;
+            return h & mask;
+        }
+    }
+
+}
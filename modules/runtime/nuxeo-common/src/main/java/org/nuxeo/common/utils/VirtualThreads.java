@@ -0,0 +1,155 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.common.utils;
+
+import java.lang.Thread.State;
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Creates virtual threads when the running JVM supports them (Java 21 and later).
+ * <p>
+ * The code is compiled for Java 11, so the {@code Thread.ofVirtual()} API is accessed through reflection.
+ *
+ * @since 11.4
+ */
+public final class VirtualThreads {
+
+    private static final Log log = LogFactory.getLog(VirtualThreads.class);
+
+    private VirtualThreads() {
+        // utility class
+    }
+
+    /**
+     * Returns {@code true} if the running JVM can create virtual threads.
+     */
+    public static boolean isSupported() {
+        return newFactory("probe-", null) != null;
+    }
+
+    /**
+     * Returns a factory of virtual threads named with the given prefix followed by a counter, or {@code null} if the
+     * running JVM cannot create virtual threads.
+     *
+     * @param prefix the thread name prefix
+     * @param handler the uncaught exception handler, may be {@code null}
+     */
+    public static ThreadFactory newFactory(String prefix, UncaughtExceptionHandler handler) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            if (handler != null) {
+                Method method = builderClass.getMethod("uncaughtExceptionHandler", UncaughtExceptionHandler.class);
+                builder = method.invoke(builder, handler);
+            }
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            // JVM before Java 19
+            return null;
+        } catch (InvocationTargetException e) {
+            // preview feature not enabled (Java 19 and 20)
+            log.debug("Virtual threads not available", e.getCause());
+            return null;
+        } catch (ReflectiveOperationException e) {
+            log.debug("Virtual threads not available", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns a factory of virtual threads keeping track of the threads it created, or {@code null} if the running JVM
+     * cannot create virtual threads.
+     *
+     * @param prefix the thread name prefix
+     * @param handler the uncaught exception handler, may be {@code null}
+     * @see #newFactory
+     */
+    public static TrackingThreadFactory newTrackingFactory(String prefix, UncaughtExceptionHandler handler) {
+        ThreadFactory factory = newFactory(prefix, handler);
+        return factory == null ? null : new TrackingThreadFactory(factory);
+    }
+
+    /**
+     * Thread factory counting the threads it created that are running, parked or completed.
+     * <p>
+     * A virtual thread waiting for I/O, a lock or a condition is parked: it doesn't hold a carrier thread.
+     */
+    public static class TrackingThreadFactory implements ThreadFactory {
+
+        protected final ThreadFactory delegate;
+
+        protected final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        protected final AtomicLong completed = new AtomicLong();
+
+        public TrackingThreadFactory(ThreadFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = delegate.newThread(() -> {
+                try {
+                    r.run();
+                } finally {
+                    threads.remove(Thread.currentThread());
+                    completed.incrementAndGet();
+                }
+            });
+            if (thread != null) {
+                threads.add(thread);
+            }
+            return thread;
+        }
+
+        /**
+         * Returns the number of started threads that are not parked and not completed.
+         */
+        public long getInFlight() {
+            return threads.stream().filter(Thread::isAlive).filter(t -> !isParked(t)).count();
+        }
+
+        /**
+         * Returns the number of started threads that are parked.
+         */
+        public long getParked() {
+            return threads.stream().filter(Thread::isAlive).filter(TrackingThreadFactory::isParked).count();
+        }
+
+        /**
+         * Returns the number of threads that completed.
+         */
+        public long getCompleted() {
+            return completed.get();
+        }
+
+        protected static boolean isParked(Thread thread) {
+            State state = thread.getState();
+            return state == State.WAITING || state == State.TIMED_WAITING || state == State.BLOCKED;
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.common.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.common.file.TinyLFUFileCache.FrequencySketch;
+
+/**
+ * @since 11.4
+ */
+public class TestTinyLFUFileCache {
+
+    public File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("nxtesttinylfufilecache.").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    protected void access(FileCache cache, String key, int times) {
+        for (int i = 0; i < times; i++) {
+            cache.getFile(key);
+        }
+    }
+
+    @Test
+    public void testFrequencySketch() {
+        FrequencySketch sketch = new FrequencySketch(100);
+        assertEquals(0, sketch.frequency("foo"));
+        sketch.increment("foo");
+        sketch.increment("foo");
+        assertEquals(2, sketch.frequency("foo"));
+        assertEquals(0, sketch.frequency("bar"));
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("foo");
+        }
+        assertEquals(FrequencySketch.MAX_FREQUENCY, sketch.frequency("foo"));
+        // many other increments end up aging the counters
+        for (int i = 0; i < sketch.sampleSize; i++) {
+            sketch.increment("key" + i);
+        }
+        assertTrue(sketch.frequency("foo") < FrequencySketch.MAX_FREQUENCY);
+    }
+
+    @Test
+    public void testFrequencySketchPackedCounters() {
+        FrequencySketch sketch = new FrequencySketch(1);
+        assertEquals((sketch.mask + 1) / 2, sketch.table.length);
+        sketch.table[0] = (byte) 0xF3;
+        assertEquals(3, sketch.counter(0));
+        assertEquals(15, sketch.counter(1));
+        sketch.age();
+        assertEquals(1, sketch.counter(0));
+        assertEquals(7, sketch.counter(1));
+    }
+
+    @Test
+    public void testAdmissionSampled() throws Exception {
+        int n = 3 * TinyLFUFileCache.ADMISSION_SAMPLE_SIZE;
+        TinyLFUFileCache cache = new TinyLFUFileCache(dir, 9999, n, 0);
+        for (int i = 0; i < n; i++) {
+            cache.putFile("k" + i, new ByteArrayInputStream(new byte[10]));
+            access(cache, "k" + i, 2);
+        }
+        assertEquals(10L * n, cache.entriesSize.get());
+
+        // whichever entries are sampled, they are all hotter than a key read once
+        access(cache, "x", 1);
+        for (int i = 0; i < 5; i++) {
+            assertFalse(cache.admit("x", 10));
+        }
+        access(cache, "x", 2);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(cache.admit("x", 10));
+        }
+    }
+
+    @Test
+    public void testAdmission() throws Exception {
+        TinyLFUFileCache cache = new TinyLFUFileCache(dir, 100, 9999, 0);
+        byte[] buf = new byte[40];
+
+        // room available, everything is admitted
+        assertTrue(cache.admit("1", 40));
+        cache.putFile("1", new ByteArrayInputStream(buf));
+        assertTrue(cache.admit("2", 40));
+        cache.putFile("2", new ByteArrayInputStream(buf));
+        access(cache, "1", 3);
+        access(cache, "2", 3);
+
+        // cache full, a key read once doesn't evict hot entries
+        access(cache, "3", 1);
+        assertFalse(cache.admit("3", 40));
+        // but a key read often does
+        access(cache, "3", 5);
+        assertTrue(cache.admit("3", 40));
+        // too big for the cache
+        assertFalse(cache.admit("4", 101));
+    }
+
+    @Test
+    public void testEvictionByFrequency() throws Exception {
+        TinyLFUFileCache cache = new TinyLFUFileCache(dir, 100, 9999, 0);
+        cache.setClearOldEntriesIntervalMillis(0); // clear immediately
+        byte[] buf = new byte[40];
+
+        cache.putFile("1", new ByteArrayInputStream(buf));
+        cache.putFile("2", new ByteArrayInputStream(buf));
+        // the least recently used entry is the most used one
+        access(cache, "1", 5);
+        Thread.sleep(10);
+        access(cache, "2", 1);
+        Thread.sleep(10);
+
+        // cache miss then fill
+        access(cache, "3", 1);
+        cache.putFile("3", new ByteArrayInputStream(buf));
+        assertEquals(2, cache.getNumberOfItems());
+        assertNotNull(cache.getFile("1"));
+        assertNull(cache.getFile("2"));
+        assertNotNull(cache.getFile("3"));
+    }
+
+    @Test
+    public void testIndexPersisted() throws Exception {
+        TinyLFUFileCache cache = new TinyLFUFileCache(dir, 100, 9999, 0);
+        byte[] buf = new byte[40];
+        cache.putFile("1", new ByteArrayInputStream(buf));
+        cache.putFile("2", new ByteArrayInputStream(buf));
+        access(cache, "1", 3);
+        access(cache, "2", 3);
+        cache.saveIndex();
+        assertTrue(new File(dir, TinyLFUFileCache.INDEX_FILENAME).exists());
+
+        // a new cache on the same directory is warm
+        cache = new TinyLFUFileCache(dir, 100, 9999, 0);
+        assertEquals(2, cache.getNumberOfItems());
+        assertEquals(3, cache.sketch.frequency("1"));
+        assertEquals(3, cache.sketch.frequency("2"));
+        access(cache, "3", 1);
+        assertFalse(cache.admit("3", 40));
+    }
+
+}
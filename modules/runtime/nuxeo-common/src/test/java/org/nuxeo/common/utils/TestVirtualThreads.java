@@ -0,0 +1,87 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.common.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.nuxeo.common.utils.VirtualThreads.TrackingThreadFactory;
+
+/**
+ * @since 11.4
+ */
+public class TestVirtualThreads {
+
+    @Test
+    public void testFactory() throws Exception {
+        ThreadFactory factory = VirtualThreads.newFactory("test-", null);
+        if (Runtime.version().feature() < 19) {
+            assertNull(factory);
+            return;
+        }
+        if (factory == null) {
+            // preview feature not enabled
+            return;
+        }
+        assertTrue(VirtualThreads.isSupported());
+        CountDownLatch latch = new CountDownLatch(1);
+        Thread thread = factory.newThread(latch::countDown);
+        assertNotNull(thread);
+        assertEquals("test-0", thread.getName());
+        thread.start();
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTrackingFactory() throws Exception {
+        // tracking doesn't depend on the kind of threads created
+        TrackingThreadFactory factory = new TrackingThreadFactory(Executors.defaultThreadFactory());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread thread = factory.newThread(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (factory.getParked() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, factory.getParked());
+        assertEquals(0, factory.getInFlight());
+        assertEquals(0, factory.getCompleted());
+
+        release.countDown();
+        thread.join(10_000);
+        assertEquals(0, factory.getParked());
+        assertEquals(0, factory.getInFlight());
+        assertEquals(1, factory.getCompleted());
+    }
+
+}
@@ -0,0 +1,438 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.runtime.kv;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.common.Environment;
+
+/**
+ * Persistent Key/Value store for single-node deployments.
+ * <p>
+ * All the entries are served from memory as in {@link MemKeyValueStore}, and every update is appended to a log file
+ * before being visible. On startup the log is replayed, a torn or corrupted record at its end (crash during a write) is
+ * truncated. When the log holds too many obsolete records it is compacted into a new file atomically replacing the
+ * previous one.
+ * <p>
+ * The following configuration properties are available:
+ * <ul>
+ * <li>directory: the directory of the log files, the default is "kv" in the Nuxeo data directory. The log file is
+ * named after the store.
+ * <li>sync: if true, each update is forced to the storage device before returning, otherwise it is only written to the
+ * file system which survives a crash of the process but not of the machine. The default is false.
+ * <li>compactionThreshold: the number of records above which the log is compacted if less than half of them are
+ * live, the default is 100000.
+ * </ul>
+ *
+ * @since 11.4
+ */
+public class FileKeyValueStore extends MemKeyValueStore {
+
+    private static final Logger log = LogManager.getLogger(FileKeyValueStore.class);
+
+    public static final String DIRECTORY_PROP = "directory";
+
+    public static final String DIRECTORY_DEFAULT = "kv";
+
+    public static final String SYNC_PROP = "sync";
+
+    public static final String COMPACTION_THRESHOLD_PROP = "compactionThreshold";
+
+    public static final long COMPACTION_THRESHOLD_DEFAULT = 100_000;
+
+    protected static final String LOG_SUFFIX = ".kv";
+
+    protected static final String COMPACT_SUFFIX = ".compact";
+
+    protected static final byte PUT = 1;
+
+    protected static final byte REMOVE = 2;
+
+    protected static final byte CLEAR = 3;
+
+    // op + expiration + key length + value length
+    protected static final int HEADER_SIZE = 1 + 8 + 4 + 4;
+
+    // length + crc
+    protected static final int FRAME_SIZE = 4 + 4;
+
+    protected static final int MAX_RECORD_SIZE = Integer.MAX_VALUE - FRAME_SIZE;
+
+    protected Path file;
+
+    protected boolean sync;
+
+    protected long compactionThreshold;
+
+    protected FileChannel channel;
+
+    protected FileLock fileLock;
+
+    /** Number of records in the log, to decide when to compact it. */
+    protected final AtomicLong records = new AtomicLong();
+
+    /** Number of records to reach before compacting again after a failed compaction, set with the log lock held. */
+    protected volatile long compactionRetry;
+
+    /** Updates share the read lock, compaction and clear take the write lock. */
+    protected final ReadWriteLock logLock = new ReentrantReadWriteLock();
+
+    @Override
+    public void initialize(KeyValueStoreDescriptor descriptor) {
+        super.initialize(descriptor);
+        Map<String, String> properties = descriptor.properties;
+        String directory = properties.get(DIRECTORY_PROP);
+        File dir = StringUtils.isBlank(directory) ? new File(Environment.getDefault().getData(), DIRECTORY_DEFAULT)
+                : new File(directory);
+        sync = Boolean.parseBoolean(properties.get(SYNC_PROP));
+        String threshold = properties.get(COMPACTION_THRESHOLD_PROP);
+        compactionThreshold = StringUtils.isBlank(threshold) ? COMPACTION_THRESHOLD_DEFAULT : Long.parseLong(threshold);
+        // store names may contain characters not allowed in file names
+        file = dir.toPath().resolve(name.replaceAll("[^a-zA-Z0-9._-]", "_") + LOG_SUFFIX);
+        try {
+            Files.createDirectories(dir.toPath());
+            open();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot open key/value store: " + name + " in: " + file, e);
+        }
+    }
+
+    protected void open() throws IOException {
+        channel = FileChannel.open(file, CREATE, READ, WRITE);
+        fileLock = channel.tryLock();
+        if (fileLock == null) {
+            channel.close();
+            throw new IOException("Key/value store log already in use: " + file);
+        }
+        long valid = replay();
+        if (valid < channel.size()) {
+            log.warn("Truncating key/value store log: {} from: {} to: {} bytes", file, channel.size(), valid);
+            channel.truncate(valid);
+            channel.force(true);
+        }
+        channel.position(valid);
+    }
+
+    /**
+     * Reads the log into memory.
+     *
+     * @return the position of the end of the last valid record
+     */
+    protected long replay() throws IOException {
+        long now = now();
+        Map<String, Entry> entries = new HashMap<>();
+        long position = 0;
+        long count = 0;
+        channel.position(0);
+        // the channel must not be closed with the stream
+        InputStream in = Channels.newInputStream(channel);
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        CRC32 crc = new CRC32();
+        for (;;) {
+            byte[] record;
+            try {
+                int length = data.readInt();
+                int checksum = data.readInt();
+                long remaining = channel.size() - position - FRAME_SIZE;
+                if (length < HEADER_SIZE || length > MAX_RECORD_SIZE || length > remaining) {
+                    break;
+                }
+                record = new byte[length];
+                data.readFully(record);
+                crc.reset();
+                crc.update(record);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            apply(ByteBuffer.wrap(record), entries);
+            position += FRAME_SIZE + record.length;
+            count++;
+        }
+        map.clear();
+        wheel.clear();
+        entries.values().stream().filter(entry -> !entry.isExpired(now)).forEach(entry -> {
+            map.put(entry.key, entry);
+            schedule(entry);
+        });
+        records.set(count);
+        log.debug("Replayed key/value store log: {}, records: {}, entries: {}", file, count, map.size());
+        return position;
+    }
+
+    protected void apply(ByteBuffer buffer, Map<String, Entry> entries) {
+        byte op = buffer.get();
+        long expiration = buffer.getLong();
+        byte[] key = new byte[buffer.getInt()];
+        buffer.get(key);
+        byte[] value = new byte[buffer.getInt()];
+        buffer.get(value);
+        String k = new String(key, UTF_8);
+        switch (op) {
+        case PUT:
+            entries.put(k, new Entry(k, value, expiration));
+            break;
+        case REMOVE:
+            entries.remove(k);
+            break;
+        case CLEAR:
+            entries.clear();
+            break;
+        default:
+            throw new IllegalStateException("Unknown operation: " + op + " in key/value store log: " + file);
+        }
+    }
+
+    protected static ByteBuffer encode(byte op, String key, Entry entry) {
+        byte[] k = key == null ? new byte[0] : key.getBytes(UTF_8);
+        byte[] v = entry == null ? new byte[0] : entry.value;
+        int length = HEADER_SIZE + k.length + v.length;
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_SIZE + length);
+        buffer.putInt(length);
+        buffer.putInt(0); // crc placeholder
+        buffer.put(op);
+        buffer.putLong(entry == null ? 0 : entry.expiration);
+        buffer.putInt(k.length);
+        buffer.put(k);
+        buffer.putInt(v.length);
+        buffer.put(v);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), FRAME_SIZE, length);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    protected void append(FileChannel ch, ByteBuffer buffer) throws IOException {
+        // FileChannel writes are serialized, a record is never interleaved with another one
+        while (buffer.hasRemaining()) {
+            ch.write(buffer);
+        }
+    }
+
+    @Override
+    protected void changed(String key, Entry entry) {
+        try {
+            append(channel, encode(entry == null ? REMOVE : PUT, key, entry));
+            if (sync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write to key/value store log: " + file, e);
+        }
+        records.incrementAndGet();
+    }
+
+    @Override
+    public void put(String key, byte[] value, long ttl) {
+        logLock.readLock().lock();
+        try {
+            super.put(key, value, ttl);
+        } finally {
+            logLock.readLock().unlock();
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public boolean setTTL(String key, long ttl) {
+        boolean set;
+        logLock.readLock().lock();
+        try {
+            set = super.setTTL(key, ttl);
+        } finally {
+            logLock.readLock().unlock();
+        }
+        compactIfNeeded();
+        return set;
+    }
+
+    @Override
+    public boolean compareAndSet(String key, byte[] expected, byte[] value, long ttl) {
+        boolean set;
+        logLock.readLock().lock();
+        try {
+            set = super.compareAndSet(key, expected, value, ttl);
+        } finally {
+            logLock.readLock().unlock();
+        }
+        compactIfNeeded();
+        return set;
+    }
+
+    @Override
+    public long addAndGet(String key, long delta) throws NumberFormatException { // NOSONAR
+        long result;
+        logLock.readLock().lock();
+        try {
+            result = super.addAndGet(key, delta);
+        } finally {
+            logLock.readLock().unlock();
+        }
+        compactIfNeeded();
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        logLock.writeLock().lock();
+        try {
+            super.clear();
+            append(channel, encode(CLEAR, null, null));
+            channel.force(false);
+            records.incrementAndGet();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write to key/value store log: " + file, e);
+        } finally {
+            logLock.writeLock().unlock();
+        }
+        compactIfNeeded();
+    }
+
+    protected void compactIfNeeded() {
+        long count = records.get();
+        if (count > compactionThreshold && count > 2L * map.size() && count > compactionRetry) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the log with only the live entries.
+     * <p>
+     * A failed compaction is logged and retried after {@link #compactionThreshold} more records, the previous log
+     * staying in use.
+     */
+    protected void compact() {
+        logLock.writeLock().lock();
+        try {
+            long count = records.get();
+            if (count <= compactionThreshold || count <= 2L * map.size() || count <= compactionRetry) {
+                // already compacted by another thread
+                return;
+            }
+            Path compacted = file.resolveSibling(file.getFileName() + COMPACT_SUFFIX);
+            long written;
+            try {
+                written = writeCompacted(compacted);
+            } catch (IOException e) {
+                log.error("Cannot compact key/value store log: {}", file, e);
+                compactionRetry = count + compactionThreshold;
+                FileUtils.deleteQuietly(compacted.toFile());
+                return;
+            }
+            // the log must be closed to be replaced on all platforms, which releases its lock
+            fileLock.release();
+            channel.close();
+            try {
+                Files.move(compacted, file, REPLACE_EXISTING, ATOMIC_MOVE);
+                records.set(written);
+                compactionRetry = 0;
+                log.debug("Compacted key/value store log: {} from: {} to: {} records", file, count, written);
+            } catch (IOException e) {
+                log.error("Cannot replace key/value store log: {} by its compaction", file, e);
+                compactionRetry = count + compactionThreshold;
+            } finally {
+                reopen();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot reopen key/value store log: " + file, e);
+        } finally {
+            logLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the live entries into a new log.
+     *
+     * @return the number of records written
+     */
+    protected long writeCompacted(Path compacted) throws IOException {
+        long now = now();
+        long written = 0;
+        try (FileChannel ch = FileChannel.open(compacted, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            for (Entry entry : map.values()) {
+                if (!entry.isExpired(now)) {
+                    append(ch, encode(PUT, entry.key, entry));
+                    written++;
+                }
+            }
+            ch.force(true);
+        }
+        return written;
+    }
+
+    /**
+     * Reopens the log after a compaction, for appending.
+     */
+    protected void reopen() throws IOException {
+        channel = FileChannel.open(file, READ, WRITE);
+        fileLock = channel.tryLock();
+        if (fileLock == null) {
+            channel.close();
+            throw new IOException("Key/value store log taken by another process during compaction: " + file);
+        }
+        channel.position(channel.size());
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        logLock.writeLock().lock();
+        try {
+            if (channel != null) {
+                channel.force(true);
+                channel.close();
+                channel = null;
+            }
+        } catch (IOException e) {
+            log.error("Cannot close key/value store log: {}", file, e);
+        } finally {
+            logLock.writeLock().unlock();
+        }
+    }
+
+}
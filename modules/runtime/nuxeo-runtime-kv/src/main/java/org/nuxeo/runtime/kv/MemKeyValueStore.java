@@ -18,62 +18,201 @@
  */
 package org.nuxeo.runtime.kv;
 
-import java.util.ArrayList;
+import java.nio.charset.CharacterCodingException;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import org.apache.commons.lang3.reflect.FieldUtils;
+import org.nuxeo.runtime.metrics.MetricsService;
 
-import net.jodah.expiringmap.ExpiringMap;
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.Gauge;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
 
 /**
  * Memory-based implementation of a Key/Value store.
+ * <p>
+ * Entries are kept in a {@link ConcurrentHashMap}, atomic updates lock only the bin of their key so that writers on
+ * different keys don't contend. TTLs are tracked by a {@link TimingWheel} advanced by the store operations themselves,
+ * and checked again on read so that an expired entry is never returned.
  *
  * @since 9.1
  */
 public class MemKeyValueStore extends AbstractKeyValueStoreProvider {
 
-    protected final ExpiringMap<String, byte[]> map;
+    /**
+     * Resolution of the TTLs.
+     *
+     * @since 11.4
+     */
+    protected static final long TICK_MILLIS = 1000;
 
-    protected final Lock writeLock;
+    // @since 11.4
+    public static final String SIZE_METRIC = "nuxeo.kv.mem.size";
 
-    public MemKeyValueStore() {
-        map = ExpiringMap.builder().expiration(Integer.MAX_VALUE, TimeUnit.DAYS).variableExpiration().build();
-        try {
-            writeLock = (Lock) FieldUtils.readField(map, "writeLock", true);
-        } catch (ReflectiveOperationException e) {
-            throw new RuntimeException(e);
+    // @since 11.4
+    public static final String EXPIRED_METRIC = "nuxeo.kv.mem.expired";
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    // @since 11.4
+    protected final Map<String, Entry> map = new ConcurrentHashMap<>();
+
+    // @since 11.4
+    protected final TimingWheel<Entry> wheel = new TimingWheel<>(TICK_MILLIS, System.currentTimeMillis());
+
+    // @since 11.4
+    protected Counter expiredCounter = new Counter();
+
+    // @since 11.4
+    protected MetricName sizeMetric;
+
+    /**
+     * An entry, replaced on each update so that a stale expiration never removes a newer value.
+     *
+     * @since 11.4
+     */
+    protected static final class Entry {
+
+        protected final String key;
+
+        protected final byte[] value;
+
+        // 0 for no expiration
+        protected final long expiration;
+
+        // cancelled when the entry is replaced, set before the entry is published in the map
+        protected TimingWheel.Timer<Entry> timer;
+
+        protected Entry(String key, byte[] value, long expiration) {
+            this.key = key;
+            this.value = value;
+            this.expiration = expiration;
+        }
+
+        protected boolean isExpired(long now) {
+            return expiration != 0 && expiration <= now;
+        }
+    }
+
+    @Override
+    public void initialize(KeyValueStoreDescriptor descriptor) {
+        super.initialize(descriptor);
+        sizeMetric = MetricName.build(SIZE_METRIC).tagged("store", name);
+        registry.remove(sizeMetric);
+        registry.register(sizeMetric, (Gauge<Integer>) map::size);
+        expiredCounter = registry.counter(MetricName.build(EXPIRED_METRIC).tagged("store", name));
+    }
+
+    protected static long now() {
+        return System.currentTimeMillis();
+    }
+
+    protected Entry newEntry(String key, byte[] value, long ttl, long now) {
+        Entry entry = new Entry(key, value, ttl == 0 ? 0 : now + ttl * 1000);
+        schedule(entry);
+        return entry;
+    }
+
+    /**
+     * Schedules the expiration of a new entry.
+     *
+     * @since 11.4
+     */
+    protected void schedule(Entry entry) {
+        if (entry.expiration != 0) {
+            entry.timer = wheel.schedule(entry, entry.expiration);
+        }
+    }
+
+    /**
+     * Cancels the expiration of an entry that is replaced or removed, so that the timers of updated keys don't
+     * accumulate in the wheel until their deadline.
+     *
+     * @since 11.4
+     */
+    protected void cancel(Entry entry) {
+        if (entry != null && entry.timer != null) {
+            wheel.cancel(entry.timer);
+        }
+    }
+
+    /**
+     * Called with the lock of the key held whenever its entry is updated, the entry is {@code null} when the key is
+     * removed. Expirations are not reported.
+     *
+     * @since 11.4
+     */
+    protected void changed(String key, Entry entry) {
+        // nothing to do in memory
+    }
+
+    /**
+     * Removes the entries whose TTL elapsed since the last call.
+     */
+    protected void expire(long now) {
+        wheel.advance(now, this::expire);
+    }
+
+    protected void expire(Entry entry) {
+        // an updated value is a different entry and is kept
+        if (map.remove(entry.key, entry)) {
+            expiredCounter.inc();
         }
     }
 
+    /**
+     * Gets the live entry for a key, or {@code null}.
+     */
+    protected Entry getEntry(String key, long now) {
+        Objects.requireNonNull(key);
+        Entry entry = map.get(key);
+        return entry == null || entry.isExpired(now) ? null : entry;
+    }
+
     @Override
     public Stream<String> keyStream() {
-        // don't return a keySet stream directly as it may
-        // throw ConcurrentModificationException if there are concurrent writes
-        List<String> keys = new ArrayList<>(map.keySet());
+        long now = now();
+        expire(now);
+        List<String> keys = map.values()
+                               .stream()
+                               .filter(entry -> !entry.isExpired(now))
+                               .map(entry -> entry.key)
+                               .collect(Collectors.toList());
         return keys.stream();
     }
 
     @Override
     public Stream<String> keyStream(String prefix) {
-        // don't return a keySet stream directly as it may
-        // throw ConcurrentModificationException if there are concurrent writes
-        List<String> keys = new ArrayList<>();
-        map.keySet().stream().filter(key -> key.startsWith(prefix)).forEach(keys::add);
+        long now = now();
+        expire(now);
+        List<String> keys = map.values()
+                               .stream()
+                               .filter(entry -> entry.key.startsWith(prefix) && !entry.isExpired(now))
+                               .map(entry -> entry.key)
+                               .collect(Collectors.toList());
         return keys.stream();
     }
 
     @Override
     public void close() {
+        if (sizeMetric != null) {
+            registry.remove(sizeMetric);
+        }
     }
 
     @Override
     public void clear() {
         map.clear();
+        wheel.clear();
     }
 
     protected static byte[] clone(byte[] value) {
@@ -83,65 +222,131 @@ public class MemKeyValueStore extends AbstractKeyValueStoreProvider {
     @Override
     public void put(String key, byte[] value, long ttl) {
         Objects.requireNonNull(key);
-        value = clone(value);
-        if (value == null) {
-            map.remove(key);
-        } else if (ttl == 0) {
-            map.put(key, value);
-        } else {
-            map.put(key, value, ttl, TimeUnit.SECONDS);
-        }
+        long now = now();
+        expire(now);
+        byte[] newValue = clone(value);
+        map.compute(key, (k, current) -> {
+            Entry entry = newValue == null ? null : newEntry(k, newValue, ttl, now);
+            if (entry != null || current != null) {
+                changed(k, entry);
+            }
+            cancel(current);
+            return entry;
+        });
     }
 
     @Override
     public byte[] get(String key) {
-        Objects.requireNonNull(key);
-        byte[] value = map.get(key);
-        return clone(value);
+        long now = now();
+        expire(now);
+        Entry entry = getEntry(key, now);
+        return entry == null ? null : clone(entry.value);
     }
 
     @Override
-    public boolean setTTL(String key, long ttl) {
-        Objects.requireNonNull(key);
-        byte[] value = map.get(key);
-        if (value == null) {
-            return false;
+    public Map<String, byte[]> get(Collection<String> keys) {
+        long now = now();
+        expire(now);
+        Map<String, byte[]> result = new HashMap<>(keys.size());
+        for (String key : keys) {
+            Entry entry = getEntry(key, now);
+            if (entry != null) {
+                result.put(key, clone(entry.value));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, String> getStrings(Collection<String> keys) {
+        long now = now();
+        expire(now);
+        Map<String, String> result = new HashMap<>(keys.size());
+        for (String key : keys) {
+            Entry entry = getEntry(key, now);
+            if (entry != null) {
+                // values are decoded without being copied
+                try {
+                    result.put(key, bytesToString(entry.value));
+                } catch (CharacterCodingException e) {
+                    throw new IllegalArgumentException("Value is not a String for key: " + key);
+                }
+            }
         }
-        doSetTTL(key, ttl);
-        return true;
+        return result;
     }
 
-    protected void doSetTTL(String key, long ttl) {
-        if (ttl == 0) {
-            map.setExpiration(key, Integer.MAX_VALUE, TimeUnit.DAYS);
-        } else {
-            map.setExpiration(key, ttl, TimeUnit.SECONDS);
+    @Override
+    public Map<String, Long> getLongs(Collection<String> keys) throws NumberFormatException { // NOSONAR
+        long now = now();
+        expire(now);
+        Map<String, Long> result = new HashMap<>(keys.size());
+        for (String key : keys) {
+            Entry entry = getEntry(key, now);
+            if (entry != null) {
+                result.put(key, bytesToLong(entry.value));
+            }
         }
+        return result;
+    }
+
+    @Override
+    public boolean setTTL(String key, long ttl) {
+        Objects.requireNonNull(key);
+        long now = now();
+        expire(now);
+        Entry entry = map.computeIfPresent(key, (k, current) -> {
+            if (current.isExpired(now)) {
+                return null;
+            }
+            Entry updated = newEntry(k, current.value, ttl, now);
+            changed(k, updated);
+            cancel(current);
+            return updated;
+        });
+        return entry != null;
     }
 
     @Override
     public boolean compareAndSet(String key, byte[] expected, byte[] value, long ttl) {
         Objects.requireNonNull(key);
         // clone is not needed if the comparison fails
-        // but we are optimistic and prefer to do the clone outside the lock
-        value = clone(value);
-        // we don't use ExpiringMap.replace because it deals with null differently
-        writeLock.lock();
-        try {
-            byte[] current = map.get(key);
-            boolean equal = Arrays.equals(expected, current);
-            if (equal) {
-                if (value == null) {
-                    map.remove(key);
-                } else {
-                    map.put(key, value);
-                    doSetTTL(key, ttl);
-                }
+        // but we are optimistic and prefer to do the clone outside the bin lock
+        byte[] newValue = clone(value);
+        long now = now();
+        expire(now);
+        boolean[] equal = new boolean[1];
+        map.compute(key, (k, current) -> {
+            if (current != null && current.isExpired(now)) {
+                current = null;
             }
-            return equal;
-        } finally {
-            writeLock.unlock();
-        }
+            equal[0] = Arrays.equals(expected, current == null ? null : current.value);
+            if (!equal[0]) {
+                return current;
+            }
+            Entry entry = newValue == null ? null : newEntry(k, newValue, ttl, now);
+            changed(k, entry);
+            cancel(current);
+            return entry;
+        });
+        return equal[0];
+    }
+
+    @Override
+    public long addAndGet(String key, long delta) throws NumberFormatException { // NOSONAR
+        Objects.requireNonNull(key);
+        long now = now();
+        expire(now);
+        // atomic in the bin of the key, no compare-and-set loop
+        Entry entry = map.compute(key, (k, current) -> {
+            Long base = current == null || current.isExpired(now) ? null : bytesToLong(current.value);
+            long result = (base == null ? 0 : base.longValue()) + delta;
+            Entry updated = newEntry(k, longToBytes(result), 0, now);
+            changed(k, updated);
+            cancel(current);
+            return updated;
+        });
+        return bytesToLong(entry.value);
     }
 
 }
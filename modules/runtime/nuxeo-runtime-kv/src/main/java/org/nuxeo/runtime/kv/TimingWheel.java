@@ -0,0 +1,246 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.runtime.kv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel used to expire entries.
+ * <p>
+ * Timers are bucketed by deadline tick in {@value #LEVELS} wheels of {@value #WHEEL_SIZE} slots, each level covering
+ * {@value #WHEEL_SIZE} times the range of the previous one, the farthest deadlines going to an overflow queue.
+ * Scheduling is lock-free, a timer is moved to a lower level when the wheel reaches its slot, and expired when it
+ * reaches the first level. Advancing the wheel is done by whoever wins its lock, there is no dedicated thread.
+ * <p>
+ * A timer can be {@linkplain #cancel cancelled}, which releases its item immediately. Cancelled timers are skipped when
+ * reached, and purged from the wheel as soon as they outnumber the others, so that items rescheduled over and over
+ * don't accumulate timers.
+ * <p>
+ * The wheel can be late, never early: a deadline is rounded up to the next tick and a timer scheduled concurrently
+ * with an advance may wait for the next turn, callers must still check the deadline of the entries they read.
+ *
+ * @param <T> the type of the scheduled items
+ * @since 11.4
+ */
+public class TimingWheel<T> {
+
+    protected static final int WHEEL_BITS = 6;
+
+    protected static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+    protected static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    protected static final int LEVELS = 4;
+
+    /** Minimum number of cancelled timers before they are purged. */
+    protected static final int PURGE_THRESHOLD = 1024;
+
+    protected final long tickMillis;
+
+    protected final Queue<Timer<T>>[][] wheels;
+
+    protected final Queue<Timer<T>> overflow = new ConcurrentLinkedQueue<>();
+
+    protected final ReentrantLock advanceLock = new ReentrantLock();
+
+    protected volatile long currentTick;
+
+    /** The number of timers in the wheel, including the cancelled ones. */
+    protected final AtomicInteger size = new AtomicInteger();
+
+    protected final AtomicInteger cancelled = new AtomicInteger();
+
+    /**
+     * A scheduled item, whose item is taken when it expires or is cancelled.
+     */
+    public static class Timer<T> {
+
+        protected final AtomicReference<T> item;
+
+        protected final long tick;
+
+        protected Timer(T item, long tick) {
+            this.item = new AtomicReference<>(item);
+            this.tick = tick;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, long nowMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Invalid tick: " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+        wheels = new Queue[LEVELS][WHEEL_SIZE];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                wheels[level][slot] = new ConcurrentLinkedQueue<>();
+            }
+        }
+        currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Schedules an item to be expired once the given deadline is reached.
+     *
+     * @return the timer, to be {@linkplain #cancel cancelled} if the item doesn't need to be expired anymore
+     */
+    public Timer<T> schedule(T item, long deadlineMillis) {
+        // round up so that an item is never expired before its deadline
+        long tick = (deadlineMillis + tickMillis - 1) / tickMillis;
+        Timer<T> timer = new Timer<>(item, tick);
+        size.incrementAndGet();
+        add(timer);
+        return timer;
+    }
+
+    /**
+     * Cancels a timer, its item will not be expired.
+     *
+     * @return {@code false} if the item was already expired or the timer cancelled
+     */
+    public boolean cancel(Timer<T> timer) {
+        if (timer.item.getAndSet(null) == null) {
+            return false;
+        }
+        cancelled.incrementAndGet();
+        return true;
+    }
+
+    protected void add(Timer<T> timer) {
+        long tick = Math.max(timer.tick, currentTick + 1);
+        long delta = tick - currentTick;
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << (WHEEL_BITS * (level + 1))) {
+                int slot = (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+                wheels[level][slot].add(timer);
+                return;
+            }
+        }
+        overflow.add(timer);
+    }
+
+    /**
+     * Advances the wheel up to the given time, passing the expired items to the consumer.
+     * <p>
+     * Returns immediately if there is nothing to do or if another thread is already advancing the wheel.
+     *
+     * @return the number of expired items
+     */
+    public int advance(long nowMillis, Consumer<T> expired) {
+        long nowTick = nowMillis / tickMillis;
+        if ((nowTick <= currentTick && !needsPurge()) || !advanceLock.tryLock()) {
+            return 0;
+        }
+        int count = 0;
+        try {
+            if (needsPurge()) {
+                purge();
+            }
+            List<Timer<T>> cascade = new ArrayList<>();
+            while (currentTick < nowTick) {
+                long tick = currentTick + 1;
+                currentTick = tick;
+                // move down the timers of the upper levels whose slot is reached
+                if ((tick & ((1L << (WHEEL_BITS * LEVELS)) - 1)) == 0) {
+                    drain(overflow, cascade);
+                }
+                for (int level = LEVELS - 1; level > 0; level--) {
+                    if ((tick & ((1L << (WHEEL_BITS * level)) - 1)) == 0) {
+                        int slot = (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+                        drain(wheels[level][slot], cascade);
+                    }
+                }
+                drain(wheels[0][(int) (tick & WHEEL_MASK)], cascade);
+                for (Timer<T> timer : cascade) {
+                    if (timer.tick > tick) {
+                        add(timer);
+                        continue;
+                    }
+                    size.decrementAndGet();
+                    T item = timer.item.getAndSet(null);
+                    if (item == null) {
+                        cancelled.decrementAndGet();
+                    } else {
+                        expired.accept(item);
+                        count++;
+                    }
+                }
+                cascade.clear();
+            }
+        } finally {
+            advanceLock.unlock();
+        }
+        return count;
+    }
+
+    protected boolean needsPurge() {
+        int n = cancelled.get();
+        return n >= PURGE_THRESHOLD && 2 * n > size.get();
+    }
+
+    /**
+     * Removes the cancelled timers, called with the advance lock held.
+     */
+    protected void purge() {
+        purge(overflow);
+        for (Queue<Timer<T>>[] wheel : wheels) {
+            for (Queue<Timer<T>> slot : wheel) {
+                purge(slot);
+            }
+        }
+    }
+
+    protected void purge(Queue<Timer<T>> queue) {
+        queue.removeIf(timer -> {
+            if (timer.item.get() != null) {
+                return false;
+            }
+            size.decrementAndGet();
+            cancelled.decrementAndGet();
+            return true;
+        });
+    }
+
+    protected static <T> void drain(Queue<Timer<T>> queue, List<Timer<T>> list) {
+        Timer<T> timer;
+        while ((timer = queue.poll()) != null) {
+            list.add(timer);
+        }
+    }
+
+    /**
+     * Removes all the scheduled items.
+     */
+    public void clear() {
+        for (Queue<Timer<T>>[] wheel : wheels) {
+            for (Queue<Timer<T>> slot : wheel) {
+                slot.clear();
+            }
+        }
+        overflow.clear();
+        size.set(0);
+        cancelled.set(0);
+    }
+
+}
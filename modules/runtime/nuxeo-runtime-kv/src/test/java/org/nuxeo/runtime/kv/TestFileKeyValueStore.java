@@ -0,0 +1,160 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.runtime.kv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+import org.nuxeo.runtime.test.runner.Deploy;
+
+/**
+ * @since 11.4
+ */
+@Deploy("org.nuxeo.runtime.kv.tests:OSGI-INF/test-keyvalueservice-file.xml")
+public class TestFileKeyValueStore extends AbstractKeyValueStoreTest {
+
+    protected Path dir;
+
+    @After
+    public void tearDown() {
+        if (dir != null) {
+            FileUtils.deleteQuietly(dir.toFile());
+        }
+    }
+
+    protected FileKeyValueStore open(String name, String compactionThreshold) throws IOException {
+        return open(new FileKeyValueStore(), name, compactionThreshold);
+    }
+
+    protected FileKeyValueStore open(FileKeyValueStore fileStore, String name, String compactionThreshold)
+            throws IOException {
+        if (dir == null) {
+            dir = Files.createTempDirectory("kv");
+        }
+        KeyValueStoreDescriptor descriptor = new KeyValueStoreDescriptor();
+        descriptor.name = name;
+        descriptor.properties.put(FileKeyValueStore.DIRECTORY_PROP, dir.toString());
+        if (compactionThreshold != null) {
+            descriptor.properties.put(FileKeyValueStore.COMPACTION_THRESHOLD_PROP, compactionThreshold);
+        }
+        fileStore.initialize(descriptor);
+        return fileStore;
+    }
+
+    @Test
+    public void testClass() {
+        assertTrue(store instanceof FileKeyValueStore);
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        FileKeyValueStore fileStore = open("recovery", null);
+        fileStore.put("foo", BAR);
+        fileStore.put("gee", MOO, 3600);
+        fileStore.put("zap", GEE);
+        fileStore.put("zap", (String) null);
+        fileStore.addAndGet("count", 5);
+        assertTrue(fileStore.compareAndSet("moo", null, BAR));
+        fileStore.close();
+
+        // simulate a crash in the middle of a write
+        Path file = dir.resolve("recovery" + FileKeyValueStore.LOG_SUFFIX);
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 1, 0, 42, 42 }));
+        }
+
+        fileStore = open("recovery", null);
+        assertEquals(BAR, fileStore.getString("foo"));
+        assertEquals(MOO, fileStore.getString("gee"));
+        assertNull(fileStore.getString("zap"));
+        assertEquals(Long.valueOf(5), fileStore.getLong("count"));
+        assertEquals(BAR, fileStore.getString("moo"));
+        // the torn record has been truncated
+        assertEquals(size, Files.size(file));
+        fileStore.put("after", GEE);
+        fileStore.close();
+
+        fileStore = open("recovery", null);
+        assertEquals(GEE, fileStore.getString("after"));
+        assertEquals(5, fileStore.keyStream().count());
+        fileStore.close();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        FileKeyValueStore fileStore = open("compaction", "10");
+        for (int i = 0; i < 100; i++) {
+            fileStore.put("foo", String.valueOf(i));
+            fileStore.addAndGet("count", 1);
+        }
+        assertTrue(String.valueOf(fileStore.records.get()), fileStore.records.get() <= 10);
+        fileStore.close();
+
+        fileStore = open("compaction", "10");
+        assertEquals("99", fileStore.getString("foo"));
+        assertEquals(Long.valueOf(100), fileStore.getLong("count"));
+        assertTrue(fileStore.records.get() <= 10);
+        fileStore.close();
+    }
+
+    @Test
+    public void testCompactionFailure() throws Exception {
+        AtomicBoolean fail = new AtomicBoolean(true);
+        FileKeyValueStore fileStore = open(new FileKeyValueStore() {
+            @Override
+            protected long writeCompacted(Path compacted) throws IOException {
+                if (fail.get()) {
+                    throw new IOException("simulated failure");
+                }
+                return super.writeCompacted(compacted);
+            }
+        }, "failure", "10");
+        // writes don't fail with the compaction
+        for (int i = 0; i < 15; i++) {
+            fileStore.put("foo", String.valueOf(i));
+        }
+        assertEquals("14", fileStore.getString("foo"));
+        assertEquals(15, fileStore.records.get());
+
+        // retried later
+        fail.set(false);
+        for (int i = 15; i < 25; i++) {
+            fileStore.put("foo", String.valueOf(i));
+        }
+        assertTrue(String.valueOf(fileStore.records.get()), fileStore.records.get() <= 10);
+        fileStore.put("after", GEE);
+        fileStore.close();
+
+        fileStore = open("failure", "10");
+        assertEquals("24", fileStore.getString("foo"));
+        assertEquals(GEE, fileStore.getString("after"));
+        fileStore.close();
+    }
+
+}
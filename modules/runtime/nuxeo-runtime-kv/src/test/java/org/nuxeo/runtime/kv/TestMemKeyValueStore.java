@@ -18,6 +18,8 @@
  */
 package org.nuxeo.runtime.kv;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
@@ -32,4 +34,30 @@ public class TestMemKeyValueStore extends AbstractKeyValueStoreTest {
         assertTrue(store instanceof MemKeyValueStore);
     }
 
+    @Test
+    public void testExpiredEntriesAreRemoved() throws Exception {
+        MemKeyValueStore memStore = (MemKeyValueStore) store;
+        long expired = memStore.expiredCounter.getCount();
+        store.put("foo", "bar", 1);
+        store.put("gee", "moo", 1);
+        store.put("zap", "bar");
+        store.setTTL("gee", 0);
+        assertEquals(3, memStore.map.size());
+        Thread.sleep(2_500);
+        // any operation advances the timing wheel
+        assertNull(store.getString("foo"));
+        assertEquals(2, memStore.map.size());
+        assertEquals(expired + 1, memStore.expiredCounter.getCount());
+    }
+
+    @Test
+    public void testReplacedEntriesDontAccumulateTimers() {
+        MemKeyValueStore memStore = (MemKeyValueStore) store;
+        for (int i = 0; i < 5 * TimingWheel.PURGE_THRESHOLD; i++) {
+            store.put("foo", "bar" + i, 3600);
+        }
+        assertEquals("bar" + (5 * TimingWheel.PURGE_THRESHOLD - 1), store.getString("foo"));
+        assertTrue(memStore.wheel.size.get() <= 2 * TimingWheel.PURGE_THRESHOLD);
+    }
+
 }
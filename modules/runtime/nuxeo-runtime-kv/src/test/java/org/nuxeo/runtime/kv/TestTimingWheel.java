@@ -0,0 +1,122 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.runtime.kv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * @since 11.4
+ */
+public class TestTimingWheel {
+
+    protected static final long TICK = 1000;
+
+    @Test
+    public void testExpireAtDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+        // deadlines on every level of the wheel
+        Map<String, Long> deadlines = new HashMap<>();
+        deadlines.put("now", 0L);
+        deadlines.put("short", 2_500L);
+        deadlines.put("level1", 100_000L);
+        deadlines.put("level2", 5_000_000L);
+        deadlines.put("level3", 300_000_000L);
+        deadlines.forEach(wheel::schedule);
+
+        Map<String, Long> expired = new HashMap<>();
+        for (long now = 0; now <= 301_000_000L; now += TICK) {
+            long time = now;
+            wheel.advance(now, item -> expired.put(item, time));
+        }
+        assertEquals(deadlines.keySet(), expired.keySet());
+        deadlines.forEach((item, deadline) -> {
+            long time = expired.get(item);
+            assertTrue(item + " expired early: " + time, time >= deadline);
+            assertTrue(item + " expired late: " + time, time < deadline + 2 * TICK);
+        });
+    }
+
+    @Test
+    public void testCatchUp() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(TICK, 0);
+        for (int i = 0; i < 1000; i++) {
+            wheel.schedule(i, i * 10_000L);
+        }
+        List<Integer> expired = new ArrayList<>();
+        // nothing expires before the first tick
+        assertEquals(0, wheel.advance(500, expired::add));
+        // a single late advance expires everything in order
+        assertEquals(1000, wheel.advance(10_000_000L, expired::add));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.valueOf(i), expired.get(i));
+        }
+    }
+
+    @Test
+    public void testCancel() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+        TimingWheel.Timer<String> foo = wheel.schedule("foo", 1_000);
+        wheel.schedule("bar", 1_000);
+        assertTrue(wheel.cancel(foo));
+        assertFalse(wheel.cancel(foo));
+        List<String> expired = new ArrayList<>();
+        assertEquals(1, wheel.advance(2_000, expired::add));
+        assertEquals(Collections.singletonList("bar"), expired);
+        assertEquals(0, wheel.size.get());
+        assertEquals(0, wheel.cancelled.get());
+    }
+
+    @Test
+    public void testPurgeCancelled() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(TICK, 0);
+        int n = 2 * TimingWheel.PURGE_THRESHOLD;
+        List<TimingWheel.Timer<Integer>> timers = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            // spread over the levels and the overflow
+            timers.add(wheel.schedule(i, i * 1_000_000L));
+        }
+        timers.subList(1, n).forEach(wheel::cancel);
+        assertEquals(n, wheel.size.get());
+        // purged without waiting for the deadlines
+        assertEquals(0, wheel.advance(500, item -> {
+        }));
+        assertEquals(1, wheel.size.get());
+        assertEquals(0, wheel.cancelled.get());
+        // already cancelled
+        assertFalse(wheel.cancel(timers.get(1)));
+    }
+
+    @Test
+    public void testClear() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+        wheel.schedule("foo", 1_000);
+        wheel.schedule("bar", 1_000_000);
+        wheel.clear();
+        assertEquals(0, wheel.advance(2_000_000, item -> {
+        }));
+    }
+
+}
@@ -113,6 +113,12 @@ public class StreamProcessorDescriptor implements Descriptor {
         @XNode("@codec")
         public String codec;
 
+        // Compression of the encoded records: none, lz4 or deflate
+        // Records are readable whatever the compression, but all the users of a compressed stream must declare one
+        // @since 11.4
+        @XNode("@compression")
+        public String compression;
+
         // Stream is initialized outside of the processor
         // @since 11.1
         @XNode("@external")
@@ -30,6 +30,7 @@ import org.apache.logging.log4j.Logger;
 import org.nuxeo.common.Environment;
 import org.nuxeo.lib.stream.StreamRuntimeException;
 import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.lib.stream.codec.CompressedCodec;
 import org.nuxeo.lib.stream.computation.Record;
 import org.nuxeo.lib.stream.computation.Settings;
 import org.nuxeo.lib.stream.computation.StreamManager;
@@ -42,6 +43,7 @@ import org.nuxeo.lib.stream.log.Name;
 import org.nuxeo.lib.stream.log.UnifiedLogManager;
 import org.nuxeo.lib.stream.log.chronicle.ChronicleLogConfig;
 import org.nuxeo.lib.stream.log.kafka.KafkaLogConfig;
+import org.nuxeo.lib.stream.log.mem.MemLogConfig;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.codec.CodecService;
 import org.nuxeo.runtime.kafka.KafkaConfigService;
@@ -61,6 +63,9 @@ public class StreamServiceImpl extends DefaultComponent implements StreamService
 
     public static final String NUXEO_STREAM_RET_DURATION_PROP = "nuxeo.stream.chronicle.retention.duration";
 
+    /** @since 11.4 */
+    public static final String NUXEO_STREAM_MEM_RETENTION_PROP = "nuxeo.stream.mem.retention.records";
+
     public static final String DEFAULT_CODEC = "avro";
 
     protected static final String XP_LOG_CONFIG = "logConfig";
@@ -148,6 +153,8 @@ public class StreamServiceImpl extends DefaultComponent implements StreamService
             }
             if ("kafka".equalsIgnoreCase(desc.type)) {
                 ret.add(createKafkaLogConfig(desc));
+            } else if ("mem".equalsIgnoreCase(desc.type)) {
+                ret.add(createMemLogConfig(desc));
             } else {
                 ret.add(createChronicleLogConfig(desc));
             }
@@ -171,6 +178,17 @@ public class StreamServiceImpl extends DefaultComponent implements StreamService
         return new ChronicleLogConfig(desc.getId(), desc.isDefault(), desc.getPatterns(), path, retention);
     }
 
+    /**
+     * The retention option of a memory log config is the maximum number of records kept per partition.
+     *
+     * @since 11.4
+     */
+    protected LogConfig createMemLogConfig(LogConfigDescriptor desc) {
+        String retention = desc.options.getOrDefault("retention",
+                Framework.getProperty(NUXEO_STREAM_MEM_RETENTION_PROP, String.valueOf(MemLogConfig.DEFAULT_RETENTION)));
+        return new MemLogConfig(desc.getId(), desc.isDefault(), desc.getPatterns(), Long.parseLong(retention.trim()));
+    }
+
     protected void initProcessor(StreamProcessorDescriptor descriptor) {
         if (! descriptor.isEnabled()) {
             log.info("Processor {} disabled", descriptor.getId());
@@ -210,8 +228,14 @@ public class StreamServiceImpl extends DefaultComponent implements StreamService
         for (StreamProcessorDescriptor.StreamDescriptor streamDescriptor : descriptor.streams) {
             settings.setPartitions(streamDescriptor.name,
                     streamDescriptor.partitions != null ? streamDescriptor.partitions : descriptor.defaultPartitions);
-            if (streamDescriptor.codec != null) {
-                settings.setCodec(streamDescriptor.name, codecService.getCodec(streamDescriptor.codec, Record.class));
+            Codec<Record> streamCodec = streamDescriptor.codec == null ? actualCodec
+                    : codecService.getCodec(streamDescriptor.codec, Record.class);
+            if (streamDescriptor.compression != null && !streamDescriptor.compression.isBlank()) {
+                streamCodec = new CompressedCodec<>(streamCodec,
+                        CompressedCodec.Algorithm.of(streamDescriptor.compression));
+            }
+            if (streamCodec != actualCodec) {
+                settings.setCodec(streamDescriptor.name, streamCodec);
             }
             streamDescriptor.filters.forEach(filter -> settings.addFilter(streamDescriptor.name, filter.getFilter()));
             settings.setExternal(Name.ofUrn(streamDescriptor.name),
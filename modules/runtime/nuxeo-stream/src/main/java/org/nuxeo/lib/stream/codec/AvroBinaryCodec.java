@@ -19,6 +19,8 @@
 package org.nuxeo.lib.stream.codec;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Schema;
@@ -71,4 +73,22 @@ public class AvroBinaryCodec<T> implements Codec<T> {
             throw new IllegalArgumentException(e);
         }
     }
+
+    @Override
+    public void encode(T object, OutputStream out) {
+        try {
+            encoder.encode(object, out);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public T decode(ByteBuffer data) {
+        try {
+            return decoder.decode(data.duplicate(), null);
+        } catch (IOException | IndexOutOfBoundsException | AvroRuntimeException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
 }
@@ -19,6 +19,8 @@
 package org.nuxeo.lib.stream.codec;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.apache.avro.Schema;
 import org.apache.avro.message.BadHeaderException;
@@ -80,4 +82,22 @@ public class AvroMessageCodec<T> implements Codec<T> {
             throw new IllegalArgumentException(e);
         }
     }
+
+    @Override
+    public void encode(T object, OutputStream out) {
+        try {
+            encoder.encode(object, out);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public T decode(ByteBuffer data) {
+        try {
+            return decoder.decode(data.duplicate(), null);
+        } catch (IOException | BadHeaderException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
 }
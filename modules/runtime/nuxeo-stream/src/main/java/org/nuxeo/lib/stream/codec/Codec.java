@@ -18,6 +18,10 @@
  */
 package org.nuxeo.lib.stream.codec;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
 /**
  * Convert an object to/from byte array. The implementation should be thread safe.
  *
@@ -41,4 +45,34 @@ public interface Codec<T> {
      * @throws IllegalArgumentException if data are invalid.
      */
     T decode(byte[] data);
+
+    /**
+     * Encodes the object into the output stream. The default implementation writes the array returned by
+     * {@link #encode(Object)}, codecs that can serialize directly to a stream should override it to avoid the
+     * intermediate array.
+     *
+     * @since 11.4
+     */
+    default void encode(T object, OutputStream out) {
+        try {
+            out.write(encode(object));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Decodes the bytes between the position and the limit of the buffer. The buffer position is left unchanged, and
+     * the returned object must not keep a reference to the buffer which can be reused by the caller. The default
+     * implementation copies the bytes to call {@link #decode(byte[])}, codecs that can read directly from a buffer
+     * should override it to avoid the copy.
+     *
+     * @throws IllegalArgumentException if data are invalid.
+     * @since 11.4
+     */
+    default T decode(ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        return decode(bytes);
+    }
 }
@@ -0,0 +1,309 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.lib.stream.codec;
+
+import static org.nuxeo.lib.stream.computation.log.ComputationRunner.NUXEO_METRICS_REGISTRY_NAME;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+import io.dropwizard.metrics5.Timer;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * A codec compressing the bytes produced by another codec, so that it applies to any Log implementation.
+ * <p>
+ * The encoded format is: a 4 bytes magic, the format version byte, the algorithm byte, the length of the uncompressed
+ * data as an int, and the data. Data smaller than the minimum size, or that don't shrink, are kept uncompressed to not
+ * waste CPU on them.
+ * <p>
+ * Decoding accepts any algorithm, and records without a valid header are decoded by the wrapped codec, so the
+ * compression of a stream can be enabled or changed without losing its records. The reverse is not true: the wrapped
+ * codec alone can't decode compressed records, so all the appenders and tailers of a compressed stream must use a
+ * {@link CompressedCodec}, and a {@code LogManager} refuses an appender whose codec differs in this respect.
+ *
+ * @since 11.4
+ */
+public class CompressedCodec<T> implements Codec<T> {
+
+    public static final int DEFAULT_MIN_SIZE = 512;
+
+    protected static final byte[] MAGIC = { (byte) 0xC5, 'N', 'X', 'Z' };
+
+    protected static final byte VERSION = 1;
+
+    // magic, version, algorithm and uncompressed length
+    public static final int HEADER_SIZE = MAGIC.length + 2 + Integer.BYTES;
+
+    // the largest expansion of the compression formats: LZ4 is bounded by 255, Deflate by 1032
+    protected static final int MAX_COMPRESSION_RATIO = 1032;
+
+    // the java implementation of LZ4 doesn't depend on native code
+    protected static final LZ4Factory LZ4_FACTORY = LZ4Factory.fastestJavaInstance();
+
+    public enum Algorithm {
+        NONE(0), LZ4(1), DEFLATE(2);
+
+        protected final byte id;
+
+        Algorithm(int id) {
+            this.id = (byte) id;
+        }
+
+        public static Algorithm of(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown compression: " + name, e);
+            }
+        }
+
+        /**
+         * Returns the algorithm with the given id, or {@code null} if unknown.
+         */
+        protected static Algorithm of(byte id) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.id == id) {
+                    return algorithm;
+                }
+            }
+            return null;
+        }
+    }
+
+    protected final Codec<T> codec;
+
+    protected final Algorithm algorithm;
+
+    protected final int minSize;
+
+    protected final LZ4Compressor lz4Compressor = LZ4_FACTORY.fastCompressor();
+
+    protected final LZ4SafeDecompressor lz4Decompressor = LZ4_FACTORY.safeDecompressor();
+
+    protected final Counter rawBytes;
+
+    protected final Counter compressedBytes;
+
+    protected final Timer compressTimer;
+
+    protected final Timer decompressTimer;
+
+    public CompressedCodec(Codec<T> codec, Algorithm algorithm) {
+        this(codec, algorithm, DEFAULT_MIN_SIZE);
+    }
+
+    public CompressedCodec(Codec<T> codec, Algorithm algorithm, int minSize) {
+        this.codec = codec;
+        this.algorithm = algorithm;
+        this.minSize = minSize;
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(NUXEO_METRICS_REGISTRY_NAME);
+        String tag = algorithm.name().toLowerCase();
+        rawBytes = registry.counter(
+                MetricName.build("nuxeo.streams.compression.raw.bytes").tagged("algorithm", tag));
+        compressedBytes = registry.counter(
+                MetricName.build("nuxeo.streams.compression.compressed.bytes").tagged("algorithm", tag));
+        compressTimer = registry.timer(
+                MetricName.build("nuxeo.streams.compression.compress").tagged("algorithm", tag));
+        decompressTimer = registry.timer(
+                MetricName.build("nuxeo.streams.compression.decompress").tagged("algorithm", tag));
+    }
+
+    @Override
+    public String getName() {
+        return codec.getName() + "+" + algorithm.name().toLowerCase();
+    }
+
+    public Codec<T> getCodec() {
+        return codec;
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public byte[] encode(T object) {
+        byte[] data = codec.encode(object);
+        if (algorithm == Algorithm.NONE || data.length < minSize) {
+            return wrap(Algorithm.NONE, data, data.length, data.length);
+        }
+        byte[] ret;
+        try (Timer.Context ignored = compressTimer.time()) {
+            ret = algorithm == Algorithm.LZ4 ? compressLZ4(data) : compressDeflate(data);
+        }
+        rawBytes.inc(data.length);
+        if (ret == null) {
+            compressedBytes.inc(data.length);
+            return wrap(Algorithm.NONE, data, data.length, data.length);
+        }
+        compressedBytes.inc(ret.length - HEADER_SIZE);
+        return ret;
+    }
+
+    protected byte[] wrap(Algorithm used, byte[] payload, int payloadLength, int rawLength) {
+        byte[] ret = new byte[HEADER_SIZE + payloadLength];
+        System.arraycopy(payload, 0, ret, HEADER_SIZE, payloadLength);
+        writeHeader(ret, used, rawLength);
+        return ret;
+    }
+
+    protected void writeHeader(byte[] dest, Algorithm used, int rawLength) {
+        ByteBuffer.wrap(dest, 0, HEADER_SIZE).put(MAGIC).put(VERSION).put(used.id).putInt(rawLength);
+    }
+
+    /**
+     * Returns the compressed record with its header, or {@code null} if it doesn't shrink.
+     */
+    protected byte[] compressLZ4(byte[] data) {
+        byte[] ret = new byte[HEADER_SIZE + lz4Compressor.maxCompressedLength(data.length)];
+        int length = lz4Compressor.compress(data, 0, data.length, ret, HEADER_SIZE, ret.length - HEADER_SIZE);
+        if (length >= data.length) {
+            return null;
+        }
+        writeHeader(ret, Algorithm.LZ4, data.length);
+        return Arrays.copyOf(ret, HEADER_SIZE + length);
+    }
+
+    protected byte[] compressDeflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + HEADER_SIZE);
+            out.write(new byte[HEADER_SIZE], 0, HEADER_SIZE);
+            byte[] buffer = new byte[Math.min(data.length, 8192)];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+                if (out.size() - HEADER_SIZE >= data.length) {
+                    return null;
+                }
+            }
+            byte[] ret = out.toByteArray();
+            writeHeader(ret, Algorithm.DEFLATE, data.length);
+            return ret;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public T decode(byte[] data) {
+        Algorithm used = readHeader(data);
+        if (used == null) {
+            // written before the stream was compressed
+            return codec.decode(data);
+        }
+        int rawLength = ByteBuffer.wrap(data).getInt(HEADER_SIZE - Integer.BYTES);
+        if (used == Algorithm.NONE) {
+            return codec.decode(ByteBuffer.wrap(data, HEADER_SIZE, data.length - HEADER_SIZE));
+        }
+        byte[] raw;
+        try (Timer.Context ignored = decompressTimer.time()) {
+            raw = used == Algorithm.LZ4 ? decompressLZ4(data, rawLength) : decompressDeflate(data, rawLength);
+        }
+        return codec.decode(raw);
+    }
+
+    /**
+     * Returns the algorithm of a record written by this codec, or {@code null} if the record has no valid header.
+     * <p>
+     * Besides the magic, the version, the algorithm and the declared length must be consistent with the record size, so
+     * that a record written by the wrapped codec alone is not mistaken for a compressed one.
+     */
+    protected Algorithm readHeader(byte[] data) {
+        if (data.length < HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.wrap(data, 0, HEADER_SIZE);
+        for (byte b : MAGIC) {
+            if (header.get() != b) {
+                return null;
+            }
+        }
+        if (header.get() != VERSION) {
+            return null;
+        }
+        Algorithm used = Algorithm.of(header.get());
+        if (used == null) {
+            return null;
+        }
+        long rawLength = header.getInt();
+        long payloadLength = data.length - HEADER_SIZE;
+        if (used == Algorithm.NONE) {
+            return rawLength == payloadLength ? used : null;
+        }
+        // compressed records are only written when they shrink
+        if (rawLength <= payloadLength || rawLength > payloadLength * MAX_COMPRESSION_RATIO) {
+            return null;
+        }
+        return used;
+    }
+
+    protected byte[] decompressLZ4(byte[] data, int rawLength) {
+        byte[] ret = new byte[rawLength];
+        try {
+            int length = lz4Decompressor.decompress(data, HEADER_SIZE, data.length - HEADER_SIZE, ret, 0, rawLength);
+            if (length != rawLength) {
+                throw new IllegalArgumentException("Corrupted compressed record: " + length + " != " + rawLength);
+            }
+        } catch (LZ4Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+        return ret;
+    }
+
+    protected byte[] decompressDeflate(byte[] data, int rawLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, HEADER_SIZE, data.length - HEADER_SIZE);
+            byte[] ret = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int count = inflater.inflate(ret, length, rawLength - length);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += count;
+            }
+            if (length != rawLength) {
+                throw new IllegalArgumentException("Corrupted compressed record: " + length + " != " + rawLength);
+            }
+            return ret;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CompressedCodec{" + "codec=" + codec + ", algorithm=" + algorithm + ", minSize=" + minSize + '}';
+    }
+}
@@ -25,6 +25,7 @@ import java.io.ObjectInput;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 
 /**
@@ -53,6 +54,18 @@ public class SerializableCodec<T extends Serializable> implements Codec<T> {
         }
     }
 
+    @Override
+    public void encode(T object, OutputStream out) {
+        try {
+            ObjectOutput objectOutput = new ObjectOutputStream(out);
+            objectOutput.writeObject(object);
+            // flush but don't close the caller stream
+            objectOutput.flush();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
     @SuppressWarnings({ "unchecked", "squid:S2093" })
     @Override
     public T decode(byte[] data) {
@@ -0,0 +1,47 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.lib.stream.computation;
+
+import java.util.List;
+
+/**
+ * A computation that receives its records by batch instead of one at a time.
+ * <p>
+ * The runner reads up to {@link ComputationPolicy#getBatchCapacity()} records that are already available, hands them
+ * to {@link #processRecords} grouped by input stream, and checkpoints once after the whole batch. If processing a batch
+ * fails, the retry policy applies to the whole batch, so the processing must be idempotent.
+ * <p>
+ * {@link #processRecord} is not called by the runner for such a computation.
+ *
+ * @since 11.4
+ */
+public interface BatchComputation extends Computation {
+
+    /**
+     * Processes a batch of records coming from the same input stream, in the order they were read.
+     *
+     * @param context The computation context object provided by the system.
+     * @param inputStreamName Name of the input stream that provides the records.
+     * @param records The records, never empty.
+     */
+    void processRecords(ComputationContext context, String inputStreamName, List<Record> records);
+
+    @Override
+    default void processRecord(ComputationContext context, String inputStreamName, Record record) {
+        processRecords(context, inputStreamName, List.of(record));
+    }
+
+}
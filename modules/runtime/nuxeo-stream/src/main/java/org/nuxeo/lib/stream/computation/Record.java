@@ -24,6 +24,7 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
@@ -148,6 +149,15 @@ public class Record implements Externalizable {
         return data;
     }
 
+    /**
+     * Returns a read-only view of the data, without copying it.
+     *
+     * @since 11.4
+     */
+    public ByteBuffer getDataAsByteBuffer() {
+        return ByteBuffer.wrap(getData()).asReadOnlyBuffer();
+    }
+
     public void setData(byte[] data) {
        this.data = data;
     }
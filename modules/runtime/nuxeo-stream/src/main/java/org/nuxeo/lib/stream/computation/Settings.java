@@ -23,6 +23,7 @@ import static org.nuxeo.lib.stream.codec.NoCodec.NO_CODEC;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
 
 import org.nuxeo.lib.stream.codec.Codec;
 import org.nuxeo.lib.stream.computation.internals.RecordFilterChainImpl;
@@ -56,6 +57,9 @@ public class Settings {
 
     protected final Map<Name, Integer> concurrencies = new HashMap<>();
 
+    // @since 11.4
+    protected final Map<Name, ThreadFactory> threadFactories = new HashMap<>();
+
     protected final ComputationPolicy defaultPolicy;
 
     protected final Map<Name, ComputationPolicy> policies = new HashMap<>();
@@ -131,6 +135,39 @@ public class Settings {
         return concurrencies.getOrDefault(computationName, defaultConcurrency);
     }
 
+    /**
+     * Sets the factory creating the threads of a computation, for instance to run it on virtual threads.
+     *
+     * @since 11.4
+     */
+    public Settings setThreadFactory(Name computationName, ThreadFactory threadFactory) {
+        threadFactories.put(computationName, threadFactory);
+        return this;
+    }
+
+    /**
+     * @since 11.4
+     */
+    public Settings setThreadFactory(String computationName, ThreadFactory threadFactory) {
+        return setThreadFactory(Name.ofUrn(computationName), threadFactory);
+    }
+
+    /**
+     * Returns the factory creating the threads of a computation, or {@code null} to use platform threads.
+     *
+     * @since 11.4
+     */
+    public ThreadFactory getThreadFactory(Name computationName) {
+        return threadFactories.get(computationName);
+    }
+
+    /**
+     * @since 11.4
+     */
+    public ThreadFactory getThreadFactory(String computationName) {
+        return getThreadFactory(Name.ofUrn(computationName));
+    }
+
     /**
      * Sets the number of partitions for a stream.
      */
@@ -62,11 +62,27 @@ public class ComputationPool {
 
     protected final ComputationPolicy policy;
 
+    // @since 11.4
+    protected final ThreadFactory threadFactory;
+
     protected ExecutorService threadPool;
 
     public ComputationPool(Supplier<Computation> supplier, ComputationMetadataMapping metadata,
             List<List<LogPartition>> defaultAssignments, LogStreamManager streamManager, ComputationPolicy policy) {
+        this(supplier, metadata, defaultAssignments, streamManager, policy, null);
+    }
+
+    /**
+     * Creates a pool whose threads are created by the given factory, or by a default factory of platform threads if
+     * {@code null}.
+     *
+     * @since 11.4
+     */
+    public ComputationPool(Supplier<Computation> supplier, ComputationMetadataMapping metadata,
+            List<List<LogPartition>> defaultAssignments, LogStreamManager streamManager, ComputationPolicy policy,
+            ThreadFactory threadFactory) {
         Objects.requireNonNull(policy);
+        this.threadFactory = threadFactory;
         this.supplier = supplier;
         this.metadata = metadata;
         this.threads = defaultAssignments.size();
@@ -87,7 +103,7 @@ public class ComputationPool {
             return;
         }
         log.info(metadata.name() + ": Starting pool");
-        threadPool = newFixedThreadPool(threads, new NamedThreadFactory(metadata.name() + "Pool"));
+        threadPool = newFixedThreadPool(threads, getThreadFactory());
         defaultAssignments.forEach(assignments -> {
             ComputationRunner runner = new ComputationRunner(supplier, metadata, assignments, streamManager, policy);
             threadPool.submit(runner);
@@ -98,6 +114,10 @@ public class ComputationPool {
         log.debug(metadata.name() + ": Pool started, threads: " + threads);
     }
 
+    protected ThreadFactory getThreadFactory() {
+        return threadFactory == null ? new NamedThreadFactory(metadata.name() + "Pool") : threadFactory;
+    }
+
     public boolean isTerminated() {
         return threadPool == null ? true : threadPool.isTerminated();
     }
@@ -20,6 +20,7 @@ package org.nuxeo.lib.stream.computation.log;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -33,6 +34,7 @@ import java.util.stream.Collectors;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.nuxeo.lib.stream.computation.BatchComputation;
 import org.nuxeo.lib.stream.computation.Computation;
 import org.nuxeo.lib.stream.computation.ComputationMetadataMapping;
 import org.nuxeo.lib.stream.computation.ComputationPolicy;
@@ -48,6 +50,7 @@ import org.nuxeo.lib.stream.log.RebalanceException;
 import org.nuxeo.lib.stream.log.RebalanceListener;
 
 import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.Histogram;
 import io.dropwizard.metrics5.MetricName;
 import io.dropwizard.metrics5.MetricRegistry;
 import io.dropwizard.metrics5.SharedMetricRegistries;
@@ -139,6 +142,12 @@ public class ComputationRunner implements Runnable, RebalanceListener {
 
     protected Timer processTimerTimer;
 
+    // @since 11.4
+    protected Timer processRecordsTimer;
+
+    // @since 11.4
+    protected Histogram batchSizeHistogram;
+
     // @since 11.1
     protected static AtomicInteger skipFailures = new AtomicInteger(0);
 
@@ -257,6 +266,10 @@ public class ComputationRunner implements Runnable, RebalanceListener {
                 MetricName.build("nuxeo.streams.computation.processRecord").tagged("computation", name));
         processTimerTimer = registry.timer(
                 MetricName.build("nuxeo.streams.computation.processTimer").tagged("computation", name));
+        processRecordsTimer = registry.timer(
+                MetricName.build("nuxeo.streams.computation.processRecords").tagged("computation", name));
+        batchSizeHistogram = registry.histogram(
+                MetricName.build("nuxeo.streams.computation.batchSize").tagged("computation", name));
     }
 
     protected void closeTailer() {
@@ -380,6 +393,9 @@ public class ComputationRunner implements Runnable, RebalanceListener {
         if (tailer == null) {
             return false;
         }
+        if (computation instanceof BatchComputation) {
+            return processRecordBatch();
+        }
         Duration timeoutRead = getTimeoutDuration();
         LogRecord<Record> logRecord = null;
         try {
@@ -412,6 +428,104 @@ public class ComputationRunner implements Runnable, RebalanceListener {
         return false;
     }
 
+    /**
+     * Reads the records already available, up to the batch capacity, and processes them as a batch.
+     *
+     * @since 11.4
+     */
+    protected boolean processRecordBatch() throws InterruptedException {
+        int capacity = policy.getBatchCapacity();
+        // records grouped by input stream, keeping the read order within each stream
+        Map<String, List<Record>> batch = new LinkedHashMap<>();
+        Record first = null;
+        int size = 0;
+        Duration timeoutRead = getTimeoutDuration();
+        while (size < capacity) {
+            LogRecord<Record> logRecord;
+            try {
+                logRecord = tailer.read(timeoutRead);
+            } catch (RebalanceException e) {
+                // the records read so far have not been committed, they will be read again
+                return false;
+            }
+            if (logRecord == null) {
+                break;
+            }
+            // only wait for the first record
+            timeoutRead = Duration.ZERO;
+            Record record = logRecord.message();
+            Name stream = logRecord.offset().partition().name();
+            record = streamManager.getFilter(stream).afterRead(record, logRecord.offset());
+            if (record == null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Filtering skip record: " + logRecord.message());
+                }
+                continue;
+            }
+            lastReadTime = System.currentTimeMillis();
+            inRecords++;
+            lowWatermark.mark(record.getWatermark());
+            context.setLastOffset(logRecord.offset());
+            String from = metadata.reverseMap(stream.getUrn());
+            batch.computeIfAbsent(from, k -> new ArrayList<>()).add(record);
+            if (first == null) {
+                first = record;
+            }
+            size++;
+            if (record.getFlags().contains(Record.Flag.POISON_PILL)
+                    || record.getFlags().contains(Record.Flag.COMMIT)) {
+                // stop the batch there
+                break;
+            }
+        }
+        if (size == 0) {
+            return false;
+        }
+        batchSizeHistogram.update(size);
+        processRecordBatchWithTracing(first, batch);
+        return true;
+    }
+
+    /**
+     * @since 11.4
+     */
+    protected void processRecordBatchWithTracing(Record first, Map<String, List<Record>> batch) {
+        Span span = getSpanFromRecord(first);
+        try (Scope scope = Tracing.getTracer().withSpan(span)) {
+            for (Map.Entry<String, List<Record>> entry : batch.entrySet()) {
+                processRecordsWithRetry(entry.getKey(), entry.getValue());
+                if (context.requireTerminate()) {
+                    // failure, don't checkpoint
+                    return;
+                }
+            }
+            batch.values().forEach(records -> records.forEach(this::checkRecordFlags));
+            checkSourceLowWatermark();
+            setThreadName("batch");
+            // a single checkpoint for the whole batch
+            context.askForCheckpoint();
+            checkpointIfNecessary();
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * @since 11.4
+     */
+    protected void processRecordsWithRetry(String from, List<Record> records) {
+        runningCount.inc();
+        try (Timer.Context ignored = processRecordsTimer.time()) {
+            Failsafe.with(policy.getRetryPolicy())
+                    .onRetry(failure -> computation.processRetry(context, failure))
+                    .onFailure(failure -> computation.processFailure(context, failure))
+                    .withFallback(() -> processFallback(context))
+                    .run(() -> ((BatchComputation) computation).processRecords(context, from, records));
+        } finally {
+            runningCount.dec();
+        }
+    }
+
     protected void processRecordWithTracing(String from, Record record) {
         Span span = getSpanFromRecord(record);
         try (Scope scope = Tracing.getTracer().withSpan(span)) {
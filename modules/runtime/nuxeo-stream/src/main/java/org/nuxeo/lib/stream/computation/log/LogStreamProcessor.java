@@ -210,7 +210,7 @@ public class LogStreamProcessor implements StreamProcessor {
                        .stream()
                        .map(meta -> new ComputationPool(topology.getSupplier(meta.name()), meta,
                                getDefaultAssignments(meta), streamManager,
-                               settings.getPolicy(meta.name())))
+                               settings.getPolicy(meta.name()), settings.getThreadFactory(meta.name())))
                        .collect(Collectors.toList());
     }
 
@@ -32,6 +32,8 @@ import org.nuxeo.lib.stream.log.chronicle.ChronicleLogConfig;
 import org.nuxeo.lib.stream.log.chronicle.ChronicleLogManager;
 import org.nuxeo.lib.stream.log.kafka.KafkaLogConfig;
 import org.nuxeo.lib.stream.log.kafka.KafkaLogManager;
+import org.nuxeo.lib.stream.log.mem.MemLogConfig;
+import org.nuxeo.lib.stream.log.mem.MemLogManager;
 
 /**
  * @since 11.1
@@ -44,6 +46,9 @@ public class UnifiedLogManager implements LogManager {
 
     protected LogManager kafkaManager;
 
+    /** @since 11.4 */
+    protected LogManager memManager;
+
     protected LogManager defaultManager;
 
     protected LogConfig defaultConfig;
@@ -57,6 +62,7 @@ public class UnifiedLogManager implements LogManager {
         this.configs = configs;
         createCQLogManager();
         createKafkaLogManager();
+        createMemLogManager();
         findDefaultLogManger();
     }
 
@@ -82,6 +88,20 @@ public class UnifiedLogManager implements LogManager {
         }
     }
 
+    /**
+     * @since 11.4
+     */
+    protected void createMemLogManager() {
+        List<MemLogConfig> memConfigs = configs.stream()
+                                               .filter(config -> config instanceof MemLogConfig)
+                                               .map(config -> (MemLogConfig) config)
+                                               .collect(Collectors.toList());
+        if (!memConfigs.isEmpty()) {
+            memManager = new MemLogManager(memConfigs);
+            memConfigs.forEach(config -> managers.put(config, memManager));
+        }
+    }
+
     protected void findDefaultLogManger() {
         List<LogConfig> defaultConfigs = configs.stream().filter(LogConfig::isDefault).collect(Collectors.toList());
         // use the last default config
@@ -92,6 +112,8 @@ public class UnifiedLogManager implements LogManager {
         }
         if (defaultConfig instanceof ChronicleLogConfig) {
             defaultManager = cqManager;
+        } else if (defaultConfig instanceof MemLogConfig) {
+            defaultManager = memManager;
         } else {
             defaultManager = kafkaManager;
         }
@@ -179,6 +201,9 @@ public class UnifiedLogManager implements LogManager {
         if (cqManager != null) {
             names.addAll(cqManager.listAllNames());
         }
+        if (memManager != null) {
+            names.addAll(memManager.listAllNames());
+        }
         return names;
     }
 
@@ -195,5 +220,8 @@ public class UnifiedLogManager implements LogManager {
         if (cqManager != null) {
             cqManager.close();
         }
+        if (memManager != null) {
+            memManager.close();
+        }
     }
 }
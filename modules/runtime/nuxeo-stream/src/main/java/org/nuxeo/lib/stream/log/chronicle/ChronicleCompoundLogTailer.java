@@ -70,14 +70,9 @@ public class ChronicleCompoundLogTailer<M extends Externalizable> implements Log
         if (ret != null) {
             return ret;
         }
-        final long timeoutMs = timeout.toMillis();
-        final long deadline = System.currentTimeMillis() + timeoutMs;
-        final long delay = Math.min(ChronicleLogTailer.POLL_INTERVAL_MS, timeoutMs);
-        while (ret == null && System.currentTimeMillis() < deadline) {
-            Thread.sleep(delay);
-            ret = read();
-        }
-        return ret;
+        List<ChronicleLogNotifier.Signal> signals = new ArrayList<>(size);
+        tailers.forEach(tailer -> signals.add(tailer.signal));
+        return ChronicleLogNotifier.await(signals, timeout.toMillis(), this::read);
     }
 
     protected LogRecord<M> read() {
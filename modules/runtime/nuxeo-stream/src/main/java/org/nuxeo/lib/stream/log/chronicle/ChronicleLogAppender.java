@@ -24,6 +24,7 @@ import java.io.Externalizable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -47,6 +48,7 @@ import org.nuxeo.lib.stream.log.Name;
 import org.nuxeo.lib.stream.log.internals.CloseableLogAppender;
 import org.nuxeo.lib.stream.log.internals.LogOffsetImpl;
 
+import net.openhft.chronicle.bytes.Bytes;
 import net.openhft.chronicle.bytes.util.DecoratedBufferOverflowException;
 import net.openhft.chronicle.queue.ChronicleQueue;
 import net.openhft.chronicle.queue.ExcerptAppender;
@@ -82,6 +84,16 @@ public class ChronicleLogAppender<M extends Externalizable> implements Closeable
 
     public static final String BLOCK_SIZE_KEY = "blockSize";
 
+    /** @since 11.4 */
+    protected static final int INITIAL_BUFFER_SIZE = 4096;
+
+    /** Buffers that grew larger are not kept once used, to not retain memory after a big message. @since 11.4 */
+    protected static final int MAX_REUSED_BUFFER_SIZE = 1_048_576;
+
+    // encoding buffer reused by all the appenders of a thread, the chronicle appenders are also per thread
+    protected static final ThreadLocal<Bytes<ByteBuffer>> ENCODING_BUFFER = ThreadLocal.withInitial(
+            () -> Bytes.elasticHeapByteBuffer(INITIAL_BUFFER_SIZE));
+
     protected final List<ChronicleQueue> partitions;
 
     protected final int nbPartitions;
@@ -282,12 +294,23 @@ public class ChronicleLogAppender<M extends Externalizable> implements Closeable
                 // default format for backward compatibility
                 appender.writeDocument(w -> w.write(MSG_KEY).object(message));
             } else {
-                appender.writeDocument(w -> w.write().bytes(codec.encode(message)));
+                // encode in a reused buffer copied into the queue, same wire format as a byte array
+                Bytes<ByteBuffer> buffer = ENCODING_BUFFER.get();
+                try {
+                    buffer.clear();
+                    codec.encode(message, buffer.outputStream());
+                    appender.writeDocument(w -> w.write().bytes(buffer));
+                } finally {
+                    if (buffer.realCapacity() > MAX_REUSED_BUFFER_SIZE) {
+                        ENCODING_BUFFER.remove();
+                    }
+                }
             }
         } catch (DecoratedBufferOverflowException e) {
             throw new StreamRuntimeException(e);
         }
         long offset = appender.lastIndexAppended();
+        ChronicleLogNotifier.signal(basePath.toString(), partition);
         LogOffset ret = new LogOffsetImpl(name, partition, offset);
         if (log.isDebugEnabled()) {
             log.debug(String.format("append to %s, value: %s", ret, message));
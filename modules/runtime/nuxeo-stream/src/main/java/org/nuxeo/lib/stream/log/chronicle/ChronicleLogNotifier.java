@@ -0,0 +1,137 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.lib.stream.log.chronicle;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Wakes up the tailers waiting for records when an appender of the same JVM appends to a partition.
+ * <p>
+ * Appends done by another process are not notified, so waiting tailers still poll the queue, with a parking delay
+ * growing from {@link #MIN_PARK_NANOS} up to {@link ChronicleLogTailer#POLL_INTERVAL_MS}.
+ *
+ * @since 11.4
+ */
+public class ChronicleLogNotifier {
+
+    protected static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    protected static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(ChronicleLogTailer.POLL_INTERVAL_MS);
+
+    protected static final Map<String, Signal> SIGNALS = new ConcurrentHashMap<>();
+
+    private ChronicleLogNotifier() {
+        // utility class
+    }
+
+    /**
+     * The signal of a partition, where the threads of the waiting tailers are registered.
+     */
+    public static class Signal {
+
+        protected final Set<Thread> waiters = ConcurrentHashMap.newKeySet();
+
+        /** The number of tailers holding this signal, guarded by the {@link #SIGNALS} map. */
+        protected int refCount;
+
+        /**
+         * Wakes up all the threads waiting on this partition.
+         */
+        public void signal() {
+            if (!waiters.isEmpty()) {
+                waiters.forEach(LockSupport::unpark);
+            }
+        }
+    }
+
+    /**
+     * Gets the signal of a partition for a new tailer.
+     * <p>
+     * The signal must be released with {@link #releaseSignal} when the tailer is closed.
+     */
+    public static Signal acquireSignal(String basePath, int partition) {
+        return SIGNALS.compute(getKey(basePath, partition), (key, signal) -> {
+            if (signal == null) {
+                signal = new Signal();
+            }
+            signal.refCount++;
+            return signal;
+        });
+    }
+
+    /**
+     * Releases the signal of a partition acquired by a tailer, it's removed once no tailer holds it anymore.
+     */
+    public static void releaseSignal(String basePath, int partition) {
+        SIGNALS.computeIfPresent(getKey(basePath, partition), (key, signal) -> --signal.refCount > 0 ? signal : null);
+    }
+
+    /**
+     * Signals that records have been appended to a partition.
+     */
+    public static void signal(String basePath, int partition) {
+        Signal signal = SIGNALS.get(getKey(basePath, partition));
+        if (signal != null) {
+            signal.signal();
+        }
+    }
+
+    protected static String getKey(String basePath, int partition) {
+        return basePath + '/' + partition;
+    }
+
+    /**
+     * Calls the reader until it returns a non-null value or the timeout expires, parking the current thread in between
+     * until one of the signals is triggered.
+     *
+     * @return the value returned by the reader, or {@code null} if the timeout expired
+     */
+    public static <T> T await(Collection<Signal> signals, long timeoutMs, Supplier<T> reader)
+            throws InterruptedException {
+        Thread thread = Thread.currentThread();
+        // register before reading so that no append between the read and the park is missed
+        signals.forEach(signal -> signal.waiters.add(thread));
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            long park = MIN_PARK_NANOS;
+            for (;;) {
+                T ret = reader.get();
+                if (ret != null) {
+                    return ret;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                LockSupport.parkNanos(Math.min(park, remaining));
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                // no notification for appends from another process, back off
+                park = Math.min(park * 2, MAX_PARK_NANOS);
+            }
+        } finally {
+            signals.forEach(signal -> signal.waiters.remove(thread));
+        }
+    }
+
+}
@@ -19,9 +19,12 @@
 package org.nuxeo.lib.stream.log.chronicle;
 
 import static org.nuxeo.lib.stream.codec.NoCodec.NO_CODEC;
+import static org.nuxeo.lib.stream.log.chronicle.ChronicleLogAppender.INITIAL_BUFFER_SIZE;
+import static org.nuxeo.lib.stream.log.chronicle.ChronicleLogAppender.MAX_REUSED_BUFFER_SIZE;
 import static org.nuxeo.lib.stream.log.chronicle.ChronicleLogAppender.MSG_KEY;
 
 import java.io.Externalizable;
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -43,8 +46,10 @@ import org.nuxeo.lib.stream.log.Name;
 import org.nuxeo.lib.stream.log.internals.LogOffsetImpl;
 import org.nuxeo.lib.stream.log.internals.LogPartitionGroup;
 
+import net.openhft.chronicle.bytes.Bytes;
 import net.openhft.chronicle.queue.ExcerptTailer;
 import net.openhft.chronicle.queue.TailerState;
+import net.openhft.chronicle.wire.ValueIn;
 
 /**
  * @since 9.3
@@ -75,6 +80,12 @@ public class ChronicleLogTailer<M extends Externalizable> implements LogTailer<M
 
     protected boolean initialized;
 
+    /** @since 11.4 */
+    protected final ChronicleLogNotifier.Signal signal;
+
+    /** Decoding buffer reused between reads, a tailer is used by a single thread. @since 11.4 */
+    protected Bytes<ByteBuffer> buffer;
+
     public ChronicleLogTailer(Codec<M> codec, String basePath, ExcerptTailer cqTailer, LogPartition partition,
                               Name group, ChronicleRetentionDuration retention) {
         Objects.requireNonNull(group);
@@ -84,6 +95,7 @@ public class ChronicleLogTailer<M extends Externalizable> implements LogTailer<M
         this.partition = partition;
         this.retention = retention;
         this.id = new LogPartitionGroup(group, partition.name(), partition.partition());
+        this.signal = ChronicleLogNotifier.acquireSignal(basePath, partition.partition());
         registerTailer();
     }
 
@@ -117,14 +129,7 @@ public class ChronicleLogTailer<M extends Externalizable> implements LogTailer<M
         if (ret != null) {
             return ret;
         }
-        long timeoutMs = timeout.toMillis();
-        long deadline = System.currentTimeMillis() + timeoutMs;
-        long delay = Math.min(POLL_INTERVAL_MS, timeoutMs);
-        while (ret == null && System.currentTimeMillis() < deadline) {
-            Thread.sleep(delay);
-            ret = read();
-        }
-        return ret;
+        return ChronicleLogNotifier.await(Collections.singletonList(signal), timeout.toMillis(), this::read);
     }
 
     @SuppressWarnings("unchecked")
@@ -150,7 +155,7 @@ public class ChronicleLogTailer<M extends Externalizable> implements LogTailer<M
         } else {
             if (!cqTailer.readDocument(w -> {
                 offset.set(cqTailer.index());
-                value.add(codec.decode(w.read().bytes()));
+                value.add(codec.decode(readData(w.read())));
             })) {
                 return null;
             }
@@ -158,6 +163,22 @@ public class ChronicleLogTailer<M extends Externalizable> implements LogTailer<M
         return new LogRecord<>(value.get(0), new LogOffsetImpl(partition, offset.get()));
     }
 
+    /**
+     * Reads the message bytes into the reused buffer and returns a view on them, valid until the next read.
+     *
+     * @since 11.4
+     */
+    protected ByteBuffer readData(ValueIn in) {
+        if (buffer == null || buffer.realCapacity() > MAX_REUSED_BUFFER_SIZE) {
+            buffer = Bytes.elasticHeapByteBuffer(INITIAL_BUFFER_SIZE);
+        }
+        buffer.clear();
+        in.bytes(buffer);
+        ByteBuffer ret = buffer.underlyingObject().duplicate();
+        ret.limit((int) buffer.readLimit()).position((int) buffer.readPosition());
+        return ret;
+    }
+
     @Override
     public LogOffset commit(LogPartition partition) {
         checkInitialized();
@@ -275,6 +296,7 @@ public class ChronicleLogTailer<M extends Externalizable> implements LogTailer<M
                 offsetTracker = null;
             }
             unregisterTailer();
+            ChronicleLogNotifier.releaseSignal(basePath, partition.partition());
             closed = true;
             initialized = false;
         }
@@ -34,6 +34,7 @@ import java.util.function.Function;
 
 import org.nuxeo.lib.stream.StreamRuntimeException;
 import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.lib.stream.codec.CompressedCodec;
 import org.nuxeo.lib.stream.log.Latency;
 import org.nuxeo.lib.stream.log.LogAppender;
 import org.nuxeo.lib.stream.log.LogLag;
@@ -166,8 +167,18 @@ public abstract class AbstractLogManager implements LogManager {
     }
 
     protected <M extends Externalizable> boolean sameCodec(Codec<M> codec1, Codec<M> codec2) {
-        return codec1 == codec2
-                || !NO_CODEC.equals(codec1) && !NO_CODEC.equals(codec2) && codec1.getClass().isInstance(codec2);
+        if (codec1 == codec2) {
+            return true;
+        }
+        if (NO_CODEC.equals(codec1) || NO_CODEC.equals(codec2)) {
+            return false;
+        }
+        if (codec1 instanceof CompressedCodec || codec2 instanceof CompressedCodec) {
+            // uncompressed codecs can't read compressed records, whatever the algorithm
+            return codec1 instanceof CompressedCodec && codec2 instanceof CompressedCodec
+                    && sameCodec(((CompressedCodec<M>) codec1).getCodec(), ((CompressedCodec<M>) codec2).getCodec());
+        }
+        return codec1.getClass().isInstance(codec2);
     }
 
     @Override
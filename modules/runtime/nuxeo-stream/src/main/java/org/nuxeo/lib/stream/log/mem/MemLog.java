@@ -0,0 +1,80 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.lib.stream.log.mem;
+
+import static org.nuxeo.lib.stream.codec.NoCodec.NO_CODEC;
+
+import java.io.Externalizable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.lib.stream.codec.SerializableCodec;
+import org.nuxeo.lib.stream.log.Name;
+
+/**
+ * A Log kept in memory, records are stored encoded so that consumers never share instances with producers.
+ *
+ * @since 11.4
+ */
+public class MemLog {
+
+    protected final Name name;
+
+    protected final List<MemLogPartition> partitions;
+
+    public MemLog(Name name, int size, long retention) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Invalid number of partitions: " + size + " for Log: " + name);
+        }
+        this.name = name;
+        List<MemLogPartition> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(new MemLogPartition(retention));
+        }
+        this.partitions = Collections.unmodifiableList(list);
+    }
+
+    public Name getName() {
+        return name;
+    }
+
+    public int size() {
+        return partitions.size();
+    }
+
+    public MemLogPartition getPartition(int partition) {
+        return partitions.get(partition);
+    }
+
+    public List<MemLogPartition> getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Returns the codec used to store the records, Java serialization when there is no codec.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected static <M extends Externalizable> Codec<M> storageCodec(Codec<M> codec) {
+        return NO_CODEC.equals(codec) ? new SerializableCodec() : codec;
+    }
+
+    @Override
+    public String toString() {
+        return "MemLog{" + "name=" + name + ", size=" + partitions.size() + '}';
+    }
+}
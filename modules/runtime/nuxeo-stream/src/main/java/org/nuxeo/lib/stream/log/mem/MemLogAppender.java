@@ -0,0 +1,103 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.lib.stream.log.mem;
+
+import java.io.Externalizable;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.lib.stream.log.LogOffset;
+import org.nuxeo.lib.stream.log.Name;
+import org.nuxeo.lib.stream.log.internals.CloseableLogAppender;
+import org.nuxeo.lib.stream.log.internals.LogOffsetImpl;
+
+/**
+ * Memory implementation of LogAppender.
+ *
+ * @since 11.4
+ */
+public class MemLogAppender<M extends Externalizable> implements CloseableLogAppender<M> {
+    private static final Log log = LogFactory.getLog(MemLogAppender.class);
+
+    protected final MemLog memLog;
+
+    protected final Codec<M> codec;
+
+    protected final Codec<M> storageCodec;
+
+    protected final int size;
+
+    protected volatile List<MemLogPartition> partitions;
+
+    public MemLogAppender(MemLog memLog, Codec<M> codec) {
+        this.memLog = memLog;
+        this.codec = codec;
+        this.storageCodec = MemLog.storageCodec(codec);
+        this.size = memLog.size();
+        this.partitions = memLog.getPartitions();
+    }
+
+    @Override
+    public Name name() {
+        return memLog.getName();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public LogOffset append(int partition, M message) {
+        // fails with an IndexOutOfBoundsException once closed
+        long offset = partitions.get(partition).append(storageCodec.encode(message));
+        LogOffset ret = new LogOffsetImpl(memLog.getName(), partition, offset);
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("append to %s, value: %s", ret, message));
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean waitFor(LogOffset offset, Name group, Duration timeout) throws InterruptedException {
+        MemLogPartition partition = memLog.getPartition(offset.partition().partition());
+        return partition.waitForCommit(group, offset.offset(), timeout.toMillis());
+    }
+
+    @Override
+    public boolean closed() {
+        return partitions.isEmpty();
+    }
+
+    @Override
+    public Codec<M> getCodec() {
+        return codec;
+    }
+
+    @Override
+    public void close() {
+        partitions = Collections.emptyList();
+    }
+
+    @Override
+    public String toString() {
+        return "MemLogAppender{" + "memLog=" + memLog + ", closed=" + closed() + ", codec=" + codec + '}';
+    }
+}
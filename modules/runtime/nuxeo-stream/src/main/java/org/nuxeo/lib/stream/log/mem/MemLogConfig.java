@@ -0,0 +1,58 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.lib.stream.log.mem;
+
+import java.util.List;
+
+import org.nuxeo.lib.stream.log.AbstractLogConfig;
+
+/**
+ * @since 11.4
+ */
+public class MemLogConfig extends AbstractLogConfig {
+
+    public static final long DEFAULT_RETENTION = 100_000;
+
+    protected final String name;
+
+    protected final long retention;
+
+    /**
+     * @param name the name of the config, logs of configs with the same name are shared in the JVM
+     * @param retention the maximum number of records kept per partition, older records are dropped
+     */
+    public MemLogConfig(String name, boolean defaultConfig, List<String> patterns, long retention) {
+        super(defaultConfig, patterns);
+        if (retention <= 0) {
+            throw new IllegalArgumentException("Invalid retention: " + retention + " for config: " + name);
+        }
+        this.name = name;
+        this.retention = retention;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getRetention() {
+        return retention;
+    }
+
+    @Override
+    public String toString() {
+        return "MemLogConfig{" + "name='" + name + '\'' + ", retention=" + retention + '}';
+    }
+}
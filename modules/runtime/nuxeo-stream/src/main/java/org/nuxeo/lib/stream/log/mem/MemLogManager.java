@@ -0,0 +1,171 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.lib.stream.log.mem;
+
+import java.io.Externalizable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.lib.stream.log.LogConfig;
+import org.nuxeo.lib.stream.log.LogLag;
+import org.nuxeo.lib.stream.log.LogPartition;
+import org.nuxeo.lib.stream.log.LogTailer;
+import org.nuxeo.lib.stream.log.Name;
+import org.nuxeo.lib.stream.log.RebalanceListener;
+import org.nuxeo.lib.stream.log.internals.AbstractLogManager;
+import org.nuxeo.lib.stream.log.internals.CloseableLogAppender;
+
+/**
+ * A LogManager keeping the Logs in memory, for ephemeral streams and tests.
+ * <p>
+ * The Logs are shared by all the managers of the JVM using a config with the same name, so that they survive a
+ * restart of the manager like persisted Logs do, but they are lost when the JVM stops. Each partition keeps at most
+ * the retention number of records.
+ *
+ * @since 11.4
+ */
+public class MemLogManager extends AbstractLogManager {
+
+    // config name -> logs
+    protected static final Map<String, Map<Name, MemLog>> NAMESPACES = new ConcurrentHashMap<>();
+
+    protected final List<MemLogConfig> configs;
+
+    protected final MemLogConfig defaultConfig;
+
+    public MemLogManager() {
+        this(Collections.singletonList(
+                new MemLogConfig("unknown", true, Collections.emptyList(), MemLogConfig.DEFAULT_RETENTION)));
+    }
+
+    public MemLogManager(List<MemLogConfig> configs) {
+        if (configs == null || configs.isEmpty()) {
+            throw new IllegalArgumentException("No MemLogConfig provided");
+        }
+        this.configs = configs;
+        this.defaultConfig = findDefaultConfig();
+    }
+
+    protected MemLogConfig findDefaultConfig() {
+        List<MemLogConfig> defaultConfigs = configs.stream().filter(LogConfig::isDefault).collect(Collectors.toList());
+        // use the last default config
+        if (defaultConfigs.isEmpty()) {
+            return configs.get(configs.size() - 1);
+        }
+        return defaultConfigs.get(defaultConfigs.size() - 1);
+    }
+
+    protected MemLogConfig getConfig(Name name) {
+        return configs.stream().filter(config -> config.match(name)).findFirst().orElse(defaultConfig);
+    }
+
+    protected Map<Name, MemLog> getLogs(MemLogConfig config) {
+        return NAMESPACES.computeIfAbsent(config.getName(), k -> new ConcurrentHashMap<>());
+    }
+
+    protected MemLog getLog(Name name) {
+        MemLog ret = getLogs(getConfig(name)).get(name);
+        if (ret == null) {
+            throw new IllegalArgumentException("Unknown Log: " + name);
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean exists(Name name) {
+        return getLogs(getConfig(name)).containsKey(name);
+    }
+
+    @Override
+    protected void create(Name name, int size) {
+        MemLogConfig config = getConfig(name);
+        getLogs(config).computeIfAbsent(name, n -> new MemLog(n, size, config.getRetention()));
+    }
+
+    @Override
+    protected int getSize(Name name) {
+        MemLog memLog = getLogs(getConfig(name)).get(name);
+        return memLog == null ? 0 : memLog.size();
+    }
+
+    @Override
+    public boolean delete(Name name) {
+        CloseableLogAppender<?> appender = appenders.remove(name);
+        if (appender != null) {
+            appender.close();
+        }
+        return getLogs(getConfig(name)).remove(name) != null;
+    }
+
+    @Override
+    public List<LogLag> getLagPerPartition(Name name, Name group) {
+        MemLog memLog = getLog(name);
+        List<LogLag> ret = new ArrayList<>(memLog.size());
+        for (MemLogPartition partition : memLog.getPartitions()) {
+            long start = partition.start();
+            long end = partition.end();
+            long pos = Math.max(partition.committed(group), start);
+            ret.add(new LogLag(pos, end, end - pos, end - start));
+        }
+        return ret;
+    }
+
+    @Override
+    public List<Name> listAllNames() {
+        Set<Name> names = new HashSet<>();
+        configs.forEach(config -> names.addAll(getLogs(config).keySet()));
+        return new ArrayList<>(names);
+    }
+
+    @Override
+    public List<Name> listConsumerGroups(Name name) {
+        Set<Name> groups = new HashSet<>();
+        getLog(name).getPartitions().forEach(partition -> groups.addAll(partition.groups()));
+        return new ArrayList<>(groups);
+    }
+
+    @Override
+    protected <M extends Externalizable> CloseableLogAppender<M> createAppender(Name name, Codec<M> codec) {
+        return new MemLogAppender<>(getLog(name), codec);
+    }
+
+    @Override
+    protected <M extends Externalizable> LogTailer<M> doCreateTailer(Collection<LogPartition> partitions, Name group,
+            Codec<M> codec) {
+        List<MemLog> logs = partitions.stream().map(partition -> getLog(partition.name())).collect(Collectors.toList());
+        return new MemLogTailer<>(logs, partitions, group, codec);
+    }
+
+    @Override
+    protected <M extends Externalizable> LogTailer<M> doSubscribe(Name group, Collection<Name> names,
+            RebalanceListener listener, Codec<M> codec) {
+        throw new UnsupportedOperationException("subscribe is not supported by Memory implementation");
+    }
+
+    @Override
+    public String toString() {
+        return "MemLogManager{" + "configs=" + configs + ", defaultConfig=" + defaultConfig + '}';
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.lib.stream.log.mem;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+import org.nuxeo.lib.stream.log.Name;
+
+/**
+ * A partition of a memory Log: a ring buffer of encoded records growing up to the retention size, plus the committed
+ * offsets of the consumer groups.
+ * <p>
+ * Offsets are absolute and never reused, the offset of the first record still available moves forward when the
+ * retention drops the oldest records.
+ *
+ * @since 11.4
+ */
+public class MemLogPartition {
+
+    protected static final int INITIAL_CAPACITY = 16;
+
+    protected final long retention;
+
+    protected final Map<Name, Long> committed = new ConcurrentHashMap<>();
+
+    // threads of the tailers waiting for a record
+    protected final Set<Thread> waiters = ConcurrentHashMap.newKeySet();
+
+    protected byte[][] ring;
+
+    // offset of the first available record
+    protected long start;
+
+    // offset of the next record to append
+    protected long end;
+
+    public MemLogPartition(long retention) {
+        this.retention = retention;
+        this.ring = new byte[(int) Math.min(INITIAL_CAPACITY, capacityFor(retention))][];
+    }
+
+    protected static int capacityFor(long size) {
+        // power of 2 so that the ring index is a mask of the offset
+        long capacity = Long.highestOneBit(Math.max(1, size - 1)) << 1;
+        if (capacity > 1 << 30) {
+            throw new IllegalArgumentException("Retention too large: " + size);
+        }
+        return (int) capacity;
+    }
+
+    /**
+     * Appends an encoded record and wakes up the waiting tailers.
+     *
+     * @return the offset of the record
+     */
+    public long append(byte[] data) {
+        long offset;
+        synchronized (this) {
+            if (end - start == retention) {
+                // drop the oldest record
+                ring[index(start)] = null;
+                start++;
+            } else if (end - start == ring.length) {
+                grow();
+            }
+            offset = end++;
+            ring[index(offset)] = data;
+        }
+        waiters.forEach(LockSupport::unpark);
+        return offset;
+    }
+
+    protected void grow() {
+        byte[][] newRing = new byte[(int) Math.min(ring.length * 2L, capacityFor(retention))][];
+        for (long offset = start; offset < end; offset++) {
+            newRing[(int) (offset & (newRing.length - 1))] = ring[index(offset)];
+        }
+        ring = newRing;
+    }
+
+    protected int index(long offset) {
+        return (int) (offset & (ring.length - 1));
+    }
+
+    /**
+     * Returns the record at the given offset, {@code null} if there is no such record yet or if it has been dropped by
+     * the retention.
+     */
+    public synchronized byte[] get(long offset) {
+        if (offset < start || offset >= end) {
+            return null;
+        }
+        return ring[index(offset)];
+    }
+
+    public synchronized long start() {
+        return start;
+    }
+
+    public synchronized long end() {
+        return end;
+    }
+
+    /**
+     * Returns the committed offset of the group, {@code -1} if the group has never committed.
+     */
+    public long committed(Name group) {
+        return committed.getOrDefault(group, -1L);
+    }
+
+    public void commit(Name group, long offset) {
+        committed.put(group, offset);
+        synchronized (committed) {
+            committed.notifyAll();
+        }
+    }
+
+    /**
+     * Waits for the group to commit an offset after the given one.
+     */
+    public boolean waitForCommit(Name group, long offset, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (committed) {
+            while (committed(group) <= offset) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                committed.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    public Set<Name> groups() {
+        return committed.keySet();
+    }
+
+}
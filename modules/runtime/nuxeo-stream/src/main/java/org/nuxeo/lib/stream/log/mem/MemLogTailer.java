@@ -0,0 +1,245 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.lib.stream.log.mem;
+
+import java.io.Externalizable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.lib.stream.log.LogOffset;
+import org.nuxeo.lib.stream.log.LogPartition;
+import org.nuxeo.lib.stream.log.LogRecord;
+import org.nuxeo.lib.stream.log.LogTailer;
+import org.nuxeo.lib.stream.log.Name;
+import org.nuxeo.lib.stream.log.internals.LogOffsetImpl;
+
+/**
+ * Memory implementation of LogTailer, a single tailer reads its assigned partitions in a round robin way.
+ *
+ * @since 11.4
+ */
+public class MemLogTailer<M extends Externalizable> implements LogTailer<M> {
+    private static final Log log = LogFactory.getLog(MemLogTailer.class);
+
+    protected final Name group;
+
+    protected final List<LogPartition> assignments;
+
+    protected final List<MemLogPartition> partitions;
+
+    // offset of the next record to read for each assigned partition
+    protected final long[] positions;
+
+    protected final Codec<M> codec;
+
+    protected final Codec<M> storageCodec;
+
+    // next partition to read from
+    protected int current;
+
+    protected volatile boolean closed;
+
+    public MemLogTailer(List<MemLog> logs, Collection<LogPartition> partitions, Name group, Codec<M> codec) {
+        this.group = group;
+        this.assignments = Collections.unmodifiableList(new ArrayList<>(partitions));
+        this.partitions = new ArrayList<>(partitions.size());
+        int i = 0;
+        for (LogPartition partition : partitions) {
+            this.partitions.add(logs.get(i++).getPartition(partition.partition()));
+        }
+        this.positions = new long[partitions.size()];
+        this.codec = codec;
+        this.storageCodec = MemLog.storageCodec(codec);
+        toLastCommitted();
+    }
+
+    @Override
+    public Name group() {
+        return group;
+    }
+
+    @Override
+    public Collection<LogPartition> assignments() {
+        return assignments;
+    }
+
+    @Override
+    public LogRecord<M> read(Duration timeout) throws InterruptedException {
+        LogRecord<M> ret = read();
+        if (ret != null) {
+            return ret;
+        }
+        Thread thread = Thread.currentThread();
+        // register before reading again so that no append between the read and the park is missed
+        partitions.forEach(partition -> partition.waiters.add(thread));
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout.toMillis());
+            for (;;) {
+                ret = read();
+                if (ret != null) {
+                    return ret;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                LockSupport.parkNanos(remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            partitions.forEach(partition -> partition.waiters.remove(thread));
+        }
+    }
+
+    protected LogRecord<M> read() {
+        if (closed) {
+            throw new IllegalStateException("The tailer has been closed.");
+        }
+        int size = partitions.size();
+        for (int i = 0; i < size; i++) {
+            int index = (current + i) % size;
+            MemLogPartition partition = partitions.get(index);
+            long offset = positions[index];
+            byte[] data = partition.get(offset);
+            if (data == null) {
+                long start = partition.start();
+                if (offset >= start) {
+                    // nothing new
+                    continue;
+                }
+                log.error("The offset: " + offset + " for tailer: " + this + " on " + assignments.get(index)
+                        + " points to a record that has been dropped by the retention policy."
+                        + " Records have been lost, continuing from the beginning of the partition offset: " + start);
+                offset = start;
+                data = partition.get(offset);
+                if (data == null) {
+                    positions[index] = offset;
+                    continue;
+                }
+            }
+            positions[index] = offset + 1;
+            current = index + 1;
+            return new LogRecord<>(storageCodec.decode(data), new LogOffsetImpl(assignments.get(index), offset));
+        }
+        return null;
+    }
+
+    @Override
+    public void commit() {
+        for (int i = 0; i < partitions.size(); i++) {
+            partitions.get(i).commit(group, positions[i]);
+        }
+    }
+
+    @Override
+    public LogOffset commit(LogPartition partition) {
+        int index = indexOf(partition);
+        if (index < 0) {
+            throw new IllegalArgumentException("Cannot commit this partition: " + partition + " from " + this);
+        }
+        partitions.get(index).commit(group, positions[index]);
+        return new LogOffsetImpl(partition, positions[index]);
+    }
+
+    @Override
+    public void toEnd() {
+        for (int i = 0; i < partitions.size(); i++) {
+            positions[i] = partitions.get(i).end();
+        }
+    }
+
+    @Override
+    public void toStart() {
+        for (int i = 0; i < partitions.size(); i++) {
+            positions[i] = partitions.get(i).start();
+        }
+    }
+
+    @Override
+    public void toLastCommitted() {
+        for (int i = 0; i < partitions.size(); i++) {
+            MemLogPartition partition = partitions.get(i);
+            positions[i] = Math.max(partition.committed(group), partition.start());
+        }
+    }
+
+    @Override
+    public void seek(LogOffset offset) {
+        int index = indexOf(offset.partition());
+        if (index < 0) {
+            throw new IllegalStateException(
+                    "Cannot seek, tailer " + this + " has no assignment for partition: " + offset);
+        }
+        positions[index] = offset.offset();
+    }
+
+    @Override
+    public LogOffset offsetForTimestamp(LogPartition partition, long timestamp) {
+        throw new UnsupportedOperationException("MemLog does not support seek by timestamp");
+    }
+
+    @Override
+    public void reset() {
+        toStart();
+        commit();
+    }
+
+    @Override
+    public void reset(LogPartition partition) {
+        int index = indexOf(partition);
+        if (index < 0) {
+            throw new IllegalArgumentException("Cannot reset this partition: " + partition + " from " + this);
+        }
+        log.info("Reset offset for partition: " + partition + " from tailer: " + this);
+        positions[index] = partitions.get(index).start();
+        commit(partition);
+    }
+
+    protected int indexOf(LogPartition partition) {
+        return assignments.indexOf(partition);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public boolean closed() {
+        return closed;
+    }
+
+    @Override
+    public Codec<M> getCodec() {
+        return codec;
+    }
+
+    @Override
+    public String toString() {
+        return "MemLogTailer{" + "group=" + group + ", assignments=" + assignments + ", closed=" + closed + ", codec="
+                + codec + '}';
+    }
+}
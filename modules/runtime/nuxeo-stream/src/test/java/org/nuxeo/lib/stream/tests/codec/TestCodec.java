@@ -19,14 +19,17 @@
 package org.nuxeo.lib.stream.tests.codec;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -46,6 +49,8 @@ import org.nuxeo.lib.stream.codec.AvroJsonCodec;
 import org.nuxeo.lib.stream.codec.AvroMessageCodec;
 import org.nuxeo.lib.stream.codec.AvroSchemaStore;
 import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.lib.stream.codec.CompressedCodec;
+import org.nuxeo.lib.stream.codec.CompressedCodec.Algorithm;
 import org.nuxeo.lib.stream.codec.FileAvroSchemaStore;
 import org.nuxeo.lib.stream.codec.SerializableCodec;
 import org.nuxeo.lib.stream.computation.Record;
@@ -215,6 +220,91 @@ public class TestCodec {
         return ret;
     }
 
+    @Test
+    public void testRecordStreamAndBuffer() {
+        Record src = getRecord();
+        testStreamAndBuffer(src, new SerializableCodec<>());
+        testStreamAndBuffer(src, new AvroMessageCodec<>(Record.class));
+        testStreamAndBuffer(src, new AvroBinaryCodec<>(Record.class));
+        testStreamAndBuffer(src, new AvroJsonCodec<>(Record.class));
+    }
+
+    @Test
+    public void testCompressedCodec() {
+        Codec<Record> avro = new AvroMessageCodec<>(Record.class);
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            json.append("{\"entity-type\":\"document\",\"title\":\"doc").append(i).append("\"},");
+        }
+        Record big = Record.of("key", json.toString().getBytes(UTF_8));
+        Record small = getRecord();
+        int rawSize = avro.encode(big).length;
+        for (Algorithm algorithm : Algorithm.values()) {
+            Codec<Record> codec = new CompressedCodec<>(avro, algorithm);
+            assertEquals(avro.getName() + "+" + algorithm.name().toLowerCase(), codec.getName());
+            byte[] data = codec.encode(big);
+            if (algorithm != Algorithm.NONE) {
+                assertTrue(algorithm + ": " + data.length, data.length < rawSize / 4);
+            }
+            assertEquals(big, codec.decode(data));
+            // small records are not compressed
+            assertEquals(avro.encode(small).length + CompressedCodec.HEADER_SIZE, codec.encode(small).length);
+            assertEquals(small, codec.decode(codec.encode(small)));
+            // any algorithm can be decoded
+            assertEquals(big, new CompressedCodec<>(avro, Algorithm.LZ4).decode(data));
+        }
+        // records written before compression was enabled are decoded by the wrapped codec
+        assertEquals(big, new CompressedCodec<>(avro, Algorithm.LZ4).decode(avro.encode(big)));
+        assertEquals(small, new CompressedCodec<>(avro, Algorithm.DEFLATE).decode(avro.encode(small)));
+    }
+
+    @Test
+    public void testCompressedCodecDecodesLegacyRecordStartingWithMagic() {
+        Codec<byte[]> raw = new Codec<>() {
+            @Override
+            public String getName() {
+                return "raw";
+            }
+
+            @Override
+            public byte[] encode(byte[] object) {
+                return object;
+            }
+
+            @Override
+            public byte[] decode(byte[] data) {
+                return data;
+            }
+        };
+        // legacy records that look like the header of a compressed record but are not consistent with it
+        byte[] marker = { (byte) 0xC5, 1, 0, 0, 0, 42, 'x', 'y', 'z', 't', 'u' };
+        byte[] magic = { (byte) 0xC5, 'N', 'X', 'Z', 1, 1, 0x7f, 0, 0, 0, 'x', 'y' };
+        byte[] none = { (byte) 0xC5, 'N', 'X', 'Z', 1, 0, 0, 0, 0, 3, 'x', 'y' };
+        for (Algorithm algorithm : Algorithm.values()) {
+            Codec<byte[]> codec = new CompressedCodec<>(raw, algorithm);
+            assertArrayEquals(marker, codec.decode(marker));
+            assertArrayEquals(magic, codec.decode(magic));
+            assertArrayEquals(none, codec.decode(none));
+        }
+    }
+
+    protected <T> void testStreamAndBuffer(T src, Codec<T> codec) {
+        byte[] data = codec.encode(src);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(src, out);
+        assertArrayEquals(codec.getName(), data, out.toByteArray());
+
+        // decode a slice of a larger read-only buffer
+        ByteBuffer buffer = ByteBuffer.allocate(data.length + 20);
+        buffer.position(10);
+        buffer.put(data);
+        buffer.flip().position(10);
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        assertEquals(codec.getName(), src, codec.decode(view));
+        assertEquals(10, view.position());
+        assertEquals(data.length + 10, view.limit());
+    }
+
     protected <T> T testCodec(T src, Codec<T> codec) {
         byte[] data = codec.encode(src);
         T dest = codec.decode(data);
@@ -0,0 +1,45 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.lib.stream.tests.computation;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.nuxeo.lib.stream.computation.AbstractComputation;
+import org.nuxeo.lib.stream.computation.BatchComputation;
+import org.nuxeo.lib.stream.computation.ComputationContext;
+import org.nuxeo.lib.stream.computation.Record;
+
+/**
+ * Batch computation that forwards all the records it receives to its output, keeping track of the largest batch.
+ *
+ * @since 11.4
+ */
+public class ComputationRecordsForward extends AbstractComputation implements BatchComputation {
+
+    public static final AtomicInteger MAX_BATCH_SIZE = new AtomicInteger();
+
+    public ComputationRecordsForward(String name) {
+        super(name, 1, 1);
+    }
+
+    @Override
+    public void processRecords(ComputationContext context, String inputStreamName, List<Record> records) {
+        MAX_BATCH_SIZE.accumulateAndGet(records.size(), Math::max);
+        records.forEach(record -> context.produceRecord(OUTPUT_1, record));
+    }
+
+}
@@ -28,6 +28,8 @@ import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -69,6 +71,9 @@ public abstract class TestStreamProcessor {
 
     public Codec<Record> codec = new AvroMessageCodec<>(Record.class);
 
+    // @since 11.4
+    protected ThreadFactory threadFactory;
+
     public abstract LogManager getLogManager() throws Exception;
 
     public abstract LogManager getSameLogManager();
@@ -92,6 +97,10 @@ public abstract class TestStreamProcessor {
                                     .build();
         // one thread for each computation
         Settings settings = new Settings(concurrency, concurrency, codec).setConcurrency("GENERATOR", 1);
+        if (threadFactory != null) {
+            Arrays.asList("GENERATOR", "C1", "C2", "C3", "COUNTER")
+                  .forEach(name -> settings.setThreadFactory(name, threadFactory));
+        }
         // uncomment to get the plantuml diagram
         // System.out.println(topology.toPlantuml(settings));
         try (LogManager manager = getLogManager()) {
@@ -182,6 +191,22 @@ public abstract class TestStreamProcessor {
         }
     }
 
+    @Test
+    public void testSimpleTopoFewRecordsOneThreadThreadFactory() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        threadFactory = r -> {
+            created.incrementAndGet();
+            return new Thread(r, "custom-" + created.get());
+        };
+        try {
+            testSimpleTopo(17, 1);
+        } finally {
+            threadFactory = null;
+        }
+        // the computation threads come from the factory
+        assertTrue(String.valueOf(created.get()), created.get() >= 5);
+    }
+
     protected void restoreDefaultCodec() {
         codec = new AvroMessageCodec<>(Record.class);
     }
@@ -656,6 +681,36 @@ public abstract class TestStreamProcessor {
 
     }
 
+    @Test
+    public void testBatchDelivery() throws Exception {
+        Topology topology = Topology.builder()
+                                    .addComputation(() -> new ComputationRecordsForward("C1"),
+                                            Arrays.asList("i1:input", "o1:output"))
+                                    .build();
+        int batchCapacity = 10;
+        int nbRecords = 95;
+        ComputationPolicy policy = new ComputationPolicyBuilder().batchPolicy(batchCapacity, Duration.ofSeconds(1))
+                                                                 .build();
+        ComputationRecordsForward.MAX_BATCH_SIZE.set(0);
+        try (LogManager manager = getLogManager()) {
+            StreamManager streamManager = new LogStreamManager(manager);
+            // records are available before the processor starts
+            streamManager.register("processor", topology, new Settings(1, 1, policy));
+            for (int i = 0; i < nbRecords; i++) {
+                streamManager.append("input", Record.of("key" + i, null));
+            }
+            StreamProcessor processor = streamManager.createStreamProcessor("processor");
+            processor.start();
+            processor.waitForAssignments(Duration.ofSeconds(10));
+            assertTrue(processor.drainAndStop(Duration.ofSeconds(20)));
+            LogLag lag = manager.getLag(Name.ofUrn("input"), Name.ofUrn("C1"));
+            assertEquals(lag.toString(), 0, lag.lag());
+            assertEquals(nbRecords, countRecordIn(manager, "output"));
+            assertTrue(ComputationRecordsForward.MAX_BATCH_SIZE.get() > 1);
+            assertTrue(ComputationRecordsForward.MAX_BATCH_SIZE.get() <= batchCapacity);
+        }
+    }
+
     @Test
     public void testRegisterWithoutExecution() throws Exception {
         Topology topology = Topology.builder()
@@ -46,6 +46,8 @@ import org.nuxeo.lib.stream.codec.AvroBinaryCodec;
 import org.nuxeo.lib.stream.codec.AvroJsonCodec;
 import org.nuxeo.lib.stream.codec.AvroMessageCodec;
 import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.lib.stream.codec.CompressedCodec;
+import org.nuxeo.lib.stream.codec.CompressedCodec.Algorithm;
 import org.nuxeo.lib.stream.codec.SerializableCodec;
 import org.nuxeo.lib.stream.computation.Record;
 import org.nuxeo.lib.stream.computation.Watermark;
@@ -851,6 +853,13 @@ public abstract class TestLog {
         testCodec(codec);
     }
 
+    @Test
+    public void testCompressedCodec() throws Exception {
+        Codec<KeyValueMessage> codec = new CompressedCodec<>(new AvroMessageCodec<>(KeyValueMessage.class),
+                Algorithm.LZ4, 0);
+        testCodec(codec);
+    }
+
     protected void testCodec(Codec<KeyValueMessage> codec) throws Exception {
         final int LOG_SIZE = 1;
         final Name GROUP = Name.ofUrn("test/defaultTest");
@@ -930,6 +939,40 @@ public abstract class TestLog {
 
     }
 
+    @Test
+    public void testCompressedCodecCheck() throws Exception {
+        final Name GROUP = Name.ofUrn("test/defaultTest");
+        manager.createIfNotExists(logName, 1);
+        KeyValueMessage msg1 = KeyValueMessage.of("1234567890", "0987654321".getBytes(UTF_8));
+
+        Codec<KeyValueMessage> avro = new AvroBinaryCodec<>(KeyValueMessage.class);
+        Codec<KeyValueMessage> lz4 = new CompressedCodec<>(avro, Algorithm.LZ4, 0);
+        LogAppender<KeyValueMessage> appender = manager.getAppender(logName, lz4);
+        appender.append(0, msg1);
+
+        // another algorithm can read and write the same stream
+        Codec<KeyValueMessage> deflate = new CompressedCodec<>(new AvroBinaryCodec<>(KeyValueMessage.class),
+                Algorithm.DEFLATE, 0);
+        manager.getAppender(logName, deflate).append(0, msg1);
+        // but not the uncompressed codec, nor a compressed codec wrapping another codec
+        try {
+            manager.getAppender(logName, avro);
+            fail("Should not be possible to open an appender without compression on a compressed stream");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            manager.getAppender(logName, new CompressedCodec<>(new SerializableCodec<>(), Algorithm.LZ4));
+            fail("Should not be possible to open an appender with a wrong wrapped codec");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try (LogTailer<KeyValueMessage> tailer = manager.createTailer(GROUP, logName, deflate)) {
+            assertEquals(msg1, tailer.read(DEF_TIMEOUT).message());
+            assertEquals(msg1, tailer.read(DEF_TIMEOUT).message());
+        }
+    }
+
     @Test
     public void testInitialOffset() throws Exception {
         final int LOG_SIZE = 1;
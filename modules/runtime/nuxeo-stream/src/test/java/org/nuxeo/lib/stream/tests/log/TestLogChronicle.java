@@ -32,6 +32,7 @@ import java.util.Arrays;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.After;
 import org.junit.Before;
@@ -160,6 +161,30 @@ public class TestLogChronicle extends TestLog {
         assertEquals(LogLag.of(NB_APPENDERS * RETENTION_CYCLES), manager.getLag(logName, Name.ofUrn("test/counter")));
     }
 
+    @Test
+    public void testAppendWakesUpTailer() throws Exception {
+        KeyValueMessage msg = KeyValueMessage.of("id");
+        manager.createIfNotExists(logName, 1);
+        LogAppender<KeyValueMessage> appender = manager.getAppender(logName);
+        AtomicLong appendTime = new AtomicLong();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Duration timeout = Duration.ofSeconds(10);
+        try (LogTailer<KeyValueMessage> tailer = manager.createTailer(Name.ofUrn("test/group"), logName)) {
+            executor.submit(() -> {
+                // let the tailer back off to its longest park
+                Thread.sleep(500);
+                appendTime.set(System.nanoTime());
+                return appender.append(0, msg);
+            });
+            assertEquals(msg, tailer.read(timeout).message());
+            // the tailer must be woken up by the append, not by the expiration of its read timeout
+            long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - appendTime.get());
+            assertTrue("Latency too high: " + latencyMs, latencyMs < timeout.toMillis() / 10);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void testRollCycle() throws Exception {
         KeyValueMessage msg1 = KeyValueMessage.of("id1");
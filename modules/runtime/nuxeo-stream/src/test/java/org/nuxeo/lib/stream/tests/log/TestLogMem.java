@@ -0,0 +1,97 @@
+/*
+ * (C) Copyright 2020 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.lib.stream.tests.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Test;
+import org.nuxeo.lib.stream.log.LogAppender;
+import org.nuxeo.lib.stream.log.LogLag;
+import org.nuxeo.lib.stream.log.LogManager;
+import org.nuxeo.lib.stream.log.LogPartition;
+import org.nuxeo.lib.stream.log.LogTailer;
+import org.nuxeo.lib.stream.log.Name;
+import org.nuxeo.lib.stream.log.mem.MemLogConfig;
+import org.nuxeo.lib.stream.log.mem.MemLogManager;
+import org.nuxeo.lib.stream.tests.KeyValueMessage;
+
+/**
+ * @since 11.4
+ */
+public class TestLogMem extends TestLog {
+
+    protected static final int RETENTION = 10;
+
+    protected String configName;
+
+    @After
+    public void resetConfigName() {
+        configName = null;
+    }
+
+    @Override
+    public LogManager createManager() throws Exception {
+        if (configName == null) {
+            // logs are shared by configs with the same name, use a new one for each test
+            configName = UUID.randomUUID().toString();
+        }
+        return createManager(configName, MemLogConfig.DEFAULT_RETENTION);
+    }
+
+    protected LogManager createManager(String name, long retention) {
+        return new MemLogManager(
+                Collections.singletonList(new MemLogConfig(name, true, Collections.emptyList(), retention)));
+    }
+
+    @Test
+    public void testRetention() throws Exception {
+        final Name group = Name.ofUrn("test/defaultTest");
+        closeManager();
+        manager = createManager(UUID.randomUUID().toString(), RETENTION);
+        manager.createIfNotExists(logName, 1);
+        LogAppender<KeyValueMessage> appender = manager.getAppender(logName);
+        for (int i = 0; i < 3; i++) {
+            appender.append(0, KeyValueMessage.of("id" + i));
+        }
+        try (LogTailer<KeyValueMessage> tailer = manager.createTailer(group, LogPartition.of(logName, 0))) {
+            assertEquals("id0", tailer.read(DEF_TIMEOUT).message().key());
+            tailer.commit();
+        }
+        // the ring buffer grows then drops the oldest records
+        for (int i = 3; i < 3 * RETENTION; i++) {
+            appender.append(0, KeyValueMessage.of("id" + i));
+        }
+        LogLag lag = manager.getLag(logName, group);
+        assertEquals(RETENTION, lag.lag());
+        assertEquals(RETENTION, lag.upper());
+
+        // the committed offset has been dropped, continue from the first record still available
+        try (LogTailer<KeyValueMessage> tailer = manager.createTailer(group, LogPartition.of(logName, 0))) {
+            for (int i = 2 * RETENTION; i < 3 * RETENTION; i++) {
+                assertEquals("id" + i, tailer.read(DEF_TIMEOUT).message().key());
+            }
+            assertNull(tailer.read(SMALL_TIMEOUT));
+            tailer.commit();
+        }
+        assertEquals(LogLag.of(0), manager.getLag(logName, group));
+    }
+
+}